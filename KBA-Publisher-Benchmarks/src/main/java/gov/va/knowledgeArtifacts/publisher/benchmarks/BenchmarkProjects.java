@@ -0,0 +1,307 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.benchmarks;
+
+import gov.va.knowledgeArtifacts.publisher.ProjectHandler;
+import gov.va.knowledgeArtifacts.publisher.types.ArchiveFormat;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.apache.maven.plugins.maven_assembly_plugin.assembly._1_1.Assembly;
+import org.apache.maven.pom._4_0.Dependency;
+import org.apache.maven.pom._4_0.Developer;
+import org.apache.maven.pom._4_0.License;
+import org.apache.maven.pom._4_0.Model;
+
+/**
+ * {@link BenchmarkProjects}
+ *
+ * Generates the inputs for the benchmarks - publisher projects (pom, assembly, license and manifest, written by {@link ProjectHandler}, 
+ * just as the GUI writes them) and data files of a chosen size and content - either flat, or laid out like real releases: an RF2 
+ * release of many small text files in nested folders, or an IBDB database of a few very large files.  Everything is generated from 
+ * a fixed seed, so every run measures the same bytes.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class BenchmarkProjects
+{
+	private static final String RELEASE_DATE = "20150131";
+	private static final String[] RF2_FOLDERS = new String[] {"Terminology", "Refset/Content", "Refset/Language", "Refset/Map", 
+		"Refset/Metadata"};
+	private static final String[] RF2_FILES = new String[] {"sct2_Concept", "sct2_Description", "der2_cRefset_Association", 
+		"der2_cRefset_Language", "der2_sRefset_SimpleMap", "der2_ciRefset_DescriptionType"};
+	private static final String[] WORDS = new String[] {"acute", "chronic", "disorder", "of", "left", "right", "structure", "finding", 
+		"procedure", "renal", "cardiac", "fracture", "pulmonary", "infection", "syndrome", "lesion", "bone", "upper", "lower", "limb", 
+		"entire", "skin", "tissue", "primary", "malignant", "neoplasm", "benign", "hepatic", "vascular", "deficiency"};
+
+	/**
+	 * The kind of bytes in a generated data file
+	 */
+	public enum Content
+	{
+		/** Tab delimited rows of ids, dates and terms - like an RF2 release file - which compress to about a quarter of their size */
+		TEXT, 
+		/** Random bytes, which don't compress at all - like an already compressed database */
+		RANDOM,
+		/** Pages of random bytes padded with zeros - like the files of an IBDB database - which compress to about half of their size */
+		DATABASE
+	}
+
+	/**
+	 * @return a model with the required fields set, and the requested number of dependencies and developers
+	 */
+	public static Model createModel(String name, int dependencies, int developers)
+	{
+		Model model = new Model();
+		model.setGroupId("gov.va.isaac.benchmark");
+		model.setArtifactId(name);
+		model.setName(name);
+		model.setVersion("1.0");
+		model.setDescription("A generated project, for benchmarking the publisher");
+
+		Model.Licenses licenses = new Model.Licenses();
+		License license = new License();
+		license.setName("The Apache Software License, Version 2.0");
+		license.setUrl("http://www.apache.org/licenses/LICENSE-2.0.txt");
+		license.setComments("Copyright ${project.organization.name} - ${artifactId} version ${project.version}");
+		licenses.getLicense().add(license);
+		model.setLicenses(licenses);
+
+		if (dependencies > 0)
+		{
+			Model.Dependencies deps = new Model.Dependencies();
+			for (int i = 0; i < dependencies; i++)
+			{
+				Dependency d = new Dependency();
+				d.setGroupId("gov.va.isaac.benchmark.dependency" + (i % 10));
+				d.setArtifactId("dependency-" + i);
+				d.setVersion("1." + i);
+				d.setClassifier("data");
+				d.setType("zip");
+				deps.getDependency().add(d);
+			}
+			model.setDependencies(deps);
+		}
+
+		if (developers > 0)
+		{
+			Model.Developers devs = new Model.Developers();
+			for (int i = 0; i < developers; i++)
+			{
+				Developer d = new Developer();
+				d.setId("developer" + i);
+				d.setName("Developer " + i);
+				d.setEmail("developer" + i + "@example.com");
+				devs.getDeveloper().add(d);
+			}
+			model.setDevelopers(devs);
+		}
+		return model;
+	}
+
+	/**
+	 * Write the pom, assembly, license and manifest files of a project that publishes the data files
+	 * @return the assembly, as written
+	 */
+	public static Assembly writeProject(File projectFolder, Model model, String dataType, List<File> dataFiles) throws Exception
+	{
+		Files.createDirectories(projectFolder.toPath());
+		Assembly assembly = new Assembly();
+		ProjectHandler.update(model, assembly, "", dataType, ArchiveFormat.ZIP, dataFiles);
+		ProjectHandler.writeFiles(model, assembly, projectFolder);
+		return assembly;
+	}
+
+	/**
+	 * Write count data files of the given size into the folder
+	 * @return the files
+	 */
+	public static List<File> writeDataFiles(File folder, int count, long size, Content content, long seed) throws IOException
+	{
+		Files.createDirectories(folder.toPath());
+		Random random = new Random(seed);
+		List<File> result = new ArrayList<>();
+		//spread large counts over sub folders, as real releases are
+		int perFolder = 500;
+		for (int i = 0; i < count; i++)
+		{
+			File parent = count > perFolder ? new File(folder, "part" + (i / perFolder)) : folder;
+			Files.createDirectories(parent.toPath());
+			File f = new File(parent, "data" + i + (content == Content.TEXT ? ".txt" : ".bin"));
+			writeDataFile(f, size, content, random);
+			result.add(f);
+		}
+		return result;
+	}
+
+	/**
+	 * Write an RF2 release - files spread over the Full, Snapshot and Delta folders, each with the Terminology and Refset sub folders.
+	 * The file sizes vary (evenly) between a quarter and 1.75 times the average size.
+	 * @return the top folder of the release
+	 */
+	public static File writeRf2Release(File folder, int files, long averageSize, long seed) throws IOException
+	{
+		Random random = new Random(seed);
+		File release = new File(folder, "SnomedCT_RF2Release_INT_" + RELEASE_DATE);
+		String[] releaseTypes = new String[] {"Full", "Snapshot", "Delta"};
+		for (int i = 0; i < files; i++)
+		{
+			String releaseType = releaseTypes[i % releaseTypes.length];
+			File parent = new File(new File(release, releaseType), RF2_FOLDERS[(i / releaseTypes.length) % RF2_FOLDERS.length]);
+			Files.createDirectories(parent.toPath());
+			String name = RF2_FILES[i % RF2_FILES.length] + releaseType + "_INT_" + RELEASE_DATE + "_" + i + ".txt";
+			long size = (long)(averageSize * (0.25 + 1.5 * random.nextDouble()));
+			writeDataFile(new File(parent, name), size, Content.TEXT, random);
+		}
+		return release;
+	}
+
+	/**
+	 * Write an IBDB database - a few large database files, which make up most of the size, a lucene index and a little metadata.
+	 * @return the top folder of the database
+	 */
+	public static File writeIbdb(File folder, long size, long seed) throws IOException
+	{
+		Random random = new Random(seed);
+		File database = new File(folder, "isaac-db");
+		File chronicles = new File(database, "object-chronicles");
+		File lucene = new File(database, "lucene");
+		File metadata = new File(database, "metadata");
+		for (File f : new File[] {chronicles, lucene, metadata})
+		{
+			Files.createDirectories(f.toPath());
+		}
+		writeDataFile(new File(chronicles, "concepts.db"), size * 45 / 100, Content.DATABASE, random);
+		writeDataFile(new File(chronicles, "sememes.db"), size * 35 / 100, Content.DATABASE, random);
+		writeDataFile(new File(lucene, "_0.cfs"), size * 15 / 100, Content.RANDOM, random);
+		writeDataFile(new File(lucene, "_0.si"), 512, Content.RANDOM, random);
+		writeDataFile(new File(lucene, "segments_1"), 256, Content.RANDOM, random);
+		writeDataFile(new File(metadata, "uuid-nid-map.db"), size - (size * 95 / 100), Content.DATABASE, random);
+		Files.write(new File(metadata, "database.properties").toPath(), 
+			("release=" + RELEASE_DATE + "\r\nformat=ibdb\r\n").getBytes(StandardCharsets.UTF_8));
+		return database;
+	}
+
+	/**
+	 * Write a single data file of the given size
+	 */
+	public static void writeDataFile(File file, long size, Content content, Random random) throws IOException
+	{
+		byte[] buf = new byte[64 * 1024];
+		try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(file.toPath()), buf.length))
+		{
+			long remaining = size;
+			StringBuilder row = new StringBuilder();
+			while (remaining > 0)
+			{
+				byte[] bytes;
+				if (content == Content.RANDOM || content == Content.DATABASE)
+				{
+					random.nextBytes(buf);
+					if (content == Content.DATABASE)
+					{
+						//Fill a random part of each 8K page, and leave the rest empty
+						for (int page = 0; page < buf.length; page += 8192)
+						{
+							Arrays.fill(buf, page + 1024 + random.nextInt(6144), page + 8192, (byte)0);
+						}
+					}
+					bytes = buf;
+				}
+				else
+				{
+					row.setLength(0);
+					row.append(Math.abs(random.nextLong() % 1000000000000l)).append('\t').append(20150131 + random.nextInt(5) * 10000)
+						.append('\t').append(random.nextInt(10) == 0 ? 0 : 1).append("\t900000000000207008\t")
+						.append(Math.abs(random.nextLong() % 1000000000000l)).append("\ten\t900000000000013009\t");
+					int words = 2 + random.nextInt(6);
+					for (int w = 0; w < words; w++)
+					{
+						row.append(w > 0 ? " " : "").append(WORDS[random.nextInt(WORDS.length)]);
+					}
+					row.append("\t900000000000448009\r\n");
+					bytes = row.toString().getBytes(StandardCharsets.UTF_8);
+				}
+				int length = (int)Math.min(remaining, content == Content.TEXT ? bytes.length : buf.length);
+				os.write(bytes, 0, length);
+				remaining -= length;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of bytes in a size such as "512", "64K", "16M" or "1G"
+	 */
+	public static long parseSize(String size)
+	{
+		String s = size.trim().toUpperCase();
+		long multiplier = 1;
+		if (s.endsWith("K"))
+		{
+			multiplier = 1024l;
+		}
+		else if (s.endsWith("M"))
+		{
+			multiplier = 1024l * 1024l;
+		}
+		else if (s.endsWith("G"))
+		{
+			multiplier = 1024l * 1024l * 1024l;
+		}
+		return Long.parseLong(multiplier == 1 ? s : s.substring(0, s.length() - 1)) * multiplier;
+	}
+
+	/**
+	 * Delete the file, or folder and everything in it, if it exists
+	 */
+	public static void delete(File file) throws IOException
+	{
+		if (file == null || !file.exists())
+		{
+			return;
+		}
+		Files.walkFileTree(file.toPath(), new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException
+			{
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException
+			{
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
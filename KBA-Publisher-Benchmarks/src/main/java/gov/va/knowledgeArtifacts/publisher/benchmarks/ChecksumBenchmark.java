@@ -0,0 +1,117 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.benchmarks;
+
+import gov.va.knowledgeArtifacts.publisher.publish.Checksums;
+import gov.va.knowledgeArtifacts.publisher.publish.FileChannelIO;
+import gov.va.knowledgeArtifacts.publisher.types.ChecksumType;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link ChecksumBenchmark}
+ *
+ * Measures the checksum sidecar step of a publish - {@link Checksums#calculate(File, java.util.Collection, FileChannelIO, java.util.function.LongConsumer)}
+ * reading the file once for all of the checksum types, then {@link Checksums#writeSidecars(File, Map, File, String)} - for small files 
+ * (the pom and metadata) and large ones (the archive, when it isn't hashed as it is written) - with large files either memory mapped,
+ * or read through the buffer.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Dlogback.configurationFile=benchmark-logback.xml"})
+public class ChecksumBenchmark
+{
+	@Param({"1K", "64K", "64M"})
+	public String fileSize;
+
+	/**
+	 * A comma separated list of {@link ChecksumType}s
+	 */
+	@Param({"MD5,SHA1", "SHA256", "MD5,SHA1,SHA256,SHA512"})
+	public String checksums;
+
+	/**
+	 * The {@link FileChannelIO} window that large files are mapped in - 0 to read them through the buffer instead
+	 */
+	@Param({"67108864", "0"})
+	public int ioMapSize;
+
+	/**
+	 * The {@link FileChannelIO} buffer size
+	 */
+	@Param({"1048576"})
+	public int ioBufferSize;
+
+	private File folder_;
+	private File file_;
+	private File sidecarFolder_;
+	private List<ChecksumType> types_ = new ArrayList<>();
+	private FileChannelIO io_;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		folder_ = Files.createTempDirectory("KBABenchmark-").toFile();
+		file_ = new File(folder_, "data.zip");
+		BenchmarkProjects.writeDataFile(file_, BenchmarkProjects.parseSize(fileSize), BenchmarkProjects.Content.RANDOM, new Random(42));
+		sidecarFolder_ = new File(folder_, "sidecars");
+		Files.createDirectories(sidecarFolder_.toPath());
+		for (String s : checksums.split(","))
+		{
+			types_.add(ChecksumType.parse(s));
+		}
+		io_ = new FileChannelIO(ioBufferSize, ioMapSize);
+	}
+
+	@Benchmark
+	public List<File> calculateAndWriteSidecars() throws Exception
+	{
+		Map<ChecksumType, String> result = Checksums.calculate(file_, types_, io_, null);
+		return Checksums.writeSidecars(file_, result, sidecarFolder_, null);
+	}
+
+	@TearDown(Level.Trial)
+	public void cleanup() throws Exception
+	{
+		BenchmarkProjects.delete(folder_);
+	}
+}
@@ -0,0 +1,611 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link LocalRepository}
+ *
+ * A stand-in for a maven repository (such as Archiva or Nexus), served on the loopback interface - so the whole publish,
+ * including the uploads, can be measured without a network.  It accepts PUT, GET and HEAD requests for any path in the
+ * maven layout (or any other), and supports partial PUT requests with a Content-Range header, for resumed uploads - along with
+ * GET requests for a single Range, which the publisher uses to check what a resumed upload would build on.  A discarded file has
+ * no content to check, so an upload to it is never resumed.
+ *
+ * To make it behave more like a remote repository, it can add a fixed latency to every request, cap the bandwidth shared by all
+ * requests, and fail a fraction of the uploads - either with a server error once the body has been received, or by dropping the
+ * connection part way through the body.
+ *
+ * Uploaded files are either written below a folder, or (by default) discarded - in which case only their size is kept, along
+ * with the content of small files (poms, checksums and metadata) so that the publisher can still check what the repository has.
+ *
+ * It may also be run on its own, as a target for the GUI or command line publisher:
+ *
+ * java -cp benchmarks.jar gov.va.knowledgeArtifacts.publisher.benchmarks.LocalRepository --port 8081 --latency 50
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class LocalRepository implements Closeable
+{
+	private static Logger log = LoggerFactory.getLogger(LocalRepository.class);
+	private static final String CONTEXT = "/repository/";
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+	private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+	/**
+	 * How an injected failure looks to the client
+	 */
+	public enum Failure
+	{
+		/** The whole body is read, and then a 503 is returned */
+		ERROR,
+		/** The connection is closed, without a response, after part of the body has been read */
+		RESET
+	}
+
+	private final HttpServer server_;
+	private final ExecutorService executor_;
+	private final File root_;
+	private final Map<String, Long> sizes_ = new ConcurrentHashMap<>();
+	private final Map<String, byte[]> contents_ = new ConcurrentHashMap<>();
+	private int keepContentSize_ = 64 * 1024;
+
+	private volatile int latency_ = 0;
+	private volatile double failureRate_ = 0;
+	private volatile Failure failure_ = Failure.ERROR;
+	private final Random random_ = new Random(42);
+	private final Throttle throttle_ = new Throttle();
+
+	private final Map<String, List<Long>> latencies_ = new HashMap<>();
+	private final AtomicLong bytesReceived_ = new AtomicLong();
+	private final AtomicLong bytesSent_ = new AtomicLong();
+	private final AtomicInteger injectedFailures_ = new AtomicInteger();
+
+	/**
+	 * @param port - the port to listen on - 0 for any free port
+	 * @param root - the folder to store uploaded files in - null to discard them
+	 */
+	public LocalRepository(int port, File root) throws IOException
+	{
+		root_ = root;
+		if (root_ != null)
+		{
+			Files.createDirectories(root_.toPath());
+		}
+		AtomicInteger threadCount = new AtomicInteger();
+		executor_ = Executors.newCachedThreadPool(r ->
+		{
+			Thread t = new Thread(r, "KBA-Repository-" + threadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		server_ = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 64);
+		server_.createContext(CONTEXT, exchange -> handle(exchange));
+		server_.setExecutor(executor_);
+		server_.start();
+		log.info("Local repository listening at {}, {}", getUrl(), root_ == null ? "discarding uploads" : "storing uploads in " + root_);
+	}
+
+	/**
+	 * @return the URL to publish to
+	 */
+	public String getUrl()
+	{
+		return "http://127.0.0.1:" + server_.getAddress().getPort() + CONTEXT;
+	}
+
+	/**
+	 * @param latency - the time (in millis) added to every request, before it is handled
+	 */
+	public void setLatency(int latency)
+	{
+		latency_ = latency;
+	}
+
+	/**
+	 * @param bytesPerSecond - the bandwidth shared by all requests, in each direction - 0 for no limit
+	 */
+	public void setBandwidth(long bytesPerSecond)
+	{
+		throttle_.setRate(bytesPerSecond);
+	}
+
+	/**
+	 * @param failureRate - the fraction (0 - 1) of PUT requests that fail
+	 * @param failure - how they fail
+	 */
+	public void setFailures(double failureRate, Failure failure)
+	{
+		failureRate_ = failureRate;
+		failure_ = failure;
+	}
+
+	/**
+	 * @param keepContentSize - when uploads are discarded, the largest file (in bytes) that is still kept in memory, so it can be read back
+	 */
+	public void setKeepContentSize(int keepContentSize)
+	{
+		keepContentSize_ = keepContentSize;
+	}
+
+	/**
+	 * @return the time (in nanos) taken to handle each request with the method (PUT, GET or HEAD) since the last reset, in order
+	 */
+	public long[] getLatencies(String method)
+	{
+		synchronized (latencies_)
+		{
+			List<Long> list = latencies_.get(method);
+			long[] result = new long[list == null ? 0 : list.size()];
+			for (int i = 0; i < result.length; i++)
+			{
+				result[i] = list.get(i);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * @return the number of bytes received in request bodies since the last reset
+	 */
+	public long getBytesReceived()
+	{
+		return bytesReceived_.get();
+	}
+
+	/**
+	 * @return the number of bytes sent in response bodies since the last reset
+	 */
+	public long getBytesSent()
+	{
+		return bytesSent_.get();
+	}
+
+	/**
+	 * @return the number of requests that were failed on purpose since the last reset
+	 */
+	public int getInjectedFailures()
+	{
+		return injectedFailures_.get();
+	}
+
+	/**
+	 * Clear the request statistics - the stored files are kept
+	 */
+	public void resetStatistics()
+	{
+		synchronized (latencies_)
+		{
+			latencies_.clear();
+		}
+		bytesReceived_.set(0);
+		bytesSent_.set(0);
+		injectedFailures_.set(0);
+	}
+
+	/**
+	 * Remove all of the stored files
+	 */
+	public void clear() throws IOException
+	{
+		sizes_.clear();
+		contents_.clear();
+		if (root_ != null)
+		{
+			BenchmarkProjects.delete(root_);
+			Files.createDirectories(root_.toPath());
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		server_.stop(0);
+		executor_.shutdownNow();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException
+	{
+		long start = System.nanoTime();
+		String method = exchange.getRequestMethod().toUpperCase();
+		try
+		{
+			if (latency_ > 0)
+			{
+				Thread.sleep(latency_);
+			}
+			String path = exchange.getRequestURI().getPath().substring(CONTEXT.length());
+			if (path.length() == 0 || path.endsWith("/") || Arrays.asList(path.split("/")).contains(".."))
+			{
+				respond(exchange, 400);
+				return;
+			}
+			switch (method)
+			{
+				case "PUT":
+					put(exchange, path);
+					break;
+				case "GET":
+				case "HEAD":
+					//The HttpServer drops a kept-alive connection after the response, unless the (empty) request body has been read
+					exchange.getRequestBody().close();
+					get(exchange, path, method.equals("HEAD"));
+					break;
+				default:
+					respond(exchange, 405);
+			}
+		}
+		catch (InterruptedException e)
+		{
+			exchange.close();
+		}
+		catch (IOException | RuntimeException e)
+		{
+			log.debug("{} {} failed", method, exchange.getRequestURI(), e);
+			exchange.close();
+		}
+		finally
+		{
+			long elapsed = System.nanoTime() - start;
+			synchronized (latencies_)
+			{
+				latencies_.computeIfAbsent(method, m -> new ArrayList<>()).add(elapsed);
+			}
+		}
+	}
+
+	private void put(HttpExchange exchange, String path) throws IOException, InterruptedException
+	{
+		long offset = 0;
+		String range = exchange.getRequestHeaders().getFirst("Content-Range");
+		if (range != null)
+		{
+			Matcher m = CONTENT_RANGE.matcher(range.trim());
+			if (!m.matches())
+			{
+				respond(exchange, 400);
+				return;
+			}
+			offset = Long.parseLong(m.group(1));
+			if (offset > size(path))
+			{
+				respond(exchange, 416);
+				return;
+			}
+		}
+
+		Failure failure = null;
+		synchronized (random_)
+		{
+			if (failureRate_ > 0 && random_.nextDouble() < failureRate_)
+			{
+				failure = failure_;
+			}
+		}
+		//When resetting, stop part way through the body - or after the first block, when the length isn't known
+		String lengthHeader = exchange.getRequestHeaders().getFirst("Content-Length");
+		long stopAfter = -1;
+		if (failure == Failure.RESET)
+		{
+			stopAfter = lengthHeader == null ? BUFFER_SIZE : Long.parseLong(lengthHeader) / 2;
+		}
+
+		long received = 0;
+		ByteArrayOutputStream memory = root_ == null ? new ByteArrayOutputStream() : null;
+		File file = root_ == null ? null : new File(root_, path);
+		if (file != null)
+		{
+			Files.createDirectories(file.getParentFile().toPath());
+		}
+		try (InputStream is = exchange.getRequestBody();
+			FileChannel channel = file == null ? null : (range == null
+				? FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+				: FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)))
+		{
+			if (channel != null)
+			{
+				channel.truncate(offset);
+				channel.position(offset);
+			}
+			else if (offset > 0)
+			{
+				byte[] existing = contents_.get(path);
+				if (existing != null)
+				{
+					memory.write(existing, 0, (int)Math.min(offset, existing.length));
+				}
+			}
+			byte[] buf = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = is.read(buf, 0, stopAfter < 0 ? buf.length : (int)Math.min(buf.length, Math.max(1, stopAfter - received)))) > 0)
+			{
+				throttle_.acquire(read);
+				if (channel != null)
+				{
+					ByteBuffer bb = ByteBuffer.wrap(buf, 0, read);
+					while (bb.hasRemaining())
+					{
+						channel.write(bb);
+					}
+				}
+				else if (memory.size() <= keepContentSize_)
+				{
+					memory.write(buf, 0, read);
+				}
+				received += read;
+				bytesReceived_.addAndGet(read);
+				if (stopAfter >= 0 && received >= stopAfter)
+				{
+					break;
+				}
+			}
+		}
+		finally
+		{
+			//Keep whatever arrived, as a real server would for a resumable upload
+			sizes_.put(path, offset + received);
+			if (memory != null)
+			{
+				if (memory.size() <= keepContentSize_ && memory.size() == offset + received)
+				{
+					contents_.put(path, memory.toByteArray());
+				}
+				else
+				{
+					contents_.remove(path);
+				}
+			}
+		}
+
+		if (failure != null)
+		{
+			injectedFailures_.incrementAndGet();
+			log.debug("Injecting a {} failure into the upload of {}", failure, path);
+			if (failure == Failure.RESET)
+			{
+				//Closing the exchange before the response headers are sent drops the connection
+				exchange.close();
+				return;
+			}
+			respond(exchange, 503);
+			return;
+		}
+		respond(exchange, 201);
+	}
+
+	private void get(HttpExchange exchange, String path, boolean head) throws IOException, InterruptedException
+	{
+		long size = size(path);
+		if (size < 0)
+		{
+			respond(exchange, 404);
+			return;
+		}
+		if (head)
+		{
+			//The HttpServer only sends a Content-Length for a HEAD request when it is set by hand
+			exchange.getResponseHeaders().set("Content-Length", Long.toString(size));
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+			return;
+		}
+
+		InputStream content;
+		if (root_ != null)
+		{
+			content = Files.newInputStream(new File(root_, path).toPath());
+		}
+		else
+		{
+			byte[] bytes = contents_.get(path);
+			if (bytes == null)
+			{
+				//Only the size of a large discarded file is known
+				respond(exchange, 404);
+				return;
+			}
+			content = new ByteArrayInputStream(bytes);
+		}
+		long start = 0;
+		long length = size;
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		Matcher m = range == null ? null : RANGE.matcher(range.trim());
+		if (m != null && m.matches() && Long.parseLong(m.group(1)) < size)
+		{
+			start = Long.parseLong(m.group(1));
+			long end = m.group(2).isEmpty() ? size - 1 : Math.min(size - 1, Long.parseLong(m.group(2)));
+			length = end - start + 1;
+			exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + size);
+			exchange.sendResponseHeaders(206, length);
+		}
+		else
+		{
+			exchange.sendResponseHeaders(200, size == 0 ? -1 : size);
+		}
+		try (InputStream is = content; OutputStream os = exchange.getResponseBody())
+		{
+			long skipped = 0;
+			while (skipped < start)
+			{
+				skipped += is.skip(start - skipped);
+			}
+			byte[] buf = new byte[BUFFER_SIZE];
+			int read;
+			long remaining = length;
+			while (remaining > 0 && (read = is.read(buf, 0, (int)Math.min(buf.length, remaining))) > 0)
+			{
+				throttle_.acquire(read);
+				os.write(buf, 0, read);
+				bytesSent_.addAndGet(read);
+				remaining -= read;
+			}
+		}
+	}
+
+	/**
+	 * @return the size of the stored file, or -1 if there isn't one
+	 */
+	private long size(String path)
+	{
+		if (root_ != null)
+		{
+			File f = new File(root_, path);
+			return f.isFile() ? f.length() : -1;
+		}
+		Long size = sizes_.get(path);
+		return size == null ? -1 : size;
+	}
+
+	private static void respond(HttpExchange exchange, int code) throws IOException
+	{
+		exchange.sendResponseHeaders(code, -1);
+		exchange.close();
+	}
+
+	/**
+	 * Paces the bytes passed through it to a rate shared by all threads, by reserving a time slot for each block.  Sleeps overrun
+	 * by a millisecond or so, which is made up by letting the following blocks through early - up to a short burst.
+	 */
+	private static class Throttle
+	{
+		private static final long BURST = TimeUnit.MILLISECONDS.toNanos(20);
+		private long bytesPerSecond;
+		private long nextFree;
+
+		synchronized void setRate(long bytesPerSecond)
+		{
+			this.bytesPerSecond = bytesPerSecond;
+			nextFree = System.nanoTime();
+		}
+
+		void acquire(int bytes) throws InterruptedException
+		{
+			long wait;
+			synchronized (this)
+			{
+				if (bytesPerSecond <= 0)
+				{
+					return;
+				}
+				long now = System.nanoTime();
+				if (nextFree < now - BURST)
+				{
+					nextFree = now - BURST;
+				}
+				wait = nextFree - now;
+				nextFree += TimeUnit.SECONDS.toNanos(bytes) / bytesPerSecond;
+			}
+			if (wait > 0)
+			{
+				TimeUnit.NANOSECONDS.sleep(wait);
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		int port = 8081;
+		File root = null;
+		LocalRepository repository;
+		int latency = 0;
+		long bandwidth = 0;
+		double failureRate = 0;
+		Failure failure = Failure.ERROR;
+		try
+		{
+			for (int i = 0; i < args.length; i++)
+			{
+				String arg = args[i];
+				switch (arg)
+				{
+					case "--port":
+						port = Integer.parseInt(PublishBenchmark.requireValue(args, ++i, arg));
+						break;
+					case "--folder":
+						root = new File(PublishBenchmark.requireValue(args, ++i, arg)).getAbsoluteFile();
+						break;
+					case "--latency":
+						latency = Integer.parseInt(PublishBenchmark.requireValue(args, ++i, arg));
+						break;
+					case "--bandwidth":
+						bandwidth = BenchmarkProjects.parseSize(PublishBenchmark.requireValue(args, ++i, arg));
+						break;
+					case "--failureRate":
+						failureRate = Double.parseDouble(PublishBenchmark.requireValue(args, ++i, arg));
+						break;
+					case "--failure":
+						failure = Failure.valueOf(PublishBenchmark.requireValue(args, ++i, arg).toUpperCase());
+						break;
+					case "--help":
+					case "-h":
+					case "-?":
+						throw new IllegalArgumentException("Runs a local maven repository, until stopped");
+					default:
+						throw new IllegalArgumentException("Unknown option " + arg);
+				}
+			}
+		}
+		catch (IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+			System.err.println("Usage: java -cp benchmarks.jar " + LocalRepository.class.getName()
+				+ " [--port <port>] [--folder <folder>] [--latency <millis>] [--bandwidth <bytes per second, such as 10M>]"
+				+ " [--failureRate <0 - 1>] [--failure error|reset]");
+			System.exit(2);
+			return;
+		}
+		repository = new LocalRepository(port, root);
+		repository.setLatency(latency);
+		repository.setBandwidth(bandwidth);
+		repository.setFailures(failureRate, failure);
+		System.out.println("Publish to " + repository.getUrl() + " - press Ctrl-C to stop");
+		Thread.sleep(Long.MAX_VALUE);
+	}
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.benchmarks;
+
+import gov.va.knowledgeArtifacts.publisher.AssemblyHandler;
+import gov.va.knowledgeArtifacts.publisher.PomHandler;
+import gov.va.knowledgeArtifacts.publisher.PomSummary;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugins.maven_assembly_plugin.assembly._1_1.Assembly;
+import org.apache.maven.pom._4_0.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link PomBenchmark}
+ *
+ * Measures reading and writing the project files with {@link PomHandler} and {@link AssemblyHandler}, and reading the 
+ * {@link PomSummary} - for poms from the size the GUI usually creates, up to thousands of dependencies, with an assembly listing as 
+ * many data folders.  The JAXB contexts are created in the warmup, so this measures the steady state of (un)marshalling.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Dlogback.configurationFile=benchmark-logback.xml"})
+public class PomBenchmark
+{
+	/**
+	 * The number of dependencies in the pom, and of data folders in the assembly - with a tenth as many developers
+	 */
+	@Param({"10", "1000", "10000"})
+	public int size;
+
+	private File folder_;
+	private File projectFolder_;
+	private File writeFolder_;
+	private Model model_;
+	private Assembly assembly_;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		folder_ = Files.createTempDirectory("KBABenchmark-").toFile();
+		projectFolder_ = new File(folder_, "project");
+		writeFolder_ = new File(folder_, "write");
+		List<File> dataFiles = new ArrayList<>();
+		for (int i = 0; i < size; i++)
+		{
+			//folders that don't exist are listed as file sets, without needing to create anything
+			dataFiles.add(new File(projectFolder_, "data" + i));
+		}
+		model_ = BenchmarkProjects.createModel("pom-benchmark", size, size / 10);
+		assembly_ = BenchmarkProjects.writeProject(projectFolder_, model_, "bdb", dataFiles);
+		Files.createDirectories(writeFolder_.toPath());
+	}
+
+	@Benchmark
+	public Model readPom() throws Exception
+	{
+		return PomHandler.read(projectFolder_);
+	}
+
+	@Benchmark
+	public PomSummary readPomSummary() throws Exception
+	{
+		return PomHandler.readSummary(projectFolder_);
+	}
+
+	@Benchmark
+	public File writePom() throws Exception
+	{
+		PomHandler.writeFile(model_, writeFolder_);
+		return writeFolder_;
+	}
+
+	@Benchmark
+	public Assembly readAssembly() throws Exception
+	{
+		return AssemblyHandler.readOrCreateBlank(projectFolder_);
+	}
+
+	@Benchmark
+	public File writeAssembly() throws Exception
+	{
+		AssemblyHandler.writeFile(assembly_, writeFolder_);
+		return writeFolder_;
+	}
+
+	@TearDown(Level.Trial)
+	public void cleanup() throws Exception
+	{
+		BenchmarkProjects.delete(folder_);
+	}
+}
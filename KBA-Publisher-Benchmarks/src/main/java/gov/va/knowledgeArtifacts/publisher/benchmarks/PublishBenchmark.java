@@ -0,0 +1,591 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.benchmarks;
+
+import gov.va.knowledgeArtifacts.publisher.AssemblyHandler;
+import gov.va.knowledgeArtifacts.publisher.PomHandler;
+import gov.va.knowledgeArtifacts.publisher.ProjectHandler;
+import gov.va.knowledgeArtifacts.publisher.publish.ArchiveExtractor;
+import gov.va.knowledgeArtifacts.publisher.publish.HttpTransport;
+import gov.va.knowledgeArtifacts.publisher.publish.PublishJob;
+import gov.va.knowledgeArtifacts.publisher.publish.PublishListener;
+import gov.va.knowledgeArtifacts.publisher.publish.PublishOptions;
+import gov.va.knowledgeArtifacts.publisher.publish.Zip;
+import gov.va.knowledgeArtifacts.publisher.types.ArchiveFormat;
+import gov.va.knowledgeArtifacts.publisher.types.KnowledgeArtifactType;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.maven.plugins.maven_assembly_plugin.assembly._1_1.Assembly;
+import org.apache.maven.pom._4_0.Model;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link PublishBenchmark}
+ *
+ * Measures the whole publish of a project - archiving, checksums, checking what the repository has, and the uploads - against a
+ * {@link LocalRepository}, which can be given the latency, bandwidth and failures of a real one.  So changes to the upload, retry
+ * and concurrency code can be compared offline, and repeatably.
+ *
+ * The project is either an existing one, or a generated RF2 release and / or IBDB database, from {@link BenchmarkProjects}.  Each run
+ * publishes a new version, so nothing is skipped as already published.  The end to end time and throughput of each run are reported,
+ * and then the spread (including the tail) of the run times and of the time taken by each request to the repository.  The publisher
+ * itself is tuned as usual, with system properties - for example:
+ *
+ * java -Dkba.publisher.uploadThreads=8 -cp benchmarks.jar gov.va.knowledgeArtifacts.publisher.benchmarks.PublishBenchmark --generate rf2
+ *   --latency 40 --bandwidth 50M --failureRate 0.02
+ *
+ * With --verify, what each run published is extracted again (with {@link ArchiveExtractor} - through the index of the parts, for a 
+ * split archive) and compared with the data files, so the round trip of the archive formats and of split archives is checked too.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class PublishBenchmark
+{
+	private static Logger log = LoggerFactory.getLogger(PublishBenchmark.class);
+	private static final double MB = 1024 * 1024;
+	private static final PublishListener QUIET = new PublishListener()
+	{
+		@Override
+		public void updateTitle(String title)
+		{
+		}
+
+		@Override
+		public void addStatus(String message)
+		{
+		}
+
+		@Override
+		public void updateProgress(long workDone, long max)
+		{
+		}
+	};
+
+	private File project_;
+	private String generate_;
+	private int files_ = 2000;
+	private long fileSize_ = 16 * 1024;
+	private long databaseSize_ = 2l * 1024 * 1024 * 1024;
+	private int runs_ = 5;
+	private int warmup_ = 1;
+	private int port_ = 0;
+	private int latency_ = 0;
+	private long bandwidth_ = 0;
+	private double failureRate_ = 0;
+	private LocalRepository.Failure failure_ = LocalRepository.Failure.ERROR;
+	private File repositoryFolder_;
+	private File reportFolder_;
+	private boolean verify_;
+
+	public static void main(String[] args)
+	{
+		PublishBenchmark benchmark = new PublishBenchmark();
+		try
+		{
+			benchmark.parseArgs(args);
+		}
+		catch (IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+			System.err.println();
+			printUsage();
+			System.exit(2);
+			return;
+		}
+		HttpTransport.configureKeepAlive(new PublishOptions().getUploadThreads());
+		try
+		{
+			benchmark.run();
+			System.exit(0);
+		}
+		catch (Exception e)
+		{
+			log.error("Publish benchmark failed", e);
+			System.err.println("Publish benchmark failed: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	private static void printUsage()
+	{
+		System.err.println("Usage: java -cp benchmarks.jar " + PublishBenchmark.class.getName() + " [options]");
+		System.err.println("  --project <folder>         the project to publish - or, with --generate, the folder to generate it in (which must be empty)");
+		System.err.println("  --generate rf2|ibdb|both   publish a generated project - kept if --project is given, otherwise deleted at the end");
+		System.err.println("  --files <count>            the number of files in a generated RF2 release - default 2000");
+		System.err.println("  --fileSize <size>          the average size of the files in a generated RF2 release - default 16K");
+		System.err.println("  --databaseSize <size>      the size of a generated IBDB database - default 2G");
+		System.err.println("  --runs <count>             the number of measured publishes - default 5");
+		System.err.println("  --warmup <count>           the number of publishes before those, which are not measured - default 1");
+		System.err.println("  --port <port>              the port of the local repository - default any free port");
+		System.err.println("  --latency <millis>         the time added to each request to the repository - default 0");
+		System.err.println("  --bandwidth <size>         the bytes per second shared by all transfers to and from the repository - default no limit");
+		System.err.println("  --failureRate <fraction>   the fraction (0 - 1) of uploads that the repository fails - default 0");
+		System.err.println("  --failure error|reset      fail uploads with a 503 after the body, or by dropping the connection part way - default error");
+		System.err.println("  --repositoryFolder <folder> store the uploads in this folder - by default only their sizes are kept");
+		System.err.println("  --reportFolder <folder>    write the publish report of each run to this folder");
+		System.err.println("  --verify                   extract what each run published, and check it against the data files - the uploads are");
+		System.err.println("                             stored in a temporary folder for this, unless --repositoryFolder is given");
+		System.err.println("  --help                     print this message");
+		System.err.println("Sizes may be given as 512, 64K, 16M or 1G.  The publisher options are read from the usual kba.publisher.* system properties.");
+	}
+
+	private void parseArgs(String[] args)
+	{
+		for (int i = 0; i < args.length; i++)
+		{
+			String arg = args[i];
+			try
+			{
+				switch (arg)
+				{
+					case "--project":
+						project_ = new File(requireValue(args, ++i, arg)).getAbsoluteFile();
+						break;
+					case "--generate":
+						generate_ = requireValue(args, ++i, arg).toLowerCase();
+						if (!Arrays.asList("rf2", "ibdb", "both").contains(generate_))
+						{
+							throw new IllegalArgumentException("The value of " + arg + " must be rf2, ibdb or both");
+						}
+						break;
+					case "--files":
+						files_ = Integer.parseInt(requireValue(args, ++i, arg));
+						break;
+					case "--fileSize":
+						fileSize_ = BenchmarkProjects.parseSize(requireValue(args, ++i, arg));
+						break;
+					case "--databaseSize":
+						databaseSize_ = BenchmarkProjects.parseSize(requireValue(args, ++i, arg));
+						break;
+					case "--runs":
+						runs_ = Integer.parseInt(requireValue(args, ++i, arg));
+						if (runs_ < 1)
+						{
+							throw new IllegalArgumentException("The value of " + arg + " must be at least 1");
+						}
+						break;
+					case "--warmup":
+						warmup_ = Integer.parseInt(requireValue(args, ++i, arg));
+						break;
+					case "--port":
+						port_ = Integer.parseInt(requireValue(args, ++i, arg));
+						break;
+					case "--latency":
+						latency_ = Integer.parseInt(requireValue(args, ++i, arg));
+						break;
+					case "--bandwidth":
+						bandwidth_ = BenchmarkProjects.parseSize(requireValue(args, ++i, arg));
+						break;
+					case "--failureRate":
+						failureRate_ = Double.parseDouble(requireValue(args, ++i, arg));
+						if (failureRate_ < 0 || failureRate_ >= 1)
+						{
+							throw new IllegalArgumentException("The value of " + arg + " must be at least 0, and less than 1");
+						}
+						break;
+					case "--failure":
+						failure_ = LocalRepository.Failure.valueOf(requireValue(args, ++i, arg).toUpperCase());
+						break;
+					case "--repositoryFolder":
+						repositoryFolder_ = new File(requireValue(args, ++i, arg)).getAbsoluteFile();
+						break;
+					case "--reportFolder":
+						reportFolder_ = new File(requireValue(args, ++i, arg)).getAbsoluteFile();
+						break;
+					case "--verify":
+						verify_ = true;
+						break;
+					case "--help":
+					case "-h":
+					case "-?":
+						printUsage();
+						System.exit(0);
+						break;
+					default:
+						throw new IllegalArgumentException("Unknown option " + arg);
+				}
+			}
+			catch (NumberFormatException e)
+			{
+				throw new IllegalArgumentException("The value of " + arg + " must be a number");
+			}
+		}
+		if (project_ == null && generate_ == null)
+		{
+			throw new IllegalArgumentException("Either --project or --generate is required");
+		}
+	}
+
+	static String requireValue(String[] args, int i, String option)
+	{
+		if (i >= args.length)
+		{
+			throw new IllegalArgumentException("The option " + option + " requires a value");
+		}
+		return args[i];
+	}
+
+	private void run() throws Exception
+	{
+		boolean temporary = false;
+		if (generate_ != null)
+		{
+			if (project_ == null)
+			{
+				project_ = Files.createTempDirectory("kba-publish-benchmark").toFile();
+				temporary = true;
+			}
+			else if (project_.exists() && project_.list().length > 0)
+			{
+				throw new Exception("The folder " + project_ + " is not empty - remove it, or leave out --generate to publish the project in it");
+			}
+			generate();
+		}
+		else if (!new File(project_, "pom.xml").isFile())
+		{
+			throw new Exception("The folder " + project_ + " does not contain a publisher project");
+		}
+
+		try
+		{
+			measure();
+		}
+		finally
+		{
+			if (temporary)
+			{
+				BenchmarkProjects.delete(project_);
+			}
+		}
+	}
+
+	private void generate() throws Exception
+	{
+		long start = System.currentTimeMillis();
+		File dataFolder = new File(project_, "data");
+		List<File> dataFiles = new ArrayList<>();
+		String dataType = KnowledgeArtifactType.IBDB.getNiceName();
+		if (generate_.equals("rf2") || generate_.equals("both"))
+		{
+			System.out.println("Generating an RF2 release of " + files_ + " files");
+			dataFiles.add(BenchmarkProjects.writeRf2Release(dataFolder, files_, fileSize_, 1));
+			dataType = KnowledgeArtifactType.RF2.getNiceName();
+		}
+		if (generate_.equals("ibdb") || generate_.equals("both"))
+		{
+			System.out.println(String.format("Generating an IBDB database of %.1f MB", databaseSize_ / MB));
+			dataFiles.add(BenchmarkProjects.writeIbdb(dataFolder, databaseSize_, 2));
+			dataType = KnowledgeArtifactType.IBDB.getNiceName();
+		}
+		Model model = BenchmarkProjects.createModel("publish-benchmark-" + generate_, 0, 1);
+		BenchmarkProjects.writeProject(project_, model, dataType, dataFiles);
+		System.out.println("Generated the project in " + project_ + " in " + (System.currentTimeMillis() - start) + " ms");
+	}
+
+	private void measure() throws Exception
+	{
+		Model model = PomHandler.read(project_);
+		Assembly assembly = AssemblyHandler.readOrCreateBlank(project_);
+		List<File> dataFiles = ProjectHandler.readDataFiles(assembly);
+		String classifier = ProjectHandler.readClassifier(model);
+		String dataType = ProjectHandler.readDataType(model);
+		ArchiveFormat format = ProjectHandler.readArchiveFormat(model);
+		String version = model.getVersion();
+		classifier = classifier == null ? "" : classifier;
+		String typeText = ProjectHandler.toTypeText(dataType);
+		long[] inventory = new long[2];
+		for (File f : dataFiles)
+		{
+			count(f, inventory);
+		}
+		System.out.println(String.format("Publishing %d data files, %.1f MB, from %s", inventory[0], inventory[1] / MB, project_));
+
+		List<Long> times = new ArrayList<>();
+		List<Double> throughput = new ArrayList<>();
+		List<Long> puts = new ArrayList<>();
+		List<Long> heads = new ArrayList<>();
+		List<Long> gets = new ArrayList<>();
+		int failedRuns = 0;
+		int injectedFailures = 0;
+		long uploadedBytes = 0;
+		//the uploads have to be kept, to check them
+		File repositoryFolder = repositoryFolder_ == null && verify_ ? Files.createTempDirectory("kba-publish-benchmark-repository").toFile() 
+			: repositoryFolder_;
+		try (LocalRepository repository = new LocalRepository(port_, repositoryFolder))
+		{
+			repository.setLatency(latency_);
+			repository.setBandwidth(bandwidth_);
+			repository.setFailures(failureRate_, failure_);
+			System.out.println(String.format("Repository %s - latency %d ms, bandwidth %s, %.1f%% of uploads fail (%s)", repository.getUrl(),
+				latency_, bandwidth_ > 0 ? String.format("%.1f MB/s", bandwidth_ / MB) : "unlimited", failureRate_ * 100,
+				failure_.name().toLowerCase()));
+
+			for (int run = 1; run <= warmup_ + runs_; run++)
+			{
+				boolean warmup = run <= warmup_;
+				repository.clear();
+				repository.resetStatistics();
+				model.setVersion(version + "-run" + run);
+
+				PublishOptions options = new PublishOptions();
+				options.setPublishReport(reportFolder_ != null);
+				options.setPublishReportFolder(reportFolder_ == null ? null : reportFolder_.getAbsolutePath());
+				PublishJob job = new PublishJob(model, classifier, typeText, format, project_, dataFiles, repository.getUrl(), "benchmark", 
+					"benchmark");
+				job.setOptions(options);
+
+				long start = System.nanoTime();
+				String error = null;
+				try
+				{
+					job.run(QUIET);
+				}
+				catch (Exception e)
+				{
+					log.debug("Publish failed", e);
+					error = e.getMessage();
+				}
+				long elapsed = System.nanoTime() - start;
+				double seconds = elapsed / 1e9;
+				if (error == null && verify_)
+				{
+					error = verify(repositoryFolder, model, classifier, typeText, format, dataFiles);
+				}
+
+				String label = warmup ? "Warmup " + run : "Run " + (run - warmup_);
+				if (error != null)
+				{
+					System.out.println(String.format("%-10s failed after %.3f s, with %d injected failures: %s", label, seconds,
+						repository.getInjectedFailures(), error));
+				}
+				else
+				{
+					System.out.println(String.format("%-10s %8.3f s %9.1f MB/s of data %9.1f MB/s uploaded  %5d files uploaded  %4d injected failures",
+						label, seconds, inventory[1] / MB / seconds, repository.getBytesReceived() / MB / seconds, job.getUploadedFiles(),
+						repository.getInjectedFailures()));
+				}
+				if (warmup)
+				{
+					continue;
+				}
+				if (error != null)
+				{
+					failedRuns++;
+				}
+				else
+				{
+					times.add(elapsed);
+					throughput.add(inventory[1] / MB / seconds);
+				}
+				injectedFailures += repository.getInjectedFailures();
+				uploadedBytes += repository.getBytesReceived();
+				add(puts, repository.getLatencies("PUT"));
+				add(heads, repository.getLatencies("HEAD"));
+				add(gets, repository.getLatencies("GET"));
+			}
+			repository.clear();
+		}
+		finally
+		{
+			if (repositoryFolder != null && repositoryFolder_ == null)
+			{
+				BenchmarkProjects.delete(repositoryFolder);
+			}
+		}
+
+		System.out.println();
+		System.out.println(String.format("%-28s %7s %9s %9s %9s %9s %9s %9s", "", "count", "min", "median", "p90", "p99", "p99.9", "max"));
+		print("Publish time (s)", times, 1e9);
+		if (!throughput.isEmpty())
+		{
+			List<Long> rates = new ArrayList<>();
+			for (double d : throughput)
+			{
+				rates.add(Math.round(d * 1000));
+			}
+			print("Data throughput (MB/s)", rates, 1000);
+		}
+		print("PUT latency (ms)", puts, 1e6);
+		print("HEAD latency (ms)", heads, 1e6);
+		print("GET latency (ms)", gets, 1e6);
+		System.out.println();
+		System.out.println(String.format("%d of %d runs failed, %d uploads failed on purpose, %.1f MB uploaded in total", failedRuns, runs_,
+			injectedFailures, uploadedBytes / MB));
+	}
+
+	/**
+	 * Add the number of files, and their total size, in the file or folder to the inventory
+	 */
+	private static void count(File file, long[] inventory) throws IOException
+	{
+		Files.walkFileTree(file.toPath(), new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException
+			{
+				inventory[0]++;
+				inventory[1] += attrs.size();
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Extract the archive (or the parts of the archive) that was just published, and compare the content with the data files
+	 * @return null, if they are the same - otherwise, the first difference
+	 */
+	private static String verify(File repositoryFolder, Model model, String classifier, String dataType, ArchiveFormat format, 
+		List<File> dataFiles) throws IOException
+	{
+		File folder = new File(repositoryFolder, model.getGroupId().replace('.', '/') + "/" + model.getArtifactId() + "/" + model.getVersion());
+		File archive = new File(folder, Zip.getPartIndexName(model, classifier, dataType));
+		if (!archive.isFile())
+		{
+			archive = new File(folder, Zip.getArchiveName(model, classifier, dataType, format));
+		}
+		if (!archive.isFile())
+		{
+			return "verification failed - the archive isn't in the repository";
+		}
+		File extracted = Files.createTempDirectory("kba-publish-benchmark-verify").toFile();
+		try
+		{
+			ArchiveExtractor.extract(archive, extracted);
+			File root = new File(extracted, Zip.getRootFolder(model, classifier, dataType));
+			for (File dataFile : dataFiles)
+			{
+				String difference = compare(dataFile.toPath(), new File(root, dataFile.getName()).toPath());
+				if (difference != null)
+				{
+					return "verification of " + archive.getName() + " failed - " + difference;
+				}
+			}
+			return null;
+		}
+		catch (IOException e)
+		{
+			return "verification of " + archive.getName() + " failed - " + e;
+		}
+		finally
+		{
+			BenchmarkProjects.delete(extracted);
+		}
+	}
+
+	/**
+	 * @return null, if the two files (or folders) hold the same files, with the same content - otherwise, the first difference
+	 */
+	private static String compare(Path expected, Path actual) throws IOException
+	{
+		if (!Files.exists(actual))
+		{
+			return actual.getFileName() + " is missing";
+		}
+		List<Path> expectedFiles = listFiles(expected);
+		List<Path> actualFiles = listFiles(actual);
+		if (!expectedFiles.equals(actualFiles))
+		{
+			return "the files in " + actual.getFileName() + " are not the data files - " + actualFiles.size() + " files, rather than " 
+				+ expectedFiles.size();
+		}
+		byte[] expectedBuffer = new byte[64 * 1024];
+		byte[] actualBuffer = new byte[expectedBuffer.length];
+		for (Path relative : expectedFiles)
+		{
+			Path e = expected.resolve(relative);
+			Path a = actual.resolve(relative);
+			long remaining = Files.size(e);
+			if (Files.size(a) != remaining)
+			{
+				return relative + " is " + Files.size(a) + " bytes, rather than " + remaining;
+			}
+			try (DataInputStream ein = new DataInputStream(new BufferedInputStream(Files.newInputStream(e)));
+				DataInputStream ain = new DataInputStream(new BufferedInputStream(Files.newInputStream(a))))
+			{
+				while (remaining > 0)
+				{
+					int count = (int)Math.min(expectedBuffer.length, remaining);
+					ein.readFully(expectedBuffer, 0, count);
+					ain.readFully(actualBuffer, 0, count);
+					if (!Arrays.equals(expectedBuffer, actualBuffer))
+					{
+						return "the content of " + relative + " differs";
+					}
+					remaining -= count;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the paths of the files in the folder (or of the file itself - as an empty path), relative to it, in order
+	 */
+	private static List<Path> listFiles(Path root) throws IOException
+	{
+		try (Stream<Path> walk = Files.walk(root))
+		{
+			return walk.filter((p) -> Files.isRegularFile(p)).map((p) -> root.relativize(p)).sorted().collect(Collectors.toList());
+		}
+	}
+
+	private static void add(List<Long> to, long[] values)
+	{
+		for (long l : values)
+		{
+			to.add(l);
+		}
+	}
+
+	/**
+	 * @return the value at the percentile (0 - 100) of the sorted values, by the nearest rank
+	 */
+	static long percentile(List<Long> sorted, double percentile)
+	{
+		int rank = (int)Math.ceil(percentile / 100.0 * sorted.size());
+		return sorted.get(Math.max(0, Math.min(sorted.size() - 1, rank - 1)));
+	}
+
+	private static void print(String description, List<Long> values, double scale)
+	{
+		if (values.isEmpty())
+		{
+			System.out.println(String.format("%-28s %7d", description, 0));
+			return;
+		}
+		List<Long> sorted = new ArrayList<>(values);
+		sorted.sort(null);
+		System.out.println(String.format("%-28s %7d %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f", description, sorted.size(), sorted.get(0) / scale,
+			percentile(sorted, 50) / scale, percentile(sorted, 90) / scale, percentile(sorted, 99) / scale, percentile(sorted, 99.9) / scale,
+			sorted.get(sorted.size() - 1) / scale));
+	}
+}
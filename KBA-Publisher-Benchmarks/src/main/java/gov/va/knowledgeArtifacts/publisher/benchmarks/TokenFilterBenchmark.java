@@ -0,0 +1,137 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.benchmarks;
+
+import gov.va.knowledgeArtifacts.publisher.publish.TokenFilter;
+import gov.va.knowledgeArtifacts.publisher.types.SpecialFile;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.pom._4_0.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * {@link TokenFilterBenchmark}
+ *
+ * Measures the ${...} token filtering of the {@link SpecialFile}s - building the filter from the model, filtering the special file 
+ * paths, and filtering file content - of the size of the license and manifest files, and of large data files, with tokens that are
+ * dense, sparse or absent.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Dlogback.configurationFile=benchmark-logback.xml"})
+public class TokenFilterBenchmark
+{
+	@Param({"4K", "16M"})
+	public String fileSize;
+
+	/**
+	 * The number of bytes between tokens in the file - 0 for none
+	 */
+	@Param({"0", "100", "4096"})
+	public int tokenSpacing;
+
+	private File folder_;
+	private File projectFolder_;
+	private Model model_;
+	private TokenFilter filter_;
+	private File input_;
+	private File output_;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		folder_ = Files.createTempDirectory("KBABenchmark-").toFile();
+		projectFolder_ = new File(folder_, "project");
+		model_ = BenchmarkProjects.createModel("filter-benchmark", 0, 0);
+		BenchmarkProjects.writeProject(projectFolder_, model_, "bdb", Collections.singletonList(new File(projectFolder_, "data")));
+		filter_ = TokenFilter.forModel(model_, projectFolder_);
+
+		input_ = new File(folder_, "input.txt");
+		output_ = new File(folder_, "output.txt");
+		long size = BenchmarkProjects.parseSize(fileSize);
+		String[] tokens = new String[] {"${project.version}", "${artifactId}", "${project.organization.name}", "${unknown.token}"};
+		StringBuilder filler = new StringBuilder();
+		while (filler.length() < Math.max(tokenSpacing, 100))
+		{
+			filler.append("The quick brown fox jumps over the lazy dog - $5 for {all} of it.\n");
+		}
+		try (BufferedWriter writer = Files.newBufferedWriter(input_.toPath(), StandardCharsets.UTF_8))
+		{
+			long written = 0;
+			int token = 0;
+			while (written < size)
+			{
+				String chunk = tokenSpacing > 0 ? filler.substring(0, tokenSpacing) + tokens[token++ % tokens.length] : filler.toString();
+				writer.write(chunk);
+				written += chunk.length();
+			}
+		}
+	}
+
+	@Benchmark
+	public TokenFilter forModel()
+	{
+		return TokenFilter.forModel(model_, projectFolder_);
+	}
+
+	@Benchmark
+	public void filterSpecialFilePaths(Blackhole blackhole)
+	{
+		for (SpecialFile sf : SpecialFile.SPECIAL_FILES)
+		{
+			blackhole.consume(filter_.filter(sf.getSource()));
+			blackhole.consume(filter_.filter(sf.getOutputDirectory()));
+		}
+	}
+
+	@Benchmark
+	public File filterFile() throws Exception
+	{
+		filter_.filter(input_, output_);
+		return output_;
+	}
+
+	@TearDown(Level.Trial)
+	public void cleanup() throws Exception
+	{
+		BenchmarkProjects.delete(folder_);
+	}
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.benchmarks;
+
+import gov.va.knowledgeArtifacts.publisher.publish.PublishOptions;
+import gov.va.knowledgeArtifacts.publisher.publish.Zip;
+import gov.va.knowledgeArtifacts.publisher.types.ArchiveFormat;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.pom._4_0.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link ZipBenchmark}
+ *
+ * Measures {@link Zip#createZipFile(Model, String, String, File, List)} - the whole archive step of a publish, from the scan of the
+ * data files to the last byte of the archive on disk - over the same total size, cut into few large files or many small ones, in
+ * each archive format.
+ * The entry cache is off, so every entry is compressed.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Dlogback.configurationFile=benchmark-logback.xml"})
+public class ZipBenchmark
+{
+	/**
+	 * [number of files]x[size of each file]
+	 */
+	@Param({"1x64M", "64x1M", "4096x16K"})
+	public String files;
+
+	@Param({"TEXT", "RANDOM"})
+	public BenchmarkProjects.Content content;
+
+	@Param({"1", "4"})
+	public int zipThreads;
+
+	@Param({"ZIP", "TAR_GZ", "TAR_XZ", "TAR_ZST"})
+	public ArchiveFormat format;
+
+	private File folder_;
+	private File projectFolder_;
+	private Model model_;
+	private List<File> dataFiles_;
+	private PublishOptions options_;
+	private File archive_;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		String[] parts = files.split("x");
+		folder_ = Files.createTempDirectory("KBABenchmark-").toFile();
+		projectFolder_ = new File(folder_, "project");
+		File dataFolder = new File(projectFolder_, "data");
+		BenchmarkProjects.writeDataFiles(dataFolder, Integer.parseInt(parts[0]), BenchmarkProjects.parseSize(parts[1]), content, 42);
+		model_ = BenchmarkProjects.createModel("zip-benchmark", 0, 0);
+		dataFiles_ = Collections.singletonList(dataFolder);
+		BenchmarkProjects.writeProject(projectFolder_, model_, "bdb", dataFiles_);
+
+		options_ = new PublishOptions();
+		options_.setZipThreads(zipThreads);
+		options_.setEntryCache(false);
+	}
+
+	@Benchmark
+	public File createZipFile() throws Exception
+	{
+		Zip zip = new Zip(options_);
+		zip.setFormat(format);
+		archive_ = zip.createZipFile(model_, "", "bdb", projectFolder_, dataFiles_);
+		return archive_;
+	}
+
+	@TearDown(Level.Invocation)
+	public void deleteArchive() throws Exception
+	{
+		if (archive_ != null)
+		{
+			BenchmarkProjects.delete(archive_.getParentFile());
+			archive_ = null;
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void cleanup() throws Exception
+	{
+		BenchmarkProjects.delete(folder_);
+	}
+}
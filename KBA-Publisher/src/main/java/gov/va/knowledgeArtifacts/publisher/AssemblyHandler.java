@@ -19,7 +19,6 @@
 package gov.va.knowledgeArtifacts.publisher;
 
 import java.io.File;
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
@@ -47,8 +46,7 @@ public class AssemblyHandler
 		{
 			try
 			{
-				JAXBContext ctx = JAXBContext.newInstance(Assembly.class);
-				Unmarshaller um = ctx.createUnmarshaller();
+				Unmarshaller um = JaxbService.getUnmarshaller(Assembly.class);
 				return ((JAXBElement<Assembly>) um.unmarshal(assemblyFile)).getValue();
 			}
 			catch (Exception e)
@@ -78,8 +76,7 @@ public class AssemblyHandler
 				throw new Exception("Failed to create the hierarchy for the assembly file");
 			}
 			
-			JAXBContext ctx = JAXBContext.newInstance(Assembly.class);
-			Marshaller ma = ctx.createMarshaller();
+			Marshaller ma = JaxbService.getMarshaller(Assembly.class);
 			ma.setProperty(Marshaller.JAXB_SCHEMA_LOCATION, "http://maven.apache.org/plugins/maven-assembly-plugin/assembly/1.1.2 http://maven.apache.org/xsd/assembly-1.1.2.xsd");
 			ma.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
 			ma.marshal(new ObjectFactory().createAssembly(assembly), new File(outputPath, "assembly.xml"));
@@ -0,0 +1,623 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher;
+
+import gov.va.knowledgeArtifacts.publisher.types.KnowledgeArtifactType;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ContentSniffer}
+ *
+ * Recognizes the content of data files and folders - RF2 releases, ISAAC databases, KIE (Drools) modules, CDS knowledge artifacts
+ * and OWL ontologies - and picks out the version and description that they declare, so that the project can be filled in for the
+ * user, and a data type that doesn't match the content can be pointed out.
+ *
+ * Only names, and the first few KB of a handful of files, are read - a folder is recognized by its layout, from at most the first
+ * {@value #MAX_FOLDER_ENTRIES} entries near its top.  The sniffing runs on a small pool of background threads, and the results are
+ * kept in a cache (in the user's .kbaPublisher folder) keyed by the path, size and last modified time - so adding the same files
+ * again, or reopening a project, doesn't read anything.  The cache entry for a folder is keyed by the folder itself, so changes
+ * deep within it aren't noticed until something directly within it changes.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class ContentSniffer
+{
+	private static Logger log = LoggerFactory.getLogger(ContentSniffer.class);
+
+	private static final String CACHE_FILE = "sniffCache.properties";
+	private static final int MAX_CACHE_ENTRIES = 5000;
+	//the identifying declarations of every format are near the top of the file
+	private static final int HEADER_SIZE = 64 * 1024;
+	private static final int MAX_FOLDER_ENTRIES = 2000;
+	private static final int MAX_FOLDER_DEPTH = 6;
+	private static final int MAX_HEADER_READS = 25;
+
+	private static final Pattern RF2_FILE = Pattern.compile("^x?(?:sct|der)2_.+_(\\d{8})[._]", Pattern.CASE_INSENSITIVE);
+	private static final Pattern RF2_FOLDER = Pattern.compile("^SnomedCT_.*_(\\d{8})(?:T\\d+Z?)?$", Pattern.CASE_INSENSITIVE);
+	private static final Pattern OWL_ONTOLOGY = Pattern.compile("<owl:Ontology\\b|<Ontology\\b|^\\s*Ontology\\(|\\ba\\s+owl:Ontology\\b", Pattern.MULTILINE);
+	private static final Pattern OWL_ONTOLOGY_END = Pattern.compile("</owl:Ontology>|^\\s*Declaration\\(|\\ba\\s+owl:Class\\b|<owl:Class\\b", Pattern.MULTILINE);
+	private static final Pattern OWL_VERSION = Pattern.compile("owl:versionInfo(?:\\s+\"([^\"]+)\"|\\b[^>]*>([^<]+)<)");
+	private static final Pattern OWL_VERSION_IRI = Pattern.compile("owl:versionIRI(?:\\s+rdf:resource=\"([^\"]+)\"|\\s+<([^>]+)>)|Ontology\\(\\s*<[^>]+>\\s*<([^>]+)>");
+	private static final Pattern OWL_DESCRIPTION = Pattern.compile("(?:rdfs:comment|dc:description|dcterms:description|dc:title|dcterms:title)"
+			+ "(?:\\s+\"([^\"]+)\"|\\b[^>]*>([^<]+)<)");
+	private static final Pattern IRI_VERSION = Pattern.compile(".*/(\\d[\\w.-]*)");
+	private static final Pattern CDS_DOCUMENT = Pattern.compile("<(?:\\w+:)?knowledgeDocument\\b");
+	private static final Pattern CDS_VERSION = Pattern.compile("<(?:\\w+:)?identifier\\b[^>]*\\bversion=\"([^\"]+)\"");
+	private static final Pattern CDS_TITLE = Pattern.compile("<(?:\\w+:)?title\\s+value=\"([^\"]+)\"");
+	private static final Pattern CDS_DESCRIPTION = Pattern.compile("<(?:\\w+:)?description\\s+value=\"([^\"]+)\"");
+	private static final Pattern KMODULE = Pattern.compile("<(?:\\w+:)?kmodule\\b");
+	private static final Pattern POM_PARENT = Pattern.compile("<parent>.*?</parent>", Pattern.DOTALL);
+	private static final Pattern POM_VERSION = Pattern.compile("<version>\\s*([^<]+?)\\s*</version>");
+	private static final Pattern POM_DESCRIPTION = Pattern.compile("<description>\\s*([^<]+?)\\s*</description>");
+	private static final Pattern PROPERTIES_VERSION = Pattern.compile("^version=(.+)$", Pattern.MULTILINE);
+
+	private File cacheFile_;
+	private Properties cache_ = null;
+	private boolean dirty_ = false;
+	private ThreadPoolExecutor executor_;
+	private ConcurrentHashMap<String, CompletableFuture<SniffResult>> pending_ = new ConcurrentHashMap<>();
+
+	/**
+	 * @param cacheFolder - the folder to keep the cache of results in - null to only cache them in memory
+	 * @param threads - the number of files or folders to sniff at the same time
+	 */
+	public ContentSniffer(File cacheFolder, int threads)
+	{
+		cacheFile_ = (cacheFolder == null ? null : new File(cacheFolder, CACHE_FILE));
+		AtomicInteger threadNumber = new AtomicInteger(1);
+		executor_ = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), (runnable) ->
+		{
+			Thread t = new Thread(runnable, "KBA-Sniffer-" + threadNumber.getAndIncrement());
+			t.setDaemon(true);
+			t.setPriority(Thread.MIN_PRIORITY);
+			return t;
+		});
+		executor_.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Sniff the file or folder in the background.  The returned future always completes normally - content that can't be read is
+	 * simply not recognized.  Asking for a file that is already being sniffed returns the same future.
+	 */
+	public CompletableFuture<SniffResult> sniff(File file)
+	{
+		File f = file.getAbsoluteFile();
+		CompletableFuture<SniffResult> future = new CompletableFuture<>();
+		CompletableFuture<SniffResult> existing = pending_.putIfAbsent(f.getPath(), future);
+		if (existing != null)
+		{
+			return existing;
+		}
+		executor_.execute(() ->
+		{
+			SniffResult result = SniffResult.UNKNOWN;
+			try
+			{
+				result = sniffCached(f);
+			}
+			finally
+			{
+				pending_.remove(f.getPath(), future);
+				future.complete(result);
+				if (executor_.getQueue().isEmpty())
+				{
+					save();
+				}
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Sniff the file or folder on the calling thread, without using the cache.
+	 */
+	public static SniffResult sniffNow(File file) throws IOException
+	{
+		Evidence evidence = new Evidence();
+		String lower = file.getName().toLowerCase();
+		if (file.isDirectory())
+		{
+			sniffFolder(file.toPath(), evidence);
+		}
+		else if (lower.endsWith(".zip") || lower.endsWith(".jar") || lower.endsWith(".kjar"))
+		{
+			sniffArchive(file, evidence);
+		}
+		else
+		{
+			visit(evidence, file.getName(), false, () -> readHeader(new FileInputStream(file)));
+		}
+		return evidence.result();
+	}
+
+	/**
+	 * Write the cache of results, if it has changed.  Called automatically, whenever the background threads run out of work.
+	 */
+	public synchronized void save()
+	{
+		if (!dirty_ || cacheFile_ == null)
+		{
+			return;
+		}
+		if (cache_.size() > MAX_CACHE_ENTRIES)
+		{
+			cache_.keySet().removeIf((key) -> !new File((String)key).exists());
+			Iterator<Object> keys = cache_.keySet().iterator();
+			while (cache_.size() > MAX_CACHE_ENTRIES && keys.hasNext())
+			{
+				keys.next();
+				keys.remove();
+			}
+		}
+		try
+		{
+			Files.createDirectories(cacheFile_.getParentFile().toPath());
+			File temp = new File(cacheFile_.getParentFile(), CACHE_FILE + ".tmp");
+			try (OutputStream os = new FileOutputStream(temp))
+			{
+				cache_.store(os, "KBA Publisher content sniffing cache - path = size, last modified, type, version, description, summary, warning");
+			}
+			Files.move(temp.toPath(), cacheFile_.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			dirty_ = false;
+		}
+		catch (IOException e)
+		{
+			log.warn("Failed to save the content sniffing cache " + cacheFile_.getAbsolutePath(), e);
+		}
+	}
+
+	private SniffResult sniffCached(File file)
+	{
+		long size = file.length();
+		long lastModified = file.lastModified();
+		synchronized (this)
+		{
+			SniffResult cached = decode(getCache().getProperty(file.getPath()), size, lastModified);
+			if (cached != null)
+			{
+				return cached;
+			}
+		}
+		if (!file.exists())
+		{
+			return SniffResult.UNKNOWN;
+		}
+		long start = System.currentTimeMillis();
+		SniffResult result;
+		try
+		{
+			result = sniffNow(file);
+		}
+		catch (Exception e)
+		{
+			log.info("Unable to sniff the content of " + file.getAbsolutePath() + ": " + e);
+			result = SniffResult.UNKNOWN;
+		}
+		log.debug("Sniffed {} as {} in {}ms", file.getAbsolutePath(), result.getSummary(), System.currentTimeMillis() - start);
+		synchronized (this)
+		{
+			getCache().setProperty(file.getPath(), encode(size, lastModified, result));
+			dirty_ = true;
+		}
+		return result;
+	}
+
+	private Properties getCache()
+	{
+		if (cache_ == null)
+		{
+			cache_ = new Properties();
+			if (cacheFile_ != null && cacheFile_.isFile())
+			{
+				try (InputStream is = new FileInputStream(cacheFile_))
+				{
+					cache_.load(is);
+				}
+				catch (IOException | IllegalArgumentException e)
+				{
+					log.warn("Ignoring unreadable content sniffing cache " + cacheFile_.getAbsolutePath(), e);
+					cache_.clear();
+				}
+			}
+		}
+		return cache_;
+	}
+
+	private static String encode(long size, long lastModified, SniffResult result)
+	{
+		return size + "\t" + lastModified + "\t" + (result.getType() == null ? "" : result.getType().name()) + "\t" + clean(result.getVersion()) + "\t"
+				+ clean(result.getDescription()) + "\t" + clean(result.getSummary()) + "\t" + clean(result.getWarning());
+	}
+
+	/**
+	 * @return the cached result - or null, if there isn't one, or the file has changed since
+	 */
+	private static SniffResult decode(String value, long size, long lastModified)
+	{
+		if (value == null)
+		{
+			return null;
+		}
+		String[] parts = value.split("\t", -1);
+		if (parts.length != 7 || !parts[0].equals(Long.toString(size)) || !parts[1].equals(Long.toString(lastModified)))
+		{
+			return null;
+		}
+		KnowledgeArtifactType type = null;
+		if (parts[2].length() > 0)
+		{
+			try
+			{
+				type = KnowledgeArtifactType.valueOf(parts[2]);
+			}
+			catch (IllegalArgumentException e)
+			{
+				return null;
+			}
+		}
+		return new SniffResult(type, nullIfEmpty(parts[3]), nullIfEmpty(parts[4]), nullIfEmpty(parts[5]), nullIfEmpty(parts[6]));
+	}
+
+	private static String clean(String value)
+	{
+		return value == null ? "" : value.replaceAll("[\t\r\n]+", " ");
+	}
+
+	private static String nullIfEmpty(String value)
+	{
+		return value.length() == 0 ? null : value;
+	}
+
+	/**
+	 * Breadth first, so that the declarations at the top of the folder (the pom, the release folder) are found first
+	 */
+	private static void sniffFolder(Path folder, Evidence evidence) throws IOException
+	{
+		visit(evidence, folder.getFileName().toString(), true, null);
+		ArrayDeque<Path> folders = new ArrayDeque<>();
+		ArrayDeque<Integer> depths = new ArrayDeque<>();
+		folders.add(folder);
+		depths.add(0);
+		int entries = 0;
+		while (!folders.isEmpty() && entries < MAX_FOLDER_ENTRIES)
+		{
+			Path dir = folders.poll();
+			int depth = depths.poll();
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir))
+			{
+				for (Path child : stream)
+				{
+					if (++entries > MAX_FOLDER_ENTRIES)
+					{
+						break;
+					}
+					String path = folder.relativize(child).toString().replace(File.separatorChar, '/');
+					if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS))
+					{
+						visit(evidence, path, true, null);
+						if (depth + 1 < MAX_FOLDER_DEPTH)
+						{
+							folders.add(child);
+							depths.add(depth + 1);
+						}
+					}
+					else if (Files.isRegularFile(child, LinkOption.NOFOLLOW_LINKS))
+					{
+						visit(evidence, path, false, () -> readHeader(Files.newInputStream(child)));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Only the central directory is read - plus the start of the few entries that need to be looked at
+	 */
+	private static void sniffArchive(File file, Evidence evidence) throws IOException
+	{
+		try (ZipFile zf = new ZipFile(file))
+		{
+			Enumeration<? extends ZipEntry> entries = zf.entries();
+			for (int i = 0; i < MAX_FOLDER_ENTRIES && entries.hasMoreElements(); i++)
+			{
+				ZipEntry entry = entries.nextElement();
+				String name = entry.getName();
+				if (entry.isDirectory())
+				{
+					visit(evidence, name.substring(0, name.length() - 1), true, null);
+				}
+				else
+				{
+					//the folders of an archive aren't always listed - but they are still a part of the layout
+					for (int slash = name.indexOf('/'); slash > 0; slash = name.indexOf('/', slash + 1))
+					{
+						visit(evidence, name.substring(0, slash), true, null);
+					}
+					visit(evidence, name, false, () -> readHeader(zf.getInputStream(entry)));
+				}
+			}
+		}
+	}
+
+	private interface HeaderSource
+	{
+		public String read() throws IOException;
+	}
+
+	/**
+	 * Note what a single file or folder says about the content
+	 * @param path - the path of the item, using '/' as the separator
+	 * @param header - reads the start of a file - null for a folder
+	 */
+	private static void visit(Evidence evidence, String path, boolean folder, HeaderSource header) throws IOException
+	{
+		String name = path.substring(path.lastIndexOf('/') + 1);
+		String lower = name.toLowerCase();
+		if (folder)
+		{
+			if (lower.equals("object-chronicles"))
+			{
+				evidence.ibdb_ = true;
+			}
+			Matcher m = RF2_FOLDER.matcher(name);
+			if (evidence.releaseName_ == null && m.find())
+			{
+				evidence.releaseName_ = name;
+				evidence.releaseDate_ = m.group(1);
+			}
+			return;
+		}
+
+		Matcher rf2 = RF2_FILE.matcher(name);
+		if (rf2.find())
+		{
+			evidence.add(KnowledgeArtifactType.RF2, null, null);
+			if (evidence.latestRf2Date_ == null || rf2.group(1).compareTo(evidence.latestRf2Date_) > 0)
+			{
+				evidence.latestRf2Date_ = rf2.group(1);
+			}
+		}
+		else if (lower.equals("kmodule.xml"))
+		{
+			evidence.kmodule_ = true;
+		}
+		else if (lower.equals("pom.properties"))
+		{
+			if (evidence.pomVersion_ == null)
+			{
+				evidence.pomVersion_ = firstGroup(PROPERTIES_VERSION, header.read());
+			}
+		}
+		else if (lower.equals("pom.xml"))
+		{
+			if (evidence.pomVersion_ == null)
+			{
+				String pom = POM_PARENT.matcher(header.read()).replaceFirst("");
+				evidence.pomVersion_ = firstGroup(POM_VERSION, pom);
+				evidence.pomDescription_ = firstGroup(POM_DESCRIPTION, pom);
+			}
+		}
+		else if (lower.endsWith(".drl") || lower.endsWith(".rdrl") || lower.endsWith(".dsl") || lower.endsWith(".dslr") || lower.endsWith(".bpmn")
+				|| lower.endsWith(".bpmn2") || lower.endsWith(".rdslr") || lower.endsWith(".gdst"))
+		{
+			evidence.add(KnowledgeArtifactType.KIE, null, null);
+		}
+		else if (lower.endsWith(".jbin"))
+		{
+			evidence.add(KnowledgeArtifactType.EConcept, null, null);
+		}
+		else if (lower.endsWith(".owl") || lower.endsWith(".ofn") || lower.endsWith(".omn") || lower.endsWith(".owx") || lower.endsWith(".rdf")
+				|| lower.endsWith(".ttl") || lower.endsWith(".xml"))
+		{
+			if (evidence.headerReads_++ >= MAX_HEADER_READS)
+			{
+				return;
+			}
+			String text = header.read();
+			if (CDS_DOCUMENT.matcher(text).find())
+			{
+				String title = firstGroup(CDS_TITLE, text);
+				String description = firstGroup(CDS_DESCRIPTION, text);
+				evidence.add(KnowledgeArtifactType.CDSKnowledgeArtifact, firstGroup(CDS_VERSION, text), description == null ? title : description);
+			}
+			else if (KMODULE.matcher(text).find())
+			{
+				evidence.kmodule_ = true;
+			}
+			else if (OWL_ONTOLOGY.matcher(text).find())
+			{
+				sniffOntology(evidence, text);
+			}
+			else if (lower.endsWith(".owl") && evidence.warning_ == null)
+			{
+				evidence.warning_ = name + " doesn't declare an ontology near its start - it may not be an OWL file";
+			}
+		}
+	}
+
+	private static void sniffOntology(Evidence evidence, String text)
+	{
+		Matcher start = OWL_ONTOLOGY.matcher(text);
+		start.find();
+		//only the annotations of the ontology itself - not those of the first classes
+		Matcher end = OWL_ONTOLOGY_END.matcher(text);
+		String header = text.substring(start.start(), end.find(start.end()) ? end.start() : Math.min(text.length(), start.end() + 8192));
+		String version = firstGroup(OWL_VERSION, header);
+		if (version == null)
+		{
+			String iri = firstGroup(OWL_VERSION_IRI, header);
+			version = (iri == null ? null : firstGroup(IRI_VERSION, iri));
+		}
+		evidence.add(KnowledgeArtifactType.OWL, version, firstGroup(OWL_DESCRIPTION, header));
+	}
+
+	private static String readHeader(InputStream stream) throws IOException
+	{
+		try (InputStream is = stream)
+		{
+			byte[] buffer = new byte[HEADER_SIZE];
+			int read = 0;
+			while (read < buffer.length)
+			{
+				int count = is.read(buffer, read, buffer.length - read);
+				if (count < 0)
+				{
+					break;
+				}
+				read += count;
+			}
+			return new String(buffer, 0, read, StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * @return the first group of the first match that matched anything - with xml escapes undone
+	 */
+	private static String firstGroup(Pattern pattern, String text)
+	{
+		Matcher m = pattern.matcher(text);
+		if (m.find())
+		{
+			for (int i = 1; i <= m.groupCount(); i++)
+			{
+				if (m.group(i) != null && m.group(i).trim().length() > 0)
+				{
+					return m.group(i).trim().replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"").replace("&apos;", "'").replace("&amp;", "&");
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Everything that was noticed about the files of a folder or archive
+	 */
+	private static class Evidence
+	{
+		int[] counts_ = new int[KnowledgeArtifactType.values().length];
+		String[] versions_ = new String[KnowledgeArtifactType.values().length];
+		String[] descriptions_ = new String[KnowledgeArtifactType.values().length];
+		boolean ibdb_, kmodule_;
+		String releaseName_, releaseDate_, latestRf2Date_, pomVersion_, pomDescription_, warning_;
+		int headerReads_;
+
+		void add(KnowledgeArtifactType type, String version, String description)
+		{
+			counts_[type.ordinal()]++;
+			if (versions_[type.ordinal()] == null)
+			{
+				versions_[type.ordinal()] = version;
+			}
+			if (descriptions_[type.ordinal()] == null)
+			{
+				descriptions_[type.ordinal()] = description;
+			}
+		}
+
+		SniffResult result()
+		{
+			//the layout of an ISAAC database, KIE module or RF2 release decides - otherwise, the most common type of file
+			KnowledgeArtifactType type = null;
+			if (ibdb_)
+			{
+				type = KnowledgeArtifactType.IBDB;
+			}
+			else if (kmodule_)
+			{
+				type = KnowledgeArtifactType.KIE;
+			}
+			else if (releaseName_ != null)
+			{
+				type = KnowledgeArtifactType.RF2;
+			}
+			else
+			{
+				for (KnowledgeArtifactType t : KnowledgeArtifactType.values())
+				{
+					if (counts_[t.ordinal()] > 0 && (type == null || counts_[t.ordinal()] > counts_[type.ordinal()]))
+					{
+						type = t;
+					}
+				}
+			}
+			if (type == null)
+			{
+				return new SniffResult(null, null, null, null, warning_);
+			}
+
+			String version = versions_[type.ordinal()];
+			String description = descriptions_[type.ordinal()];
+			if (type == KnowledgeArtifactType.RF2)
+			{
+				version = (releaseDate_ != null ? releaseDate_ : latestRf2Date_);
+				description = (releaseName_ != null ? "RF2 release " + releaseName_ : null);
+			}
+			if (version == null)
+			{
+				version = pomVersion_;
+			}
+			if (description == null)
+			{
+				description = pomDescription_;
+			}
+
+			String warning = warning_;
+			if (warning == null)
+			{
+				for (KnowledgeArtifactType t : KnowledgeArtifactType.values())
+				{
+					if (t != type && counts_[t.ordinal()] > 0)
+					{
+						warning = "Contains " + type.getNiceName() + " content, but also " + counts_[t.ordinal()] + " " + t.getNiceName() + " file"
+								+ (counts_[t.ordinal()] == 1 ? "" : "s");
+						break;
+					}
+				}
+			}
+			return new SniffResult(type, version, description, type.getNiceName() + (version == null ? "" : " " + version), warning);
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link JaxbService}
+ *
+ * Shared JAXB contexts for the handlers.  Building a context for the generated maven models is very expensive, so each one is only
+ * built once - and may be built ahead of time, in the background, by {@link #prewarm(Class...)}.  Contexts are thread safe, but
+ * marshallers and unmarshallers are not - so each thread gets its own, which it keeps for reuse.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class JaxbService
+{
+	private static Logger log = LoggerFactory.getLogger(JaxbService.class);
+
+	private static final ConcurrentHashMap<Class<?>, FutureTask<JAXBContext>> contexts_ = new ConcurrentHashMap<>();
+	private static final ConcurrentHashMap<Class<?>, ThreadLocal<Marshaller>> marshallers_ = new ConcurrentHashMap<>();
+	private static final ConcurrentHashMap<Class<?>, ThreadLocal<Unmarshaller>> unmarshallers_ = new ConcurrentHashMap<>();
+
+	/**
+	 * Start building the contexts for the passed in types on a background thread, and return immediately.
+	 * Anyone that asks for one of the contexts before it is ready waits for it, rather than building another.
+	 */
+	public static void prewarm(Class<?>... types)
+	{
+		Thread t = new Thread(() ->
+		{
+			for (Class<?> type : types)
+			{
+				try
+				{
+					getContext(type);
+				}
+				catch (JAXBException e)
+				{
+					//will be reported again to whoever actually needs it
+					log.warn("Failed to prewarm the JAXB context for " + type.getName(), e);
+				}
+			}
+		}, "KBA-JAXB-Prewarm");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	public static JAXBContext getContext(Class<?> type) throws JAXBException
+	{
+		FutureTask<JAXBContext> task = contexts_.computeIfAbsent(type, (key) -> new FutureTask<>(() ->
+		{
+			long start = System.currentTimeMillis();
+			JAXBContext context = JAXBContext.newInstance(key);
+			log.debug("Created the JAXB context for {} in {}ms", key.getName(), System.currentTimeMillis() - start);
+			return context;
+		}));
+		//Does nothing if another thread is already building it
+		task.run();
+		try
+		{
+			return task.get();
+		}
+		catch (InterruptedException e)
+		{
+			throw new JAXBException("Interrupted while waiting for the JAXB context", e);
+		}
+		catch (ExecutionException e)
+		{
+			//let the next caller try again
+			contexts_.remove(type, task);
+			if (e.getCause() instanceof JAXBException)
+			{
+				throw (JAXBException)e.getCause();
+			}
+			throw new JAXBException("Unexpected error creating the JAXB context for " + type.getName(), e.getCause());
+		}
+	}
+
+	/**
+	 * @return the marshaller for the calling thread.  Properties set on it persist - so callers should set every property they rely on.
+	 */
+	public static Marshaller getMarshaller(Class<?> type) throws JAXBException
+	{
+		ThreadLocal<Marshaller> local = marshallers_.computeIfAbsent(type, (key) -> new ThreadLocal<>());
+		Marshaller marshaller = local.get();
+		if (marshaller == null)
+		{
+			marshaller = getContext(type).createMarshaller();
+			local.set(marshaller);
+		}
+		return marshaller;
+	}
+
+	/**
+	 * @return the unmarshaller for the calling thread
+	 */
+	public static Unmarshaller getUnmarshaller(Class<?> type) throws JAXBException
+	{
+		ThreadLocal<Unmarshaller> local = unmarshallers_.computeIfAbsent(type, (key) -> new ThreadLocal<>());
+		Unmarshaller unmarshaller = local.get();
+		if (unmarshaller == null)
+		{
+			unmarshaller = getContext(type).createUnmarshaller();
+			local.set(unmarshaller);
+		}
+		return unmarshaller;
+	}
+}
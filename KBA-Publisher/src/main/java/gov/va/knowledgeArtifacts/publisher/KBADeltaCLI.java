@@ -0,0 +1,229 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher;
+
+import gov.va.knowledgeArtifacts.publisher.publish.ArchiveExtractor;
+import gov.va.knowledgeArtifacts.publisher.publish.Checksums;
+import gov.va.knowledgeArtifacts.publisher.publish.DeltaArchive;
+import gov.va.knowledgeArtifacts.publisher.types.ChecksumType;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link KBADeltaCLI}
+ *
+ * Rebuilds a published version of an artifact from an earlier version and the delta that was published against it (with 
+ * --deltaFrom, or the kba.publisher.deltaBase option) - see {@link DeltaArchive}.  Every rebuilt file is checked against the 
+ * SHA-1 it was published with, and the delta itself against its .sha1 file, when that was downloaded alongside it.
+ * 
+ * The earlier version may be given as the archive that was downloaded from the repository (in any format, or the index of a split 
+ * archive, with its parts beside it) or as the folder it was already extracted to.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class KBADeltaCLI
+{
+	private static Logger log = LoggerFactory.getLogger(KBADeltaCLI.class);
+
+	private File base_;
+	private File delta_;
+	private File output_;
+	private int threads_ = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+	public static void main(String[] args)
+	{
+		KBADeltaCLI cli = new KBADeltaCLI();
+		try
+		{
+			cli.parseArgs(args);
+		}
+		catch (IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+			System.err.println();
+			printUsage();
+			System.exit(2);
+			return;
+		}
+
+		try
+		{
+			cli.apply();
+			System.exit(0);
+		}
+		catch (Exception e)
+		{
+			log.error("Applying the delta failed", e);
+			System.err.println("Applying the delta failed: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	private static void printUsage()
+	{
+		System.err.println("Usage: java -cp <KBA-Publisher jar> " + KBADeltaCLI.class.getName() + " --base <archive or folder> --delta <file> --output <folder>");
+		System.err.println("  --base <archive or folder>  the earlier version - its archive, the index of its parts, or the folder it was extracted to");
+		System.err.println("  --delta <file>              the delta that was published against the earlier version");
+		System.err.println("  --output <folder>           the folder to rebuild the new version in");
+		System.err.println("  --threads <count>           the number of files to rebuild at the same time - default " + Runtime.getRuntime().availableProcessors());
+		System.err.println("  --help                      print this message");
+	}
+
+	private void parseArgs(String[] args)
+	{
+		for (int i = 0; i < args.length; i++)
+		{
+			String arg = args[i];
+			switch (arg)
+			{
+				case "--base":
+					base_ = new File(requireValue(args, ++i, arg));
+					break;
+				case "--delta":
+					delta_ = new File(requireValue(args, ++i, arg));
+					break;
+				case "--output":
+					output_ = new File(requireValue(args, ++i, arg));
+					break;
+				case "--threads":
+					String value = requireValue(args, ++i, arg);
+					try
+					{
+						threads_ = Integer.parseInt(value);
+					}
+					catch (NumberFormatException e)
+					{
+						threads_ = 0;
+					}
+					if (threads_ <= 0)
+					{
+						throw new IllegalArgumentException("The option " + arg + " requires a positive number, not '" + value + "'");
+					}
+					break;
+				case "--help":
+				case "-h":
+				case "-?":
+					printUsage();
+					System.exit(0);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + arg);
+			}
+		}
+		if (base_ == null || delta_ == null || output_ == null)
+		{
+			throw new IllegalArgumentException("The --base, --delta and --output options are required");
+		}
+	}
+
+	private static String requireValue(String[] args, int index, String option)
+	{
+		if (index >= args.length)
+		{
+			throw new IllegalArgumentException("The option " + option + " requires a value");
+		}
+		return args[index];
+	}
+
+	private void apply() throws Exception
+	{
+		long start = System.currentTimeMillis();
+		if (!delta_.isFile())
+		{
+			throw new IOException("The delta " + delta_.getAbsolutePath() + " does not exist");
+		}
+		if (!base_.exists())
+		{
+			throw new IOException("The earlier version " + base_.getAbsolutePath() + " does not exist");
+		}
+		checkDelta();
+		Properties manifest = DeltaArchive.readManifest(delta_);
+		System.out.println("Rebuilding " + manifest.getProperty("groupId") + ":" + manifest.getProperty("artifactId") + ":" 
+				+ manifest.getProperty("version") + " from version " + manifest.getProperty("baseVersion"));
+
+		File extracted = null;
+		try
+		{
+			File baseRoot;
+			if (base_.isDirectory())
+			{
+				File named = new File(base_, manifest.getProperty("baseRootFolder", ""));
+				baseRoot = named.isDirectory() && !named.equals(base_) ? named : ArchiveExtractor.findRootFolder(base_);
+			}
+			else
+			{
+				//extracted next to the result, as it is likely too big for the system temp folder
+				extracted = Files.createTempDirectory(Files.createDirectories(output_.toPath()), "delta-base").toFile();
+				System.out.println("Extracting " + base_.getName());
+				ArchiveExtractor.extract(base_, extracted);
+				baseRoot = ArchiveExtractor.findRootFolder(extracted);
+			}
+			File root = DeltaArchive.apply(delta_, baseRoot, output_, threads_);
+			System.out.println("Rebuilt " + manifest.getProperty("entries") + " entries into " + root.getAbsolutePath() + " in " 
+					+ ((System.currentTimeMillis() - start) / 1000) + " seconds - every file matches its published checksum");
+		}
+		finally
+		{
+			if (extracted != null)
+			{
+				deleteFolder(extracted);
+			}
+		}
+	}
+
+	/**
+	 * Check the delta against the .sha1 file next to it, if there is one
+	 */
+	private void checkDelta() throws IOException
+	{
+		File sidecar = new File(delta_.getAbsoluteFile().getParentFile(), delta_.getName() + "." + ChecksumType.SHA1.getExtension());
+		if (!sidecar.isFile())
+		{
+			return;
+		}
+		String expected = new String(Files.readAllBytes(sidecar.toPath()), StandardCharsets.UTF_8).trim().split("\\s+")[0];
+		String actual = Checksums.calculate(delta_, Collections.singletonList(ChecksumType.SHA1), null).get(ChecksumType.SHA1);
+		if (!actual.equalsIgnoreCase(expected))
+		{
+			throw new IOException("The delta " + delta_.getName() + " doesn't match its SHA-1 checksum - download it again");
+		}
+	}
+
+	private static void deleteFolder(File folder)
+	{
+		File[] children = folder.listFiles();
+		if (children != null)
+		{
+			for (File child : children)
+			{
+				deleteFolder(child);
+			}
+		}
+		if (!folder.delete())
+		{
+			log.debug("Couldn't remove the temporary file {}", folder.getAbsolutePath());
+		}
+	}
+}
@@ -21,13 +21,21 @@ package gov.va.knowledgeArtifacts.publisher;
 import gov.va.isaac.AppContext;
 import gov.va.isaac.interfaces.gui.ApplicationWindowI;
 import gov.va.isaac.interfaces.gui.views.DockedViewI;
+import gov.va.knowledgeArtifacts.publisher.publish.HttpTransport;
+import gov.va.knowledgeArtifacts.publisher.publish.PublishOptions;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.URL;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.scene.image.Image;
 import javafx.stage.Stage;
+import org.apache.maven.plugins.maven_assembly_plugin.assembly._1_1.Assembly;
+import org.apache.maven.pom._4_0.Model;
 import org.jvnet.hk2.annotations.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,10 +50,32 @@ public class KBAPublisher extends Application implements ApplicationWindowI
 {
 	private static Logger log = LoggerFactory.getLogger(KBAPublisher.class);
 	private Stage primaryStage_;
+	
+	/**
+	 * Set this system property to true to print the startup time, and exit as soon as the window has been shown - see {@link StartupBenchmark}
+	 */
+	public static final String EXIT_AFTER_STARTUP_PROPERTY = "kba.publisher.exitAfterStartup";
+	
+	/**
+	 * The line printed to stdout when {@link #EXIT_AFTER_STARTUP_PROPERTY} is set - followed by the millis from JVM start until the window was shown
+	 */
+	public static final String STARTUP_TIME_PREFIX = "KBA-Publisher startup ms: ";
+	
+	//The service locator is set up while the toolkit starts, and the window is built
+	private static FutureTask<Void> appContextSetup_;
 
 	public static void main(String[] args) throws ClassNotFoundException, IOException
 	{
-		AppContext.setup();
+		JaxbService.prewarm(Model.class, Assembly.class);
+		HttpTransport.configureKeepAlive(new PublishOptions().getUploadThreads());
+		appContextSetup_ = new FutureTask<>(() ->
+		{
+			AppContext.setup();
+			return null;
+		});
+		Thread t = new Thread(appContextSetup_, "KBA-AppContext-Setup");
+		t.setDaemon(true);
+		t.start();
 		launch(args);
 	}
 
@@ -64,8 +94,28 @@ public class KBAPublisher extends Application implements ApplicationWindowI
 		primaryStage.setWidth(800);
 		primaryStage.setHeight(600);
 		primaryStage.getIcons().add(new Image("/images/silk-icons/src/main/resources/silk/16x16/package_green.png"));
+		
+		//Don't let the user in until the services that the dialogs rely on are available
+		try
+		{
+			appContextSetup_.get();
+		}
+		catch (ExecutionException e)
+		{
+			throw (e.getCause() instanceof Exception ? (Exception)e.getCause() : e);
+		}
+		
 		primaryStage.show();
 		primaryStage_ = primaryStage;
+		
+		long startupTime = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+		log.info("Startup complete in {}ms", startupTime);
+		if (Boolean.getBoolean(EXIT_AFTER_STARTUP_PROPERTY))
+		{
+			System.out.println(STARTUP_TIME_PREFIX + startupTime);
+			//let the first frame render, before going away
+			Platform.runLater(() -> System.exit(0));
+		}
 	}
 
 	/**
@@ -0,0 +1,591 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher;
+
+import gov.va.knowledgeArtifacts.publisher.publish.HttpTransport;
+import gov.va.knowledgeArtifacts.publisher.publish.PublishBudget;
+import gov.va.knowledgeArtifacts.publisher.publish.PublishJob;
+import gov.va.knowledgeArtifacts.publisher.publish.PublishListener;
+import gov.va.knowledgeArtifacts.publisher.publish.PublishOptions;
+import gov.va.knowledgeArtifacts.publisher.types.ArchiveFormat;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.maven.plugins.maven_assembly_plugin.assembly._1_1.Assembly;
+import org.apache.maven.pom._4_0.Model;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link KBAPublisherCLI}
+ *
+ * Publishes existing project folders from the command line, without a display.  Each project is saved (the pom and assembly are
+ * regenerated, exactly as the GUI does before a publish) and then published, with progress written to the console.
+ * 
+ * When more than one project folder is given (directly, with glob patterns, or in a list file), the projects are published 
+ * concurrently, within a shared {@link PublishBudget} - and a summary of the result of each project is written at the end.
+ * 
+ * This deliberately doesn't touch JavaFX or the ISAAC {@link gov.va.isaac.AppContext} - so it must stay a separate main class.  
+ * The java launcher starts the JavaFX toolkit for any main class that extends {@link javafx.application.Application}, 
+ * such as {@link KBAPublisher}.
+ * 
+ * Tuning options are read from system properties - see {@link PublishOptions}.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class KBAPublisherCLI
+{
+	private static Logger log = LoggerFactory.getLogger(KBAPublisherCLI.class);
+	private static final String PASSWORD_ENV = "KBA_PUBLISHER_PASSWORD";
+
+	private List<String> projects_ = new ArrayList<>();
+	private String url_ = PublishJob.DEFAULT_REPOSITORY_URL;
+	private String username_ = "";
+	private String password_ = System.getenv(PASSWORD_ENV) == null ? "" : System.getenv(PASSWORD_ENV);
+	private String classifier_;
+	private String dataType_;
+	private ArchiveFormat format_;
+	private String deltaFrom_;
+	private boolean save_ = true;
+	private int parallel_ = 4;
+	private int archives_ = 1;
+	private int uploads_ = Math.max(8, new PublishOptions().getUploadThreads());
+	private File summaryFile_;
+
+	public static void main(String[] args)
+	{
+		JaxbService.prewarm(Model.class, Assembly.class);
+		KBAPublisherCLI cli = new KBAPublisherCLI();
+		List<File> projectFolders;
+		try
+		{
+			cli.parseArgs(args);
+			projectFolders = cli.findProjectFolders();
+		}
+		catch (IllegalArgumentException | IOException e)
+		{
+			System.err.println(e.getMessage());
+			System.err.println();
+			printUsage();
+			System.exit(2);
+			return;
+		}
+		//shared by all of the jobs
+		HttpTransport.configureKeepAlive(cli.uploads_);
+		
+		if (projectFolders.size() == 1)
+		{
+			try
+			{
+				cli.publish(projectFolders.get(0), new PublishOptions(), "");
+				System.exit(0);
+			}
+			catch (Exception e)
+			{
+				log.error("Publish failed", e);
+				System.err.println("Publish failed: " + e.getMessage());
+				System.exit(1);
+			}
+		}
+		else
+		{
+			System.exit(cli.publishAll(projectFolders) ? 0 : 1);
+		}
+	}
+
+	private static void printUsage()
+	{
+		System.err.println("Usage: java -cp <KBA-Publisher jar> " + KBAPublisherCLI.class.getName() + " [options] <projectFolder>...");
+		System.err.println("  Project folders may be glob patterns - for example 'release/*' or 'release/**' - quote them to stop the shell expanding them");
+		System.err.println("  --projects <file>          a file listing project folders (or patterns), one per line");
+		System.err.println("  --url <url>                the repository to publish to - default " + PublishJob.DEFAULT_REPOSITORY_URL);
+		System.err.println("  --username <username>      the repository username");
+		System.err.println("  --password <password>      the repository password - or set the " + PASSWORD_ENV + " environment variable");
+		System.err.println("  --classifier <classifier>  overrides the classifier in the project pom");
+		System.err.println("  --dataType <type>          overrides the data type in the project pom");
+		System.err.println("  --format <format>          overrides the archive format in the project pom - zip, tar.gz, tar.xz or tar.zst");
+		System.err.println("  --deltaFrom <version>      also publish a delta of each archive against this earlier version of the artifact");
+		System.err.println("  --noSave                   publish the project files as they are, without regenerating the pom and assembly");
+		System.err.println("  --parallel <count>         the number of projects to publish at the same time - default 4");
+		System.err.println("  --archives <count>         the number of archives to create at the same time - default 1");
+		System.err.println("  --uploads <count>          the number of file uploads in progress at the same time, across all projects - default 8");
+		System.err.println("  --summary <file>           write the result of each project to this file (tab separated)");
+		System.err.println("  --help                     print this message");
+		System.err.println("Tuning options may be set as system properties - for example -Dkba.publisher.zipThreads=8");
+	}
+
+	private void parseArgs(String[] args) throws IOException
+	{
+		for (int i = 0; i < args.length; i++)
+		{
+			String arg = args[i];
+			switch (arg)
+			{
+				case "--projects":
+					for (String line : Files.readAllLines(Paths.get(requireValue(args, ++i, arg)), StandardCharsets.UTF_8))
+					{
+						if (line.trim().length() > 0 && !line.trim().startsWith("#"))
+						{
+							projects_.add(line.trim());
+						}
+					}
+					break;
+				case "--url":
+					url_ = requireValue(args, ++i, arg);
+					break;
+				case "--username":
+					username_ = requireValue(args, ++i, arg);
+					break;
+				case "--password":
+					password_ = requireValue(args, ++i, arg);
+					break;
+				case "--classifier":
+					classifier_ = requireValue(args, ++i, arg);
+					break;
+				case "--dataType":
+					dataType_ = requireValue(args, ++i, arg);
+					break;
+				case "--format":
+					String format = requireValue(args, ++i, arg);
+					format_ = ArchiveFormat.parse(format);
+					if (format_ == null)
+					{
+						throw new IllegalArgumentException("Unknown archive format '" + format + "' - expected zip, tar.gz, tar.xz or tar.zst");
+					}
+					break;
+				case "--deltaFrom":
+					deltaFrom_ = requireValue(args, ++i, arg);
+					break;
+				case "--noSave":
+					save_ = false;
+					break;
+				case "--parallel":
+					parallel_ = requireCount(args, ++i, arg);
+					break;
+				case "--archives":
+					archives_ = requireCount(args, ++i, arg);
+					break;
+				case "--uploads":
+					uploads_ = requireCount(args, ++i, arg);
+					break;
+				case "--summary":
+					summaryFile_ = new File(requireValue(args, ++i, arg));
+					break;
+				case "--help":
+				case "-h":
+				case "-?":
+					printUsage();
+					System.exit(0);
+					break;
+				default:
+					if (arg.startsWith("-"))
+					{
+						throw new IllegalArgumentException("Unknown option " + arg);
+					}
+					projects_.add(arg);
+			}
+		}
+		if (projects_.isEmpty())
+		{
+			throw new IllegalArgumentException("At least one project folder is required");
+		}
+	}
+
+	private static String requireValue(String[] args, int index, String option)
+	{
+		if (index >= args.length)
+		{
+			throw new IllegalArgumentException("The option " + option + " requires a value");
+		}
+		return args[index];
+	}
+
+	private static int requireCount(String[] args, int index, String option)
+	{
+		String value = requireValue(args, index, option);
+		try
+		{
+			int count = Integer.parseInt(value);
+			if (count > 0)
+			{
+				return count;
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			//fall through
+		}
+		throw new IllegalArgumentException("The option " + option + " requires a positive number, not '" + value + "'");
+	}
+
+	/**
+	 * @return the project folders, with any patterns expanded - each folder only once, in the order given
+	 */
+	private List<File> findProjectFolders() throws IOException
+	{
+		LinkedHashSet<File> result = new LinkedHashSet<>();
+		for (String project : projects_)
+		{
+			List<File> found = expandPattern(project);
+			if (found.isEmpty())
+			{
+				throw new IOException("No project folders match " + project);
+			}
+			for (File f : found)
+			{
+				result.add(f.getAbsoluteFile().toPath().normalize().toFile());
+			}
+		}
+		return new ArrayList<>(result);
+	}
+
+	/**
+	 * Expand a glob pattern to the matching folders that contain a pom.xml file.  A name without any glob characters is returned as is.
+	 */
+	private static List<File> expandPattern(String pattern) throws IOException
+	{
+		String normalized = pattern.replace('\\', '/');
+		int firstGlob = -1;
+		for (int i = 0; i < normalized.length(); i++)
+		{
+			if ("*?[{".indexOf(normalized.charAt(i)) >= 0)
+			{
+				firstGlob = i;
+				break;
+			}
+		}
+		if (firstGlob < 0)
+		{
+			return Collections.singletonList(new File(pattern));
+		}
+		int slash = normalized.lastIndexOf('/', firstGlob);
+		Path base = Paths.get(slash < 0 ? "." : (slash == 0 ? "/" : normalized.substring(0, slash)));
+		String remainder = normalized.substring(slash + 1);
+		PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + remainder);
+		int depth = remainder.contains("**") ? Integer.MAX_VALUE : remainder.split("/").length;
+		
+		List<File> result = new ArrayList<>();
+		if (!Files.isDirectory(base))
+		{
+			return result;
+		}
+		Files.walkFileTree(base, EnumSet.of(FileVisitOption.FOLLOW_LINKS), depth, new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+			{
+				check(dir);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+			{
+				//folders at the maximum depth are visited as files
+				if (attrs.isDirectory())
+				{
+					check(file);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			private void check(Path dir)
+			{
+				if (!dir.equals(base) && matcher.matches(base.relativize(dir)) && Files.isRegularFile(dir.resolve("pom.xml")))
+				{
+					result.add(dir.toFile());
+				}
+			}
+		});
+		Collections.sort(result);
+		return result;
+	}
+
+	/**
+	 * Publish all of the projects concurrently, and write the summary.
+	 * @return true, if every project was published
+	 */
+	private boolean publishAll(List<File> projectFolders)
+	{
+		long start = System.currentTimeMillis();
+		PublishBudget budget = new PublishBudget(archives_, uploads_);
+		int parallel = Math.min(parallel_, projectFolders.size());
+		System.out.println("Publishing " + projectFolders.size() + " projects, " + parallel + " at a time, creating up to " + archives_ 
+			+ " archives and " + uploads_ + " uploads at the same time");
+		
+		AtomicInteger threadNumber = new AtomicInteger(1);
+		ExecutorService executor = Executors.newFixedThreadPool(parallel, (runnable) ->
+		{
+			Thread t = new Thread(runnable, "KBA-Batch-" + threadNumber.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		});
+		List<Future<Result>> futures = new ArrayList<>();
+		for (File projectFolder : projectFolders)
+		{
+			futures.add(executor.submit(() ->
+			{
+				PublishOptions options = new PublishOptions();
+				options.setBudget(budget);
+				return publish(projectFolder, options, "[" + projectFolder.getName() + "] ");
+			}));
+		}
+		
+		List<Result> results = new ArrayList<>();
+		for (int i = 0; i < futures.size(); i++)
+		{
+			try
+			{
+				results.add(futures.get(i).get());
+			}
+			catch (Exception e)
+			{
+				Result failed = new Result(projectFolders.get(i));
+				failed.error_ = e.toString();
+				results.add(failed);
+			}
+		}
+		executor.shutdown();
+		
+		int failures = 0;
+		for (Result r : results)
+		{
+			failures += (r.error_ == null ? 0 : 1);
+		}
+		System.out.println();
+		System.out.println("Published " + (results.size() - failures) + " of " + results.size() + " projects in " 
+			+ ((System.currentTimeMillis() - start) / 1000) + " seconds");
+		writeSummary(results, System.out);
+		if (summaryFile_ != null)
+		{
+			try (PrintStream ps = new PrintStream(summaryFile_, StandardCharsets.UTF_8.name()))
+			{
+				writeSummary(results, ps);
+			}
+			catch (IOException e)
+			{
+				log.error("Failed to write the summary", e);
+				System.err.println("Failed to write the summary file " + summaryFile_.getAbsolutePath() + ": " + e);
+			}
+		}
+		return failures == 0;
+	}
+
+	private static void writeSummary(List<Result> results, PrintStream out)
+	{
+		out.println("project\tartifact\tresult\tarchive\tarchiveBytes\tuploaded\tskipped\tseconds\treport\terror");
+		for (Result r : results)
+		{
+			out.println(r.projectFolder_.getAbsolutePath() + "\t" + (r.artifact_ == null ? "" : r.artifact_) + "\t" + (r.error_ == null ? "OK" : "FAILED") 
+				+ "\t" + (r.archiveName_ == null ? "" : r.archiveName_) + "\t" + r.archiveSize_ + "\t" + r.uploaded_ + "\t" + r.skipped_ 
+				+ "\t" + String.format(Locale.ENGLISH, "%.1f", r.millis_ / 1000.0) + "\t" + (r.report_ == null ? "" : r.report_.getAbsolutePath()) 
+				+ "\t" + (r.error_ == null ? "" : r.error_.replaceAll("\\s+", " ")));
+		}
+	}
+
+	/**
+	 * Save and publish a single project.  Failures are reported in the result - they are only thrown in single project mode.
+	 * @param prefix - put in front of each line of console output, to tell concurrent projects apart
+	 */
+	private Result publish(File projectFolder, PublishOptions options, String prefix) throws Exception
+	{
+		Result result = new Result(projectFolder);
+		long start = System.currentTimeMillis();
+		PublishJob job = null;
+		try
+		{
+			if (!projectFolder.isDirectory())
+			{
+				throw new Exception("The project folder " + projectFolder.getAbsolutePath() + " does not exist");
+			}
+			if (!new File(projectFolder, "pom.xml").isFile())
+			{
+				throw new Exception("The project folder " + projectFolder.getAbsolutePath() + " does not contain a pom.xml file - create the project with the GUI first");
+			}
+			Model model = PomHandler.read(projectFolder);
+			Assembly assembly = AssemblyHandler.readOrCreateBlank(projectFolder);
+			List<File> dataFiles = ProjectHandler.readDataFiles(assembly);
+	
+			String classifier = classifier_ != null ? classifier_ : ProjectHandler.readClassifier(model);
+			classifier = classifier == null ? "" : classifier.trim();
+			String dataType = dataType_ != null ? dataType_ : ProjectHandler.readDataType(model);
+			ArchiveFormat format = format_ != null ? format_ : ProjectHandler.readArchiveFormat(model);
+			
+			require(model.getName(), "name");
+			require(model.getGroupId(), "groupId");
+			require(model.getArtifactId(), "artifactId");
+			require(model.getVersion(), "version");
+			require(dataType, "data type");
+			result.artifact_ = model.getGroupId() + ":" + model.getArtifactId() + ":" + model.getVersion() + (classifier.length() > 0 ? ":" + classifier : "");
+			if (dataFiles.isEmpty())
+			{
+				throw new Exception("The project doesn't list any data files");
+			}
+			for (File f : dataFiles)
+			{
+				if (!f.exists())
+				{
+					throw new Exception("The data file " + f.getAbsolutePath() + " does not exist");
+				}
+			}
+	
+			if (save_)
+			{
+				ProjectHandler.update(model, assembly, classifier, dataType, format, dataFiles);
+				ProjectHandler.writeFiles(model, assembly, projectFolder);
+			}
+	
+			System.out.println(prefix + "Publishing " + result.artifact_ + " (" + ProjectHandler.toTypeText(dataType) + "." + format.getExtension() + ") to " + url_);
+			job = new PublishJob(model, classifier, ProjectHandler.toTypeText(dataType), format, projectFolder, dataFiles, url_, username_, password_);
+			if (deltaFrom_ != null)
+			{
+				options.setDeltaBase(deltaFrom_);
+			}
+			job.setOptions(options);
+			job.run(new ConsoleListener(prefix));
+			result.archiveName_ = job.getArchiveName();
+			result.archiveSize_ = job.getArchiveSize();
+			result.uploaded_ = job.getUploadedFiles();
+			result.skipped_ = job.getSkippedFiles();
+			result.millis_ = System.currentTimeMillis() - start;
+			result.report_ = job.getReportFile();
+			System.out.println(prefix + "Publish complete in " + (result.millis_ / 1000) + " seconds");
+			if (result.report_ != null)
+			{
+				System.out.println(prefix + "Publish report written to " + result.report_.getAbsolutePath());
+			}
+		}
+		catch (Exception e)
+		{
+			result.millis_ = System.currentTimeMillis() - start;
+			result.report_ = job == null ? null : job.getReportFile();
+			result.error_ = e.getMessage() == null ? e.toString() : e.getMessage();
+			if (prefix.length() == 0)
+			{
+				throw e;
+			}
+			log.error("Publish of " + projectFolder.getAbsolutePath() + " failed", e);
+			System.out.println(prefix + "Publish failed: " + result.error_);
+		}
+		return result;
+	}
+
+	private static void require(String value, String description) throws Exception
+	{
+		if (value == null || value.trim().length() == 0)
+		{
+			throw new Exception("The project " + description + " is required");
+		}
+	}
+
+	/**
+	 * The outcome of publishing one project.
+	 */
+	private static class Result
+	{
+		private File projectFolder_;
+		private String artifact_;
+		private String archiveName_;
+		private long archiveSize_;
+		private int uploaded_;
+		private int skipped_;
+		private long millis_;
+		private File report_;
+		private String error_;
+
+		Result(File projectFolder)
+		{
+			projectFolder_ = projectFolder;
+		}
+	}
+
+	private static class ConsoleListener implements PublishListener
+	{
+		private static final long MIN_INTERVAL = 5000;
+		private String prefix_;
+		private String title_ = "";
+		private String lastStatus_ = "";
+		private long lastPrinted_ = 0;
+		private long lastPercent_ = -1;
+
+		ConsoleListener(String prefix)
+		{
+			prefix_ = prefix;
+		}
+
+		@Override
+		public synchronized void updateTitle(String title)
+		{
+			title = (title == null ? "" : title);
+			//progress titles carry running details after the " - " - only a change of step is printed here, the details are 
+			//printed with the progress
+			String step = title.split(" - ")[0];
+			if (step.length() > 0 && !step.equals(title_.split(" - ")[0]) && !step.equals(lastStatus_))
+			{
+				System.out.println(prefix_ + "  " + step);
+			}
+			title_ = title;
+		}
+
+		@Override
+		public synchronized void addStatus(String message)
+		{
+			System.out.println(prefix_ + message);
+			lastStatus_ = message;
+		}
+
+		@Override
+		public synchronized void updateProgress(long workDone, long max)
+		{
+			if (workDone < 0 || max <= 0)
+			{
+				lastPercent_ = -1;
+				return;
+			}
+			long percent = (workDone * 100) / max;
+			long now = System.currentTimeMillis();
+			if (percent != lastPercent_ && (now - lastPrinted_ >= MIN_INTERVAL || percent >= 100))
+			{
+				System.out.println(prefix_ + "  " + (title_.length() > 0 ? title_ : "Progress") + " - " + percent + "%");
+				lastPrinted_ = now;
+				lastPercent_ = percent;
+			}
+		}
+	}
+}
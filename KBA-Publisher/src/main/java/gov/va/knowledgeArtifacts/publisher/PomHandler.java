@@ -19,7 +19,6 @@
 package gov.va.knowledgeArtifacts.publisher;
 
 import java.io.File;
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
@@ -46,8 +45,7 @@ public class PomHandler
 		{
 			try
 			{
-				JAXBContext ctx = JAXBContext.newInstance(Model.class);
-				Unmarshaller um = ctx.createUnmarshaller();
+				Unmarshaller um = JaxbService.getUnmarshaller(Model.class);
 				@SuppressWarnings("unchecked")
 				JAXBElement<Model> element = (JAXBElement<Model>) um.unmarshal(pom);
 				return element.getValue();
@@ -68,12 +66,41 @@ public class PomHandler
 		}
 	}
 
+	/**
+	 * Read just the {@link PomSummary} of the pom in the project folder - much faster than {@link #read(File)}
+	 * @return the summary, or an empty summary, if the folder doesn't contain a pom
+	 */
+	public static PomSummary readSummary(File projectFolder) throws Exception
+	{
+		File pom = new File(projectFolder, "pom.xml");
+
+		if (pom.isFile())
+		{
+			try
+			{
+				return PomSummary.read(pom);
+			}
+			catch (Exception e)
+			{
+				log.error("Error reading existing file", e);
+				throw new Exception("Error reading existing pom.xml file: " + e.toString());
+			}
+		}
+		else
+		{
+			if (pom.isDirectory())
+			{
+				throw new Exception("Found a directory named pom.xml, which isnt' supported");
+			}
+			return new PomSummary();
+		}
+	}
+
 	public static void writeFile(Model model, File projectFolder) throws Exception
 	{
 		try
 		{
-			JAXBContext ctx = JAXBContext.newInstance(Model.class);
-			Marshaller ma = ctx.createMarshaller();
+			Marshaller ma = JaxbService.getMarshaller(Model.class);
 			ma.setProperty(Marshaller.JAXB_SCHEMA_LOCATION, "http://maven.apache.org/POM/4.0.0 http://maven.apache.org/xsd/maven-4.0.0.xsd");
 			ma.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
 			ma.marshal(new ObjectFactory().createProject(model), new File(projectFolder, "pom.xml"));
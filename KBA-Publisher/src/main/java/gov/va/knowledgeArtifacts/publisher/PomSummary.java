@@ -0,0 +1,318 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher;
+
+import gov.va.knowledgeArtifacts.publisher.types.ArchiveFormat;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.apache.maven.pom._4_0.License;
+import org.apache.maven.pom._4_0.Model;
+
+/**
+ * {@link PomSummary}
+ *
+ * The handful of fields from a pom.xml that are needed to open or list a project - read with a single streaming pass, rather than
+ * building the entire JAXB {@link Model}.  The attached artifact type and classifier are found the same way as
+ * {@link ProjectHandler#readDataType(Model)} and {@link ProjectHandler#readClassifier(Model)}.
+ * 
+ * Sections that aren't summarized (dependencies, developers, contributors) are only counted, so the caller can tell whether it needs
+ * to read the full model at all.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class PomSummary
+{
+	private static final String POM_NAMESPACE = "http://maven.apache.org/POM/4.0.0";
+	private static final XMLInputFactory xmlInputFactory_;
+	
+	static
+	{
+		xmlInputFactory_ = XMLInputFactory.newInstance();
+		xmlInputFactory_.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		xmlInputFactory_.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+	
+	private String groupId_, artifactId_, version_, name_, description_, url_, organizationName_, organizationUrl_, dataType_, classifier_;
+	private ArchiveFormat archiveFormat_ = ArchiveFormat.ZIP;
+	private List<License> licenses_ = new ArrayList<>();
+	private int dependencyCount_, developerCount_, contributorCount_;
+	
+	/**
+	 * An empty summary - for a project that doesn't have a pom yet
+	 */
+	public PomSummary()
+	{
+	}
+	
+	/**
+	 * Read the summary from the passed in pom file
+	 */
+	public static PomSummary read(File pom) throws XMLStreamException, IOException
+	{
+		PomSummary result = new PomSummary();
+		try (InputStream is = new FileInputStream(pom))
+		{
+			XMLStreamReader reader = xmlInputFactory_.createXMLStreamReader(is);
+			try
+			{
+				result.read(reader);
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		return result;
+	}
+	
+	private void read(XMLStreamReader reader) throws XMLStreamException
+	{
+		//the element names from (but not including) the root project element
+		ArrayList<String> path = new ArrayList<>();
+		StringBuilder text = new StringBuilder();
+		boolean inRoot = false;
+		
+		//state for the plugin currently being read
+		String pluginArtifactId = null;
+		boolean pluginHasArtifact = false;
+		String pluginType = null;
+		String pluginClassifier = null;
+		boolean attachedArtifactFound = false;
+		License license = null;
+		
+		while (reader.hasNext())
+		{
+			switch (reader.next())
+			{
+				case XMLStreamConstants.START_ELEMENT:
+					if (!inRoot)
+					{
+						//the same check JAXB makes, so anything that can be summarized can also be read in full
+						if (!"project".equals(reader.getLocalName()) || !POM_NAMESPACE.equals(reader.getNamespaceURI()))
+						{
+							throw new XMLStreamException("Unexpected root element " + reader.getName() + " - expected {" + POM_NAMESPACE + "}project",
+									reader.getLocation());
+						}
+						inRoot = true;
+						continue;
+					}
+					path.add(reader.getLocalName());
+					text.setLength(0);
+					String start = join(path);
+					if (start.equals("licenses/license"))
+					{
+						license = new License();
+					}
+					else if (start.equals("build/plugins/plugin"))
+					{
+						pluginArtifactId = null;
+						pluginHasArtifact = false;
+						pluginType = null;
+						pluginClassifier = null;
+					}
+					else if (start.equals("dependencies/dependency"))
+					{
+						dependencyCount_++;
+					}
+					else if (start.equals("developers/developer"))
+					{
+						developerCount_++;
+					}
+					else if (start.equals("contributors/contributor"))
+					{
+						contributorCount_++;
+					}
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+					text.append(reader.getText());
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					if (path.isEmpty())
+					{
+						//end of the project element
+						return;
+					}
+					String end = join(path);
+					String value = text.toString();
+					switch (end)
+					{
+						case "groupId": groupId_ = value; break;
+						case "artifactId": artifactId_ = value; break;
+						case "version": version_ = value; break;
+						case "name": name_ = value; break;
+						case "description": description_ = value; break;
+						case "url": url_ = value; break;
+						case "organization/name": organizationName_ = value; break;
+						case "organization/url": organizationUrl_ = value; break;
+						case "licenses/license/name": license.setName(value); break;
+						case "licenses/license/url": license.setUrl(value); break;
+						case "licenses/license/distribution": license.setDistribution(value); break;
+						case "licenses/license/comments": license.setComments(value); break;
+						case "licenses/license": licenses_.add(license); license = null; break;
+						case "build/plugins/plugin/artifactId": pluginArtifactId = value; break;
+						case "build/plugins/plugin/executions/execution/configuration/artifacts/artifact/type":
+							if (!pluginHasArtifact)
+							{
+								pluginType = value;
+							}
+							break;
+						case "build/plugins/plugin/executions/execution/configuration/artifacts/artifact/classifier":
+							if (!pluginHasArtifact)
+							{
+								pluginClassifier = value;
+							}
+							break;
+						case "build/plugins/plugin/executions/execution/configuration/artifacts/artifact":
+							pluginHasArtifact = true;
+							break;
+						case "build/plugins/plugin":
+							if (!attachedArtifactFound && pluginHasArtifact && "build-helper-maven-plugin".equals(pluginArtifactId))
+							{
+								attachedArtifactFound = true;
+								classifier_ = pluginClassifier;
+								dataType_ = ArchiveFormat.stripExtension(pluginType);
+								if (ArchiveFormat.forType(pluginType) != null)
+								{
+									archiveFormat_ = ArchiveFormat.forType(pluginType);
+								}
+							}
+							break;
+						default:
+							break;
+					}
+					path.remove(path.size() - 1);
+					text.setLength(0);
+					break;
+				default:
+					break;
+			}
+		}
+	}
+	
+	private static String join(List<String> path)
+	{
+		if (path.size() == 1)
+		{
+			return path.get(0);
+		}
+		StringBuilder sb = new StringBuilder();
+		for (String s : path)
+		{
+			if (sb.length() > 0)
+			{
+				sb.append('/');
+			}
+			sb.append(s);
+		}
+		return sb.toString();
+	}
+
+	public String getGroupId()
+	{
+		return groupId_;
+	}
+
+	public String getArtifactId()
+	{
+		return artifactId_;
+	}
+
+	public String getVersion()
+	{
+		return version_;
+	}
+
+	public String getName()
+	{
+		return name_;
+	}
+
+	public String getDescription()
+	{
+		return description_;
+	}
+
+	public String getUrl()
+	{
+		return url_;
+	}
+
+	public String getOrganizationName()
+	{
+		return organizationName_;
+	}
+
+	public String getOrganizationUrl()
+	{
+		return organizationUrl_;
+	}
+
+	/**
+	 * @return the type of the attached artifact (without the archive extension, such as .zip), or null, if the pom doesn't attach an artifact
+	 */
+	public String getDataType()
+	{
+		return dataType_;
+	}
+
+	/**
+	 * @return the classifier of the attached artifact, or null, if it doesn't have one
+	 */
+	public String getClassifier()
+	{
+		return classifier_;
+	}
+
+	/**
+	 * @return the archive format of the attached artifact - {@link ArchiveFormat#ZIP}, if the pom doesn't say
+	 */
+	public ArchiveFormat getArchiveFormat()
+	{
+		return archiveFormat_;
+	}
+
+	public List<License> getLicenses()
+	{
+		return licenses_;
+	}
+
+	public int getDependencyCount()
+	{
+		return dependencyCount_;
+	}
+
+	public int getDeveloperCount()
+	{
+		return developerCount_;
+	}
+
+	public int getContributorCount()
+	{
+		return contributorCount_;
+	}
+}
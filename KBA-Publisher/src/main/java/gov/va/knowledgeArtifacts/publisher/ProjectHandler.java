@@ -0,0 +1,355 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher;
+
+import gov.va.knowledgeArtifacts.publisher.types.ArchiveFormat;
+import gov.va.knowledgeArtifacts.publisher.types.KnowledgeArtifactType;
+import gov.va.knowledgeArtifacts.publisher.types.SpecialFile;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.maven.plugins.maven_assembly_plugin.assembly._1_1.Assembly;
+import org.apache.maven.plugins.maven_assembly_plugin.assembly._1_1.Assembly.FileSets;
+import org.apache.maven.plugins.maven_assembly_plugin.assembly._1_1.Assembly.Files;
+import org.apache.maven.plugins.maven_assembly_plugin.assembly._1_1.Assembly.Formats;
+import org.apache.maven.plugins.maven_assembly_plugin.assembly._1_1.FileItem;
+import org.apache.maven.plugins.maven_assembly_plugin.assembly._1_1.FileSet;
+import org.apache.maven.pom._4_0.Build;
+import org.apache.maven.pom._4_0.Build.Plugins;
+import org.apache.maven.pom._4_0.License;
+import org.apache.maven.pom._4_0.Model;
+import org.apache.maven.pom._4_0.Plugin;
+import org.apache.maven.pom._4_0.Plugin.Executions;
+import org.apache.maven.pom._4_0.PluginExecution;
+import org.apache.maven.pom._4_0.PluginExecution.Configuration;
+import org.apache.maven.pom._4_0.PluginExecution.Configuration.Artifacts;
+import org.apache.maven.pom._4_0.PluginExecution.Configuration.Artifacts.Artifact;
+import org.apache.maven.pom._4_0.PluginExecution.Configuration.Descriptors;
+import org.apache.maven.pom._4_0.PluginExecution.Goals;
+
+/**
+ * {@link ProjectHandler}
+ *
+ * The parts of reading and saving a project folder that don't depend on the GUI - shared by the {@link PublisherController} and
+ * the headless {@link KBAPublisherCLI}.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class ProjectHandler
+{
+	/**
+	 * @return the type of the attached artifact (without the archive extension, such as .zip), or null, if the pom doesn't attach an artifact
+	 */
+	public static String readDataType(Model model)
+	{
+		Artifact a = findAttachedArtifact(model);
+		if (a == null || a.getType() == null)
+		{
+			return null;
+		}
+		return ArchiveFormat.stripExtension(a.getType());
+	}
+
+	/**
+	 * @return the archive format of the attached artifact - {@link ArchiveFormat#ZIP} if the pom doesn't attach an artifact, or 
+	 * doesn't say
+	 */
+	public static ArchiveFormat readArchiveFormat(Model model)
+	{
+		Artifact a = findAttachedArtifact(model);
+		ArchiveFormat format = (a == null ? null : ArchiveFormat.forType(a.getType()));
+		return format == null ? ArchiveFormat.ZIP : format;
+	}
+
+	/**
+	 * @return the classifier of the attached artifact, or null, if it doesn't have one
+	 */
+	public static String readClassifier(Model model)
+	{
+		Artifact a = findAttachedArtifact(model);
+		return a == null ? null : a.getClassifier();
+	}
+
+	/**
+	 * @return the data files and folders listed in the assembly - excluding the {@link SpecialFile}s
+	 */
+	public static List<File> readDataFiles(Assembly assembly)
+	{
+		//TODO this mechanism of handling files won't cope well with absolute paths and jumping from one system to another...
+		List<File> result = new ArrayList<>();
+		FileSets fileSets = assembly.getFileSets();
+		if (fileSets != null)
+		{
+			for (FileSet fs : fileSets.getFileSet())
+			{
+				result.add(new File(fs.getDirectory()));
+			}
+		}
+		
+		Files files = assembly.getFiles();
+		if (files != null)
+		{
+			for (FileItem fi : files.getFile())
+			{
+				boolean skip = false;
+				for (SpecialFile sf : SpecialFile.SPECIAL_FILES)
+				{
+					if (sf.getSource().equals(fi.getSource()))
+					{
+						skip = true;
+						break;
+					}
+				}
+				
+				if (!skip)
+				{
+					result.add(new File(fi.getSource()));
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Set up the assembly, and the packaging and build sections of the pom, to create the archive of the data files.
+	 * The descriptive fields of the model (name, version, licenses, etc) must already be set.
+	 * @param dataType - a {@link KnowledgeArtifactType} (in any of its forms) or any other type
+	 * @param format - the archive to create - null for {@link ArchiveFormat#ZIP}
+	 */
+	public static void update(Model model, Assembly assembly, String classifier, String dataType, ArchiveFormat format, List<File> dataFiles)
+	{
+		//The ID field is supposed to be used for the classifier.
+		//However, due to the way we are trying to hack maven - at this stage of the build, we need to also use the classifier field to distinguish 
+		//type - otherwise, maven will get confused when it tries to make the zip files - because the assembly code names the file simply using classifier + .zip.
+		//So, merge the classifier and type together into this field...
+		ArchiveFormat archiveFormat = (format == null ? ArchiveFormat.ZIP : format);
+
+		String classifierPlusType = "";
+		String typeText = toTypeText(dataType);
+		String classifierText = classifier.trim();
+		classifierPlusType = classifierText + "." + typeText;
+		
+		assembly.setId(classifierPlusType);
+		
+		assembly.setBaseDirectory("${artifactId}-${version}" + (classifierText.length() > 0 ? "-" : "") + assembly.getId());
+		
+		Formats formats = new Formats();
+		formats.getFormat().add(archiveFormat.getExtension());
+		assembly.setFormats(formats);
+		
+		Files files = new Files();
+		FileSets fileSets = new FileSets();
+		
+		for (File f : dataFiles)
+		{
+			if (f.isFile())
+			{
+				FileItem fileItem = new FileItem();
+				fileItem.setSource(f.getAbsolutePath());
+				files.getFile().add(fileItem);
+			}
+			else
+			{  //directory
+				FileSet fs = new FileSet();
+				fs.setDirectory(f.getAbsolutePath());
+				fs.setOutputDirectory(f.getName());
+				fileSets.getFileSet().add(fs);
+			}
+		}
+		
+		//The code that puts the pom and other things in the zip file
+		
+		for (SpecialFile sf : SpecialFile.SPECIAL_FILES)
+		{
+			FileItem fi = new FileItem();
+			fi.setSource(sf.getSource());
+			fi.setOutputDirectory(sf.getOutputDirectory());
+			fi.setFiltered(sf.filter());
+			files.getFile().add(fi);
+		}
+		
+		assembly.setFiles(files);
+		assembly.setFileSets(fileSets);
+		
+		model.setModelVersion("4.0.0");
+		model.setPackaging("pom");
+		
+		Build build = new Build();
+		Plugins plugins = new Plugins();
+
+		//Assembly plugin section
+		Plugin plugin = new Plugin();
+		plugin.setGroupId("org.apache.maven.plugins");
+		plugin.setArtifactId("maven-assembly-plugin");
+		plugin.setVersion(archiveFormat.getAssemblyPluginVersion());
+		Executions executions = new Executions();
+		PluginExecution execution = new PluginExecution();
+		execution.setId("zip");
+		Goals goals = new Goals();
+		goals.getGoal().add("single");
+		execution.setGoals(goals);
+		execution.setPhase("package");
+		Configuration configuration = new Configuration();
+		
+		Descriptors descriptors = new Descriptors();
+		descriptors.getDescriptor().add("${basedir}/src/assembly/assembly.xml");
+		configuration.setDescriptors(descriptors);
+		configuration.setAttach(false);  //don't attach these during build - because the type / classifier is mucked up (on purpose) we customize the attach below
+		configuration.setEncoding("UTF-8");
+		if (archiveFormat.isTar())
+		{
+			//the paths of RF2 releases are often longer than the 100 characters a plain tar header allows
+			configuration.setTarLongFileMode("gnu");
+		}
+
+		execution.setConfiguration(configuration);
+		executions.getExecution().add(execution);
+		
+		plugin.setExecutions(executions);
+		plugins.getPlugin().add(plugin);
+		
+		//attach artifacts section
+		plugin = new Plugin();
+		plugin.setGroupId("org.codehaus.mojo");
+		plugin.setArtifactId("build-helper-maven-plugin");
+		plugin.setVersion("1.8");
+		executions = new Executions();
+		execution = new PluginExecution();
+		execution.setId("attach-artifact");
+		goals = new Goals();
+		goals.getGoal().add("attach-artifact");
+		execution.setGoals(goals);
+		configuration = new Configuration();
+		
+		Artifacts artifacts = new Artifacts();
+		Artifact artifact = new Artifact();
+		artifact.setType(typeText + "." + archiveFormat.getExtension());
+		artifact.setFile("${project.build.directory}/${project.build.finalName}-" + classifierPlusType + "." + archiveFormat.getExtension());
+		if (classifierText.length() > 0)
+		{
+			artifact.setClassifier(classifierText);
+		}
+		artifacts.getArtifact().add(artifact);
+		configuration.setArtifacts(artifacts);
+
+		execution.setConfiguration(configuration);
+		executions.getExecution().add(execution);
+		
+		plugin.setExecutions(executions);
+		plugins.getPlugin().add(plugin);
+		
+		build.setPlugins(plugins);
+		model.setBuild(build);
+	}
+
+	/**
+	 * @return the short form of the type - as used in file names - for a known {@link KnowledgeArtifactType}, otherwise, the type as passed in
+	 */
+	public static String toTypeText(String dataType)
+	{
+		KnowledgeArtifactType type = KnowledgeArtifactType.parse(dataType);
+		return type == null ? dataType : type.getType();
+	}
+
+	/**
+	 * Write the pom, assembly, license and manifest files into the project folder.
+	 */
+	public static void writeFiles(Model model, Assembly assembly, File projectFolder) throws Exception
+	{
+		PomHandler.writeFile(model, projectFolder);
+		AssemblyHandler.writeFile(assembly, projectFolder);
+		
+		writeLicenseFile(model, projectFolder);
+		writeManifestFile(model, projectFolder);
+	}
+
+	private static Artifact findAttachedArtifact(Model model)
+	{
+		if (model.getBuild() != null && model.getBuild().getPlugins() != null)
+		{
+			for (Plugin p : model.getBuild().getPlugins().getPlugin())
+			{
+				if ("build-helper-maven-plugin".equals(p.getArtifactId()) && p.getExecutions() != null)
+				{
+					for (PluginExecution pe : p.getExecutions().getExecution())
+					{
+						if (pe.getConfiguration() != null && pe.getConfiguration().getArtifacts() != null
+								&& pe.getConfiguration().getArtifacts().getArtifact().size() > 0)
+						{
+							return pe.getConfiguration().getArtifacts().getArtifact().get(0);
+						}
+					}
+				}
+			}
+		}
+		return null;
+	}
+	
+	private static void writeLicenseFile(Model model, File projectFolder) throws IOException
+	{
+		StringBuilder sb = new StringBuilder();
+		int i = 0;
+		if (model.getLicenses() != null)
+		{
+			for (License l : model.getLicenses().getLicense())
+			{
+				if (l != null)
+				{
+					sb.append("Name:  ${project.licenses[" + i + "].name}");
+					sb.append("\r\n");
+					sb.append("URL:  ${project.licenses[" + i + "].url}");
+					sb.append("\r\n");
+					sb.append("Comments:  ${project.licenses[" + i + "].comments}");
+					sb.append("\r\n");
+					sb.append("Distribution:  ${project.licenses[" + i++ + "].distribution}");
+					sb.append("\r\n");
+				}
+			}
+		}
+		
+		java.nio.file.Files.write(new File(new File(new File(projectFolder, "src"), "assembly"), "LICENSE.txt").toPath(), sb.toString().getBytes(), 
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+	
+	private static void writeManifestFile(Model model, File projectFolder) throws IOException
+	{
+		StringBuilder sb = new StringBuilder();
+		
+		sb.append("Manifest-Version: 1.0");
+		sb.append("\r\n");
+		sb.append("Created-By: ${java.version} (${java.vendor})");
+		sb.append("\r\n");
+		sb.append("Implementation-Title: ${project.name}");
+		sb.append("\r\n");
+		sb.append("Implementation-Version: ${project.version}");
+		sb.append("\r\n");
+		sb.append("Implementation-Vendor-Id: ${project.groupId}");
+		sb.append("\r\n");
+		if (model.getOrganization() != null && model.getOrganization().getName() != null && model.getOrganization().getName().length() > 0)
+		{
+			sb.append("Implementation-Vendor: ${project.organization.name}");
+			sb.append("\r\n");
+		}
+		
+		java.nio.file.Files.write(new File(new File(new File(projectFolder, "src"), "assembly"), "MANIFEST.MF").toPath(), sb.toString().getBytes(), 
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+}
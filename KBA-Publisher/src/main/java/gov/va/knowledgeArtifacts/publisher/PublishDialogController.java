@@ -23,6 +23,9 @@ import gov.va.isaac.gui.util.ErrorMarkerUtils;
 import gov.va.isaac.interfaces.gui.CommonDialogsI;
 import gov.va.isaac.util.ValidBooleanBinding;
 import gov.va.knowledgeArtifacts.publisher.publish.Publish;
+import gov.va.knowledgeArtifacts.publisher.publish.PublishJob;
+import gov.va.knowledgeArtifacts.publisher.publish.PublishOptions;
+import gov.va.knowledgeArtifacts.publisher.types.ArchiveFormat;
 import java.io.File;
 import java.net.URL;
 import java.util.List;
@@ -30,6 +33,7 @@ import java.util.ResourceBundle;
 import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.PasswordField;
 import javafx.scene.control.ProgressBar;
@@ -59,13 +63,16 @@ public class PublishDialogController
 	@FXML private TextField username;
 	@FXML private TextArea status;
 	@FXML private Label progressBarLabel;
+	@FXML private CheckBox streamingUpload;
 	
 	private Model model_;
 	private String classifier_;
 	private String dataType_;
+	private ArchiveFormat format_;
 	private File projectFolder_;
 	private List<File> dataFiles_;
 	private ValidBooleanBinding urlValid;
+	private PublishOptions options_ = new PublishOptions();
 
 	@FXML
 	void initialize()
@@ -77,8 +84,10 @@ public class PublishDialogController
 		assert username != null : "fx:id=\"username\" was not injected: check your FXML file 'PublishDialog.fxml'.";
 		assert status != null : "fx:id=\"status\" was not injected: check your FXML file 'PublishDialog.fxml'.";
 		assert progressBarLabel != null : "fx:id=\"progressBarLabel\" was not injected: check your FXML file 'PublishDialog.fxml'.";
+		assert streamingUpload != null : "fx:id=\"streamingUpload\" was not injected: check your FXML file 'PublishDialog.fxml'.";
 		
-		url.setText("https://va.maestrodev.com/archiva/repository/data-files/");
+		url.setText(PublishJob.DEFAULT_REPOSITORY_URL);
+		streamingUpload.setSelected(options_.isStreamingUpload());
 		
 		urlValid = new ValidBooleanBinding()
 		{
@@ -124,11 +133,12 @@ public class PublishDialogController
 		
 	}
 	
-	protected void finishInit(Model model, String classifier, String dataType, File projectFolder, List<File> dataFiles)
+	protected void finishInit(Model model, String classifier, String dataType, ArchiveFormat format, File projectFolder, List<File> dataFiles)
 	{
 		model_ = model;
 		classifier_ = classifier;
 		dataType_ = dataType;
+		format_ = format;
 		projectFolder_ = projectFolder;
 		dataFiles_ = dataFiles;
 	}
@@ -137,11 +147,14 @@ public class PublishDialogController
 	{
 		publishButton.disableProperty().unbind();
 		publishButton.setDisable(true);
+		streamingUpload.setDisable(true);
 		progressBar.setVisible(true);
 		status.setVisible(true);
 		status.setText("Publishing...");
 
-		Publish task = new Publish(model_, classifier_, dataType_, projectFolder_, dataFiles_, url.getText(), username.getText(), password.getText());
+		Publish task = new Publish(model_, classifier_, dataType_, format_, projectFolder_, dataFiles_, url.getText(), username.getText(), password.getText());
+		options_.setStreamingUpload(streamingUpload.isSelected());
+		task.setOptions(options_);
 		task.setOnSucceeded((event) -> 
 		{
 			taskFinished(task);
@@ -175,5 +188,6 @@ public class PublishDialogController
 			status.setText(status.getText() + "\r\nComplete");
 		}
 		publishButton.disableProperty().bind(urlValid.not());
+		streamingUpload.setDisable(false);
 	}
 }
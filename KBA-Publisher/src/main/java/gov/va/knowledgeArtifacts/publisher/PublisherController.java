@@ -25,17 +25,20 @@ import gov.va.isaac.util.UpdateableBooleanBinding;
 import gov.va.knowledgeArtifacts.publisher.guiComponents.DependencyComponent;
 import gov.va.knowledgeArtifacts.publisher.guiComponents.LicenseComponent;
 import gov.va.knowledgeArtifacts.publisher.guiComponents.UserComponent;
+import gov.va.knowledgeArtifacts.publisher.types.ArchiveFormat;
 import gov.va.knowledgeArtifacts.publisher.types.KnowledgeArtifactType;
-import gov.va.knowledgeArtifacts.publisher.types.SpecialFile;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import javafx.application.Platform;
 import javafx.beans.binding.BooleanBinding;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
@@ -44,11 +47,14 @@ import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.ComboBox;
+import javafx.scene.control.ListCell;
 import javafx.scene.control.ListView;
 import javafx.scene.control.SelectionMode;
+import javafx.scene.control.Tab;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 import javafx.scene.control.TextInputControl;
+import javafx.scene.control.Tooltip;
 import javafx.scene.image.Image;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.GridPane;
@@ -60,13 +66,6 @@ import javafx.stage.Modality;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
 import org.apache.maven.plugins.maven_assembly_plugin.assembly._1_1.Assembly;
-import org.apache.maven.plugins.maven_assembly_plugin.assembly._1_1.Assembly.FileSets;
-import org.apache.maven.plugins.maven_assembly_plugin.assembly._1_1.Assembly.Files;
-import org.apache.maven.plugins.maven_assembly_plugin.assembly._1_1.Assembly.Formats;
-import org.apache.maven.plugins.maven_assembly_plugin.assembly._1_1.FileItem;
-import org.apache.maven.plugins.maven_assembly_plugin.assembly._1_1.FileSet;
-import org.apache.maven.pom._4_0.Build;
-import org.apache.maven.pom._4_0.Build.Plugins;
 import org.apache.maven.pom._4_0.Contributor;
 import org.apache.maven.pom._4_0.Dependency;
 import org.apache.maven.pom._4_0.Developer;
@@ -77,14 +76,6 @@ import org.apache.maven.pom._4_0.Model.Dependencies;
 import org.apache.maven.pom._4_0.Model.Developers;
 import org.apache.maven.pom._4_0.Model.Licenses;
 import org.apache.maven.pom._4_0.Organization;
-import org.apache.maven.pom._4_0.Plugin;
-import org.apache.maven.pom._4_0.Plugin.Executions;
-import org.apache.maven.pom._4_0.PluginExecution;
-import org.apache.maven.pom._4_0.PluginExecution.Configuration;
-import org.apache.maven.pom._4_0.PluginExecution.Configuration.Artifacts;
-import org.apache.maven.pom._4_0.PluginExecution.Configuration.Artifacts.Artifact;
-import org.apache.maven.pom._4_0.PluginExecution.Configuration.Descriptors;
-import org.apache.maven.pom._4_0.PluginExecution.Goals;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -96,10 +87,10 @@ import org.slf4j.LoggerFactory;
 public class PublisherController
 {
 	private static Logger log = LoggerFactory.getLogger(PublisherController.class);
-	@FXML private GridPane contributorsGridPane;	
 	@FXML private TextField orgName;
 	@FXML private TextField groupId;
 	@FXML private ComboBox<String> dataType;
+	@FXML private ComboBox<String> archiveFormat;
 	@FXML private HBox bottomBox;
 	@FXML private Button save;
 	@FXML private TextArea description;
@@ -111,8 +102,6 @@ public class PublisherController
 	@FXML private TextField url;
 	@FXML private Button addDataFolder;
 	@FXML private Button projectFolderFileChooser;
-	@FXML private GridPane dependenciesGridPane;
-	@FXML private GridPane developersGridPane;
 	@FXML private BorderPane root;
 	@FXML private Button publish;
 	@FXML private TextField name;
@@ -122,14 +111,22 @@ public class PublisherController
 	@FXML private ListView<File> dataFiles;
 	
 	@FXML private Button addLicenseButton;
-	@FXML private Button addContributorButton;
-	@FXML private Button addDeveloperButton;
-	@FXML private Button addDependencyButton;
+	@FXML private Tab dependenciesTab;
+	@FXML private Tab developersTab;
+	@FXML private Tab contributorsTab;
+	
+	//The rarely used tabs are only built when first shown - these are null until then
+	private GridPane dependenciesGridPane, developersGridPane, contributorsGridPane;
 	
 	private File projectFolder_ = null;
 	private Model model_;
+	private PomSummary pomSummary_ = new PomSummary();
 	private Assembly assembly_;
 	
+	private ContentSniffer sniffer_ = new ContentSniffer(new File(System.getProperty("user.home"), ".kbaPublisher"), 2);
+	//What was recognized in each of the data files - only touched on the FX thread
+	private Map<File, SniffResult> sniffed_ = new HashMap<>();
+	
 	private ArrayList<LicenseComponent> licenseComponents = new ArrayList<>();
 	private ArrayList<UserComponent> developerComponents = new ArrayList<>();
 	private ArrayList<UserComponent> contributorComponents = new ArrayList<>();
@@ -141,10 +138,10 @@ public class PublisherController
 	@FXML
 	void initialize()
 	{
-		assert contributorsGridPane != null : "fx:id=\"contributorsTab\" was not injected: check your FXML file 'Publisher.fxml'.";
 		assert orgName != null : "fx:id=\"orgName\" was not injected: check your FXML file 'Publisher.fxml'.";
 		assert groupId != null : "fx:id=\"groupId\" was not injected: check your FXML file 'Publisher.fxml'.";
 		assert dataType != null : "fx:id=\"dataType\" was not injected: check your FXML file 'Publisher.fxml'.";
+		assert archiveFormat != null : "fx:id=\"archiveFormat\" was not injected: check your FXML file 'Publisher.fxml'.";
 		assert bottomBox != null : "fx:id=\"bottomBox\" was not injected: check your FXML file 'Publisher.fxml'.";
 		assert save != null : "fx:id=\"save\" was not injected: check your FXML file 'Publisher.fxml'.";
 		assert description != null : "fx:id=\"description\" was not injected: check your FXML file 'Publisher.fxml'.";
@@ -155,8 +152,6 @@ public class PublisherController
 		assert url != null : "fx:id=\"url\" was not injected: check your FXML file 'Publisher.fxml'.";
 		assert addDataFolder != null : "fx:id=\"addDataFolder\" was not injected: check your FXML file 'Publisher.fxml'.";
 		assert projectFolderFileChooser != null : "fx:id=\"projectFolderFileChooser\" was not injected: check your FXML file 'Publisher.fxml'.";
-		assert dependenciesGridPane != null : "fx:id=\"dependenciesGridPane\" was not injected: check your FXML file 'Publisher.fxml'.";
-		assert developersGridPane != null : "fx:id=\"developersGridPane\" was not injected: check your FXML file 'Publisher.fxml'.";
 		assert root != null : "fx:id=\"root\" was not injected: check your FXML file 'Publisher.fxml'.";
 		assert publish != null : "fx:id=\"publish\" was not injected: check your FXML file 'Publisher.fxml'.";
 		assert name != null : "fx:id=\"name\" was not injected: check your FXML file 'Publisher.fxml'.";
@@ -166,15 +161,20 @@ public class PublisherController
 		assert dataFiles != null : "fx:id=\"dataFiles\" was not injected: check your FXML file 'Publisher.fxml'.";
 		
 		assert addLicenseButton != null : "fx:id=\"addLicenseButton\" was not injected: check your FXML file 'Publisher.fxml'.";
-		assert addContributorButton != null : "fx:id=\"addLicenseButton\" was not injected: check your FXML file 'Publisher.fxml'.";
-		assert addDeveloperButton != null : "fx:id=\"addLicenseButton\" was not injected: check your FXML file 'Publisher.fxml'.";
-		assert addDependencyButton != null : "fx:id=\"addCompileDependencyButton\" was not injected: check your FXML file 'Publisher.fxml'.";
+		assert dependenciesTab != null : "fx:id=\"dependenciesTab\" was not injected: check your FXML file 'Publisher.fxml'.";
+		assert developersTab != null : "fx:id=\"developersTab\" was not injected: check your FXML file 'Publisher.fxml'.";
+		assert contributorsTab != null : "fx:id=\"contributorsTab\" was not injected: check your FXML file 'Publisher.fxml'.";
 		
 
 		for (KnowledgeArtifactType type : KnowledgeArtifactType.values())
 		{
 			dataType.getItems().add(type.getNiceName());
 		}
+		for (ArchiveFormat format : ArchiveFormat.values())
+		{
+			archiveFormat.getItems().add(format.getNiceName());
+		}
+		archiveFormat.getSelectionModel().select(ArchiveFormat.ZIP.getNiceName());
 
 		projectFolderFileChooser.setOnAction((actionEvent) -> {
 			DirectoryChooser fc = new DirectoryChooser();
@@ -220,12 +220,35 @@ public class PublisherController
 		};
 		
 		dataFiles.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+		dataFiles.setCellFactory((listView) -> new ListCell<File>()
+		{
+			@Override
+			protected void updateItem(File item, boolean empty)
+			{
+				super.updateItem(item, empty);
+				if (empty || item == null)
+				{
+					setText(null);
+					setTooltip(null);
+					setStyle("");
+					return;
+				}
+				SniffResult sr = sniffed_.get(item);
+				String mismatch = findMismatch(sr);
+				setText(item.toString() + (sr == null || sr.getSummary() == null ? "" : "  [" + sr.getSummary() + "]"));
+				setTooltip(mismatch == null ? null : new Tooltip(mismatch));
+				setStyle(mismatch == null ? "" : "-fx-text-fill: darkorange;");
+			}
+		});
+		//re-check the data files against the newly chosen type
+		dataType.valueProperty().addListener((observable, oldValue, newValue) -> dataFiles.refresh());
 		
 		removeDataFile.disableProperty().bind(itemSelected.not());
 		removeDataFile.setOnAction((actionEvent) -> {
 			for (File f : dataFiles.getSelectionModel().getSelectedItems())
 			{
 				dataFiles.getItems().remove(f);
+				sniffed_.remove(f);
 			}
 		});
 		
@@ -362,25 +385,58 @@ public class PublisherController
 		publish.setOnAction((actionEvent) -> {publish();});
 		
 		addLicenseButton.setOnAction((actionEvent) -> {licenseTabAddRow(null);});
-		addContributorButton.setOnAction((actionEvent) -> {contributorsTabAddRow(null);});
-		addDeveloperButton.setOnAction((actionEvent) -> {developerTabAddRow(null);});
-		addDependencyButton.setOnAction((actionEvent) -> {dependenciesTabAddRow(null);});
 		
 		licenseGridPane.getChildren().clear();
 		licenseGridPane.getRowConstraints().clear();
 		licenseTabAddRow(null);
 		
-		developersGridPane.getChildren().clear();
-		developersGridPane.getRowConstraints().clear();
-		developerTabAddRow(null);
+		setupLazyTab(developersTab, "Add Developer", (gridPane, addButton) ->
+		{
+			developersGridPane = gridPane;
+			addButton.setOnAction((actionEvent) -> {developerTabAddRow(null);});
+			fillDevelopersTab();
+		});
 		
-		contributorsGridPane.getChildren().clear();
-		contributorsGridPane.getRowConstraints().clear();
-		contributorsTabAddRow(null);
+		setupLazyTab(contributorsTab, "Add Contributor", (gridPane, addButton) ->
+		{
+			contributorsGridPane = gridPane;
+			addButton.setOnAction((actionEvent) -> {contributorsTabAddRow(null);});
+			fillContributorsTab();
+		});
 		
-		dependenciesGridPane.getChildren().clear();
-		dependenciesGridPane.getRowConstraints().clear();
-		dependenciesTabAddRow(null);
+		setupLazyTab(dependenciesTab, "Add Dependency", (gridPane, addButton) ->
+		{
+			dependenciesGridPane = gridPane;
+			addButton.setOnAction((actionEvent) -> {dependenciesTabAddRow(null);});
+			fillDependenciesTab();
+		});
+	}
+	
+	/**
+	 * Build the content of the tab from RowsTab.fxml, the first time that the tab is shown.
+	 * @param built - called with the grid pane and the add button of the new content, to populate it
+	 */
+	private void setupLazyTab(Tab tab, String addButtonText, BiConsumer<GridPane, Button> built)
+	{
+		tab.selectedProperty().addListener((observable, oldValue, newValue) ->
+		{
+			if (newValue && tab.getContent() == null)
+			{
+				try
+				{
+					FXMLLoader loader = new FXMLLoader(PublisherController.class.getResource("RowsTab.fxml"));
+					loader.load();
+					Button addButton = (Button)loader.getNamespace().get("addButton");
+					addButton.setText(addButtonText);
+					built.accept((GridPane)loader.getNamespace().get("gridPane"), addButton);
+					tab.setContent(loader.getRoot());
+				}
+				catch (IOException e)
+				{
+					log.error("Unexpected error building the " + tab.getText() + " tab", e);
+				}
+			}
+		});
 	}
 	private void addUnique(List<File> files)
 	{
@@ -394,101 +450,91 @@ public class PublisherController
 		{
 			if (!current.contains(f.getAbsolutePath()))
 			{
-				//TODO - if a known data type - like KIE, or CDS - scan it, and pick out some useful info
 				dataFiles.getItems().add(f);
 				current.add(f.getAbsolutePath());
+				sniff(f);
 			}
 		}
 	}
 	
-	private void save()
+	/**
+	 * Recognize the content of the data file in the background - then use what was found to fill in the empty fields, and to
+	 * point out a data file that doesn't match the data type.
+	 */
+	private void sniff(File f)
 	{
-		KnowledgeArtifactType type = KnowledgeArtifactType.parse(dataType.getValue());
-		
-		//The ID field is supposed to be used for the classifier.
-		//However, due to the way we are trying to hack maven - at this stage of the build, we need to also use the classifier field to distinguish 
-		//type - otherwise, maven will get confused when it tries to make the zip files - because the assembly code names the file simply using classifier + .zip.
-		//So, merge the classifier and type together into this field...
-
-		String classifierPlusType = "";
-		String typeText = "";
-		if (type == null)
-		{
-			typeText = dataType.getValue();
-		}
-		else
+		sniffer_.sniff(f).thenAccept((result) -> Platform.runLater(() -> 
 		{
-			typeText = type.getType();
-		}
-		String classifierText = classifier.getText().trim();
-		classifierPlusType = classifierText + "." + typeText;
-		
-		assembly_.setId(classifierPlusType);
-		
-		assembly_.setBaseDirectory("${artifactId}-${version}" + (classifierText.length() > 0 ? "-" : "") + assembly_.getId());
-		
-		Formats formats = new Formats();
-		formats.getFormat().add("zip");
-		assembly_.setFormats(formats);
-		
-		Files files = new Files();
-		FileSets fileSets = new FileSets();
-		
-		for (File f : dataFiles.getItems())
-		{
-			if (f.isFile())
+			//removed, or a different project opened, while it was being sniffed
+			if (!dataFiles.getItems().contains(f))
 			{
-				FileItem fileItem = new FileItem();
-				fileItem.setSource(f.getAbsolutePath());
-				files.getFile().add(fileItem);
+				return;
 			}
-			else
-			{  //directory
-				FileSet fs = new FileSet();
-				fs.setDirectory(f.getAbsolutePath());
-				fs.setOutputDirectory(f.getName());
-				fileSets.getFileSet().add(fs);
+			sniffed_.put(f, result);
+			if (result.getType() != null)
+			{
+				if (dataType.getValue() == null || dataType.getValue().length() == 0)
+				{
+					dataType.getSelectionModel().select(result.getType().getNiceName());
+				}
+				if (version.getText().length() == 0 && result.getVersion() != null)
+				{
+					version.setText(result.getVersion());
+				}
+				if (description.getText().length() == 0 && result.getDescription() != null)
+				{
+					description.setText(result.getDescription());
+				}
 			}
+			dataFiles.refresh();
+		}));
+	}
+	
+	/**
+	 * @return why the data file doesn't look right for the project - or null, if it does (or isn't recognized)
+	 */
+	private String findMismatch(SniffResult sr)
+	{
+		if (sr == null)
+		{
+			return null;
 		}
-		
-		//The code that puts the pom and other things in the zip file
-		
-		for (SpecialFile sf : SpecialFile.SPECIAL_FILES)
+		KnowledgeArtifactType selected = KnowledgeArtifactType.parse(dataType.getValue());
+		if (sr.getType() != null && selected != null && sr.getType() != selected)
 		{
-			FileItem fi = new FileItem();
-			fi.setSource(sf.getSource());
-			fi.setOutputDirectory(sf.getOutputDirectory());
-			fi.setFiltered(sf.filter());
-			files.getFile().add(fi);
+			return "This looks like " + sr.getType().getNiceName() + " content, but the Data Type is " + selected.getNiceName();
 		}
-		
-		assembly_.setFiles(files);
-		assembly_.setFileSets(fileSets);
-		
-		model_.setModelVersion("4.0.0");
-		model_.setPackaging("pom");
-		
-		model_.setName(name.getText());
-		model_.setDescription(description.getText());
-		model_.setUrl(url.getText());
-		model_.setGroupId(groupId.getText());
-		model_.setArtifactId(artifactId.getText());
-		model_.setVersion(version.getText());
+		return sr.getWarning();
+	}
+	
+	private void save()
+	{
+		Model model = getModel();
+		model.setName(name.getText());
+		model.setDescription(description.getText());
+		model.setUrl(url.getText());
+		model.setGroupId(groupId.getText());
+		model.setArtifactId(artifactId.getText());
+		model.setVersion(version.getText());
 		Organization o = new Organization();
 		o.setName(orgName.getText());
 		o.setUrl(orgUrl.getText());
-		model_.setOrganization(o);
+		model.setOrganization(o);
 
-		Dependencies dependencies = new Dependencies();
-		for (DependencyComponent dc : dependenciesComponents)
+		//If the tab was never shown, the model still holds what was read from the pom
+		if (dependenciesGridPane != null)
 		{
-			Dependency d = dc.getDependency();
-			if (d != null)
+			Dependencies dependencies = new Dependencies();
+			for (DependencyComponent dc : dependenciesComponents)
 			{
-				dependencies.getDependency().add(d);
+				Dependency d = dc.getDependency();
+				if (d != null)
+				{
+					dependencies.getDependency().add(d);
+				}
 			}
+			model.setDependencies(dependencies);
 		}
-		model_.setDependencies(dependencies);
 		
 		Licenses licenses = new Licenses();
 		for (LicenseComponent lc : licenseComponents)
@@ -499,99 +545,41 @@ public class PublisherController
 				licenses.getLicense().add(l);
 			}
 		}
-		model_.setLicenses(licenses);
+		model.setLicenses(licenses);
 		
-		Developers developers = new Developers();
-		for (UserComponent uc : developerComponents)
+		if (developersGridPane != null)
 		{
-			Developer d = uc.getDeveloper();
-			if (d != null)
+			Developers developers = new Developers();
+			for (UserComponent uc : developerComponents)
 			{
-				developers.getDeveloper().add(d);
+				Developer d = uc.getDeveloper();
+				if (d != null)
+				{
+					developers.getDeveloper().add(d);
+				}
 			}
+			model.setDevelopers(developers);
 		}
-		model_.setDevelopers(developers);
 		
-		Contributors contributors = new Contributors();
-		for (UserComponent uc : contributorComponents)
+		if (contributorsGridPane != null)
 		{
-			Contributor c = uc.getContributor();
-			if (c != null)
+			Contributors contributors = new Contributors();
+			for (UserComponent uc : contributorComponents)
 			{
-				contributors.getContributor().add(c);
+				Contributor c = uc.getContributor();
+				if (c != null)
+				{
+					contributors.getContributor().add(c);
+				}
 			}
+			model.setContributors(contributors);
 		}
-		model_.setContributors(contributors);
-		
-		Build build = new Build();
-		Plugins plugins = new Plugins();
-
-		//Assembly plugin section
-		Plugin plugin = new Plugin();
-		plugin.setGroupId("org.apache.maven.plugins");
-		plugin.setArtifactId("maven-assembly-plugin");
-		plugin.setVersion("2.4");
-		Executions executions = new Executions();
-		PluginExecution execution = new PluginExecution();
-		execution.setId("zip");
-		Goals goals = new Goals();
-		goals.getGoal().add("single");
-		execution.setGoals(goals);
-		execution.setPhase("package");
-		Configuration configuration = new Configuration();
-		
-		Descriptors descriptors = new Descriptors();
-		descriptors.getDescriptor().add("${basedir}/src/assembly/assembly.xml");
-		configuration.setDescriptors(descriptors);
-		configuration.setAttach(false);  //don't attach these during build - because the type / classifier is mucked up (on purpose) we customize the attach below
-		configuration.setEncoding("UTF-8");
-
-		execution.setConfiguration(configuration);
-		executions.getExecution().add(execution);
 		
-		plugin.setExecutions(executions);
-		plugins.getPlugin().add(plugin);
-		
-		//attach artifacts section
-		plugin = new Plugin();
-		plugin.setGroupId("org.codehaus.mojo");
-		plugin.setArtifactId("build-helper-maven-plugin");
-		plugin.setVersion("1.8");
-		executions = new Executions();
-		execution = new PluginExecution();
-		execution.setId("attach-artifact");
-		goals = new Goals();
-		goals.getGoal().add("attach-artifact");
-		execution.setGoals(goals);
-		configuration = new Configuration();
-		
-		Artifacts artifacts = new Artifacts();
-		Artifact artifact = new Artifact();
-		artifact.setType(typeText + ".zip");
-		artifact.setFile("${project.build.directory}/${project.build.finalName}-" + classifierPlusType + ".zip");
-		if (classifierText.length() > 0)
-		{
-			artifact.setClassifier(classifierText);
-		}
-		artifacts.getArtifact().add(artifact);
-		configuration.setArtifacts(artifacts);
-
-		execution.setConfiguration(configuration);
-		executions.getExecution().add(execution);
-		
-		plugin.setExecutions(executions);
-		plugins.getPlugin().add(plugin);
-		
-		build.setPlugins(plugins);
-		model_.setBuild(build);
+		ProjectHandler.update(model, assembly_, classifier.getText(), dataType.getValue(), ArchiveFormat.parse(archiveFormat.getValue()), dataFiles.getItems());
 		
 		try
 		{
-			PomHandler.writeFile(model_, projectFolder_);
-			AssemblyHandler.writeFile(assembly_, projectFolder_);
-			
-			writeLicenseFile();
-			writeManifestFile();
+			ProjectHandler.writeFiles(model, assembly_, projectFolder_);
 		}
 		catch (Exception e)
 		{
@@ -604,55 +592,25 @@ public class PublisherController
 		projectFolder_ = file;
 		log.info("Reading project folder " + projectFolder_.getAbsolutePath() );
 		projectFolder.setText(projectFolder_.getAbsolutePath());
+		//The full model is only read if it is needed for display, or upon save
+		model_ = null;
+		PomSummary summary;
 		try
 		{
-			model_ = PomHandler.read(projectFolder_);
+			summary = PomHandler.readSummary(projectFolder_);
 			
-			name.setText(convertNull(model_.getName()));
-			description.setText(convertNull(model_.getDescription()));
-			url.setText(convertNull(model_.getUrl()));
-			groupId.setText(convertNull(model_.getGroupId()));
+			name.setText(convertNull(summary.getName()));
+			description.setText(convertNull(summary.getDescription()));
+			url.setText(convertNull(summary.getUrl()));
+			groupId.setText(convertNull(summary.getGroupId()));
 			artifactId.textProperty().unbind();
-			artifactId.setText(convertNull(artifactId.getText()));
-			version.setText(convertNull(model_.getVersion()));
-			if (model_.getOrganization() != null)
-			{
-				orgName.setText(convertNull(model_.getOrganization().getName()));
-				orgUrl.setText(convertNull(model_.getOrganization().getUrl()));
-			}
+			artifactId.setText(convertNull(summary.getArtifactId()));
+			version.setText(convertNull(summary.getVersion()));
+			orgName.setText(convertNull(summary.getOrganizationName()));
+			orgUrl.setText(convertNull(summary.getOrganizationUrl()));
 			
-			String readType = "";
-			String readClassifier = "";
-			
-			nastyLoops:
-			if (model_.getBuild() != null && model_.getBuild().getPlugins() != null)
-			{
-				for (Plugin p : model_.getBuild().getPlugins().getPlugin())
-				{
-					if (p.getArtifactId().equals("build-helper-maven-plugin"))
-					{
-						if (p.getExecutions() != null)
-						{
-							for (PluginExecution pe : p.getExecutions().getExecution())
-							{
-								if (pe.getConfiguration() != null && pe.getConfiguration().getArtifacts() != null)
-								{
-									for (Artifact a : pe.getConfiguration().getArtifacts().getArtifact())
-									{
-										readType = convertNull(a.getType());
-										if (readType.toLowerCase().endsWith(".zip"))
-										{
-											readType = readType.substring(0, readType.length() - 4);
-										}
-										readClassifier = a.getClassifier();
-										break nastyLoops;
-									}
-								}
-							}
-						}
-					}
-				}
-			}
+			String readType = convertNull(summary.getDataType());
+			String readClassifier = summary.getClassifier();
 			
 			KnowledgeArtifactType type = KnowledgeArtifactType.parse(readType);
 			if (type != null)
@@ -664,6 +622,7 @@ public class PublisherController
 				dataType.setValue(convertNull(readType));
 			}
 			classifier.setText(convertNull(readClassifier));
+			archiveFormat.getSelectionModel().select(summary.getArchiveFormat().getNiceName());
 			
 		}
 		catch (Exception e)
@@ -672,54 +631,18 @@ public class PublisherController
 					+ " but the existing file will be completely overwritten upon save or publish", e);
 			log.warn("Error Reading", e);
 			model_ = new Model();
+			summary = new PomSummary();
 		}
+		pomSummary_ = summary;
 		try
 		{
-			//TODO this mechanism of handling files won't cope well with absolute paths and jumping from one system to another...
 			assembly_ = AssemblyHandler.readOrCreateBlank(projectFolder_);
 			dataFiles.getItems().clear();
-			FileSets fileSets = assembly_.getFileSets();
-			if (fileSets != null)
-			{
-				for (FileSet fs : fileSets.getFileSet())
-				{
-					dataFiles.getItems().add(new File(fs.getDirectory()));
-				}
-			}
-			
-			Files files = assembly_.getFiles();
-			if (files != null)
+			dataFiles.getItems().addAll(ProjectHandler.readDataFiles(assembly_));
+			sniffed_.clear();
+			for (File f : dataFiles.getItems())
 			{
-				for (FileItem fi : files.getFile())
-				{
-					boolean skip = false;
-					for (SpecialFile sf : SpecialFile.SPECIAL_FILES)
-					{
-						if (sf.getSource().equals(fi.getSource()))
-						{
-							skip = true;
-							break;
-						}
-					}
-					
-					if (!skip)
-					{
-						dataFiles.getItems().add(new File(fi.getSource()));
-					}
-				}
-			}
-			
-			for (DependencyComponent dc : dependenciesComponents)
-			{
-				dc.removeFromGridPane(dependenciesGridPane);
-			}
-			dependenciesComponents.clear();
-			if (model_.getDependencies() != null)
-			{
-				for (Dependency d : model_.getDependencies().getDependency())
-				{
-					dependenciesTabAddRow(d);
-				}
+				sniff(f);
 			}
 			
 			for (LicenseComponent lc : licenseComponents)
@@ -727,38 +650,22 @@ public class PublisherController
 				lc.removeFromGridPane(licenseGridPane);
 			}
 			licenseComponents.clear();
-			if (model_.getLicenses() != null)
+			for (License l : summary.getLicenses())
 			{
-				for (License l : model_.getLicenses().getLicense())
-				{
-					licenseTabAddRow(l);
-				}
+				licenseTabAddRow(l);
 			}
 			
-			for (UserComponent uc : developerComponents)
+			if (dependenciesGridPane != null)
 			{
-				uc.removeFromGridPane(developersGridPane);
-			}
-			developerComponents.clear();
-			if (model_.getDevelopers() != null)
-			{
-				for (Developer d : model_.getDevelopers().getDeveloper())
-				{
-					developerTabAddRow(d);
-				}
+				fillDependenciesTab();
 			}
-			
-			for (UserComponent uc : contributorComponents)
+			if (developersGridPane != null)
 			{
-				uc.removeFromGridPane(contributorsGridPane);
+				fillDevelopersTab();
 			}
-			contributorComponents.clear();
-			if (model_.getContributors() != null)
+			if (contributorsGridPane != null)
 			{
-				for (Contributor c : model_.getContributors().getContributor())
-				{
-					contributorsTabAddRow(c);
-				}
+				fillContributorsTab();
 			}
 		}
 		catch (Exception e)
@@ -769,6 +676,88 @@ public class PublisherController
 		}
 	}
 	
+	private void fillDependenciesTab()
+	{
+		for (DependencyComponent dc : dependenciesComponents)
+		{
+			dc.removeFromGridPane(dependenciesGridPane);
+		}
+		dependenciesComponents.clear();
+		if (projectFolder_ == null)
+		{
+			dependenciesTabAddRow(null);
+		}
+		else if (pomSummary_.getDependencyCount() > 0 && getModel().getDependencies() != null)
+		{
+			for (Dependency d : getModel().getDependencies().getDependency())
+			{
+				dependenciesTabAddRow(d);
+			}
+		}
+	}
+	
+	private void fillDevelopersTab()
+	{
+		for (UserComponent uc : developerComponents)
+		{
+			uc.removeFromGridPane(developersGridPane);
+		}
+		developerComponents.clear();
+		if (projectFolder_ == null)
+		{
+			developerTabAddRow(null);
+		}
+		else if (pomSummary_.getDeveloperCount() > 0 && getModel().getDevelopers() != null)
+		{
+			for (Developer d : getModel().getDevelopers().getDeveloper())
+			{
+				developerTabAddRow(d);
+			}
+		}
+	}
+	
+	private void fillContributorsTab()
+	{
+		for (UserComponent uc : contributorComponents)
+		{
+			uc.removeFromGridPane(contributorsGridPane);
+		}
+		contributorComponents.clear();
+		if (projectFolder_ == null)
+		{
+			contributorsTabAddRow(null);
+		}
+		else if (pomSummary_.getContributorCount() > 0 && getModel().getContributors() != null)
+		{
+			for (Contributor c : getModel().getContributors().getContributor())
+			{
+				contributorsTabAddRow(c);
+			}
+		}
+	}
+	
+	/**
+	 * @return the full model of the pom - reading it, if it hasn't been read yet
+	 */
+	private Model getModel()
+	{
+		if (model_ == null)
+		{
+			try
+			{
+				model_ = (projectFolder_ == null ? new Model() : PomHandler.read(projectFolder_));
+			}
+			catch (Exception e)
+			{
+				AppContext.getServiceLocator().getService(CommonDialogsI.class).showErrorDialog("There was an error reading the existing pom file.  You may continue"
+						+ " but the existing file will be completely overwritten upon save or publish", e);
+				log.warn("Error Reading", e);
+				model_ = new Model();
+			}
+		}
+		return model_;
+	}
+	
 	private void publish()
 	{
 		try
@@ -790,7 +779,8 @@ public class PublisherController
 			stage.initOwner(root.getScene().getWindow());
 			
 			KnowledgeArtifactType type = KnowledgeArtifactType.parse(dataType.getValue());
-			uc.finishInit(model_, classifier.getText(), (type == null ? dataType.getValue() : type.getType()), projectFolder_, dataFiles.getItems());
+			uc.finishInit(getModel(), classifier.getText(), (type == null ? dataType.getValue() : type.getType()), ArchiveFormat.parse(archiveFormat.getValue()), 
+					projectFolder_, dataFiles.getItems());
 			stage.sizeToScene();
 			stage.show();
 		}
@@ -842,54 +832,6 @@ public class PublisherController
 		return ubb;
 	}
 	
-	private void writeLicenseFile() throws IOException
-	{
-		StringBuilder sb = new StringBuilder();
-		int i = 0;
-		for (LicenseComponent lc : licenseComponents)
-		{
-			License l = lc.getLicense();
-			if (l != null)
-			{
-				sb.append("Name:  ${project.licenses[" + i + "].name}");
-				sb.append("\r\n");
-				sb.append("URL:  ${project.licenses[" + i + "].url}");
-				sb.append("\r\n");
-				sb.append("Comments:  ${project.licenses[" + i + "].comments}");
-				sb.append("\r\n");
-				sb.append("Distribution:  ${project.licenses[" + i++ + "].distribution}");
-				sb.append("\r\n");
-			}
-		}
-		
-		java.nio.file.Files.write(new File(new File(new File(projectFolder_, "src"), "assembly"), "LICENSE.txt").toPath(), sb.toString().getBytes(), 
-				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
-	}
-	
-	private void writeManifestFile() throws IOException
-	{
-		StringBuilder sb = new StringBuilder();
-		
-		sb.append("Manifest-Version: 1.0");
-		sb.append("\r\n");
-		sb.append("Created-By: ${java.version} (${java.vendor})");
-		sb.append("\r\n");
-		sb.append("Implementation-Title: ${project.name}");
-		sb.append("\r\n");
-		sb.append("Implementation-Version: ${project.version}");
-		sb.append("\r\n");
-		sb.append("Implementation-Vendor-Id: ${project.groupId}");
-		sb.append("\r\n");
-		if (orgName.getText().length() > 0)
-		{
-			sb.append("Implementation-Vendor: ${project.organization.name}");
-			sb.append("\r\n");
-		}
-		
-		java.nio.file.Files.write(new File(new File(new File(projectFolder_, "src"), "assembly"), "MANIFEST.MF").toPath(), sb.toString().getBytes(), 
-				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
-	}
-	
 	private void licenseTabAddRow(License l)
 	{
 		LicenseComponent lc = new LicenseComponent(l);
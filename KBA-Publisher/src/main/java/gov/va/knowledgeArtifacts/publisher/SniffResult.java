@@ -0,0 +1,84 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher;
+
+import gov.va.knowledgeArtifacts.publisher.types.KnowledgeArtifactType;
+
+/**
+ * {@link SniffResult}
+ *
+ * What {@link ContentSniffer} learned about a data file or folder.  Any of the fields may be null - a file that isn't recognized has
+ * no type at all.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class SniffResult
+{
+	public static final SniffResult UNKNOWN = new SniffResult(null, null, null, null, null);
+
+	private KnowledgeArtifactType type_;
+	private String version_, description_, summary_, warning_;
+
+	/**
+	 * @param summary - a short description of what was found - for display next to the file
+	 * @param warning - a problem with the content - for example, a file that has the extension of a known type, but not its content
+	 */
+	public SniffResult(KnowledgeArtifactType type, String version, String description, String summary, String warning)
+	{
+		type_ = type;
+		version_ = version;
+		description_ = description;
+		summary_ = summary;
+		warning_ = warning;
+	}
+
+	/**
+	 * @return the type of the content, or null, if it wasn't recognized
+	 */
+	public KnowledgeArtifactType getType()
+	{
+		return type_;
+	}
+
+	/**
+	 * @return the version (or release date) declared by the content
+	 */
+	public String getVersion()
+	{
+		return version_;
+	}
+
+	/**
+	 * @return the description (or title) declared by the content
+	 */
+	public String getDescription()
+	{
+		return description_;
+	}
+
+	public String getSummary()
+	{
+		return summary_;
+	}
+
+	public String getWarning()
+	{
+		return warning_;
+	}
+}
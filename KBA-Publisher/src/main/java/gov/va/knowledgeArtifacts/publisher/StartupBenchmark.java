@@ -0,0 +1,315 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link StartupBenchmark}
+ *
+ * Measures the cold start time of the {@link KBAPublisher} GUI - each run is a new JVM, which exits as soon as the window has been shown,
+ * and reports the time from JVM start until then.
+ * 
+ * This can also create a class data sharing archive of the classes loaded during startup, and compare the start time with and without it.
+ * On java 8, application class data sharing is only available in the Oracle JVM (8u40 or newer), as a commercial feature.  Other java 8
+ * JVMs ignore the archive, and start as they would without it.  An archive only works with the exact JVM that created it, and the same 
+ * class path - so it should be created on the machine that will use it, from the installed jar - for example:
+ * 
+ * java -cp KBA-Publisher-jar-with-dependencies.jar gov.va.knowledgeArtifacts.publisher.StartupBenchmark --createArchive KBA-Publisher.jsa
+ * 
+ * and the publisher then started with the JVM options printed at the end of the run.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class StartupBenchmark
+{
+	private static Logger log = LoggerFactory.getLogger(StartupBenchmark.class);
+	private static final long RUN_TIMEOUT_SECONDS = 300;
+
+	private int runs_ = 5;
+	private File archive_;
+	private boolean createArchive_ = false;
+	private List<String> jvmArgs_ = new ArrayList<>();
+	private String java_ = new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath();
+	private String classPath_ = System.getProperty("java.class.path");
+
+	public static void main(String[] args)
+	{
+		StartupBenchmark benchmark = new StartupBenchmark();
+		try
+		{
+			benchmark.parseArgs(args);
+		}
+		catch (IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+			System.err.println();
+			printUsage();
+			System.exit(2);
+			return;
+		}
+		try
+		{
+			benchmark.run();
+			System.exit(0);
+		}
+		catch (Exception e)
+		{
+			log.error("Startup benchmark failed", e);
+			System.err.println("Startup benchmark failed: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	private static void printUsage()
+	{
+		System.err.println("Usage: java -cp <KBA-Publisher jar> " + StartupBenchmark.class.getName() + " [options]");
+		System.err.println("  --runs <count>             the number of times to start the publisher, for each configuration - default 5");
+		System.err.println("  --archive <file>           also measure the start time with this class data sharing archive");
+		System.err.println("  --createArchive <file>     create the class data sharing archive first, then measure with and without it");
+		System.err.println("  --jvmArg <arg>             an extra argument for each JVM that is started - may be repeated");
+		System.err.println("  --help                     print this message");
+	}
+
+	private void parseArgs(String[] args)
+	{
+		for (int i = 0; i < args.length; i++)
+		{
+			String arg = args[i];
+			switch (arg)
+			{
+				case "--runs":
+					try
+					{
+						runs_ = Integer.parseInt(requireValue(args, ++i, arg));
+					}
+					catch (NumberFormatException e)
+					{
+						throw new IllegalArgumentException("The value of " + arg + " must be a number");
+					}
+					if (runs_ < 1)
+					{
+						throw new IllegalArgumentException("The value of " + arg + " must be at least 1");
+					}
+					break;
+				case "--archive":
+					archive_ = new File(requireValue(args, ++i, arg)).getAbsoluteFile();
+					break;
+				case "--createArchive":
+					archive_ = new File(requireValue(args, ++i, arg)).getAbsoluteFile();
+					createArchive_ = true;
+					break;
+				case "--jvmArg":
+					jvmArgs_.add(requireValue(args, ++i, arg));
+					break;
+				case "--help":
+				case "-h":
+				case "-?":
+					printUsage();
+					System.exit(0);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + arg);
+			}
+		}
+	}
+
+	private static String requireValue(String[] args, int i, String option)
+	{
+		if (i >= args.length)
+		{
+			throw new IllegalArgumentException("The option " + option + " requires a value");
+		}
+		return args[i];
+	}
+
+	private void run() throws Exception
+	{
+		if (archive_ != null)
+		{
+			for (String entry : classPath_.split(File.pathSeparator))
+			{
+				if (new File(entry).isDirectory())
+				{
+					log.warn("The class path entry {} is a folder - class data sharing can only archive classes from jar files", entry);
+				}
+			}
+		}
+		if (createArchive_)
+		{
+			createArchive();
+		}
+
+		List<Long> plain = measure("without an archive", Collections.emptyList());
+		List<Long> shared = null;
+		if (archive_ != null)
+		{
+			if (!archive_.isFile())
+			{
+				throw new Exception("The archive " + archive_.getAbsolutePath() + " does not exist");
+			}
+			List<String> useArchive = new ArrayList<>(appCdsOptions());
+			useArchive.add("-Xshare:auto");
+			useArchive.add("-XX:SharedArchiveFile=" + archive_.getAbsolutePath());
+			shared = measure("with the archive " + archive_.getName(), useArchive);
+			System.out.println();
+			System.out.println("Start the publisher with these JVM options to use the archive:");
+			System.out.println("  " + String.join(" ", useArchive));
+		}
+
+		System.out.println();
+		System.out.println(String.format("%-40s %8s %8s %8s", "Startup (ms from JVM start until shown)", "min", "median", "max"));
+		print("without an archive", plain);
+		if (shared != null)
+		{
+			print("with the archive", shared);
+		}
+	}
+
+	/**
+	 * Start the publisher once to record the classes it loads, then dump those classes into the archive
+	 */
+	private void createArchive() throws Exception
+	{
+		File classList = new File(archive_.getAbsolutePath() + ".classlist");
+		System.out.println("Recording the classes loaded during startup to " + classList.getAbsolutePath());
+		List<String> record = new ArrayList<>(appCdsOptions());
+		record.add("-XX:DumpLoadedClassList=" + classList.getAbsolutePath());
+		startPublisher(record);
+		if (!classList.isFile() || classList.length() == 0)
+		{
+			throw new Exception("The JVM didn't record the loaded classes - it may not support application class data sharing");
+		}
+
+		System.out.println("Creating the archive " + archive_.getAbsolutePath());
+		List<String> command = new ArrayList<>();
+		command.add(java_);
+		command.addAll(appCdsOptions());
+		command.add("-Xshare:dump");
+		command.add("-XX:SharedClassListFile=" + classList.getAbsolutePath());
+		command.add("-XX:SharedArchiveFile=" + archive_.getAbsolutePath());
+		command.add("-cp");
+		command.add(classPath_);
+		List<String> output = new ArrayList<>();
+		int exitCode = execute(command, output);
+		if (exitCode != 0 || !archive_.isFile())
+		{
+			throw new Exception("Failed to create the archive - exit code " + exitCode + ": " + String.join(System.lineSeparator(), output));
+		}
+	}
+
+	/**
+	 * @return the JVM options needed to enable application class data sharing, on this JVM
+	 */
+	private static List<String> appCdsOptions()
+	{
+		//So that a JVM without application class data sharing still starts - creating an archive on one fails with a clear error
+		String ignore = "-XX:+IgnoreUnrecognizedVMOptions";
+		String version = System.getProperty("java.specification.version");
+		if (version.startsWith("1."))
+		{
+			return Arrays.asList(new String[] {ignore, "-XX:+UnlockCommercialFeatures", "-XX:+UseAppCDS"});
+		}
+		else if (Integer.parseInt(version) < 11)
+		{
+			return Arrays.asList(new String[] {ignore, "-XX:+UseAppCDS"});
+		}
+		//on by default
+		return Arrays.asList(new String[] {ignore});
+	}
+
+	private List<Long> measure(String description, List<String> options) throws Exception
+	{
+		List<Long> times = new ArrayList<>();
+		for (int i = 0; i < runs_; i++)
+		{
+			long time = startPublisher(options);
+			System.out.println("Run " + (i + 1) + " of " + runs_ + " " + description + ": " + time + "ms");
+			times.add(time);
+		}
+		return times;
+	}
+
+	/**
+	 * @return the startup time reported by the publisher
+	 */
+	private long startPublisher(List<String> options) throws Exception
+	{
+		List<String> command = new ArrayList<>();
+		command.add(java_);
+		command.addAll(options);
+		command.addAll(jvmArgs_);
+		command.add("-D" + KBAPublisher.EXIT_AFTER_STARTUP_PROPERTY + "=true");
+		command.add("-cp");
+		command.add(classPath_);
+		command.add(KBAPublisher.class.getName());
+
+		List<String> output = new ArrayList<>();
+		int exitCode = execute(command, output);
+		for (String line : output)
+		{
+			if (line.startsWith(KBAPublisher.STARTUP_TIME_PREFIX))
+			{
+				return Long.parseLong(line.substring(KBAPublisher.STARTUP_TIME_PREFIX.length()).trim());
+			}
+		}
+		throw new Exception("The publisher didn't report its startup time - exit code " + exitCode + ": " + String.join(System.lineSeparator(), output));
+	}
+
+	private static int execute(List<String> command, List<String> output) throws Exception
+	{
+		log.debug("Executing {}", command);
+		File outputFile = File.createTempFile("kbaStartup", ".log");
+		try
+		{
+			Process p = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(outputFile).start();
+			if (!p.waitFor(RUN_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+			{
+				p.destroyForcibly();
+				throw new Exception("The JVM didn't exit within " + RUN_TIMEOUT_SECONDS + " seconds");
+			}
+			for (String line : Files.readAllLines(outputFile.toPath(), Charset.defaultCharset()))
+			{
+				log.debug(line);
+				output.add(line);
+			}
+			return p.exitValue();
+		}
+		finally
+		{
+			outputFile.delete();
+		}
+	}
+
+	private static void print(String description, List<Long> times)
+	{
+		List<Long> sorted = new ArrayList<>(times);
+		Collections.sort(sorted);
+		System.out.println(String.format("%-40s %8d %8d %8d", description, sorted.get(0), sorted.get(sorted.size() / 2), sorted.get(sorted.size() - 1)));
+	}
+}
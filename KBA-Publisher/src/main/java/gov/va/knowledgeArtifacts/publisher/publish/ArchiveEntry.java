@@ -0,0 +1,128 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.publish;
+
+import java.io.File;
+import java.util.zip.ZipEntry;
+
+/**
+ * {@link ArchiveEntry}
+ *
+ * A single file or folder that will be written into an archive, along with the path it will have inside of the archive.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class ArchiveEntry
+{
+	private String name_;
+	private File source_;
+	private long size_;
+	private long lastModified_;
+	private int method_ = ZipEntry.DEFLATED;
+	private int level_ = -1;
+
+	/**
+	 * @param name - the path of the entry within the archive - using '/' as the separator.  Folders must end with a '/'.
+	 * @param source - the file to read the content from - null for a folder.
+	 */
+	public ArchiveEntry(String name, File source)
+	{
+		name_ = name;
+		source_ = source;
+		size_ = (source == null || source.isDirectory() ? 0 : source.length());
+		lastModified_ = (source == null ? System.currentTimeMillis() : source.lastModified());
+	}
+
+	/**
+	 * @param name - the path of the entry within the archive - using '/' as the separator.  Folders must end with a '/'.
+	 * @param source - the file to read the content from
+	 * @param size - the size of the source, as already read from the file system - 0 for a folder
+	 * @param lastModified - the last modified time of the source, as already read from the file system
+	 */
+	public ArchiveEntry(String name, File source, long size, long lastModified)
+	{
+		name_ = name;
+		source_ = source;
+		size_ = size;
+		lastModified_ = lastModified;
+	}
+
+	/**
+	 * @return the path of this entry within the archive
+	 */
+	public String getName()
+	{
+		return name_;
+	}
+
+	/**
+	 * @return the file the content is read from - null for folders
+	 */
+	public File getSource()
+	{
+		return source_;
+	}
+
+	/**
+	 * @return the uncompressed size, in bytes
+	 */
+	public long getSize()
+	{
+		return size_;
+	}
+
+	/**
+	 * @return the last modified time of the source, in millis
+	 */
+	public long getLastModified()
+	{
+		return lastModified_;
+	}
+
+	public boolean isDirectory()
+	{
+		return name_.endsWith("/");
+	}
+
+	/**
+	 * @return the compression method - {@link ZipEntry#DEFLATED} or {@link ZipEntry#STORED}
+	 */
+	public int getMethod()
+	{
+		return method_;
+	}
+
+	/**
+	 * @return the deflate level to use for this entry, or -1 to use the level of the archive
+	 */
+	public int getLevel()
+	{
+		return level_;
+	}
+
+	/**
+	 * @param method - {@link ZipEntry#DEFLATED} or {@link ZipEntry#STORED}
+	 * @param level - the deflate level, or -1 to use the level of the archive
+	 */
+	public void setCompression(int method, int level)
+	{
+		method_ = method;
+		level_ = level;
+	}
+}
@@ -0,0 +1,493 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.publish;
+
+import com.github.luben.zstd.ZstdInputStream;
+import gov.va.knowledgeArtifacts.publisher.types.ArchiveFormat;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tukaani.xz.XZInputStream;
+
+/**
+ * {@link ArchiveExtractor}
+ *
+ * Extracts a published archive - in any of the {@link ArchiveFormat}s, or split into parts (by the index of the parts) - into a folder,
+ * keeping the modification times of the files.  Used to get at the content of an earlier version, to create or apply a delta.
+ *
+ * TAR archives may use pax extended headers or GNU long names (as the maven assembly plugin writes them) for long paths.  Entries
+ * that would land outside of the folder are refused, as are files that are already in the folder.  Any file may be repeated across
+ * the parts of a split archive (as the special files, such as META-INF/LICENSE.txt, are by every part) as long as the content is
+ * identical - the repeat is skipped.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class ArchiveExtractor
+{
+	private static Logger log = LoggerFactory.getLogger(ArchiveExtractor.class);
+	private static final int RECORD_SIZE = 512;
+	private static final String PART_INDEX_EXTENSION = ".parts.properties";
+
+	/**
+	 * Extract the archive into the folder.  The format is taken from the name of the file - an index of parts (named
+	 * *.parts.properties) extracts each of the parts it lists, which must be in the same folder as the index.
+	 * @return the number of files extracted
+	 */
+	public static int extract(File archive, File toFolder) throws IOException
+	{
+		return extract(archive, toFolder, new HashSet<>());
+	}
+
+	/**
+	 * @param written - the files written so far - by the earlier parts of a split archive
+	 */
+	private static int extract(File archive, File toFolder, Set<Path> written) throws IOException
+	{
+		Files.createDirectories(toFolder.toPath());
+		if (archive.getName().toLowerCase().endsWith(PART_INDEX_EXTENSION))
+		{
+			Properties index = readProperties(archive);
+			int parts = Integer.parseInt(index.getProperty("parts", "0"));
+			int files = 0;
+			for (int i = 1; i <= parts; i++)
+			{
+				String name = index.getProperty("part." + i + ".file");
+				if (name == null)
+				{
+					throw new IOException("The index " + archive.getAbsolutePath() + " doesn't name part " + i);
+				}
+				files += extract(new File(archive.getParentFile(), name), toFolder, written);
+			}
+			return files;
+		}
+
+		ArchiveFormat format = ArchiveFormat.forType(archive.getName());
+		if (format == null)
+		{
+			throw new IOException("The format of " + archive.getAbsolutePath() + " isn't known - expected " + PART_INDEX_EXTENSION
+					+ ", or the extension of one of the archive formats");
+		}
+		long start = System.currentTimeMillis();
+		int files = format.isTar() ? extractTar(archive, format, toFolder, written) : extractZip(archive, toFolder, written);
+		log.info("Extracted {} files from {} in {}ms", files, archive.getName(), System.currentTimeMillis() - start);
+		return files;
+	}
+
+	/**
+	 * @return the properties file, read as UTF-8
+	 */
+	public static Properties readProperties(File file) throws IOException
+	{
+		Properties properties = new Properties();
+		try (InputStreamReader reader = new InputStreamReader(Files.newInputStream(file.toPath()), StandardCharsets.UTF_8))
+		{
+			properties.load(reader);
+		}
+		return properties;
+	}
+
+	/**
+	 * @return the folder that holds the content of an extracted archive - the single folder at its root, if there is one (as there
+	 * is for every archive this tool creates), otherwise the folder itself
+	 */
+	public static File findRootFolder(File folder)
+	{
+		File[] children = folder.listFiles();
+		if (children != null && children.length == 1 && children[0].isDirectory())
+		{
+			return children[0];
+		}
+		return folder;
+	}
+
+	private static int extractZip(File archive, File toFolder, Set<Path> written) throws IOException
+	{
+		int files = 0;
+		try (ZipFile zip = new ZipFile(archive, StandardCharsets.UTF_8))
+		{
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements())
+			{
+				ZipEntry entry = entries.nextElement();
+				Path target = resolve(toFolder, entry.getName());
+				if (entry.isDirectory())
+				{
+					Files.createDirectories(target);
+				}
+				else
+				{
+					try (InputStream is = zip.getInputStream(entry))
+					{
+						files += writeFile(is, entry.getSize(), target, entry.getName(), written) ? 1 : 0;
+					}
+				}
+				target.toFile().setLastModified(entry.getTime());
+			}
+		}
+		return files;
+	}
+
+	private static int extractTar(File archive, ArchiveFormat format, File toFolder, Set<Path> written) throws IOException
+	{
+		int files = 0;
+		try (InputStream in = openDecompressor(new BufferedInputStream(Files.newInputStream(archive.toPath()), 1024 * 1024), format))
+		{
+			byte[] header = new byte[RECORD_SIZE];
+			String longName = null;
+			long paxSize = -1;
+			while (true)
+			{
+				if (!readRecord(in, header))
+				{
+					break;
+				}
+				if (isZero(header))
+				{
+					//the end of archive marker
+					break;
+				}
+				String name = longName != null ? longName : readName(header);
+				long size = paxSize >= 0 ? paxSize : readOctal(header, 124, 12);
+				long lastModified = readOctal(header, 136, 12) * 1000;
+				char type = (char)header[156];
+				longName = null;
+				paxSize = -1;
+
+				if (type == 'x' || type == 'L')
+				{
+					byte[] data = readData(in, size);
+					if (type == 'L')
+					{
+						longName = new String(data, StandardCharsets.UTF_8).replaceAll("\u0000+$", "");
+					}
+					else
+					{
+						for (String record : readPaxRecords(data))
+						{
+							int equals = record.indexOf('=');
+							if (record.startsWith("path="))
+							{
+								longName = record.substring(equals + 1);
+							}
+							else if (record.startsWith("size="))
+							{
+								paxSize = Long.parseLong(record.substring(equals + 1));
+							}
+						}
+					}
+					continue;
+				}
+
+				Path target = resolve(toFolder, name);
+				if (type == '5')
+				{
+					Files.createDirectories(target);
+				}
+				else if (type == '0' || type == 0)
+				{
+					files += writeFile(in, size, target, name, written) ? 1 : 0;
+					skip(in, padding(size));
+				}
+				else
+				{
+					log.debug("Skipping the tar entry {} of type {}", name, type);
+					skip(in, size + padding(size));
+					continue;
+				}
+				target.toFile().setLastModified(lastModified);
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * Write the content of an entry to its file - unless an earlier part of a split archive already wrote it, in which case the content
+	 * is checked to be the same, and the entry is skipped
+	 * @return true, if the file was written
+	 */
+	private static boolean writeFile(InputStream in, long size, Path target, String name, Set<Path> written) throws IOException
+	{
+		if (!written.add(target))
+		{
+			if (Files.size(target) != size || !sameContent(in, target, size))
+			{
+				throw new IOException("The parts of the archive hold different content for " + name);
+			}
+			return false;
+		}
+		Files.createDirectories(target.getParent());
+		try (OutputStream out = Files.newOutputStream(target, StandardOpenOption.CREATE_NEW))
+		{
+			copy(in, out, size);
+		}
+		return true;
+	}
+
+	/**
+	 * @return true, if the next size bytes of the stream are the content of the file - which is exactly size bytes long
+	 */
+	private static boolean sameContent(InputStream in, Path file, long size) throws IOException
+	{
+		byte[] expected = new byte[64 * 1024];
+		byte[] actual = new byte[expected.length];
+		long remaining = size;
+		try (InputStream existing = Files.newInputStream(file))
+		{
+			while (remaining > 0)
+			{
+				int count = (int)Math.min(expected.length, remaining);
+				readFully(existing, expected, count);
+				readFully(in, actual, count);
+				for (int i = 0; i < count; i++)
+				{
+					if (expected[i] != actual[i])
+					{
+						return false;
+					}
+				}
+				remaining -= count;
+			}
+		}
+		return true;
+	}
+
+	private static void readFully(InputStream in, byte[] buffer, int length) throws IOException
+	{
+		int read = 0;
+		while (read < length)
+		{
+			int count = in.read(buffer, read, length - read);
+			if (count < 0)
+			{
+				throw new EOFException("The archive ended part way through an entry");
+			}
+			read += count;
+		}
+	}
+
+	private static InputStream openDecompressor(InputStream in, ArchiveFormat format) throws IOException
+	{
+		switch (format)
+		{
+			case TAR_GZ:
+				return new GZIPInputStream(in, 64 * 1024);
+			case TAR_XZ:
+				return new XZInputStream(in);
+			case TAR_ZST:
+				try
+				{
+					return new ZstdInputStream(in);
+				}
+				catch (LinkageError e)
+				{
+					throw new IOException("Zstandard decompression isn't available on this platform", e);
+				}
+			default:
+				throw new IllegalArgumentException("Not a TAR format: " + format);
+		}
+	}
+
+	/**
+	 * @return the path within the folder - refusing names that would escape it
+	 */
+	private static Path resolve(File toFolder, String name) throws IOException
+	{
+		Path root = toFolder.getAbsoluteFile().toPath().normalize();
+		Path target = root.resolve(name).normalize();
+		if (!target.startsWith(root) || target.equals(root))
+		{
+			throw new IOException("The archive entry " + name + " is outside of the folder it is being extracted to");
+		}
+		return target;
+	}
+
+	/**
+	 * @return the name from a ustar header - the prefix field holds the start of names that don't fit in the name field
+	 */
+	private static String readName(byte[] header)
+	{
+		String name = readString(header, 0, 100);
+		if (new String(header, 257, 5, StandardCharsets.US_ASCII).equals("ustar"))
+		{
+			String prefix = readString(header, 345, 155);
+			if (prefix.length() > 0)
+			{
+				name = prefix + "/" + name;
+			}
+		}
+		return name;
+	}
+
+	private static String readString(byte[] header, int offset, int length)
+	{
+		int end = offset;
+		while (end < offset + length && header[end] != 0)
+		{
+			end++;
+		}
+		return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+	}
+
+	private static long readOctal(byte[] header, int offset, int length) throws IOException
+	{
+		//GNU tar stores values that don't fit in octal as big endian binary, flagged by the high bit
+		if ((header[offset] & 0x80) != 0)
+		{
+			long value = 0;
+			for (int i = offset + 1; i < offset + length; i++)
+			{
+				value = (value << 8) | (header[i] & 0xFF);
+			}
+			return value;
+		}
+		String octal = readString(header, offset, length).trim();
+		try
+		{
+			return octal.length() == 0 ? 0 : Long.parseLong(octal, 8);
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IOException("The tar archive is corrupt - invalid number '" + octal + "' in a header");
+		}
+	}
+
+	/**
+	 * @return the "key=value" records of a pax extended header
+	 */
+	private static String[] readPaxRecords(byte[] data)
+	{
+		List<String> records = new ArrayList<>();
+		int position = 0;
+		while (position < data.length)
+		{
+			int space = position;
+			while (space < data.length && data[space] != ' ')
+			{
+				space++;
+			}
+			if (space >= data.length)
+			{
+				break;
+			}
+			int length = Integer.parseInt(new String(data, position, space - position, StandardCharsets.US_ASCII));
+			if (length <= 0 || position + length > data.length)
+			{
+				break;
+			}
+			//the record ends with a newline
+			records.add(new String(data, space + 1, position + length - space - 2, StandardCharsets.UTF_8));
+			position += length;
+		}
+		return records.toArray(new String[records.size()]);
+	}
+
+	private static boolean readRecord(InputStream in, byte[] header) throws IOException
+	{
+		int read = 0;
+		while (read < header.length)
+		{
+			int count = in.read(header, read, header.length - read);
+			if (count < 0)
+			{
+				if (read == 0)
+				{
+					return false;
+				}
+				throw new EOFException("The tar archive ended part way through a header");
+			}
+			read += count;
+		}
+		return true;
+	}
+
+	private static boolean isZero(byte[] header)
+	{
+		for (byte b : header)
+		{
+			if (b != 0)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static byte[] readData(InputStream in, long size) throws IOException
+	{
+		byte[] data = new byte[(int)size];
+		readFully(in, data, data.length);
+		skip(in, padding(size));
+		return data;
+	}
+
+	private static void copy(InputStream in, OutputStream out, long size) throws IOException
+	{
+		byte[] buffer = new byte[64 * 1024];
+		long remaining = size;
+		while (remaining > 0)
+		{
+			int count = in.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+			if (count < 0)
+			{
+				throw new EOFException("The tar archive ended part way through an entry");
+			}
+			out.write(buffer, 0, count);
+			remaining -= count;
+		}
+	}
+
+	private static void skip(InputStream in, long count) throws IOException
+	{
+		long remaining = count;
+		byte[] buffer = new byte[(int)Math.min(64 * 1024, Math.max(1, count))];
+		while (remaining > 0)
+		{
+			int read = in.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+			if (read < 0)
+			{
+				throw new EOFException("The tar archive ended part way through an entry");
+			}
+			remaining -= read;
+		}
+	}
+
+	private static long padding(long size)
+	{
+		return (RECORD_SIZE - (size % RECORD_SIZE)) % RECORD_SIZE;
+	}
+}
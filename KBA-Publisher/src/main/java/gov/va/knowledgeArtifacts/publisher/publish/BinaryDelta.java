@@ -0,0 +1,501 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.publish;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.function.LongConsumer;
+
+/**
+ * {@link BinaryDelta}
+ *
+ * A binary diff of one file against an earlier version of it - the instructions to rebuild the new file from the old one, as a list
+ * of ranges to copy from the old file, and the bytes that aren't in it.
+ *
+ * This works the way rsync does: the old file is cut into fixed size blocks, which are indexed by a rolling checksum, and a window
+ * the size of a block is slid along the new file a byte at a time, so that old blocks are found at any offset - not just where they
+ * were.  Each candidate is compared byte for byte (the old file is local, so there is no need for a strong hash), and a match is
+ * extended in both directions, as far as the files agree.  Inserting or removing a few rows of an RF2 file only costs the rows
+ * themselves, and the rest of the file is copied.
+ *
+ * The delta is a stream of instructions: {@value #COPY} (offset and length in the old file), {@value #ADD} (a length, followed by
+ * the bytes) and finally {@value #END}.  It isn't compressed here - it is expected to be written into a compressed archive.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class BinaryDelta
+{
+	public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+	static final byte END = 0;
+	static final byte COPY = 1;
+	static final byte ADD = 2;
+
+	//the index holds at most this many blocks - the block size is raised for old files that would need more
+	private static final int MAX_BLOCKS = 4 * 1024 * 1024;
+	//unmatched bytes are written out in pieces of at most this size, so they don't pile up in memory
+	private static final int MAX_LITERAL = 1024 * 1024;
+	private static final int PAGE_SIZE = 64 * 1024;
+
+	private long copied_;
+	private long added_;
+
+	private BinaryDelta()
+	{
+	}
+
+	/**
+	 * @return the number of bytes of the new file that are copied from the old one
+	 */
+	public long getCopied()
+	{
+		return copied_;
+	}
+
+	/**
+	 * @return the number of bytes of the new file that are carried in the delta itself
+	 */
+	public long getAdded()
+	{
+		return added_;
+	}
+
+	/**
+	 * Write the delta that rebuilds target from base.
+	 * @param blockSize - the size of the blocks the base file is indexed in.  Smaller blocks find more of the changed files, but make
+	 * a larger index, and more false matches to check.
+	 * @param digest - optional - updated with the content of the target, as it is read
+	 * @param progress - optional - passed the number of bytes of the target read, after each read
+	 * @return the sizes of the copied and added content
+	 */
+	public static BinaryDelta diff(File base, File target, OutputStream out, int blockSize, MessageDigest digest, LongConsumer progress)
+			throws IOException
+	{
+		BinaryDelta result = new BinaryDelta();
+		DataOutputStream dos = new DataOutputStream(out);
+		try (FileChannel baseChannel = FileChannel.open(base.toPath(), StandardOpenOption.READ);
+				FileChannel targetChannel = FileChannel.open(target.toPath(), StandardOpenOption.READ))
+		{
+			long baseSize = baseChannel.size();
+			int block = (int)Math.max(Math.max(16, blockSize), (baseSize + MAX_BLOCKS - 1) / MAX_BLOCKS);
+			BlockIndex index = new BlockIndex(baseChannel, baseSize, block);
+			BaseReader baseReader = new BaseReader(baseChannel, baseSize);
+			Emitter emitter = new Emitter(dos, result);
+
+			byte[] buf = new byte[MAX_LITERAL * 2 + block * 2];
+			int literal = 0;   //the start of the bytes not yet written out
+			int p = 0;         //the start of the window
+			int end = 0;       //the end of the content read into the buffer
+			boolean eof = false;
+			boolean hashed = false;
+			int a = 0, s = 0;  //the two halves of the rolling checksum of the window
+
+			while (true)
+			{
+				//keep at least a block, and the byte after it, in the buffer
+				if (!eof && end - p <= block)
+				{
+					if (literal > 0)
+					{
+						System.arraycopy(buf, literal, buf, 0, end - literal);
+						p -= literal;
+						end -= literal;
+						literal = 0;
+					}
+					int read = readFully(targetChannel, buf, end, buf.length - end);
+					if (read < buf.length - end)
+					{
+						eof = true;
+					}
+					if (digest != null)
+					{
+						digest.update(buf, end, read);
+					}
+					if (progress != null && read > 0)
+					{
+						progress.accept(read);
+					}
+					end += read;
+				}
+				if (end - p < block || index.isEmpty())
+				{
+					if (eof)
+					{
+						break;
+					}
+					//nothing to match against - just keep reading
+					p = end;
+					if (p - literal >= MAX_LITERAL)
+					{
+						emitter.add(buf, literal, p - literal);
+						literal = p;
+					}
+					continue;
+				}
+				if (!hashed)
+				{
+					a = 0;
+					s = 0;
+					for (int i = p; i < p + block; i++)
+					{
+						a += buf[i] & 0xFF;
+						s += a;
+					}
+					hashed = true;
+				}
+
+				long match = index.find(((s & 0xFFFF) << 16) | (a & 0xFFFF));
+				if (match >= 0 && baseReader.matches(match, buf, p, block))
+				{
+					int from = p;
+					long baseFrom = match;
+					while (from > literal && baseFrom > 0 && baseReader.get(baseFrom - 1) == buf[from - 1])
+					{
+						from--;
+						baseFrom--;
+					}
+					int to = p + block;
+					long baseTo = match + block;
+					while (to < end && baseTo < baseSize && baseReader.get(baseTo) == buf[to])
+					{
+						to++;
+						baseTo++;
+					}
+					if (from > literal)
+					{
+						emitter.add(buf, literal, from - literal);
+					}
+					emitter.copy(baseFrom, baseTo - baseFrom);
+					literal = to;
+					p = to;
+					hashed = false;
+					continue;
+				}
+
+				if (p + block < end)
+				{
+					int leaving = buf[p] & 0xFF;
+					a += (buf[p + block] & 0xFF) - leaving;
+					s += a - block * leaving;
+				}
+				else
+				{
+					hashed = false;
+				}
+				p++;
+				if (p - literal >= MAX_LITERAL)
+				{
+					emitter.add(buf, literal, p - literal);
+					literal = p;
+				}
+			}
+			if (end > literal)
+			{
+				emitter.add(buf, literal, end - literal);
+			}
+			emitter.finish();
+		}
+		dos.flush();
+		return result;
+	}
+
+	/**
+	 * Rebuild the new file, by applying the delta to the base file it was made against.
+	 * @return the number of bytes written
+	 */
+	public static long apply(File base, InputStream delta, OutputStream out) throws IOException
+	{
+		DataInputStream dis = new DataInputStream(delta);
+		byte[] buffer = new byte[PAGE_SIZE];
+		long written = 0;
+		try (FileChannel baseChannel = base == null ? null : FileChannel.open(base.toPath(), StandardOpenOption.READ))
+		{
+			while (true)
+			{
+				byte op = dis.readByte();
+				if (op == END)
+				{
+					return written;
+				}
+				else if (op == COPY)
+				{
+					long offset = dis.readLong();
+					long length = dis.readLong();
+					if (baseChannel == null || offset < 0 || offset + length > baseChannel.size())
+					{
+						throw new IOException("The delta copies bytes " + offset + " to " + (offset + length) + " of a base file of "
+								+ (baseChannel == null ? 0 : baseChannel.size()) + " bytes - it was made against a different file");
+					}
+					long position = offset;
+					while (position < offset + length)
+					{
+						int read = readFully(baseChannel, position, buffer, (int)Math.min(buffer.length, offset + length - position));
+						out.write(buffer, 0, read);
+						position += read;
+					}
+					written += length;
+				}
+				else if (op == ADD)
+				{
+					int length = dis.readInt();
+					int remaining = length;
+					while (remaining > 0)
+					{
+						int count = Math.min(buffer.length, remaining);
+						dis.readFully(buffer, 0, count);
+						out.write(buffer, 0, count);
+						remaining -= count;
+					}
+					written += length;
+				}
+				else
+				{
+					throw new IOException("The delta is corrupt - unknown instruction " + op);
+				}
+			}
+		}
+	}
+
+	private static int readFully(FileChannel channel, byte[] buf, int offset, int length) throws IOException
+	{
+		ByteBuffer bb = ByteBuffer.wrap(buf, offset, length);
+		while (bb.hasRemaining())
+		{
+			if (channel.read(bb) < 0)
+			{
+				break;
+			}
+		}
+		return bb.position() - offset;
+	}
+
+	private static int readFully(FileChannel channel, long position, byte[] buf, int length) throws IOException
+	{
+		ByteBuffer bb = ByteBuffer.wrap(buf, 0, length);
+		while (bb.hasRemaining())
+		{
+			if (channel.read(bb, position + bb.position()) < 0)
+			{
+				throw new EOFException("The base file ended early");
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * The rolling checksum of each whole block of the base file, in an open addressing hash table.  When blocks have the same
+	 * checksum, the first is kept.
+	 */
+	private static class BlockIndex
+	{
+		private int[] keys_;
+		//the block number + 1 - 0 is an empty slot
+		private int[] blocks_;
+		private int mask_;
+		private int shift_;
+		private int blockSize_;
+		private int count_;
+
+		BlockIndex(FileChannel base, long baseSize, int blockSize) throws IOException
+		{
+			blockSize_ = blockSize;
+			int blocks = (int)(baseSize / blockSize);
+			int capacity = 16;
+			while (capacity < blocks * 2)
+			{
+				capacity <<= 1;
+			}
+			keys_ = new int[capacity];
+			blocks_ = new int[capacity];
+			mask_ = capacity - 1;
+			shift_ = 32 - Integer.numberOfTrailingZeros(capacity);
+
+			byte[] buf = new byte[Math.max(1, PAGE_SIZE / blockSize) * blockSize];
+			long position = 0;
+			int block = 0;
+			while (block < blocks)
+			{
+				int length = (int)Math.min(buf.length, (long)(blocks - block) * blockSize);
+				readFully(base, position, buf, length);
+				for (int start = 0; start < length; start += blockSize)
+				{
+					int a = 0, s = 0;
+					for (int i = start; i < start + blockSize; i++)
+					{
+						a += buf[i] & 0xFF;
+						s += a;
+					}
+					put(((s & 0xFFFF) << 16) | (a & 0xFFFF), block++);
+				}
+				position += length;
+			}
+		}
+
+		private void put(int key, int block)
+		{
+			int slot = (key * 0x9E3779B9) >>> shift_;
+			while (blocks_[slot] != 0)
+			{
+				if (keys_[slot] == key)
+				{
+					return;
+				}
+				slot = (slot + 1) & mask_;
+			}
+			keys_[slot] = key;
+			blocks_[slot] = block + 1;
+			count_++;
+		}
+
+		/**
+		 * @return the offset in the base file of a block with the checksum, or -1
+		 */
+		long find(int key)
+		{
+			int slot = (key * 0x9E3779B9) >>> shift_;
+			while (blocks_[slot] != 0)
+			{
+				if (keys_[slot] == key)
+				{
+					return (blocks_[slot] - 1) * (long)blockSize_;
+				}
+				slot = (slot + 1) & mask_;
+			}
+			return -1;
+		}
+
+		boolean isEmpty()
+		{
+			return count_ == 0;
+		}
+	}
+
+	/**
+	 * Random access to the base file, through a single cached page - matches are checked, and extended, in order, so most reads
+	 * hit the page that is already loaded.
+	 */
+	private static class BaseReader
+	{
+		private FileChannel channel_;
+		private long size_;
+		private byte[] page_ = new byte[PAGE_SIZE];
+		private long pageStart_ = -1;
+		private int pageLength_ = 0;
+
+		BaseReader(FileChannel channel, long size)
+		{
+			channel_ = channel;
+			size_ = size;
+		}
+
+		byte get(long position) throws IOException
+		{
+			if (position < pageStart_ || position >= pageStart_ + pageLength_)
+			{
+				//start the page a little before the position, as matches are also extended backwards
+				pageStart_ = Math.max(0, position - PAGE_SIZE / 8);
+				pageLength_ = (int)Math.min(PAGE_SIZE, size_ - pageStart_);
+				readFully(channel_, pageStart_, page_, pageLength_);
+			}
+			return page_[(int)(position - pageStart_)];
+		}
+
+		boolean matches(long position, byte[] buf, int offset, int length) throws IOException
+		{
+			for (int i = 0; i < length; i++)
+			{
+				if (get(position + i) != buf[offset + i])
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Writes the instructions - joining copies of ranges that follow on from each other
+	 */
+	private static class Emitter
+	{
+		private DataOutputStream out_;
+		private BinaryDelta result_;
+		private long copyOffset_ = -1;
+		private long copyLength_ = 0;
+
+		Emitter(DataOutputStream out, BinaryDelta result)
+		{
+			out_ = out;
+			result_ = result;
+		}
+
+		void copy(long offset, long length) throws IOException
+		{
+			if (copyOffset_ >= 0 && copyOffset_ + copyLength_ == offset)
+			{
+				copyLength_ += length;
+				return;
+			}
+			flushCopy();
+			copyOffset_ = offset;
+			copyLength_ = length;
+		}
+
+		void add(byte[] buf, int offset, int length) throws IOException
+		{
+			if (length == 0)
+			{
+				return;
+			}
+			flushCopy();
+			out_.writeByte(ADD);
+			out_.writeInt(length);
+			out_.write(buf, offset, length);
+			result_.added_ += length;
+		}
+
+		void finish() throws IOException
+		{
+			flushCopy();
+			out_.writeByte(END);
+		}
+
+		private void flushCopy() throws IOException
+		{
+			if (copyOffset_ >= 0)
+			{
+				out_.writeByte(COPY);
+				out_.writeLong(copyOffset_);
+				out_.writeLong(copyLength_);
+				result_.copied_ += copyLength_;
+				copyOffset_ = -1;
+				copyLength_ = 0;
+			}
+		}
+	}
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.publish;
+
+import gov.va.knowledgeArtifacts.publisher.types.ChecksumType;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link Checksums}
+ *
+ * Calculates all of the requested checksums for a file with a single read of the file, and writes the checksum sidecar files.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class Checksums
+{
+	private static Logger log = LoggerFactory.getLogger(Checksums.class);
+
+	/**
+	 * Read the file once, feeding every requested digest.
+	 * @param progress - optional - is passed the number of bytes read, after each read.
+	 */
+	public static Map<ChecksumType, String> calculate(File file, Collection<ChecksumType> types, LongConsumer progress) throws IOException
+	{
+		return calculate(file, types, FileChannelIO.DEFAULT, progress);
+	}
+
+	/**
+	 * Read the file once with the passed in reader, feeding every requested digest.
+	 * @param progress - optional - is passed the number of bytes read, after each read.
+	 */
+	public static Map<ChecksumType, String> calculate(File file, Collection<ChecksumType> types, FileChannelIO io, LongConsumer progress) 
+			throws IOException
+	{
+		Map<ChecksumType, MessageDigest> digests = createDigests(types);
+		io.digest(file, digests.values(), progress);
+		return toHex(digests);
+	}
+
+	/**
+	 * Calculate the checksums of each file on a separate thread.
+	 * @param progress - optional - is passed the number of bytes read, from any of the files.  Must be thread safe.
+	 * @return the checksums, in the same order as the files.
+	 */
+	public static Map<File, Map<ChecksumType, String>> calculate(List<File> files, Collection<ChecksumType> types, int threads, LongConsumer progress)
+			throws IOException
+	{
+		return calculate(files, types, threads, FileChannelIO.DEFAULT, progress);
+	}
+
+	/**
+	 * Calculate the checksums of each file on a separate thread, reading them with the passed in reader.
+	 * @param progress - optional - is passed the number of bytes read, from any of the files.  Must be thread safe.
+	 * @return the checksums, in the same order as the files.
+	 */
+	public static Map<File, Map<ChecksumType, String>> calculate(List<File> files, Collection<ChecksumType> types, int threads, FileChannelIO io, 
+			LongConsumer progress) throws IOException
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, files.size())), (runnable) ->
+		{
+			Thread t = new Thread(runnable, "KBA-Checksum");
+			t.setDaemon(true);
+			return t;
+		});
+		try
+		{
+			List<Future<Map<ChecksumType, String>>> futures = new ArrayList<>();
+			for (File f : files)
+			{
+				futures.add(executor.submit(() -> calculate(f, types, io, progress)));
+			}
+			Map<File, Map<ChecksumType, String>> results = new LinkedHashMap<>();
+			for (int i = 0; i < files.size(); i++)
+			{
+				results.put(files.get(i), futures.get(i).get());
+			}
+			return results;
+		}
+		catch (InterruptedException e)
+		{
+			throw new IOException("Interrupted while calculating checksums", e);
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+			{
+				throw (IOException)e.getCause();
+			}
+			throw new IOException("Unexpected error calculating checksums", e.getCause());
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Write a sidecar file for each checksum - named [fileName].[extension], within toFolder.
+	 * @param targetName - the file name to record in the sidecar - if null, the name of the file is used
+	 * @return the sidecar files that were written
+	 */
+	public static List<File> writeSidecars(File file, Map<ChecksumType, String> checksums, File toFolder, String targetName) throws IOException
+	{
+		ArrayList<File> written = new ArrayList<>();
+		for (Map.Entry<ChecksumType, String> checksum : checksums.entrySet())
+		{
+			File sidecar = new File(toFolder, file.getName() + "." + checksum.getKey().getExtension());
+			Files.write(sidecar.toPath(), (checksum.getValue() + "  " + (targetName == null ? file.getName() : targetName)).getBytes(StandardCharsets.UTF_8),
+					StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+			written.add(sidecar);
+		}
+		log.debug("Wrote {} checksum files for {}", written.size(), file.getName());
+		return written;
+	}
+
+	protected static Map<ChecksumType, MessageDigest> createDigests(Collection<ChecksumType> types) throws IOException
+	{
+		Map<ChecksumType, MessageDigest> digests = new EnumMap<>(ChecksumType.class);
+		for (ChecksumType type : types)
+		{
+			try
+			{
+				digests.put(type, MessageDigest.getInstance(type.getAlgorithm()));
+			}
+			catch (NoSuchAlgorithmException e)
+			{
+				throw new IOException("The checksum algorithm " + type.getAlgorithm() + " is not available", e);
+			}
+		}
+		return digests;
+	}
+
+	protected static Map<ChecksumType, String> toHex(Map<ChecksumType, MessageDigest> digests)
+	{
+		Map<ChecksumType, String> result = new EnumMap<>(ChecksumType.class);
+		for (Map.Entry<ChecksumType, MessageDigest> md : digests.entrySet())
+		{
+			result.put(md.getKey(), toHex(md.getValue().digest()));
+		}
+		return result;
+	}
+
+	/**
+	 * Lower case hex, including any leading zeros.
+	 */
+	protected static String toHex(byte[] digest)
+	{
+		StringBuilder sb = new StringBuilder(digest.length * 2);
+		for (byte b : digest)
+		{
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+			sb.append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.publish;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link CompressionAdvisor}
+ *
+ * Picks the compression for each entry of an archive, by deflating a sample from the start of each file at the fastest level.
+ * Entries that don't compress are stored, and large entries that only compress a little are deflated at a faster level -
+ * the maximum level costs a great deal of CPU for almost no gain on that sort of content.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class CompressionAdvisor
+{
+	private static Logger log = LoggerFactory.getLogger(CompressionAdvisor.class);
+
+	private static final int SAMPLE_BLOCK_SIZE = 64 * 1024;
+	private static final int SAMPLE_BLOCKS = 3;
+	//Small files are cheap to compress no matter what they contain - don't spend a read sampling them
+	private static final long SAMPLE_THRESHOLD = 256 * 1024;
+	private static final long LARGE_FILE = 64l * 1024l * 1024l;
+	//compressed size / original size, at or above which an entry is stored
+	private static final double STORE_RATIO = 0.95;
+	//compressed size / original size, at or above which a large entry is deflated at the fast level
+	private static final double LOW_RATIO = 0.75;
+	private static final int FAST_LEVEL = 1;
+
+	private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<>(Arrays.asList(new String[] {"zip", "jar", "war", "ear", "kjar", "gz", "tgz",
+			"bz2", "xz", "7z", "zst", "lz4", "png", "jpg", "jpeg", "gif", "mp3", "mp4", "pdf", "docx", "xlsx", "pptx"}));
+
+	/**
+	 * Set the compression method and level on each of the file entries - sampling the files on the passed in number of threads.
+	 */
+	public static void advise(List<ArchiveEntry> entries, int threads) throws IOException
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads), (runnable) ->
+		{
+			Thread t = new Thread(runnable, "KBA-Compression-Sampler");
+			t.setDaemon(true);
+			return t;
+		});
+		int stored = 0;
+		int fast = 0;
+		try
+		{
+			List<Future<Void>> futures = new ArrayList<>();
+			for (ArchiveEntry entry : entries)
+			{
+				if (entry.isDirectory())
+				{
+					continue;
+				}
+				if (isCompressedExtension(entry.getName()))
+				{
+					entry.setCompression(ZipEntry.STORED, -1);
+				}
+				else if (entry.getSize() >= SAMPLE_THRESHOLD)
+				{
+					futures.add(executor.submit(() ->
+					{
+						advise(entry);
+						return null;
+					}));
+				}
+			}
+			for (Future<Void> f : futures)
+			{
+				f.get();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			throw new IOException("Interrupted while sampling files", e);
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+			{
+				throw (IOException)e.getCause();
+			}
+			throw new IOException("Unexpected error while sampling files", e.getCause());
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+		for (ArchiveEntry entry : entries)
+		{
+			if (!entry.isDirectory() && entry.getMethod() == ZipEntry.STORED)
+			{
+				stored++;
+			}
+			else if (entry.getLevel() == FAST_LEVEL)
+			{
+				fast++;
+			}
+		}
+		log.info("Adaptive compression will store {} entries, and use fast compression for {} entries", stored, fast);
+	}
+
+	private static void advise(ArchiveEntry entry) throws IOException
+	{
+		double ratio = sampleRatio(entry);
+		if (ratio >= STORE_RATIO)
+		{
+			entry.setCompression(ZipEntry.STORED, -1);
+		}
+		else if (ratio >= LOW_RATIO && entry.getSize() >= LARGE_FILE)
+		{
+			entry.setCompression(ZipEntry.DEFLATED, FAST_LEVEL);
+		}
+		log.debug("Compression sample of {} {}", entry.getName(), ratio);
+	}
+
+	/**
+	 * @return compressed size / original size, for the leading blocks of the file
+	 */
+	private static double sampleRatio(ArchiveEntry entry) throws IOException
+	{
+		ByteBuffer sample = ByteBuffer.allocate((int)Math.min(entry.getSize(), SAMPLE_BLOCK_SIZE * SAMPLE_BLOCKS));
+		try (FileChannel fc = FileChannel.open(entry.getSource().toPath(), StandardOpenOption.READ))
+		{
+			while (sample.hasRemaining() && fc.read(sample) >= 0)
+			{
+				//keep reading
+			}
+		}
+		if (sample.position() == 0)
+		{
+			return 0;
+		}
+		Deflater deflater = new Deflater(FAST_LEVEL, true);
+		try
+		{
+			deflater.setInput(sample.array(), 0, sample.position());
+			deflater.finish();
+			byte[] out = new byte[SAMPLE_BLOCK_SIZE];
+			while (!deflater.finished())
+			{
+				deflater.deflate(out);
+			}
+			return (double)deflater.getBytesWritten() / (double)sample.position();
+		}
+		finally
+		{
+			deflater.end();
+		}
+	}
+
+	private static boolean isCompressedExtension(String name)
+	{
+		int dot = name.lastIndexOf('.');
+		return dot > 0 && COMPRESSED_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ENGLISH));
+	}
+}
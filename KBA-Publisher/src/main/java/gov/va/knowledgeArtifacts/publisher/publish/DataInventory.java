@@ -0,0 +1,450 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.publish;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link DataInventory}
+ *
+ * The paths, sizes and modification times of every file and folder below the data files of a publish - found before anything is
+ * archived, so that the totals are known up front (for progress, and the time remaining), the free space can be checked, and the
+ * archive entries don't need to read the attributes of each file again.
+ *
+ * The folders are walked in parallel - each sub folder is a separate fork join task - which matters for releases of many thousands
+ * of files, especially on a network share, where each directory listing is a round trip.  The result is in the same order as a
+ * serial, depth first walk: each folder, then its content, in the order the file system lists it.
+ *
+ * The inventory is held in parallel arrays rather than an object per file, as a large release may have hundreds of thousands of files.
+ * Each item has a path within the archive - using '/' as the separator, with folders ending in '/'.  A single data file is placed by
+ * its path below the project folder (or at the root, if it is outside of the project), and a data folder is placed at the root,
+ * under its own name.  Symbolic links are followed - the linked file or folder is archived under the name of the link - except for
+ * links back to a folder that encloses them, which would never end.  Those, broken links, and anything else that isn't a regular
+ * file or a folder, are skipped with a warning, and counted.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class DataInventory
+{
+	private static Logger log = LoggerFactory.getLogger(DataInventory.class);
+
+	/**
+	 * Receives each item as it is found - called from the scanning threads, so it must be thread safe
+	 */
+	public interface ScanListener
+	{
+		public void found(boolean folder, long size);
+	}
+
+	//the data file or folder each item was found below, and whether that is a folder
+	private File[] roots_;
+	private boolean[] rootIsFolder_;
+
+	private int count_ = 0;
+	private int[] root_ = new int[1024];
+	private String[] path_ = new String[1024];
+	private long[] size_ = new long[1024];
+	private long[] lastModified_ = new long[1024];
+
+	private int fileCount_ = 0;
+	private long totalBytes_ = 0;
+	private AtomicInteger skipped_ = new AtomicInteger();
+
+	private DataInventory(List<File> dataFiles)
+	{
+		roots_ = new File[dataFiles.size()];
+		rootIsFolder_ = new boolean[dataFiles.size()];
+	}
+
+	/**
+	 * Walk all of the data files and folders.
+	 * @param projectFolder - single data files within this folder keep their path relative to it
+	 * @param threads - the number of folders to list at the same time
+	 * @param listener - optional - told about each item as it is found
+	 */
+	public static DataInventory scan(List<File> dataFiles, File projectFolder, int threads, ScanListener listener) throws IOException
+	{
+		long start = System.currentTimeMillis();
+		DataInventory inventory = new DataInventory(dataFiles);
+		AtomicInteger threadNumber = new AtomicInteger(1);
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads), (forkJoinPool) ->
+		{
+			ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+			t.setName("KBA-Scan-" + threadNumber.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		}, null, false);
+		try
+		{
+			for (int i = 0; i < dataFiles.size(); i++)
+			{
+				Path root = dataFiles.get(i).getAbsoluteFile().toPath().normalize();
+				inventory.roots_[i] = root.toFile();
+				BasicFileAttributes attrs = Files.readAttributes(root, BasicFileAttributes.class);
+				if (attrs.isDirectory())
+				{
+					inventory.rootIsFolder_[i] = true;
+					Folder folder = pool.invoke(new FolderScan(root, root.getFileName().toString() + "/", attrs, null, inventory.skipped_, listener));
+					inventory.add(i, folder);
+				}
+				else
+				{
+					inventory.add(i, relativeName(projectFolder, root), attrs.size(), attrs.lastModifiedTime().toMillis());
+					if (listener != null)
+					{
+						listener.found(false, attrs.size());
+					}
+				}
+			}
+		}
+		catch (UncheckedIOException e)
+		{
+			throw e.getCause();
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+		log.info("Found {} files and {} folders, {} bytes, below {} data files in {}ms", inventory.fileCount_,
+				inventory.count_ - inventory.fileCount_, inventory.totalBytes_, dataFiles.size(), System.currentTimeMillis() - start);
+		if (inventory.skipped_.get() > 0)
+		{
+			log.warn("Skipped {} items below the data files - broken links, links to an enclosing folder, or special files", 
+					inventory.skipped_.get());
+		}
+		return inventory;
+	}
+
+	/**
+	 * @return the number of files and folders
+	 */
+	public int size()
+	{
+		return count_;
+	}
+
+	/**
+	 * @return the number of files
+	 */
+	public int getFileCount()
+	{
+		return fileCount_;
+	}
+
+	/**
+	 * @return the total size of the files, in bytes
+	 */
+	public long getTotalBytes()
+	{
+		return totalBytes_;
+	}
+
+	/**
+	 * @return the number of items that were left out - broken links, links to an enclosing folder, and special files
+	 */
+	public int getSkippedCount()
+	{
+		return skipped_.get();
+	}
+
+	/**
+	 * @return the path of the item within the archive - folders end with a '/'
+	 */
+	public String getPath(int index)
+	{
+		return path_[index];
+	}
+
+	/**
+	 * @return true if the item is a folder
+	 */
+	public boolean isFolder(int index)
+	{
+		return path_[index].endsWith("/");
+	}
+
+	/**
+	 * @return the size of the item (0 for a folder) when it was scanned
+	 */
+	public long getSize(int index)
+	{
+		return size_[index];
+	}
+
+	/**
+	 * @return the last modified time of the item (in millis) when it was scanned
+	 */
+	public long getLastModified(int index)
+	{
+		return lastModified_[index];
+	}
+
+	/**
+	 * @return the file or folder on disk
+	 */
+	public File getFile(int index)
+	{
+		int root = root_[index];
+		//the paths below a data folder start with the name of the folder - so they resolve against its parent
+		return rootIsFolder_[root] ? new File(roots_[root].getParentFile(), path_[index]) : roots_[root];
+	}
+
+	/**
+	 * @return the indexes of the files that no longer have the size and modification time they had when they were scanned (or are gone)
+	 */
+	public List<Integer> findChanged()
+	{
+		List<Integer> changed = new ArrayList<>();
+		for (int i = 0; i < count_; i++)
+		{
+			if (!isFolder(i))
+			{
+				File f = getFile(i);
+				if (f.length() != size_[i] || f.lastModified() != lastModified_[i])
+				{
+					changed.add(i);
+				}
+			}
+		}
+		return changed;
+	}
+
+	private void add(int root, String path, long size, long lastModified)
+	{
+		if (count_ == path_.length)
+		{
+			int capacity = count_ * 2;
+			root_ = Arrays.copyOf(root_, capacity);
+			path_ = Arrays.copyOf(path_, capacity);
+			size_ = Arrays.copyOf(size_, capacity);
+			lastModified_ = Arrays.copyOf(lastModified_, capacity);
+		}
+		root_[count_] = root;
+		path_[count_] = path;
+		size_[count_] = size;
+		lastModified_[count_] = lastModified;
+		count_++;
+		if (!path.endsWith("/"))
+		{
+			fileCount_++;
+			totalBytes_ += size;
+		}
+	}
+
+	/**
+	 * Flatten the scanned tree, depth first
+	 */
+	private void add(int root, Folder folder)
+	{
+		add(root, folder.path, 0, folder.lastModified);
+		for (Object child : folder.children)
+		{
+			if (child instanceof Folder)
+			{
+				add(root, (Folder)child);
+			}
+			else
+			{
+				Item item = (Item)child;
+				add(root, item.path, item.size, item.lastModified);
+			}
+		}
+	}
+
+	/**
+	 * Files that live within the project folder keep their relative path - anything else goes in at the root.
+	 */
+	private static String relativeName(File projectFolder, Path file)
+	{
+		Path projectPath = projectFolder.getAbsoluteFile().toPath().normalize();
+		if (file.startsWith(projectPath))
+		{
+			return projectPath.relativize(file).toString().replace(File.separatorChar, '/');
+		}
+		return file.getFileName().toString();
+	}
+
+	private static class Item
+	{
+		String path;
+		long size;
+		long lastModified;
+
+		Item(String path, long size, long lastModified)
+		{
+			this.path = path;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+	}
+
+	private static class Folder
+	{
+		String path;
+		long lastModified;
+		//Items and Folders, in the order they were listed
+		List<Object> children = new ArrayList<>();
+	}
+
+	/**
+	 * Lists one folder, and forks a task for each of its sub folders
+	 */
+	private static class FolderScan extends RecursiveTask<Folder>
+	{
+		private static final long serialVersionUID = 1L;
+		private Path dir_;
+		private String path_;
+		private BasicFileAttributes attrs_;
+		private FolderScan parent_;
+		private AtomicInteger skipped_;
+		private ScanListener listener_;
+		private Path realPath_;
+
+		FolderScan(Path dir, String path, BasicFileAttributes attrs, FolderScan parent, AtomicInteger skipped, ScanListener listener)
+		{
+			dir_ = dir;
+			path_ = path;
+			attrs_ = attrs;
+			parent_ = parent;
+			skipped_ = skipped;
+			listener_ = listener;
+		}
+
+		/**
+		 * @return the folder, with any links resolved - only found when a linked folder is met below it
+		 */
+		private synchronized Path realPath() throws IOException
+		{
+			if (realPath_ == null)
+			{
+				realPath_ = dir_.toRealPath();
+			}
+			return realPath_;
+		}
+
+		/**
+		 * @return true, if the linked folder is this folder, or one that encloses it
+		 */
+		private boolean isCycle(Path linked) throws IOException
+		{
+			Path target = linked.toRealPath();
+			for (FolderScan scan = this; scan != null; scan = scan.parent_)
+			{
+				if (scan.realPath().equals(target))
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		protected Folder compute()
+		{
+			Folder folder = new Folder();
+			folder.path = path_;
+			folder.lastModified = attrs_.lastModifiedTime().toMillis();
+			if (listener_ != null)
+			{
+				listener_.found(true, 0);
+			}
+			List<FolderScan> forked = new ArrayList<>();
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir_))
+			{
+				for (Path child : stream)
+				{
+					BasicFileAttributes attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+					String name = path_ + child.getFileName().toString();
+					if (attrs.isSymbolicLink())
+					{
+						try
+						{
+							attrs = Files.readAttributes(child, BasicFileAttributes.class);
+						}
+						catch (IOException e)
+						{
+							log.warn("Skipping {} - the link can't be followed ({})", child, e.toString());
+							skipped_.incrementAndGet();
+							continue;
+						}
+						if (attrs.isDirectory() && isCycle(child))
+						{
+							log.warn("Skipping {} - it links to a folder that encloses it", child);
+							skipped_.incrementAndGet();
+							continue;
+						}
+					}
+					if (attrs.isDirectory())
+					{
+						FolderScan task = new FolderScan(child, name + "/", attrs, this, skipped_, listener_);
+						task.fork();
+						forked.add(task);
+						folder.children.add(task);
+					}
+					else if (attrs.isRegularFile())
+					{
+						folder.children.add(new Item(name, attrs.size(), attrs.lastModifiedTime().toMillis()));
+						if (listener_ != null)
+						{
+							listener_.found(false, attrs.size());
+						}
+					}
+					else
+					{
+						log.warn("Skipping {} - it is not a file or a folder", child);
+						skipped_.incrementAndGet();
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				for (FolderScan task : forked)
+				{
+					task.cancel(true);
+				}
+				throw new UncheckedIOException(e);
+			}
+			//swap each forked task for its result, keeping the listing order
+			for (int i = 0; i < folder.children.size(); i++)
+			{
+				if (folder.children.get(i) instanceof FolderScan)
+				{
+					folder.children.set(i, ((FolderScan)folder.children.get(i)).join());
+				}
+			}
+			return folder;
+		}
+	}
+}
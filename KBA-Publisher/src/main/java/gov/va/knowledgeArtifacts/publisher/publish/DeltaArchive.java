@@ -0,0 +1,842 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.publish;
+
+import gov.va.knowledgeArtifacts.publisher.types.ArchiveFormat;
+import gov.va.knowledgeArtifacts.publisher.types.ChecksumType;
+import gov.va.knowledgeArtifacts.publisher.types.PublishPhase;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.apache.maven.pom._4_0.Model;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link DeltaArchive}
+ *
+ * A delta of an archive against an earlier published version of it - so that a consumer who already has the earlier version only
+ * needs to download what changed.  Successive releases of a terminology or a database usually differ by a small fraction.
+ *
+ * The delta is itself a zip file, holding a manifest ({@value #MANIFEST}) that lists every file of the new archive, and a data entry
+ * for each file that isn't identical to a file of the earlier version.  Each file of the new archive is:
+ * <ul>
+ * <li>same - identical to a file of the earlier version</li>
+ * <li>delta - rebuilt from a file of the earlier version with a {@link BinaryDelta}</li>
+ * <li>new - stored whole, as there is nothing to rebuild it from (or the delta wouldn't be any smaller)</li>
+ * </ul>
+ * Files are matched to the earlier version by their path below the root folder - or, failing that, by their path with the numbers
+ * ignored, as release files usually carry their release date in their name (sct2_Concept_Full_INT_20150131.txt) - preferring the file
+ * with the most numbers in common.  Files of the earlier version that aren't matched are left out of the result.
+ *
+ * The manifest carries the size and SHA-1 of every file, so {@link #apply(File, File, File, int)} checks that it rebuilt exactly what
+ * was published.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class DeltaArchive
+{
+	private static Logger log = LoggerFactory.getLogger(DeltaArchive.class);
+	public static final String MANIFEST = "delta.properties";
+	private static final String DATA_FOLDER = "data/";
+	private static final Pattern DIGITS = Pattern.compile("[0-9]+");
+
+	private PublishOptions options_;
+	private PublishProgress progress_;
+	private Map<ChecksumType, String> checksums_;
+	private long size_;
+	private int unchanged_;
+	private int changed_;
+	private int added_;
+	private int removed_;
+	private long copiedBytes_;
+	private long storedBytes_;
+
+	public DeltaArchive(PublishOptions options)
+	{
+		options_ = options;
+	}
+
+	/**
+	 * @param progress - optional - receives the progress of the diff, as {@link PublishPhase#DELTA}
+	 */
+	public void setProgress(PublishProgress progress)
+	{
+		progress_ = progress;
+	}
+
+	/**
+	 * @return the classifier the delta is published under - the classifier of the archive, followed by "delta"
+	 */
+	public static String getDeltaClassifier(String classifier)
+	{
+		return (classifier.trim().length() > 0 ? classifier.trim() + "-" : "") + "delta";
+	}
+
+	/**
+	 * Write the delta of the entries of an archive against the extracted content of an earlier version.
+	 * @param format - the format of the archive the delta rebuilds the content of
+	 * @param entries - the entries of the new archive, as it was written
+	 * @param baseVersion - the version the delta is made against
+	 * @param baseRoot - the root folder of the extracted earlier version
+	 * @param folder - the folder to write the delta (and its temporary files) into
+	 * @return the delta file - named as the archive, with the delta classifier, as a zip
+	 */
+	public File write(Model model, String classifier, String dataType, ArchiveFormat format, List<ArchiveEntry> entries, String baseVersion,
+			File baseRoot, File folder) throws IOException
+	{
+		long start = System.currentTimeMillis();
+		String rootFolder = Zip.getRootFolder(model, classifier, dataType);
+		Map<String, File> baseFiles = new HashMap<>();
+		Map<String, List<String>> baseByPattern = new HashMap<>();
+		Path basePath = baseRoot.toPath();
+		try (Stream<Path> walk = Files.walk(basePath))
+		{
+			walk.filter((p) -> Files.isRegularFile(p)).sorted().forEach((p) ->
+			{
+				String relative = basePath.relativize(p).toString().replace(File.separatorChar, '/');
+				baseFiles.put(relative, p.toFile());
+				baseByPattern.computeIfAbsent(withoutNumbers(relative), (key) -> new ArrayList<>()).add(relative);
+			});
+		}
+
+		//match each file to the earlier version up front - by path first, then by pattern - so that no base file is used twice
+		List<Item> items = new ArrayList<>();
+		Set<String> usedBase = new HashSet<>();
+		long total = 0;
+		for (ArchiveEntry entry : entries)
+		{
+			if (!entry.getName().startsWith(rootFolder + "/"))
+			{
+				throw new IOException("The archive entry " + entry.getName() + " is not within the root folder " + rootFolder);
+			}
+			Item item = new Item(items.size() + 1, entry, entry.getName().substring(rootFolder.length() + 1));
+			if (!entry.isDirectory())
+			{
+				if (baseFiles.containsKey(item.path))
+				{
+					item.basePath = item.path;
+					usedBase.add(item.path);
+				}
+				total += entry.getSize();
+			}
+			items.add(item);
+		}
+		for (Item item : items)
+		{
+			if (!item.entry.isDirectory() && item.basePath == null)
+			{
+				//when several files share the pattern, prefer the one with the most numbers in common (only the date changed), then the
+				//closest size
+				List<String> numbers = numbers(item.path);
+				String best = null;
+				int bestCommon = -1;
+				long bestSizeDifference = Long.MAX_VALUE;
+				for (String candidate : baseByPattern.getOrDefault(withoutNumbers(item.path), Collections.emptyList()))
+				{
+					if (usedBase.contains(candidate))
+					{
+						continue;
+					}
+					List<String> candidateNumbers = numbers(candidate);
+					int common = 0;
+					for (int i = 0; i < numbers.size(); i++)
+					{
+						common += numbers.get(i).equals(candidateNumbers.get(i)) ? 1 : 0;
+					}
+					long sizeDifference = Math.abs(baseFiles.get(candidate).length() - item.entry.getSize());
+					if (common > bestCommon || (common == bestCommon && sizeDifference < bestSizeDifference))
+					{
+						best = candidate;
+						bestCommon = common;
+						bestSizeDifference = sizeDifference;
+					}
+				}
+				if (best != null)
+				{
+					usedBase.add(best);
+					item.basePath = best;
+				}
+			}
+		}
+		removed_ = baseFiles.size() - usedBase.size();
+
+		if (progress_ != null)
+		{
+			progress_.setTotal(PublishPhase.DELTA, total);
+			progress_.start(PublishPhase.DELTA);
+		}
+		File dataFolder = new File(folder, "delta-data");
+		Files.createDirectories(dataFolder.toPath());
+		runAll(items, options_.getZipThreads(), (item) -> diff(item, baseFiles.get(item.basePath), dataFolder), "Creating the delta");
+
+		File manifest = new File(dataFolder, MANIFEST);
+		writeManifest(manifest, model, classifier, dataType, format, rootFolder, baseVersion, baseRoot.getName(), items);
+		List<ArchiveEntry> zipEntries = new ArrayList<>();
+		zipEntries.add(new ArchiveEntry(MANIFEST, manifest));
+		for (Item item : items)
+		{
+			if (item.data != null)
+			{
+				zipEntries.add(new ArchiveEntry(DATA_FOLDER + item.index, item.data));
+			}
+		}
+		File delta = new File(folder, Zip.getArchiveName(model, getDeltaClassifier(classifier), dataType, ArchiveFormat.ZIP));
+		DigestingOutputStream dos = new DigestingOutputStream(Files.newOutputStream(delta.toPath()), options_.getChecksumTypes());
+		try (OutputStream os = new BufferedOutputStream(dos, 1024 * 1024);
+				ParallelZipWriter zw = new ParallelZipWriter(os, options_.getZipThreads(), options_.getZipBlockSize(), ArchiveFormat.ZIP.getDefaultLevel()))
+		{
+			zw.setIO(FileChannelIO.forOptions(options_));
+			zw.write(zipEntries);
+		}
+		checksums_ = dos.getChecksums();
+		size_ = dos.getCount();
+		removeFolder(dataFolder);
+		if (progress_ != null)
+		{
+			progress_.finish(PublishPhase.DELTA);
+		}
+		log.info("Delta against {}: {} files unchanged, {} changed, {} new, {} removed - {} bytes copied from the earlier version, {} stored - "
+				+ "written to {} ({} bytes) in {}ms", baseVersion, unchanged_, changed_, added_, removed_, copiedBytes_, storedBytes_, delta.getName(),
+				size_, System.currentTimeMillis() - start);
+		return delta;
+	}
+
+	/**
+	 * Work out how to rebuild one file - the delta data (if any) is written to the data folder
+	 */
+	private void diff(Item item, File base, File dataFolder) throws IOException
+	{
+		if (item.entry.isDirectory())
+		{
+			return;
+		}
+		File source = item.entry.getSource();
+		MessageDigest sha1 = newDigest();
+		if (base != null && base.length() == item.entry.getSize() && sameContent(base, source, sha1))
+		{
+			item.op = "same";
+			progressed(item.entry.getSize());
+			synchronized (this)
+			{
+				unchanged_++;
+				copiedBytes_ += item.entry.getSize();
+			}
+		}
+		else if (base != null)
+		{
+			sha1.reset();
+			File data = new File(dataFolder, Integer.toString(item.index));
+			BinaryDelta result;
+			try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(data.toPath()), 64 * 1024))
+			{
+				result = BinaryDelta.diff(base, source, out, options_.getDeltaBlockSize(), sha1, (read) -> progressed(read));
+			}
+			if (data.length() < item.entry.getSize())
+			{
+				item.op = "delta";
+				item.data = data;
+				synchronized (this)
+				{
+					changed_++;
+					copiedBytes_ += result.getCopied();
+					storedBytes_ += result.getAdded();
+				}
+			}
+			else
+			{
+				//too little in common to be worth it
+				Files.delete(data.toPath());
+				item.basePath = null;
+			}
+		}
+		if (item.op == null)
+		{
+			item.op = "new";
+			item.data = source;
+			if (base == null)
+			{
+				FileChannelIO.forOptions(options_).digest(source, Collections.singletonList(sha1), (read) -> progressed(read));
+			}
+			synchronized (this)
+			{
+				added_++;
+				storedBytes_ += item.entry.getSize();
+			}
+		}
+		item.sha1 = Checksums.toHex(sha1.digest());
+	}
+
+	/**
+	 * @return true, if the files have the same content - the digest is updated with the content of the source, as far as it was read
+	 */
+	private static boolean sameContent(File base, File source, MessageDigest digest) throws IOException
+	{
+		try (FileChannel a = FileChannel.open(base.toPath(), StandardOpenOption.READ);
+				FileChannel b = FileChannel.open(source.toPath(), StandardOpenOption.READ))
+		{
+			ByteBuffer bufferA = ByteBuffer.allocate(256 * 1024);
+			ByteBuffer bufferB = ByteBuffer.allocate(256 * 1024);
+			while (true)
+			{
+				bufferA.clear();
+				bufferB.clear();
+				int readA = readFully(a, bufferA);
+				int readB = readFully(b, bufferB);
+				digest.update(bufferB.array(), 0, readB);
+				if (readA != readB || !bufferA.equals(bufferB))
+				{
+					return false;
+				}
+				if (readA < bufferA.capacity())
+				{
+					return true;
+				}
+			}
+		}
+	}
+
+	private static int readFully(FileChannel channel, ByteBuffer buffer) throws IOException
+	{
+		while (buffer.hasRemaining() && channel.read(buffer) >= 0)
+		{
+			//keep reading
+		}
+		buffer.flip();
+		return buffer.remaining();
+	}
+
+	private void writeManifest(File file, Model model, String classifier, String dataType, ArchiveFormat format, String rootFolder,
+			String baseVersion, String baseRootFolder, List<Item> items) throws IOException
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append("# A delta against an earlier version - apply it to the extracted earlier version with "
+				+ "gov.va.knowledgeArtifacts.publisher.KBADeltaCLI\r\n");
+		sb.append("groupId=" + escape(model.getGroupId()) + "\r\n");
+		sb.append("artifactId=" + escape(model.getArtifactId()) + "\r\n");
+		sb.append("version=" + escape(model.getVersion()) + "\r\n");
+		sb.append("classifier=" + escape(classifier.trim()) + "\r\n");
+		sb.append("type=" + escape(dataType + "." + format.getExtension()) + "\r\n");
+		sb.append("rootFolder=" + escape(rootFolder) + "\r\n");
+		sb.append("baseVersion=" + escape(baseVersion) + "\r\n");
+		sb.append("baseRootFolder=" + escape(baseRootFolder) + "\r\n");
+		sb.append("entries=" + items.size() + "\r\n");
+		for (Item item : items)
+		{
+			String prefix = "entry." + item.index + ".";
+			sb.append(prefix + "path=" + escape(item.path) + "\r\n");
+			if (item.entry.isDirectory())
+			{
+				sb.append(prefix + "op=folder\r\n");
+			}
+			else
+			{
+				sb.append(prefix + "op=" + item.op + "\r\n");
+				if (item.basePath != null)
+				{
+					sb.append(prefix + "base=" + escape(item.basePath) + "\r\n");
+				}
+				if (item.data != null)
+				{
+					sb.append(prefix + "data=" + DATA_FOLDER + item.index + "\r\n");
+				}
+				sb.append(prefix + "size=" + item.entry.getSize() + "\r\n");
+				sb.append(prefix + "sha1=" + item.sha1 + "\r\n");
+			}
+			sb.append(prefix + "lastModified=" + item.entry.getLastModified() + "\r\n");
+		}
+		Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @return the manifest of the delta file
+	 */
+	public static Properties readManifest(File delta) throws IOException
+	{
+		try (ZipFile zip = new ZipFile(delta, StandardCharsets.UTF_8))
+		{
+			return readManifest(zip);
+		}
+	}
+
+	private static Properties readManifest(ZipFile zip) throws IOException
+	{
+		ZipEntry entry = zip.getEntry(MANIFEST);
+		if (entry == null)
+		{
+			throw new IOException("The file " + zip.getName() + " is not a delta - it doesn't contain " + MANIFEST);
+		}
+		Properties manifest = new Properties();
+		try (InputStreamReader reader = new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8))
+		{
+			manifest.load(reader);
+		}
+		return manifest;
+	}
+
+	/**
+	 * Rebuild the content of the new version, from the earlier version and the delta, and check each file against the SHA-1 it was
+	 * published with.
+	 * @param baseRoot - the root folder of the extracted earlier version
+	 * @param toFolder - the root folder of the new version is created in this folder - it must not already exist
+	 * @param threads - the number of files to rebuild at the same time
+	 * @return the root folder of the new version
+	 */
+	public static File apply(File delta, File baseRoot, File toFolder, int threads) throws IOException
+	{
+		long start = System.currentTimeMillis();
+		try (ZipFile zip = new ZipFile(delta, StandardCharsets.UTF_8))
+		{
+			Properties manifest = readManifest(zip);
+			File root = resolve(toFolder, require(manifest, "rootFolder"));
+			if (root.exists())
+			{
+				throw new IOException("The folder " + root.getAbsolutePath() + " already exists");
+			}
+			String baseVersion = require(manifest, "baseVersion");
+			long count = requireNumber(manifest, "entries");
+			List<Integer> files = new ArrayList<>();
+			List<Integer> folders = new ArrayList<>();
+			//check every entry before anything is written
+			for (int i = 1; i <= count; i++)
+			{
+				String prefix = "entry." + i + ".";
+				resolve(root, require(manifest, prefix + "path"));
+				requireNumber(manifest, prefix + "lastModified");
+				String op = require(manifest, prefix + "op");
+				if (op.equals("folder"))
+				{
+					folders.add(i);
+					continue;
+				}
+				if (!op.equals("same") && !op.equals("delta") && !op.equals("new"))
+				{
+					throw new IOException("Unknown operation " + op + " for " + manifest.getProperty(prefix + "path") 
+							+ " - the delta may need a newer version of this tool");
+				}
+				requireNumber(manifest, prefix + "size");
+				require(manifest, prefix + "sha1");
+				if (!op.equals("new"))
+				{
+					String base = require(manifest, prefix + "base");
+					if (!resolve(baseRoot, base).isFile())
+					{
+						throw new IOException("The file " + base + " is missing from " + baseRoot.getAbsolutePath() + " - the delta must be applied to "
+								+ "the content of version " + baseVersion);
+					}
+				}
+				files.add(i);
+			}
+
+			try
+			{
+				for (int i : folders)
+				{
+					Files.createDirectories(resolve(root, manifest.getProperty("entry." + i + ".path")).toPath());
+				}
+				runAll(files, threads, (i) -> rebuild(zip, manifest, "entry." + i + ".", baseRoot, root, baseVersion), "Applying the delta");
+			}
+			catch (IOException | RuntimeException e)
+			{
+				//don't leave a partial result behind, that could be mistaken for the new version
+				if (root.exists())
+				{
+					removeFolder(root);
+				}
+				throw e;
+			}
+			//after the files, as creating them changes the folders
+			for (int i : folders)
+			{
+				String prefix = "entry." + i + ".";
+				resolve(root, manifest.getProperty(prefix + "path")).setLastModified(requireNumber(manifest, prefix + "lastModified"));
+			}
+			log.info("Rebuilt {} files of version {} from version {} in {}ms", files.size(), manifest.getProperty("version"), baseVersion,
+					System.currentTimeMillis() - start);
+			return root;
+		}
+	}
+
+	private static void rebuild(ZipFile zip, Properties manifest, String prefix, File baseRoot, File root, String baseVersion) throws IOException
+	{
+		String path = manifest.getProperty(prefix + "path");
+		String op = manifest.getProperty(prefix + "op");
+		File target = resolve(root, path);
+		File base = manifest.getProperty(prefix + "base") == null ? null : resolve(baseRoot, manifest.getProperty(prefix + "base"));
+		Files.createDirectories(target.getParentFile().toPath());
+		MessageDigest sha1 = newDigest();
+		long written;
+		try (DigestOutputStream out = new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(target.toPath()), 64 * 1024), sha1))
+		{
+			if ("same".equals(op))
+			{
+				written = Files.copy(base.toPath(), out);
+			}
+			else
+			{
+				ZipEntry data = zip.getEntry(manifest.getProperty(prefix + "data", ""));
+				if (data == null)
+				{
+					throw new IOException("The delta is missing the data of " + path);
+				}
+				try (InputStream in = new BufferedInputStream(zip.getInputStream(data), 64 * 1024))
+				{
+					if ("delta".equals(op))
+					{
+						written = BinaryDelta.apply(base, in, out);
+					}
+					else
+					{
+						written = copy(in, out);
+					}
+				}
+			}
+		}
+		String expected = manifest.getProperty(prefix + "sha1");
+		if (written != requireNumber(manifest, prefix + "size") || !Checksums.toHex(sha1.digest()).equalsIgnoreCase(expected))
+		{
+			throw new IOException("The rebuilt file " + path + " doesn't match the published file - "
+					+ (base == null ? "the delta is corrupt" : "the earlier version isn't " + baseVersion + ", or has been changed"));
+		}
+		target.setLastModified(requireNumber(manifest, prefix + "lastModified"));
+	}
+
+	private static long copy(InputStream in, OutputStream out) throws IOException
+	{
+		byte[] buffer = new byte[64 * 1024];
+		long total = 0;
+		int read;
+		while ((read = in.read(buffer)) != -1)
+		{
+			out.write(buffer, 0, read);
+			total += read;
+		}
+		return total;
+	}
+
+	/**
+	 * @return the path within the folder - refusing paths that would escape it
+	 */
+	private static File resolve(File folder, String path) throws IOException
+	{
+		if (path == null)
+		{
+			throw new IOException("The delta is corrupt - an entry has no path");
+		}
+		Path root = folder.getAbsoluteFile().toPath().normalize();
+		Path target;
+		try
+		{
+			target = root.resolve(path).normalize();
+		}
+		catch (InvalidPathException e)
+		{
+			throw new IOException("The delta is corrupt - the path " + path + " isn't valid");
+		}
+		if (!target.startsWith(root) || target.equals(root))
+		{
+			throw new IOException("The delta is corrupt - the path " + path + " is outside of " + folder.getAbsolutePath());
+		}
+		return target.toFile();
+	}
+
+	/**
+	 * @return the value from the manifest of a delta - which must be there
+	 */
+	private static String require(Properties manifest, String key) throws IOException
+	{
+		String value = manifest.getProperty(key);
+		if (value == null || value.trim().length() == 0)
+		{
+			throw new IOException("The delta is corrupt - its manifest has no " + key);
+		}
+		return value;
+	}
+
+	/**
+	 * @return the number from the manifest of a delta - which must be there, and not negative
+	 */
+	private static long requireNumber(Properties manifest, String key) throws IOException
+	{
+		String value = require(manifest, key);
+		try
+		{
+			long number = Long.parseLong(value.trim());
+			if (number >= 0)
+			{
+				return number;
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			//fall through
+		}
+		throw new IOException("The delta is corrupt - the " + key + " in its manifest isn't a number: " + value);
+	}
+
+	private interface Work<T>
+	{
+		public void run(T item) throws IOException;
+	}
+
+	/**
+	 * Run the work for each item on a thread pool, and wait for all of it - throwing the first failure
+	 */
+	private static <T> void runAll(List<T> items, int threads, Work<T> work, String description) throws IOException
+	{
+		AtomicInteger threadNumber = new AtomicInteger(1);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, items.size())), (runnable) ->
+		{
+			Thread t = new Thread(runnable, "KBA-Delta-" + threadNumber.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		});
+		try
+		{
+			List<Future<Void>> futures = new ArrayList<>();
+			for (T item : items)
+			{
+				futures.add(executor.submit(() ->
+				{
+					work.run(item);
+					return null;
+				}));
+			}
+			for (Future<Void> f : futures)
+			{
+				f.get();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			throw new IOException("Interrupted while " + description.toLowerCase(), e);
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+			{
+				throw (IOException)e.getCause();
+			}
+			throw new IOException(description + " failed", e.getCause());
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	private static MessageDigest newDigest() throws IOException
+	{
+		return Checksums.createDigests(Collections.singletonList(ChecksumType.SHA1)).get(ChecksumType.SHA1);
+	}
+
+	/**
+	 * @return the path with each run of digits replaced - so the files of successive releases, named by their date, match
+	 */
+	static String withoutNumbers(String path)
+	{
+		return DIGITS.matcher(path).replaceAll("#");
+	}
+
+	/**
+	 * @return the runs of digits in the path, in order
+	 */
+	static List<String> numbers(String path)
+	{
+		List<String> numbers = new ArrayList<>();
+		Matcher matcher = DIGITS.matcher(path);
+		while (matcher.find())
+		{
+			numbers.add(matcher.group());
+		}
+		return numbers;
+	}
+
+	/**
+	 * Escape a value for a properties file
+	 */
+	private static String escape(String value)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+			if (c == '\\')
+			{
+				sb.append("\\\\");
+			}
+			else if (c == '\n')
+			{
+				sb.append("\\n");
+			}
+			else if (c == '\r')
+			{
+				sb.append("\\r");
+			}
+			else if (i == 0 && (c == ' ' || c == '\t'))
+			{
+				sb.append('\\').append(c);
+			}
+			else
+			{
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	private void progressed(long bytes)
+	{
+		if (progress_ != null)
+		{
+			progress_.add(PublishPhase.DELTA, bytes);
+		}
+	}
+
+	private static void removeFolder(File folder) throws IOException
+	{
+		try (Stream<Path> walk = Files.walk(folder.toPath()))
+		{
+			List<Path> paths = new ArrayList<>();
+			walk.forEach(paths::add);
+			Collections.reverse(paths);
+			for (Path p : paths)
+			{
+				Files.delete(p);
+			}
+		}
+	}
+
+	/**
+	 * @return the checksums of the delta file, calculated as it was written
+	 */
+	public Map<ChecksumType, String> getChecksums()
+	{
+		return checksums_;
+	}
+
+	/**
+	 * @return the size of the delta file, in bytes
+	 */
+	public long getSize()
+	{
+		return size_;
+	}
+
+	/**
+	 * @return the number of files that are identical in the earlier version
+	 */
+	public int getUnchangedFiles()
+	{
+		return unchanged_;
+	}
+
+	/**
+	 * @return the number of files rebuilt from a file of the earlier version
+	 */
+	public int getChangedFiles()
+	{
+		return changed_;
+	}
+
+	/**
+	 * @return the number of files stored whole
+	 */
+	public int getNewFiles()
+	{
+		return added_;
+	}
+
+	/**
+	 * @return the number of files of the earlier version that aren't in the new one
+	 */
+	public int getRemovedFiles()
+	{
+		return removed_;
+	}
+
+	/**
+	 * @return the bytes of the new version that are copied from the earlier version
+	 */
+	public long getCopiedBytes()
+	{
+		return copiedBytes_;
+	}
+
+	/**
+	 * @return the bytes of the new version that are stored in the delta (before it is compressed)
+	 */
+	public long getStoredBytes()
+	{
+		return storedBytes_;
+	}
+
+	/**
+	 * A file or folder of the new archive, and how it is rebuilt
+	 */
+	private static class Item
+	{
+		int index;
+		ArchiveEntry entry;
+		//below the root folder
+		String path;
+		String basePath;
+		String op;
+		File data;
+		String sha1;
+
+		Item(int index, ArchiveEntry entry, String path)
+		{
+			this.index = index;
+			this.entry = entry;
+			this.path = path;
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.publish;
+
+import gov.va.knowledgeArtifacts.publisher.types.ChecksumType;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * {@link DigestingOutputStream}
+ *
+ * Feeds every byte written through to all of the requested digests, so the checksums of the output are known as soon as the
+ * stream is closed - without reading the output back.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class DigestingOutputStream extends FilterOutputStream
+{
+	private Map<ChecksumType, MessageDigest> digests_;
+	private Map<ChecksumType, String> checksums_;
+	private long count_ = 0;
+
+	public DigestingOutputStream(OutputStream out, Collection<ChecksumType> types) throws IOException
+	{
+		super(out);
+		digests_ = Checksums.createDigests(types);
+	}
+
+	@Override
+	public void write(int b) throws IOException
+	{
+		out.write(b);
+		for (MessageDigest md : digests_.values())
+		{
+			md.update((byte)b);
+		}
+		count_++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException
+	{
+		out.write(b, off, len);
+		for (MessageDigest md : digests_.values())
+		{
+			md.update(b, off, len);
+		}
+		count_ += len;
+	}
+
+	/**
+	 * @return the number of bytes written so far
+	 */
+	public long getCount()
+	{
+		return count_;
+	}
+
+	/**
+	 * Completes the digests - nothing further may be written after this is called.
+	 * @return the hex checksums of everything written to the stream
+	 */
+	public Map<ChecksumType, String> getChecksums()
+	{
+		if (checksums_ == null)
+		{
+			checksums_ = Checksums.toHex(digests_);
+		}
+		return checksums_;
+	}
+}
@@ -0,0 +1,607 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.publish;
+
+import gov.va.knowledgeArtifacts.publisher.types.ChecksumType;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link EntryCache}
+ *
+ * An on-disk cache of the deflated content of archive entries, so that files which have not changed since the last publish
+ * can be copied straight into the new archive, rather than being compressed again.
+ *
+ * Cached entries are keyed by the SHA-256 of the file content, and the deflate level.  Hashing every file is still a full
+ * read, so an index of path, size and last modified time to content hash is also kept - a file that matches the index
+ * is not read at all.  When nothing at all matches the index (the first publish of a folder) the files are not hashed up front -
+ * their entries are keyed by the path, size and last modified time instead, so the cold run costs no extra read.
+ *
+ * Each cache file holds the raw deflate stream, followed by a trailer of the uncompressed size and the CRC.  Cache files are
+ * written to a temp file, and renamed into place once complete, so a partial file is never used.  The cache never grows beyond
+ * its maximum size - once full, no more entries are added to it - and the least recently used cache files are removed when it
+ * is saved, to make room for the next publish.
+ *
+ * Publishes that run at the same time (a batch) may share the cache folder.  Each one merges its additions into the index on
+ * disk, under a file lock, and only the last one to {@link #close()} the folder trims it.  A cache file may still vanish before
+ * it is copied (trimmed by another process) - the writer then compresses the entry again.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class EntryCache implements Closeable
+{
+	private static Logger log = LoggerFactory.getLogger(EntryCache.class);
+
+	private static final String INDEX_FILE = "index.properties";
+	private static final String LOCK_FILE = "cache.lock";
+	private static final String SUFFIX = ".deflate";
+	private static final int TRAILER_SIZE = 16;
+	//Small files compress in a few microseconds - not worth a cache file each
+	private static final long MIN_SIZE = 16 * 1024;
+	//The caches open on each folder, in this JVM
+	private static final Map<File, SharedFolder> FOLDERS = new HashMap<>();
+
+	private File folder_;
+	private long maxSize_;
+	private SharedFolder shared_;
+	private boolean closed_;
+	private Properties index_;
+	//the index entries added by this publish - all that it writes back to the shared index
+	private Properties updates_ = new Properties();
+	private Map<ArchiveEntry, String> hashes_ = Collections.synchronizedMap(new IdentityHashMap<>());
+	private AtomicInteger hits_ = new AtomicInteger();
+	private AtomicInteger misses_ = new AtomicInteger();
+	private AtomicBoolean full_ = new AtomicBoolean();
+	private FileChannelIO io_ = FileChannelIO.DEFAULT;
+
+	/**
+	 * @param folder - the folder to keep the cache in - created, if necessary
+	 * @param maxSize - the most (in bytes) that the cache may hold
+	 */
+	public EntryCache(File folder, long maxSize) throws IOException
+	{
+		Files.createDirectories(folder.toPath());
+		folder_ = folder.getCanonicalFile();
+		maxSize_ = maxSize;
+		index_ = readIndex();
+		synchronized (FOLDERS)
+		{
+			shared_ = FOLDERS.get(folder_);
+			if (shared_ == null)
+			{
+				shared_ = new SharedFolder();
+				for (File f : listCacheFiles())
+				{
+					shared_.size.addAndGet(f.length());
+				}
+				FOLDERS.put(folder_, shared_);
+			}
+			shared_.users++;
+		}
+	}
+
+	/**
+	 * @param io - the reader used to hash the entries
+	 */
+	public void setIO(FileChannelIO io)
+	{
+		io_ = io;
+	}
+
+	/**
+	 * Find the content hash of each of the deflated file entries, using the index where possible, and hashing the rest of the
+	 * files on the passed in number of threads.  If none of the files match the index, nothing can be copied from the cache on
+	 * this run, so the files aren't hashed - they are keyed by their identity instead.  Must be called before the entries are 
+	 * written.
+	 */
+	public void prepare(List<ArchiveEntry> entries, int threads) throws IOException
+	{
+		List<ArchiveEntry> unknown = new ArrayList<>();
+		int indexed = 0;
+		for (ArchiveEntry entry : entries)
+		{
+			if (!isCacheable(entry))
+			{
+				continue;
+			}
+			String known = index_.getProperty(entry.getSource().getAbsolutePath());
+			String[] parts = known == null ? null : known.split(",");
+			if (parts != null && parts.length == 3 && parts[0].equals(Long.toString(entry.getSize()))
+					&& parts[1].equals(Long.toString(entry.getLastModified())))
+			{
+				hashes_.put(entry, parts[2]);
+				indexed++;
+			}
+			else
+			{
+				unknown.add(entry);
+			}
+		}
+		if (indexed == 0)
+		{
+			for (ArchiveEntry entry : unknown)
+			{
+				String hash = identity(entry);
+				hashes_.put(entry, hash);
+				remember(entry, hash);
+			}
+			log.info("Entry cache matched no files by the index - keyed {} files by path, without hashing them", unknown.size());
+			return;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads), (runnable) ->
+		{
+			Thread t = new Thread(runnable, "KBA-Entry-Cache");
+			t.setDaemon(true);
+			return t;
+		});
+		try
+		{
+			List<Future<Void>> futures = new ArrayList<>();
+			for (ArchiveEntry entry : unknown)
+			{
+				futures.add(executor.submit(() ->
+				{
+					String hash = Checksums.calculate(entry.getSource(), Arrays.asList(new ChecksumType[] {ChecksumType.SHA256}), io_, null)
+							.get(ChecksumType.SHA256);
+					hashes_.put(entry, hash);
+					remember(entry, hash);
+					return null;
+				}));
+			}
+			for (Future<Void> f : futures)
+			{
+				f.get();
+			}
+			log.info("Entry cache matched {} files by the index, and hashed {} files", indexed, futures.size());
+		}
+		catch (InterruptedException e)
+		{
+			throw new IOException("Interrupted while hashing files", e);
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+			{
+				throw (IOException)e.getCause();
+			}
+			throw new IOException("Unexpected error while hashing files", e.getCause());
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return the cached content of the entry, when compressed at the passed in level - or null, if it isn't cached
+	 */
+	public CachedEntry get(ArchiveEntry entry, int level) throws IOException
+	{
+		String hash = hashes_.get(entry);
+		if (hash == null)
+		{
+			return null;
+		}
+		File f = cacheFile(hash, level);
+		if (!f.isFile() || f.length() < TRAILER_SIZE)
+		{
+			misses_.incrementAndGet();
+			return null;
+		}
+		ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+		try (FileChannel fc = FileChannel.open(f.toPath(), StandardOpenOption.READ))
+		{
+			long position = fc.size() - TRAILER_SIZE;
+			while (trailer.hasRemaining() && fc.read(trailer, position + trailer.position()) >= 0)
+			{
+				//keep reading
+			}
+		}
+		catch (NoSuchFileException e)
+		{
+			//trimmed by another publish
+			misses_.incrementAndGet();
+			return null;
+		}
+		trailer.flip();
+		long size = trailer.getLong();
+		long crc = trailer.getLong();
+		if (size != entry.getSize())
+		{
+			log.warn("Ignoring the cache file {} - the size doesn't match", f.getAbsolutePath());
+			misses_.incrementAndGet();
+			return null;
+		}
+		//Touched, so the least recently used files are the ones trimmed
+		f.setLastModified(System.currentTimeMillis());
+		hits_.incrementAndGet();
+		return new CachedEntry(f, f.length() - TRAILER_SIZE, size, crc);
+	}
+
+	/**
+	 * Start a new cache file for the entry.
+	 * @return the writer for the compressed content - or null, if the entry shouldn't be cached, or the cache is full
+	 */
+	public CacheWriter create(ArchiveEntry entry, int level) throws IOException
+	{
+		String hash = hashes_.get(entry);
+		if (hash == null)
+		{
+			return null;
+		}
+		//Reserve the uncompressed size - the cache file can't be much bigger than that - so the cache never exceeds its limit
+		long reserved = entry.getSize() + TRAILER_SIZE;
+		if (shared_.size.addAndGet(reserved) > maxSize_)
+		{
+			shared_.size.addAndGet(-reserved);
+			if (full_.compareAndSet(false, true))
+			{
+				log.info("The entry cache is full ({} bytes) - no more entries are added to it by this publish", maxSize_);
+			}
+			return null;
+		}
+		return new CacheWriter(entry, cacheFile(hash, level), shared_.size, reserved);
+	}
+
+	/**
+	 * Write the entries this publish added to the index - merged with the index as it is on disk now, as other publishes may
+	 * have saved it since this cache was opened.
+	 */
+	public void save() throws IOException
+	{
+		synchronized (FOLDERS)
+		{
+			try (FileChannel lockChannel = FileChannel.open(new File(folder_, LOCK_FILE).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+					FileLock lock = lockChannel.lock())
+			{
+				Properties merged = readIndex();
+				synchronized (updates_)
+				{
+					merged.putAll(updates_);
+				}
+				//drop the index entries for files that no longer exist
+				merged.keySet().removeIf(key -> !new File((String)key).isFile());
+				File temp = File.createTempFile(INDEX_FILE, ".tmp", folder_);
+				try (OutputStream os = new BufferedOutputStream(new FileOutputStream(temp)))
+				{
+					merged.store(os, "KBA Publisher entry cache index - path=size,lastModified,sha256");
+				}
+				Files.move(temp.toPath(), new File(folder_, INDEX_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING, 
+						StandardCopyOption.ATOMIC_MOVE);
+			}
+		}
+		log.info("Entry cache hits: {} misses: {}", hits_.get(), misses_.get());
+	}
+
+	/**
+	 * Done with the cache.  The last publish (in this JVM) to close the folder trims it to three quarters of its maximum size,
+	 * so the next publish has room to add to it - the others leave it alone, as they may still be copying from it.  Calling
+	 * this more than once has no further effect.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		synchronized (FOLDERS)
+		{
+			if (closed_)
+			{
+				return;
+			}
+			closed_ = true;
+			if (--shared_.users > 0)
+			{
+				log.debug("Not trimming the entry cache - {} other publishes are still using it", shared_.users);
+				return;
+			}
+			FOLDERS.remove(folder_);
+			try (FileChannel lockChannel = FileChannel.open(new File(folder_, LOCK_FILE).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+					FileLock lock = lockChannel.lock())
+			{
+				trim();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of entries copied from the cache, since this cache was opened
+	 */
+	public int getHits()
+	{
+		return hits_.get();
+	}
+
+	/**
+	 * @return the number of entries that had to be compressed, since this cache was opened
+	 */
+	public int getMisses()
+	{
+		return misses_.get();
+	}
+
+	private void trim() throws IOException
+	{
+		List<File> files = listCacheFiles();
+		long total = 0;
+		for (File f : files)
+		{
+			total += f.length();
+		}
+		long target = maxSize_ / 4 * 3;
+		if (total <= target)
+		{
+			return;
+		}
+		files.sort((a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+		int removed = 0;
+		for (File f : files)
+		{
+			if (total <= target)
+			{
+				break;
+			}
+			if (!f.getName().endsWith(SUFFIX))
+			{
+				continue;  //still being written, by another process
+			}
+			long length = f.length();
+			try
+			{
+				Files.deleteIfExists(f.toPath());
+			}
+			catch (IOException e)
+			{
+				//in use (on windows)
+				log.debug("Unable to remove the cache file " + f.getAbsolutePath(), e);
+				continue;
+			}
+			total -= length;
+			removed++;
+		}
+		log.info("Removed {} files from the entry cache, to trim it to {} bytes", removed, target);
+	}
+
+	private Properties readIndex()
+	{
+		Properties index = new Properties();
+		File file = new File(folder_, INDEX_FILE);
+		if (file.isFile())
+		{
+			try (InputStream is = new FileInputStream(file))
+			{
+				index.load(is);
+			}
+			catch (IOException | IllegalArgumentException e)
+			{
+				log.warn("Ignoring unreadable entry cache index " + file.getAbsolutePath(), e);
+				index.clear();
+			}
+		}
+		return index;
+	}
+
+	private void remember(ArchiveEntry entry, String hash)
+	{
+		synchronized (updates_)
+		{
+			updates_.setProperty(entry.getSource().getAbsolutePath(), entry.getSize() + "," + entry.getLastModified() + "," + hash);
+		}
+	}
+
+	private List<File> listCacheFiles()
+	{
+		List<File> files = new ArrayList<>();
+		File[] subFolders = folder_.listFiles(File::isDirectory);
+		for (File subFolder : subFolders == null ? new File[0] : subFolders)
+		{
+			File[] cached = subFolder.listFiles();
+			files.addAll(Arrays.asList(cached == null ? new File[0] : cached));
+		}
+		return files;
+	}
+
+	/**
+	 * @return a key for the entry made from its path, size and last modified time, for when it isn't worth reading the content
+	 */
+	private static String identity(ArchiveEntry entry) throws IOException
+	{
+		try
+		{
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			md.update((entry.getSource().getAbsolutePath() + "," + entry.getSize() + "," + entry.getLastModified()).getBytes(StandardCharsets.UTF_8));
+			return Checksums.toHex(md.digest());
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IOException("SHA-256 is not available", e);
+		}
+	}
+
+	private File cacheFile(String hash, int level)
+	{
+		return new File(new File(folder_, hash.substring(0, 2)), hash + "-" + level + SUFFIX);
+	}
+
+	private static boolean isCacheable(ArchiveEntry entry)
+	{
+		return !entry.isDirectory() && entry.getMethod() == ZipEntry.DEFLATED && entry.getSize() >= MIN_SIZE;
+	}
+
+	private static class SharedFolder
+	{
+		int users;
+		AtomicLong size = new AtomicLong();
+	}
+
+	/**
+	 * The compressed content of an entry, as found in the cache.
+	 */
+	public static class CachedEntry
+	{
+		private File file_;
+		private long compressedSize_;
+		private long size_;
+		private long crc_;
+
+		CachedEntry(File file, long compressedSize, long size, long crc)
+		{
+			file_ = file;
+			compressedSize_ = compressedSize;
+			size_ = size;
+			crc_ = crc;
+		}
+
+		/**
+		 * @return the cache file - the raw deflate stream is at the start of the file
+		 */
+		public File getFile()
+		{
+			return file_;
+		}
+
+		public long getCompressedSize()
+		{
+			return compressedSize_;
+		}
+
+		public long getSize()
+		{
+			return size_;
+		}
+
+		public long getCrc()
+		{
+			return crc_;
+		}
+	}
+
+	/**
+	 * Receives the compressed content of an entry as it is written to an archive.  Nothing is added to the cache unless
+	 * {@link #commit(long, long)} is called.
+	 */
+	public static class CacheWriter
+	{
+		private ArchiveEntry entry_;
+		private File target_;
+		private File temp_;
+		private DataOutputStream out_;
+		private AtomicLong cacheSize_;
+		private long reserved_;
+
+		CacheWriter(ArchiveEntry entry, File target, AtomicLong cacheSize, long reserved) throws IOException
+		{
+			entry_ = entry;
+			target_ = target;
+			cacheSize_ = cacheSize;
+			reserved_ = reserved;
+			Files.createDirectories(target.getParentFile().toPath());
+			temp_ = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+			out_ = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp_), 1024 * 1024));
+		}
+
+		public void write(byte[] data, int offset, int length) throws IOException
+		{
+			out_.write(data, offset, length);
+		}
+
+		/**
+		 * Complete the cache file - unless the source file changed while it was being compressed.
+		 */
+		public void commit(long size, long crc) throws IOException
+		{
+			boolean committed = false;
+			try
+			{
+				out_.writeLong(size);
+				out_.writeLong(crc);
+				out_.close();
+				if (size != entry_.getSize() || entry_.getSource().lastModified() != entry_.getLastModified())
+				{
+					log.warn("Not caching {} - the file changed while it was being compressed", entry_.getSource().getAbsolutePath());
+					Files.deleteIfExists(temp_.toPath());
+					return;
+				}
+				long length = temp_.length();
+				Files.move(temp_.toPath(), target_.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				//Swap the reservation for the real size of the cache file
+				cacheSize_.addAndGet(length - reserved_);
+				committed = true;
+			}
+			finally
+			{
+				if (!committed)
+				{
+					cacheSize_.addAndGet(-reserved_);
+				}
+			}
+		}
+
+		/**
+		 * Discard the partial cache file.
+		 */
+		public void abort()
+		{
+			cacheSize_.addAndGet(-reserved_);
+			try
+			{
+				out_.close();
+				Files.deleteIfExists(temp_.toPath());
+			}
+			catch (IOException e)
+			{
+				log.debug("Failed to remove the partial cache file " + temp_.getAbsolutePath(), e);
+			}
+		}
+	}
+}
@@ -0,0 +1,324 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.publish;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.function.LongConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link FileChannelIO}
+ *
+ * Reads files through a {@link FileChannel}, for checksums, archiving and uploads.  Files larger than the buffer are memory mapped,
+ * a window at a time, and smaller files (or all files, when mapping is turned off) are read into a direct buffer that each thread
+ * reuses.  Either way the content is handed on as {@link ByteBuffer}s - so digests and CRCs read the file's pages directly, rather
+ * than through a copy in a small heap array, with a system call for every few KB.
+ *
+ * When the destination is itself a file, the content is moved with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+ * which lets the operating system copy it without passing it through the JVM at all.
+ *
+ * Each mapping is released as soon as it has been read, rather than when it is garbage collected - on Windows, a mapped file can't
+ * be deleted, and the temporary files are removed at the end of the publish.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class FileChannelIO
+{
+	private static Logger log = LoggerFactory.getLogger(FileChannelIO.class);
+
+	public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+	public static final int DEFAULT_MAP_SIZE = 64 * 1024 * 1024;
+	public static final FileChannelIO DEFAULT = new FileChannelIO(DEFAULT_BUFFER_SIZE, DEFAULT_MAP_SIZE);
+
+	private static volatile Unmapper unmapper_ = findUnmapper();
+
+	private final int bufferSize_;
+	private final int mapSize_;
+	private final ThreadLocal<ByteBuffer> directBuffer_;
+	private final ThreadLocal<byte[]> heapBuffer_;
+
+	/**
+	 * Receives the content of a file, one part at a time
+	 */
+	public interface ChunkHandler
+	{
+		/**
+		 * @param chunk - the next part of the file, from its position to its limit.  Only valid during the call - it must not be
+		 * kept.
+		 */
+		public void handle(ByteBuffer chunk) throws IOException;
+	}
+
+	/**
+	 * @param bufferSize - the size of the buffer that files are read into, and of the chunks that they are handed on in
+	 * @param mapSize - the size of the window of a large file that is mapped at a time - 0 to read every file into the buffer
+	 */
+	public FileChannelIO(int bufferSize, int mapSize)
+	{
+		bufferSize_ = Math.max(4096, bufferSize);
+		mapSize_ = mapSize <= 0 ? 0 : Math.max(bufferSize_, mapSize);
+		directBuffer_ = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(bufferSize_));
+		heapBuffer_ = ThreadLocal.withInitial(() -> new byte[bufferSize_]);
+	}
+
+	/**
+	 * @return the reader configured by the options - the shared default, if they are the defaults
+	 */
+	public static FileChannelIO forOptions(PublishOptions options)
+	{
+		if (options.getIoBufferSize() == DEFAULT_BUFFER_SIZE && options.getIoMapSize() == DEFAULT_MAP_SIZE)
+		{
+			return DEFAULT;
+		}
+		return new FileChannelIO(options.getIoBufferSize(), options.getIoMapSize());
+	}
+
+	/**
+	 * Pass the content of the file, from the offset, to the handler.
+	 * @param length - the number of bytes to read - or -1 to read to the end of the file (as it is when opened)
+	 * @return the number of bytes read
+	 * @throws IOException if the file is shorter than the requested length
+	 */
+	public long read(File file, long offset, long length, ChunkHandler handler) throws IOException
+	{
+		try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			return read(fc, file, offset, length, handler);
+		}
+	}
+
+	private long read(FileChannel fc, File file, long offset, long length, ChunkHandler handler) throws IOException
+	{
+		long end = length < 0 ? fc.size() : offset + length;
+		if (end > fc.size())
+		{
+			throw new IOException("The file " + file.getAbsolutePath() + " changed while it was being read");
+		}
+		long position = offset;
+		if (mapSize_ > 0 && end - offset > bufferSize_)
+		{
+			while (position < end)
+			{
+				int window = (int)Math.min(mapSize_, end - position);
+				MappedByteBuffer mapped = fc.map(MapMode.READ_ONLY, position, window);
+				try
+				{
+					//hand the window on in buffer sized chunks, so that progress is reported as often as when reading
+					for (int start = 0; start < window; start += bufferSize_)
+					{
+						mapped.limit(Math.min(window, start + bufferSize_));
+						mapped.position(start);
+						handler.handle(mapped.slice());
+					}
+				}
+				finally
+				{
+					unmap(mapped);
+				}
+				position += window;
+			}
+		}
+		else
+		{
+			ByteBuffer buffer = directBuffer_.get();
+			while (position < end)
+			{
+				buffer.clear();
+				buffer.limit((int)Math.min(buffer.capacity(), end - position));
+				int read = fc.read(buffer, position);
+				if (read < 0)
+				{
+					throw new IOException("The file " + file.getAbsolutePath() + " changed while it was being read");
+				}
+				buffer.flip();
+				handler.handle(buffer);
+				position += read;
+			}
+		}
+		return position - offset;
+	}
+
+	/**
+	 * Read the whole file once, feeding every digest.
+	 * @param progress - optional - passed the number of bytes read, after each chunk
+	 * @return the number of bytes read
+	 */
+	public long digest(File file, Collection<MessageDigest> digests, LongConsumer progress) throws IOException
+	{
+		return read(file, 0, -1, (chunk) ->
+		{
+			int start = chunk.position();
+			for (MessageDigest md : digests)
+			{
+				chunk.position(start);
+				md.update(chunk);
+			}
+			if (progress != null)
+			{
+				progress.accept(chunk.limit() - start);
+			}
+		});
+	}
+
+	/**
+	 * Write the content of the file, from the offset, to the stream.
+	 * @param length - the number of bytes to write - or -1 to write to the end of the file (as it is when opened)
+	 * @param progress - optional - passed the number of bytes written, after each chunk
+	 * @return the number of bytes written
+	 */
+	public long transfer(File file, long offset, long length, OutputStream out, LongConsumer progress) throws IOException
+	{
+		try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			return transfer(fc, file, offset, length, out, progress);
+		}
+	}
+
+	/**
+	 * Write the content of an already open file, from the offset, to the stream - as {@link #transfer(File, long, long, OutputStream, LongConsumer)}.
+	 * The channel is left open.
+	 * @param file - the file the channel was opened on
+	 */
+	public long transfer(FileChannel fc, File file, long offset, long length, OutputStream out, LongConsumer progress) throws IOException
+	{
+		if (out instanceof FileOutputStream)
+		{
+			out.flush();
+			return transferTo(fc, file, offset, length, ((FileOutputStream)out).getChannel(), progress);
+		}
+		byte[] heap = heapBuffer_.get();
+		return read(fc, file, offset, length, (chunk) ->
+		{
+			int count = chunk.remaining();
+			if (chunk.hasArray())
+			{
+				out.write(chunk.array(), chunk.arrayOffset() + chunk.position(), count);
+			}
+			else
+			{
+				chunk.get(heap, 0, count);
+				out.write(heap, 0, count);
+			}
+			if (progress != null)
+			{
+				progress.accept(count);
+			}
+		});
+	}
+
+	private long transferTo(FileChannel fc, File file, long offset, long length, FileChannel target, LongConsumer progress) throws IOException
+	{
+		long end = length < 0 ? fc.size() : offset + length;
+		long position = offset;
+		while (position < end)
+		{
+			long sent = fc.transferTo(position, Math.min(bufferSize_, end - position), target);
+			if (sent <= 0)
+			{
+				throw new IOException("The file " + file.getAbsolutePath() + " changed while it was being read");
+			}
+			position += sent;
+			if (progress != null)
+			{
+				progress.accept(sent);
+			}
+		}
+		return position - offset;
+	}
+
+	/**
+	 * Release the mapping now, rather than when the buffer is garbage collected.  This relies on JVM internals - if they aren't
+	 * available, the mapping is left for the garbage collector.
+	 */
+	private static void unmap(MappedByteBuffer buffer)
+	{
+		if (unmapper_ == null)
+		{
+			return;
+		}
+		try
+		{
+			unmapper_.unmap(buffer);
+		}
+		catch (Exception e)
+		{
+			log.debug("Unable to release a file mapping early - leaving it for the garbage collector", e);
+			unmapper_ = null;
+		}
+	}
+
+	private interface Unmapper
+	{
+		public void unmap(ByteBuffer buffer) throws Exception;
+	}
+
+	private static Unmapper findUnmapper()
+	{
+		try
+		{
+			//java 9 and newer
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			Object unsafe = theUnsafe.get(null);
+			return (buffer) -> invokeCleaner.invoke(unsafe, buffer);
+		}
+		catch (NoSuchMethodException e)
+		{
+			//java 8
+			try
+			{
+				Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+				Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+				return (buffer) -> 
+				{
+					Object c = cleaner.invoke(buffer);
+					if (c != null)
+					{
+						clean.invoke(c);
+					}
+				};
+			}
+			catch (Exception | LinkageError e1)
+			{
+				log.debug("File mappings can't be released early - they are left for the garbage collector", e1);
+				return null;
+			}
+		}
+		catch (Exception | LinkageError e)
+		{
+			log.debug("File mappings can't be released early - they are left for the garbage collector", e);
+			return null;
+		}
+	}
+}
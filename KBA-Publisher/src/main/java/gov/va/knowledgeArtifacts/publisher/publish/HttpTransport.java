@@ -0,0 +1,783 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.publish;
+
+import gov.va.knowledgeArtifacts.publisher.types.ChecksumType;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link HttpTransport}
+ *
+ * Uploads files into a single folder of a remote repository.  Connections are left open after each successful request, so the
+ * JVM keep-alive cache can reuse them (along with the TLS session) for the next request to the same server - the size of the cache
+ * is set once, at startup, with {@link #configureKeepAlive(int)}.  Independent uploads may be run concurrently, up to a fixed limit.
+ * 
+ * Failed uploads are retried with exponential backoff (with full jitter).  When resumable uploads are enabled, a retry first asks
+ * the server (with a HEAD request) how much of the file it already has, checks that those bytes are the start of this file (with a
+ * GET for that Range), and only sends the remainder, using a Content-Range header.  The size on the server is checked once the
+ * remainder is sent.  Servers that reject partial PUT requests, or quietly ignore the Content-Range header, are detected, and the
+ * transport falls back to sending the whole file.
+ *
+ * Before uploading, the server may be asked which of the files it already has, with identical content - see 
+ * {@link #findExisting(List)}.  Files may also be downloaded from the folder - see {@link #download(String, File, LongConsumer)}.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class HttpTransport implements Closeable
+{
+	private static Logger log = LoggerFactory.getLogger(HttpTransport.class);
+	//Files without known checksums are compared by downloading them - only done for small files, such as the checksum files
+	private static final long MAX_COMPARE_SIZE = 64 * 1024;
+
+	private static final long MAX_RETRY_DELAY = 60 * 1000;
+
+	private String folderUrl_;
+	private String authorization_;
+	private ExecutorService executor_;
+	private int maxConcurrent_;
+	private int maxRetries_;
+	private long retryDelay_;
+	private volatile boolean resumable_;
+	private PublishBudget budget_;
+	private PublishMetrics metrics_;
+	private FileChannelIO io_;
+
+	/**
+	 * @param folderUrl - the URL of the remote folder that files will be uploaded into
+	 * @param options - the upload concurrency and retry settings are read from the options
+	 */
+	public HttpTransport(String folderUrl, String username, String password, PublishOptions options)
+	{
+		folderUrl_ = folderUrl + (folderUrl.endsWith("/") ? "" : "/");
+		if (username.length() > 0 || password.length() > 0)
+		{
+			authorization_ = "Basic " + Base64.getEncoder().encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+		}
+		maxConcurrent_ = Math.max(1, options.getUploadThreads());
+		maxRetries_ = Math.max(0, options.getUploadRetries());
+		retryDelay_ = Math.max(1, options.getUploadRetryDelay());
+		resumable_ = options.isResumableUploads();
+		budget_ = options.getBudget();
+		io_ = FileChannelIO.forOptions(options);
+
+		AtomicInteger threadNumber = new AtomicInteger(1);
+		executor_ = Executors.newFixedThreadPool(maxConcurrent_, (runnable) ->
+		{
+			Thread t = new Thread(runnable, "KBA-Upload-" + threadNumber.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Size the JVM keep-alive cache for a number of concurrent uploads - by default, it only keeps 5 idle connections per server.  
+	 * The JVM reads the setting once, when the first HTTP connection is made - so this must be called from the main method, before 
+	 * any networking.  An http.maxConnections given on the command line is left alone.
+	 */
+	public static void configureKeepAlive(int concurrentUploads)
+	{
+		if (System.getProperty("http.maxConnections") == null)
+		{
+			System.setProperty("http.maxConnections", Math.max(5, concurrentUploads) + "");
+		}
+	}
+
+	/**
+	 * @param metrics - optional - receives the timing of each upload, and each retry
+	 */
+	public void setMetrics(PublishMetrics metrics)
+	{
+		metrics_ = metrics;
+	}
+
+	/**
+	 * Start timing an upload, if metrics are being collected
+	 * @return the record to finish when the upload completes, or null
+	 */
+	public PublishMetrics.UploadStats startUpload(String targetFileName, long size)
+	{
+		return metrics_ == null ? null : metrics_.startUpload(targetFileName, size);
+	}
+
+	public URL resolve(String targetFileName) throws MalformedURLException
+	{
+		return new URL(folderUrl_ + targetFileName);
+	}
+
+	/**
+	 * Open a PUT request - the caller must set the streaming mode, write the body, and then call {@link #finishPut(HttpURLConnection)}.
+	 */
+	public HttpURLConnection openPut(URL url) throws IOException
+	{
+		HttpURLConnection httpCon = (HttpURLConnection) url.openConnection();
+		if (authorization_ != null)
+		{
+			httpCon.setRequestProperty("Authorization", authorization_);
+		}
+		httpCon.setDoOutput(true);
+		httpCon.setRequestMethod("PUT");
+		httpCon.setConnectTimeout(30 * 1000);
+		httpCon.setReadTimeout(60 * 60 * 1000);
+		return httpCon;
+	}
+
+	/**
+	 * Read the response to a PUT request, and throw an exception if the server reported an error.  The response is read
+	 * fully, so the connection may be reused.
+	 */
+	public void finishPut(HttpURLConnection httpCon) throws Exception
+	{
+		int responseCode = httpCon.getResponseCode();
+		InputStream is = (responseCode >= 400 ? httpCon.getErrorStream() : httpCon.getInputStream());
+		String responseText = readFully(is);
+		if (responseCode >= 400)
+		{
+			throw new ServerException(responseCode, "The server reported an error during the publish operation:  " + responseCode + " " 
+				+ httpCon.getResponseMessage() + (responseText.trim().length() > 0 ? " - " + responseText : ""));
+		}
+		if (responseText.trim().length() > 0)
+		{
+			throw new ServerException(responseCode, "The server reported an error during the publish operation:  " + responseText);
+		}
+	}
+
+	/**
+	 * Upload a single file, retrying (and resuming, if enabled) on failure.
+	 * @param progress - optional - passed the number of bytes sent, after each write.  If an upload has to be restarted, it is passed
+	 * a negative value, to take back the bytes that will be sent again.
+	 */
+	public void put(File file, String targetFileName, LongConsumer progress) throws Exception
+	{
+		URL url = resolve(targetFileName == null ? file.getName() : targetFileName);
+		long fileLength = file.length();
+		PublishMetrics.UploadStats stats = startUpload(targetFileName == null ? file.getName() : targetFileName, fileLength);
+		long[] sent = new long[] {0};
+		LongConsumer tracker = (count) -> 
+		{
+			sent[0] += count;
+			if (progress != null)
+			{
+				progress.accept(count);
+			}
+		};
+		//counts what actually goes over the wire - the tracker is also wound back, when part of the file has to be sent again
+		LongConsumer writer = (count) ->
+		{
+			if (stats != null)
+			{
+				stats.sent(count);
+			}
+			tracker.accept(count);
+		};
+
+		Callable<Void> upload = () -> withUploadBudget(() ->
+		{
+			if (stats != null)
+			{
+				stats.attempt();
+			}
+			long offset = 0;
+			if (sent[0] > 0 && resumable_)
+			{
+				offset = remoteLength(url);
+				//what is there may be an older file of the same name, rather than the start of this upload
+				if (offset < 0 || offset >= fileLength || !hasPrefix(file, url, offset))
+				{
+					offset = 0;
+				}
+			}
+			tracker.accept(offset - sent[0]);
+			try
+			{
+				putRange(file, url, offset, writer);
+				//a server that ignores the Content-Range header stores just the tail of the file - without complaint
+				if (offset > 0 && remoteLength(url) != fileLength)
+				{
+					log.warn("The server did not resume the upload of " + url.toString() + " - sending the whole file");
+					resumable_ = false;
+					tracker.accept(-sent[0]);
+					putRange(file, url, 0, writer);
+				}
+			}
+			catch (ServerException e)
+			{
+				if (offset > 0 && (e.getResponseCode() == 400 || e.getResponseCode() == 405 || e.getResponseCode() == 416 || e.getResponseCode() == 501))
+				{
+					log.info("The server does not support resuming uploads (" + e.getResponseCode() + ") - sending the whole file");
+					resumable_ = false;
+					tracker.accept(-sent[0]);
+					putRange(file, url, 0, writer);
+				}
+				else
+				{
+					throw e;
+				}
+			}
+			return null;
+		});
+
+		boolean succeeded = false;
+		try
+		{
+			withRetries("Upload of " + url.toString(), upload);
+			succeeded = true;
+		}
+		finally
+		{
+			if (stats != null)
+			{
+				stats.finish(succeeded);
+			}
+		}
+		log.info("Upload of " + url.toString() + " Successful");
+	}
+
+	/**
+	 * Download a single file from the folder, retrying on failure.  A partly downloaded file is downloaded again from the start.
+	 * @param progress - optional - passed the number of bytes received, after each read - and a negative value, to take them back, if 
+	 * the download has to be restarted
+	 * @return true, if the file was downloaded - false, if the server doesn't have it
+	 */
+	public boolean download(String targetFileName, File file, LongConsumer progress) throws Exception
+	{
+		URL url = resolve(targetFileName);
+		long[] received = new long[] {0};
+		boolean found = withRetries("Download of " + url.toString(), () -> withUploadBudget(() ->
+		{
+			if (progress != null && received[0] > 0)
+			{
+				progress.accept(-received[0]);
+			}
+			received[0] = 0;
+			HttpURLConnection httpCon = (HttpURLConnection) url.openConnection();
+			if (authorization_ != null)
+			{
+				httpCon.setRequestProperty("Authorization", authorization_);
+			}
+			httpCon.setConnectTimeout(30 * 1000);
+			httpCon.setReadTimeout(60 * 60 * 1000);
+			int responseCode = httpCon.getResponseCode();
+			if (responseCode == 404)
+			{
+				readFully(httpCon.getErrorStream());
+				return false;
+			}
+			if (responseCode >= 400)
+			{
+				String responseText = readFully(httpCon.getErrorStream());
+				throw new ServerException(responseCode, "The server reported an error downloading " + url.toString() + ":  " + responseCode + " " 
+						+ httpCon.getResponseMessage() + (responseText.trim().length() > 0 ? " - " + responseText : ""));
+			}
+			try (InputStream is = httpCon.getInputStream(); OutputStream out = Files.newOutputStream(file.toPath()))
+			{
+				byte[] buffer = new byte[64 * 1024];
+				int read;
+				while ((read = is.read(buffer)) != -1)
+				{
+					out.write(buffer, 0, read);
+					received[0] += read;
+					if (progress != null)
+					{
+						progress.accept(read);
+					}
+				}
+			}
+			return true;
+		}));
+		if (found)
+		{
+			log.info("Downloaded " + url.toString() + " (" + received[0] + " bytes)");
+		}
+		return found;
+	}
+
+	/**
+	 * @return the content of a small file in the folder (such as a checksum file), as text, or null, if the server doesn't have it
+	 */
+	public String getText(String targetFileName) throws MalformedURLException
+	{
+		byte[] content = get(resolve(targetFileName));
+		return content == null ? null : new String(content, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Run the work, retrying with exponential backoff and jitter if it fails with a network error, or a server error that may be
+	 * transient.  Errors such as authentication failures are thrown immediately.
+	 */
+	public <T> T withRetries(String description, Callable<T> work) throws Exception
+	{
+		int attempt = 0;
+		while (true)
+		{
+			try
+			{
+				return work.call();
+			}
+			catch (Exception e)
+			{
+				if (attempt >= maxRetries_ || !isRetryable(e) || Thread.currentThread().isInterrupted())
+				{
+					throw e;
+				}
+				//full jitter - a random delay between 0 and the (capped) exponential backoff
+				long delay = (long)(ThreadLocalRandom.current().nextDouble() * Math.min(MAX_RETRY_DELAY, retryDelay_ << Math.min(attempt, 20)));
+				attempt++;
+				log.warn(description + " failed (" + e.toString() + ") - retry " + attempt + " of " + maxRetries_ + " in " + delay + "ms");
+				if (metrics_ != null)
+				{
+					metrics_.retry(description, attempt, e, delay);
+				}
+				Thread.sleep(delay);
+			}
+		}
+	}
+
+	/**
+	 * Run a single upload attempt within the shared {@link PublishBudget}, if there is one.  A retry that is waiting to run does
+	 * not hold a share of the budget.
+	 */
+	public <T> T withUploadBudget(Callable<T> work) throws Exception
+	{
+		return budget_ == null ? work.call() : budget_.withUpload(work);
+	}
+
+	private boolean isRetryable(Exception e)
+	{
+		if (e instanceof ServerException)
+		{
+			int code = ((ServerException)e).getResponseCode();
+			return code >= 500 || code == 408 || code == 429;
+		}
+		//problems with the local file won't be fixed by trying again
+		return e instanceof IOException && !(e instanceof FileSystemException);
+	}
+
+	/**
+	 * @return the size of the file on the server, or -1, if the server doesn't have it (or doesn't say)
+	 */
+	private long remoteLength(URL url)
+	{
+		HttpURLConnection head = head(url);
+		return head == null ? -1 : head.getContentLengthLong();
+	}
+
+	/**
+	 * @return true, if the server sends back exactly the first length bytes of the file - false, if they differ, or the server
+	 * can't send just those bytes, so there is no way to tell
+	 */
+	private boolean hasPrefix(File file, URL url, long length)
+	{
+		try
+		{
+			HttpURLConnection httpCon = (HttpURLConnection) url.openConnection();
+			if (authorization_ != null)
+			{
+				httpCon.setRequestProperty("Authorization", authorization_);
+			}
+			httpCon.setRequestProperty("Range", "bytes=0-" + (length - 1));
+			httpCon.setConnectTimeout(30 * 1000);
+			httpCon.setReadTimeout(60 * 1000);
+			int responseCode = httpCon.getResponseCode();
+			if (responseCode != 206)
+			{
+				//a 200 would send the whole file - not worth reading
+				log.info("Unable to check the partial upload of " + url.toString() + " (" + responseCode + ") - sending the whole file");
+				httpCon.disconnect();
+				return false;
+			}
+			MessageDigest remote = MessageDigest.getInstance("SHA-256");
+			long received = 0;
+			try (InputStream is = httpCon.getInputStream())
+			{
+				byte[] buffer = new byte[64 * 1024];
+				int read;
+				while ((read = is.read(buffer)) != -1)
+				{
+					remote.update(buffer, 0, read);
+					received += read;
+				}
+			}
+			MessageDigest local = MessageDigest.getInstance("SHA-256");
+			io_.read(file, 0, length, (chunk) -> local.update(chunk));
+			if (received != length || !MessageDigest.isEqual(remote.digest(), local.digest()))
+			{
+				log.info("The file on the server at " + url.toString() + " is not the start of this upload - sending the whole file");
+				return false;
+			}
+			return true;
+		}
+		catch (IOException | NoSuchAlgorithmException e)
+		{
+			log.debug("Unable to check the partial upload", e);
+			return false;
+		}
+	}
+
+	private void putRange(File file, URL url, long offset, LongConsumer progress) throws Exception
+	{
+		long fileLength = file.length();
+		HttpURLConnection httpCon = openPut(url);
+		if (offset > 0)
+		{
+			log.info("Resuming upload of " + url.toString() + " at byte " + offset);
+			httpCon.setRequestProperty("Content-Range", "bytes " + offset + "-" + (fileLength - 1) + "/" + fileLength);
+		}
+		else
+		{
+			log.info("Uploading " + file.getAbsolutePath() + " to " + url.toString());
+		}
+		httpCon.setFixedLengthStreamingMode(fileLength - offset);
+		try (OutputStream out = httpCon.getOutputStream())
+		{
+			io_.transfer(file, offset, fileLength - offset, out, progress);
+		}
+		finishPut(httpCon);
+	}
+
+	/**
+	 * Upload all of the files, running up to the configured number of uploads at the same time.  Returns when all uploads are
+	 * complete - if any upload fails, the remaining uploads are cancelled, and the first failure is thrown.
+	 * @param progress - optional - passed the number of bytes sent, from any of the uploads.  Must be thread safe.
+	 */
+	public void putAll(List<Upload> uploads, LongConsumer progress) throws Exception
+	{
+		List<Future<Void>> futures = new ArrayList<>();
+		try
+		{
+			for (Upload upload : uploads)
+			{
+				futures.add(executor_.submit(() ->
+				{
+					put(upload.getFile(), upload.getTargetFileName(), progress);
+					return null;
+				}));
+			}
+			for (Future<Void> f : futures)
+			{
+				f.get();
+			}
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof Exception)
+			{
+				throw (Exception)e.getCause();
+			}
+			throw e;
+		}
+		finally
+		{
+			for (Future<Void> f : futures)
+			{
+				f.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Find the uploads that the server already has, byte for byte - so they can be skipped.  Files with known checksums are matched by
+	 * the checksum the server reports (from its checksum file, or failing that, the X-Checksum headers that some repositories return
+	 * for a HEAD request) and their size.  Small files without checksums are downloaded and compared.  The checks run concurrently.
+	 * Any failure to ask the server is treated as the file not being there.
+	 * @return the uploads that may be skipped
+	 */
+	public List<Upload> findExisting(List<Upload> uploads) throws Exception
+	{
+		List<Future<Boolean>> futures = new ArrayList<>();
+		try
+		{
+			for (Upload upload : uploads)
+			{
+				futures.add(executor_.submit(() -> isOnServer(upload)));
+			}
+			List<Upload> result = new ArrayList<>();
+			for (int i = 0; i < uploads.size(); i++)
+			{
+				if (futures.get(i).get())
+				{
+					result.add(uploads.get(i));
+				}
+			}
+			return result;
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof Exception)
+			{
+				throw (Exception)e.getCause();
+			}
+			throw e;
+		}
+		finally
+		{
+			for (Future<Boolean> f : futures)
+			{
+				f.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * @return true, if the server has the file with the same size, and the same value for the strongest checksum it has for it
+	 */
+	private boolean isOnServer(Upload upload) throws IOException
+	{
+		String targetFileName = upload.getTargetFileName() == null ? upload.getFile().getName() : upload.getTargetFileName();
+		if (upload.getChecksums() == null || upload.getChecksums().isEmpty())
+		{
+			if (upload.getFile().length() > MAX_COMPARE_SIZE)
+			{
+				return false;
+			}
+			byte[] remote = get(resolve(targetFileName));
+			return remote != null && Arrays.equals(remote, Files.readAllBytes(upload.getFile().toPath()));
+		}
+
+		HttpURLConnection head = head(resolve(targetFileName));
+		if (head == null || head.getContentLengthLong() != upload.getFile().length())
+		{
+			return false;
+		}
+		//strongest first - so an MD5 match alone is only trusted when the server has nothing better
+		ChecksumType[] types = ChecksumType.values();
+		for (int i = types.length - 1; i >= 0; i--)
+		{
+			ChecksumType type = types[i];
+			String expected = upload.getChecksums().get(type);
+			if (expected == null)
+			{
+				continue;
+			}
+			String remote = null;
+			byte[] sidecar = get(resolve(targetFileName + "." + type.getExtension()));
+			if (sidecar != null)
+			{
+				//The checksum file may contain just the checksum, or be in the "checksum  filename" format
+				String[] parts = new String(sidecar, StandardCharsets.UTF_8).trim().split("\\s+");
+				remote = parts[0];
+			}
+			else
+			{
+				remote = head.getHeaderField("X-Checksum-" + checksumHeader(type));
+			}
+			if (remote != null && remote.trim().length() > 0)
+			{
+				boolean match = remote.trim().equalsIgnoreCase(expected);
+				log.debug("Remote {} checksum of {} {}", type, targetFileName, match ? "matches" : "differs");
+				return match;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the completed HEAD request, or null if the server doesn't have the file
+	 */
+	private HttpURLConnection head(URL url)
+	{
+		try
+		{
+			HttpURLConnection httpCon = (HttpURLConnection) url.openConnection();
+			if (authorization_ != null)
+			{
+				httpCon.setRequestProperty("Authorization", authorization_);
+			}
+			httpCon.setRequestMethod("HEAD");
+			httpCon.setConnectTimeout(30 * 1000);
+			httpCon.setReadTimeout(60 * 1000);
+			int responseCode = httpCon.getResponseCode();
+			readFully(responseCode >= 400 ? httpCon.getErrorStream() : httpCon.getInputStream());
+			return responseCode == 200 ? httpCon : null;
+		}
+		catch (IOException e)
+		{
+			log.debug("HEAD request failed", e);
+			return null;
+		}
+	}
+
+	/**
+	 * @return the content of the file on the server, or null if the server doesn't have it
+	 */
+	private byte[] get(URL url)
+	{
+		try
+		{
+			HttpURLConnection httpCon = (HttpURLConnection) url.openConnection();
+			if (authorization_ != null)
+			{
+				httpCon.setRequestProperty("Authorization", authorization_);
+			}
+			httpCon.setConnectTimeout(30 * 1000);
+			httpCon.setReadTimeout(60 * 1000);
+			int responseCode = httpCon.getResponseCode();
+			if (responseCode != 200)
+			{
+				readFully(httpCon.getErrorStream());
+				return null;
+			}
+			return readBytes(httpCon.getInputStream());
+		}
+		catch (IOException e)
+		{
+			log.debug("GET request failed", e);
+			return null;
+		}
+	}
+
+	private static String checksumHeader(ChecksumType type)
+	{
+		switch (type)
+		{
+			case MD5:
+				return "Md5";
+			case SHA1:
+				return "Sha1";
+			case SHA256:
+				return "Sha256";
+			default:
+				return "Sha512";
+		}
+	}
+
+	/**
+	 * Stops the upload threads.  Idle connections are left to the JVM keep-alive cache.
+	 */
+	@Override
+	public void close()
+	{
+		executor_.shutdownNow();
+	}
+
+	private String readFully(InputStream is) throws IOException
+	{
+		return new String(readBytes(is), StandardCharsets.UTF_8);
+	}
+
+	private byte[] readBytes(InputStream is) throws IOException
+	{
+		if (is == null)
+		{
+			return new byte[0];
+		}
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		try
+		{
+			int read = 0;
+			byte[] buffer = new byte[1024];
+			while ((read = is.read(buffer)) != -1)
+			{
+				response.write(buffer, 0, read);
+			}
+		}
+		finally
+		{
+			is.close();
+		}
+		return response.toByteArray();
+	}
+
+	/**
+	 * An error response from the server.
+	 */
+	public static class ServerException extends Exception
+	{
+		private static final long serialVersionUID = 1L;
+		private int responseCode_;
+
+		public ServerException(int responseCode, String message)
+		{
+			super(message);
+			responseCode_ = responseCode;
+		}
+
+		public int getResponseCode()
+		{
+			return responseCode_;
+		}
+	}
+
+	/**
+	 * A file to upload, the name to give it on the server (null to use the file name), and optionally its checksums.
+	 */
+	public static class Upload
+	{
+		private File file_;
+		private String targetFileName_;
+		private Map<ChecksumType, String> checksums_;
+
+		public Upload(File file, String targetFileName)
+		{
+			this(file, targetFileName, null);
+		}
+
+		public Upload(File file, String targetFileName, Map<ChecksumType, String> checksums)
+		{
+			file_ = file;
+			targetFileName_ = targetFileName;
+			checksums_ = checksums;
+		}
+
+		/**
+		 * @return the checksums of the file, if known - used to check if the server already has it
+		 */
+		public Map<ChecksumType, String> getChecksums()
+		{
+			return checksums_;
+		}
+
+		public File getFile()
+		{
+			return file_;
+		}
+
+		public String getTargetFileName()
+		{
+			return targetFileName_;
+		}
+	}
+}
@@ -0,0 +1,276 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.publish;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ParallelCompressorOutputStream}
+ *
+ * The base of the compressors that cut a single stream into fixed size blocks, and compress the blocks on a thread pool - for the
+ * TAR formats, where the whole archive is one compressed stream, rather than a compressed stream per entry as in a zip file.
+ *
+ * The written data is collected into a block, which is handed to the pool when it is full, and the compressed blocks are written
+ * to the output strictly in order.  The number of blocks compressed ahead of the output is limited, to bound the memory use.  Each
+ * block keeps a reference to the block before it, for the formats that prime the compressor with the end of the previous block.
+ *
+ * Subclasses compress a block on a worker thread, and write the framing of the format (header, trailer, and any index) on the
+ * writing thread.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public abstract class ParallelCompressorOutputStream extends OutputStream
+{
+	private OutputStream out_;
+	private ExecutorService executor_;
+	private int threads_;
+	private int blockSize_;
+	private ArrayDeque<Future<Block>> pending_ = new ArrayDeque<>();
+	private Block current_;
+	private Block previous_;
+	private boolean headerWritten_ = false;
+	private boolean closed_ = false;
+	private byte[] single_ = new byte[1];
+
+	/**
+	 * @param out - where to write the compressed stream
+	 * @param threads - the number of compression threads to use
+	 * @param blockSize - the size of the blocks the stream is cut into
+	 * @param threadName - the prefix of the names of the compression threads
+	 */
+	protected ParallelCompressorOutputStream(OutputStream out, int threads, int blockSize, String threadName)
+	{
+		out_ = out;
+		threads_ = Math.max(1, threads);
+		blockSize_ = blockSize;
+		AtomicInteger threadNumber = new AtomicInteger(1);
+		executor_ = Executors.newFixedThreadPool(threads_, (runnable) ->
+		{
+			Thread t = new Thread(runnable, threadName + threadNumber.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Compress the block - called on a worker thread.  Must set the data, and its offset and length, of the block.
+	 */
+	protected abstract void compress(Block block) throws IOException;
+
+	/**
+	 * Write whatever comes before the first block
+	 */
+	protected abstract void writeHeader(OutputStream out) throws IOException;
+
+	/**
+	 * Called on the writing thread, after each block is written to the output - in order
+	 */
+	protected void written(Block block)
+	{
+		//nothing to track by default
+	}
+
+	/**
+	 * Write whatever comes after the last block
+	 */
+	protected abstract void writeTrailer(OutputStream out) throws IOException;
+
+	/**
+	 * @return the size of the blocks the stream is cut into
+	 */
+	public int getBlockSize()
+	{
+		return blockSize_;
+	}
+
+	@Override
+	public void write(int b) throws IOException
+	{
+		single_[0] = (byte)b;
+		write(single_, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException
+	{
+		if (closed_)
+		{
+			throw new IOException("The stream is closed");
+		}
+		while (len > 0)
+		{
+			if (current_ == null)
+			{
+				current_ = new Block(new byte[blockSize_], previous_);
+			}
+			int count = Math.min(len, blockSize_ - current_.length);
+			System.arraycopy(b, off, current_.input, current_.length, count);
+			current_.length += count;
+			off += count;
+			len -= count;
+			if (current_.length == blockSize_)
+			{
+				submit(false);
+			}
+		}
+	}
+
+	/**
+	 * Only flushes the blocks that are already compressed - a partial block is not compressed early, as that would make the
+	 * compression worse.
+	 */
+	@Override
+	public void flush() throws IOException
+	{
+		out_.flush();
+	}
+
+	/**
+	 * Compress the final block, write the trailer, and close the output
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (closed_)
+		{
+			return;
+		}
+		closed_ = true;
+		try
+		{
+			if (current_ == null)
+			{
+				current_ = new Block(new byte[0], previous_);
+			}
+			submit(true);
+			while (pending_.size() > 0)
+			{
+				writeNext();
+			}
+			if (!headerWritten_)
+			{
+				writeHeader(out_);
+				headerWritten_ = true;
+			}
+			writeTrailer(out_);
+			out_.close();
+		}
+		finally
+		{
+			for (Future<Block> f : pending_)
+			{
+				f.cancel(true);
+			}
+			executor_.shutdownNow();
+		}
+	}
+
+	private void submit(boolean last) throws IOException
+	{
+		Block block = current_;
+		block.last = last;
+		current_ = null;
+		previous_ = block;
+		while (pending_.size() >= threads_ * 2)
+		{
+			writeNext();
+		}
+		pending_.add(executor_.submit(() ->
+		{
+			compress(block);
+			//only the previous block is needed as a dictionary - don't keep the whole stream reachable
+			block.previous = null;
+			return block;
+		}));
+	}
+
+	private void writeNext() throws IOException
+	{
+		Block block;
+		try
+		{
+			block = pending_.removeFirst().get();
+		}
+		catch (InterruptedException e)
+		{
+			throw new IOException("Interrupted while compressing", e);
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+			{
+				throw (IOException)e.getCause();
+			}
+			throw new IOException("Unexpected error while compressing", e.getCause());
+		}
+		if (!headerWritten_)
+		{
+			writeHeader(out_);
+			headerWritten_ = true;
+		}
+		if (block.data != null)
+		{
+			out_.write(block.data, block.dataOffset, block.dataLength);
+		}
+		written(block);
+		//the input is still needed as the dictionary of the next block - but the output isn't
+		block.data = null;
+	}
+
+	/**
+	 * One block of the stream, and its compressed form
+	 */
+	protected static class Block
+	{
+		/**
+		 * The uncompressed content - only the first length bytes are used
+		 */
+		protected byte[] input;
+		protected int length;
+		/**
+		 * The block before this one - null for the first block, and once this block is compressed
+		 */
+		protected Block previous;
+		protected boolean last;
+
+		/**
+		 * The compressed content - set by {@link ParallelCompressorOutputStream#compress(Block)}
+		 */
+		protected byte[] data;
+		protected int dataOffset;
+		protected int dataLength;
+		/**
+		 * Whatever the format needs to know about the block when it is written - the CRC of the input for gzip, the size of the block for xz
+		 */
+		protected long value;
+
+		Block(byte[] input, Block previous)
+		{
+			this.input = input;
+			this.previous = previous;
+		}
+	}
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.publish;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * {@link ParallelGzipOutputStream}
+ *
+ * Writes a gzip stream, compressing on multiple threads - the same scheme as {@link ParallelZipWriter} (and pigz) uses within an
+ * entry.  Each block is deflated independently, primed with the last 32 KB of the previous block as a dictionary, and ends with a
+ * sync flush - so the blocks concatenate into a single deflate stream, which any gzip reader can decompress.  The CRC of each block
+ * is calculated by the worker, and combined on the writing thread.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class ParallelGzipOutputStream extends ParallelCompressorOutputStream
+{
+	private static final int DICTIONARY_SIZE = 32 * 1024;
+
+	private int level_;
+	private long crc_ = 0;
+	private long size_ = 0;
+
+	/**
+	 * @param out - where to write the gzip stream
+	 * @param threads - the number of compression threads to use
+	 * @param blockSize - the size of the blocks the stream is cut into
+	 * @param level - the deflate level - see {@link Deflater}
+	 */
+	public ParallelGzipOutputStream(OutputStream out, int threads, int blockSize, int level)
+	{
+		super(out, threads, Math.max(DICTIONARY_SIZE, blockSize), "KBA-Gzip-");
+		level_ = level;
+	}
+
+	@Override
+	protected void writeHeader(OutputStream out) throws IOException
+	{
+		//magic, deflate, no flags, no modification time, the extra flags for the level, unknown OS
+		out.write(new byte[] {0x1f, (byte)0x8b, 8, 0, 0, 0, 0, 0, (byte)(level_ == Deflater.BEST_COMPRESSION ? 2 : level_ == Deflater.BEST_SPEED ? 4 : 0), 
+				(byte)255});
+	}
+
+	@Override
+	protected void compress(Block block) throws IOException
+	{
+		CRC32 crc = new CRC32();
+		crc.update(block.input, 0, block.length);
+		block.value = crc.getValue();
+
+		Deflater deflater = new Deflater(level_, true);
+		try
+		{
+			if (block.previous != null)
+			{
+				int dictionaryLength = Math.min(DICTIONARY_SIZE, block.previous.length);
+				deflater.setDictionary(block.previous.input, block.previous.length - dictionaryLength, dictionaryLength);
+			}
+			deflater.setInput(block.input, 0, block.length);
+			ByteArrayOutputStream baos = new ByteArrayOutputStream(block.length / 2 + 64);
+			byte[] outBuf = new byte[64 * 1024];
+			if (block.last)
+			{
+				deflater.finish();
+				while (!deflater.finished())
+				{
+					int count = deflater.deflate(outBuf);
+					baos.write(outBuf, 0, count);
+				}
+			}
+			else
+			{
+				//sync flush leaves the stream byte aligned, so the next block can be appended directly
+				int count;
+				do
+				{
+					count = deflater.deflate(outBuf, 0, outBuf.length, Deflater.SYNC_FLUSH);
+					baos.write(outBuf, 0, count);
+				}
+				while (count == outBuf.length);
+			}
+			block.data = baos.toByteArray();
+			block.dataOffset = 0;
+			block.dataLength = block.data.length;
+		}
+		finally
+		{
+			deflater.end();
+		}
+	}
+
+	@Override
+	protected void written(Block block)
+	{
+		crc_ = ParallelZipWriter.crc32Combine(crc_, block.value, block.length);
+		size_ += block.length;
+	}
+
+	@Override
+	protected void writeTrailer(OutputStream out) throws IOException
+	{
+		byte[] trailer = new byte[8];
+		for (int i = 0; i < 4; i++)
+		{
+			trailer[i] = (byte)(crc_ >>> (8 * i));
+			//the size is only kept modulo 2^32
+			trailer[4 + i] = (byte)(size_ >>> (8 * i));
+		}
+		out.write(trailer);
+	}
+}
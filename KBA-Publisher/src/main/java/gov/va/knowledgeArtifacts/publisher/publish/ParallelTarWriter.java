@@ -0,0 +1,280 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.publish;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import gov.va.knowledgeArtifacts.publisher.types.ArchiveFormat;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.LongConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ParallelTarWriter}
+ *
+ * Writes a compressed TAR archive - tar.gz, tar.xz or tar.zst - using all of the compression threads.  Unlike a zip file, the whole
+ * archive is a single compressed stream, so it is the stream that is compressed in parallel, rather than each entry: gzip and xz
+ * cut it into blocks, and compress the blocks on a thread pool (see {@link ParallelGzipOutputStream} and {@link ParallelXzOutputStream}),
+ * and Zstandard uses the worker threads of the native library.
+ *
+ * Entries are written in POSIX (ustar) format.  A name longer than the 100 bytes a ustar header allows (common in RF2 releases), 
+ * or one that isn't plain ASCII, or a file too large for the size field, gets a pax extended header as well - which every current 
+ * tar reader understands.  Files are owned by uid 0, and are readable by everyone.
+ *
+ * The output is only written forward, so any {@link OutputStream} may be used as the target.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class ParallelTarWriter implements Closeable
+{
+	private static Logger log = LoggerFactory.getLogger(ParallelTarWriter.class);
+
+	private static final int RECORD_SIZE = 512;
+	private static final int NAME_LENGTH = 100;
+	private static final long MAX_USTAR_SIZE = 077777777777L;
+
+	private OutputStream out_;
+	private long position_ = 0;
+	private boolean finished_ = false;
+	private byte[] padding_ = new byte[RECORD_SIZE];
+	private LongConsumer progress_;
+	private FileChannelIO io_ = FileChannelIO.DEFAULT;
+
+	/**
+	 * @param out - where to write the compressed archive
+	 * @param format - one of the TAR formats
+	 * @param threads - the number of compression threads to use
+	 * @param blockSize - the size of the blocks that the stream is cut into - for formats that compress blocks on a thread pool
+	 * @param level - the compression level - the deflate level for gzip, the preset for xz, or the Zstandard level
+	 */
+	public ParallelTarWriter(OutputStream out, ArchiveFormat format, int threads, int blockSize, int level) throws IOException
+	{
+		out_ = openCompressor(out, format, Math.max(1, threads), blockSize, level);
+	}
+
+	/**
+	 * @param progress - optional - passed the number of uncompressed bytes, as each part of an entry is written.  Called from the 
+	 * thread that calls {@link #write(List)}.
+	 */
+	public void setProgress(LongConsumer progress)
+	{
+		progress_ = progress;
+	}
+
+	/**
+	 * @param io - how the data files are read
+	 */
+	public void setIO(FileChannelIO io)
+	{
+		io_ = io;
+	}
+
+	private static OutputStream openCompressor(OutputStream out, ArchiveFormat format, int threads, int blockSize, int level) throws IOException
+	{
+		switch (format)
+		{
+			case TAR_GZ:
+				return new ParallelGzipOutputStream(out, threads, blockSize, level);
+			case TAR_XZ:
+				return new ParallelXzOutputStream(out, threads, blockSize, level);
+			case TAR_ZST:
+				try
+				{
+					ZstdOutputStream zstd = new ZstdOutputStream(out, level);
+					zstd.setChecksum(true);
+					if (threads > 1)
+					{
+						zstd.setWorkers(threads);
+					}
+					return zstd;
+				}
+				catch (LinkageError e)
+				{
+					throw new IOException("Zstandard compression isn't available on this platform - choose another archive format", e);
+				}
+			default:
+				throw new IllegalArgumentException("Not a TAR format: " + format);
+		}
+	}
+
+	/**
+	 * Write all of the passed in entries, in order.  May be called more than once, prior to {@link #finish()}.
+	 */
+	public void write(List<ArchiveEntry> entries) throws IOException
+	{
+		if (finished_)
+		{
+			throw new IOException("The archive has already been finished");
+		}
+		for (ArchiveEntry entry : entries)
+		{
+			long size = entry.isDirectory() ? 0 : entry.getSize();
+			writeHeader(entry, size);
+			if (size > 0)
+			{
+				long written = io_.transfer(entry.getSource(), 0, size, out_, progress_);
+				position_ += written;
+				pad();
+			}
+		}
+	}
+
+	/**
+	 * Write the end of archive marker, and complete the compressed stream.  The output stream is closed - the trailer of the
+	 * compressed formats can't be written without closing it.
+	 */
+	public void finish() throws IOException
+	{
+		if (finished_)
+		{
+			return;
+		}
+		finished_ = true;
+		//two empty records mark the end of the archive
+		out_.write(new byte[RECORD_SIZE * 2]);
+		position_ += RECORD_SIZE * 2;
+		out_.close();
+		log.debug("Wrote a {} byte tar archive", position_);
+	}
+
+	/**
+	 * @return the number of (uncompressed) bytes of the archive written so far
+	 */
+	public long getBytesWritten()
+	{
+		return position_;
+	}
+
+	/**
+	 * Finishes the archive (if necessary) and closes the output stream.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			finish();
+		}
+		finally
+		{
+			out_.close();
+		}
+	}
+
+	private void writeHeader(ArchiveEntry entry, long size) throws IOException
+	{
+		byte[] name = entry.getName().getBytes(StandardCharsets.UTF_8);
+		boolean ascii = name.length == entry.getName().length();
+		if (name.length > NAME_LENGTH || !ascii || size > MAX_USTAR_SIZE)
+		{
+			StringBuilder pax = new StringBuilder();
+			if (name.length > NAME_LENGTH || !ascii)
+			{
+				pax.append(paxRecord("path", entry.getName()));
+			}
+			if (size > MAX_USTAR_SIZE)
+			{
+				pax.append(paxRecord("size", Long.toString(size)));
+			}
+			byte[] paxBytes = pax.toString().getBytes(StandardCharsets.UTF_8);
+			String paxName = "PaxHeaders/" + entry.getName().replaceAll("[^\\x20-\\x7E]", "_");
+			writeRecord(paxName, 'x', paxBytes.length, entry.getLastModified(), false);
+			out_.write(paxBytes);
+			position_ += paxBytes.length;
+			pad();
+		}
+		writeRecord(entry.getName(), entry.isDirectory() ? '5' : '0', Math.min(size, MAX_USTAR_SIZE), entry.getLastModified(), entry.isDirectory());
+	}
+
+	/**
+	 * Write a ustar header - the name is truncated, if it doesn't fit
+	 */
+	private void writeRecord(String name, char type, long size, long lastModified, boolean directory) throws IOException
+	{
+		byte[] header = new byte[RECORD_SIZE];
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		System.arraycopy(nameBytes, 0, header, 0, Math.min(NAME_LENGTH, nameBytes.length));
+		writeOctal(header, 100, 8, directory ? 0755 : 0644);
+		writeOctal(header, 108, 8, 0);
+		writeOctal(header, 116, 8, 0);
+		writeOctal(header, 124, 12, size);
+		writeOctal(header, 136, 12, Math.max(0, lastModified / 1000));
+		header[156] = (byte)type;
+		System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+		//the checksum is calculated with its own field set to spaces
+		for (int i = 148; i < 156; i++)
+		{
+			header[i] = ' ';
+		}
+		long checksum = 0;
+		for (byte b : header)
+		{
+			checksum += b & 0xFF;
+		}
+		writeOctal(header, 148, 7, checksum);
+		out_.write(header);
+		position_ += RECORD_SIZE;
+	}
+
+	/**
+	 * @return a pax record - the length at the front counts the whole record, including itself
+	 */
+	private static String paxRecord(String key, String value)
+	{
+		int length = key.getBytes(StandardCharsets.UTF_8).length + value.getBytes(StandardCharsets.UTF_8).length + 3;
+		int total = length + Integer.toString(length).length();
+		if (Integer.toString(total).length() > Integer.toString(length).length())
+		{
+			total++;
+		}
+		return total + " " + key + "=" + value + "\n";
+	}
+
+	/**
+	 * Write the value as zero padded octal digits, followed by a NUL, into the field
+	 */
+	private static void writeOctal(byte[] header, int offset, int length, long value)
+	{
+		String octal = Long.toOctalString(value);
+		int digits = length - 1;
+		for (int i = 0; i < digits; i++)
+		{
+			int fromEnd = digits - 1 - i;
+			header[offset + i] = (byte)(fromEnd < octal.length() ? octal.charAt(octal.length() - 1 - fromEnd) : '0');
+		}
+		header[offset + digits] = 0;
+	}
+
+	/**
+	 * Pad the archive to the next record boundary
+	 */
+	private void pad() throws IOException
+	{
+		int remainder = (int)(position_ % RECORD_SIZE);
+		if (remainder > 0)
+		{
+			out_.write(padding_, 0, RECORD_SIZE - remainder);
+			position_ += RECORD_SIZE - remainder;
+		}
+	}
+}
@@ -0,0 +1,223 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.publish;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tukaani.xz.BasicArrayCache;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZ;
+import org.tukaani.xz.XZOutputStream;
+
+/**
+ * {@link ParallelXzOutputStream}
+ *
+ * Writes an xz stream, compressing on multiple threads - the same way xz -T does.  The stream is cut into blocks of three times 
+ * the dictionary size, and each block is compressed independently, as a separate xz stream.  The block is then cut out of that
+ * stream, and the blocks are written one after another into a single stream, followed by an index that lists all of them - so the
+ * result is a standard, single stream, multi block xz file, which any xz reader can decompress (and which multithreaded readers 
+ * can decompress in parallel).
+ *
+ * The LZMA2 encoder needs a lot of memory at the higher presets (around 94 MB at the default of 6) - so fewer threads are used, if
+ * the configured number wouldn't fit in half of the heap.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class ParallelXzOutputStream extends ParallelCompressorOutputStream
+{
+	private static Logger log = LoggerFactory.getLogger(ParallelXzOutputStream.class);
+
+	private static final byte[] HEADER_MAGIC = new byte[] {(byte)0xFD, '7', 'z', 'X', 'Z', 0};
+	private static final byte[] STREAM_FLAGS = new byte[] {0, XZ.CHECK_CRC64};
+
+	private LZMA2Options options_;
+	//the unpadded size and uncompressed size of each block written
+	private List<long[]> records_ = new ArrayList<>();
+
+	/**
+	 * @param out - where to write the xz stream
+	 * @param threads - the number of compression threads to use - may be reduced to fit in the memory available
+	 * @param blockSize - the minimum size of the blocks the stream is cut into
+	 * @param preset - the xz preset, from 0 to 9
+	 */
+	public ParallelXzOutputStream(OutputStream out, int threads, int blockSize, int preset) throws IOException
+	{
+		this(out, threads, blockSize, new LZMA2Options(Math.max(LZMA2Options.PRESET_MIN, Math.min(LZMA2Options.PRESET_MAX, preset))));
+	}
+
+	private ParallelXzOutputStream(OutputStream out, int threads, int blockSize, LZMA2Options options)
+	{
+		super(out, fitThreads(threads, blockSize(blockSize, options), options), blockSize(blockSize, options), "KBA-Xz-");
+		options_ = options;
+	}
+
+	private static int blockSize(int blockSize, LZMA2Options options)
+	{
+		//smaller blocks compress worse, as each starts with an empty dictionary
+		return (int)Math.min(Integer.MAX_VALUE - 8, Math.max(blockSize, 3l * options.getDictSize()));
+	}
+
+	/**
+	 * @return the number of threads whose encoders and blocks (the input, the output, and the blocks queued ahead) fit in half of the heap
+	 */
+	private static int fitThreads(int threads, int blockSize, LZMA2Options options)
+	{
+		long perThread = options.getEncoderMemoryUsage() * 1024l + 4l * blockSize;
+		int fit = (int)Math.max(1, Runtime.getRuntime().maxMemory() / 2 / perThread);
+		if (fit < threads)
+		{
+			log.info("Compressing with {} xz threads rather than {}, as each needs {} of memory", fit, threads, PublishProgress.formatBytes(perThread));
+			return fit;
+		}
+		return threads;
+	}
+
+	@Override
+	protected void writeHeader(OutputStream out) throws IOException
+	{
+		out.write(HEADER_MAGIC);
+		out.write(STREAM_FLAGS);
+		writeCrc32(out, STREAM_FLAGS, 0, STREAM_FLAGS.length);
+	}
+
+	@Override
+	protected void compress(Block block) throws IOException
+	{
+		if (block.length == 0)
+		{
+			//only the last block can be empty - an empty stream has no blocks at all
+			return;
+		}
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(block.length / 3 + 1024);
+		try (XZOutputStream xz = new XZOutputStream(baos, options_, XZ.CHECK_CRC64, BasicArrayCache.getInstance()))
+		{
+			xz.write(block.input, 0, block.length);
+		}
+		byte[] stream = baos.toByteArray();
+
+		//stream header (12 bytes), the block, the index, and the stream footer (12 bytes) - which ends with the size of the index
+		int indexSize = (int)((readInt(stream, stream.length - 8) + 1) * 4);
+		int indexStart = stream.length - 12 - indexSize;
+		int[] position = new int[] {indexStart + 1};
+		if (stream[indexStart] != 0 || readVarInt(stream, position) != 1)
+		{
+			throw new IOException("Unexpected xz index - expected a single block");
+		}
+		long unpaddedSize = readVarInt(stream, position);
+		long uncompressedSize = readVarInt(stream, position);
+		if (uncompressedSize != block.length)
+		{
+			throw new IOException("Unexpected xz index - the block size is " + uncompressedSize + " rather than " + block.length);
+		}
+		block.value = unpaddedSize;
+		block.data = stream;
+		block.dataOffset = 12;
+		block.dataLength = indexStart - 12;
+	}
+
+	@Override
+	protected void written(Block block)
+	{
+		if (block.length > 0)
+		{
+			//the value is the unpadded size of the block
+			records_.add(new long[] {block.value, block.length});
+		}
+	}
+
+	@Override
+	protected void writeTrailer(OutputStream out) throws IOException
+	{
+		ByteArrayOutputStream index = new ByteArrayOutputStream();
+		index.write(0);
+		writeVarInt(index, records_.size());
+		for (long[] record : records_)
+		{
+			writeVarInt(index, record[0]);
+			writeVarInt(index, record[1]);
+		}
+		while (index.size() % 4 != 0)
+		{
+			index.write(0);
+		}
+		byte[] indexBytes = index.toByteArray();
+		out.write(indexBytes);
+		writeCrc32(out, indexBytes, 0, indexBytes.length);
+
+		//the size of the index (including its crc) in 4 byte units, less one, and the stream flags - covered by the crc in front of them
+		byte[] footer = new byte[6];
+		long backwardSize = (indexBytes.length + 4) / 4 - 1;
+		for (int i = 0; i < 4; i++)
+		{
+			footer[i] = (byte)(backwardSize >>> (8 * i));
+		}
+		footer[4] = STREAM_FLAGS[0];
+		footer[5] = STREAM_FLAGS[1];
+		writeCrc32(out, footer, 0, footer.length);
+		out.write(footer);
+		out.write(new byte[] {'Y', 'Z'});
+	}
+
+	private static void writeCrc32(OutputStream out, byte[] bytes, int offset, int length) throws IOException
+	{
+		CRC32 crc = new CRC32();
+		crc.update(bytes, offset, length);
+		long value = crc.getValue();
+		out.write(new byte[] {(byte)value, (byte)(value >>> 8), (byte)(value >>> 16), (byte)(value >>> 24)});
+	}
+
+	private static long readInt(byte[] bytes, int offset)
+	{
+		return (bytes[offset] & 0xFFl) | ((bytes[offset + 1] & 0xFFl) << 8) | ((bytes[offset + 2] & 0xFFl) << 16) | ((bytes[offset + 3] & 0xFFl) << 24);
+	}
+
+	/**
+	 * Read the xz variable length integer at the position, and move the position past it
+	 */
+	private static long readVarInt(byte[] bytes, int[] position)
+	{
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do
+		{
+			b = bytes[position[0]++];
+			value |= (long)(b & 0x7F) << shift;
+			shift += 7;
+		}
+		while ((b & 0x80) != 0);
+		return value;
+	}
+
+	private static void writeVarInt(ByteArrayOutputStream out, long value)
+	{
+		while (value >= 0x80)
+		{
+			out.write((int)(value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write((int)value);
+	}
+}
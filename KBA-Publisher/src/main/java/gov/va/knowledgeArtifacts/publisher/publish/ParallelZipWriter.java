@@ -0,0 +1,853 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.publish;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ParallelZipWriter}
+ *
+ * Writes a ZIP (or ZIP64, when required) archive, compressing on multiple threads - in the same manner as pigz.
+ *
+ * Each entry is cut into fixed size blocks, and every block is deflated independently on the thread pool - primed with the
+ * last 32 KB of the previous block as a dictionary, so the compression ratio is nearly identical to a single threaded deflate.
+ * Non-final blocks end with a sync flush, so the compressed blocks can simply be concatenated into one valid deflate stream.
+ * The CRC of each block is calculated by the worker, and combined on the writing thread.
+ *
+ * Blocks are written to the output strictly in order, and the output is only written forward (entry sizes are recorded in
+ * data descriptors) so any {@link OutputStream} may be used as the target.
+ *
+ * Entries may also be stored without compression - see {@link ArchiveEntry#setCompression(int, int)}.  The CRC of a stored entry is
+ * calculated on the thread pool before the entry is written, so its local header is complete, and no data descriptor is needed 
+ * (some streaming zip readers can't handle a data descriptor on a stored entry).
+ *
+ * When an {@link EntryCache} is set, entries found in the cache are copied from it without being compressed again, and the 
+ * compressed content of all other entries is added to the cache as it is written.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class ParallelZipWriter implements Closeable
+{
+	private static Logger log = LoggerFactory.getLogger(ParallelZipWriter.class);
+
+	public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+	private static final int DICTIONARY_SIZE = 32 * 1024;
+	//Deflate can grow incompressible data very slightly - don't let an entry just under 4 GB overflow the 32 bit size fields
+	private static final long ZIP64_THRESHOLD = 0xFFFFFFFFL - (64l * 1024l * 1024l);
+	private static final long MAX_32 = 0xFFFFFFFFL;
+	private static final int MAX_16 = 0xFFFF;
+
+	private static final int VERSION_DEFAULT = 20;
+	private static final int VERSION_ZIP64 = 45;
+	private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+	private static final int FLAG_UTF8 = 1 << 11;
+
+	private OutputStream out_;
+	private long position_ = 0;
+	private ExecutorService executor_;
+	private int threads_;
+	private int blockSize_;
+	private int level_;
+	private boolean finished_ = false;
+	private byte[] scratch_ = new byte[8];
+	private ArrayList<CentralDirectoryRecord> centralDirectory_ = new ArrayList<>();
+
+	private EntryCache cache_;
+	private LongConsumer progress_;
+	private PublishMetrics metrics_;
+	private FileChannelIO io_ = FileChannelIO.DEFAULT;
+
+	//state of the entry currently being written
+	private CentralDirectoryRecord current_;
+	private EntryCache.CacheWriter cacheWriter_;
+
+	/**
+	 * @param out - where to write the archive.  This should be buffered by the caller, if appropriate.
+	 * @param threads - the number of compression threads to use
+	 * @param blockSize - the size of the blocks that large files are cut into
+	 * @param level - the deflate level - see {@link Deflater}
+	 */
+	public ParallelZipWriter(OutputStream out, int threads, int blockSize, int level)
+	{
+		out_ = out;
+		threads_ = Math.max(1, threads);
+		blockSize_ = Math.max(DICTIONARY_SIZE, blockSize);
+		level_ = level;
+		AtomicInteger threadNumber = new AtomicInteger(1);
+		executor_ = Executors.newFixedThreadPool(threads_, (runnable) ->
+		{
+			Thread t = new Thread(runnable, "KBA-Zip-" + threadNumber.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Use the passed in cache for the compressed content of entries - {@link EntryCache#prepare(List, int)} must have been called
+	 * with the entries, before they are written.
+	 */
+	public void setEntryCache(EntryCache cache)
+	{
+		cache_ = cache;
+	}
+
+	/**
+	 * @param progress - optional - passed the number of uncompressed bytes, as each part of an entry is written.  Called from the 
+	 * thread that calls {@link #write(List)}.
+	 */
+	public void setProgress(LongConsumer progress)
+	{
+		progress_ = progress;
+	}
+
+	/**
+	 * @param metrics - optional - passed the sizes and compression time of each entry, as it is written
+	 */
+	public void setMetrics(PublishMetrics metrics)
+	{
+		metrics_ = metrics;
+	}
+
+	/**
+	 * @param io - the reader used for the content of stored and cached entries
+	 */
+	public void setIO(FileChannelIO io)
+	{
+		io_ = io;
+	}
+
+	/**
+	 * Compress and write all of the passed in entries, in order.  May be called more than once, prior to {@link #finish()}.
+	 */
+	public void write(List<ArchiveEntry> entries) throws IOException
+	{
+		if (finished_)
+		{
+			throw new IOException("The archive has already been finished");
+		}
+		//Limit the number of blocks that are compressed ahead of the writer, to bound the memory use
+		int maxPending = threads_ * 4;
+		ArrayDeque<Future<CompressedBlock>> pending = new ArrayDeque<>();
+		try
+		{
+			for (ArchiveEntry entry : entries)
+			{
+				if (entry.isDirectory())
+				{
+					pending.add(CompletableFuture.completedFuture(new CompressedBlock(entry, 0, true)));
+					continue;
+				}
+				if (entry.getMethod() == ZipEntry.STORED)
+				{
+					while (pending.size() >= maxPending)
+					{
+						writeBlock(pending.removeFirst().get());
+					}
+					pending.add(executor_.submit(new StoredEntryChecksum(entry, io_)));
+					continue;
+				}
+				EntryCache.CachedEntry cached = (cache_ == null ? null : cache_.get(entry, levelFor(entry)));
+				if (cached != null)
+				{
+					CompressedBlock block = new CompressedBlock(entry, 0, true);
+					block.cached = cached;
+					pending.add(CompletableFuture.completedFuture(block));
+					continue;
+				}
+				long blockCount = Math.max(1, (entry.getSize() + blockSize_ - 1) / blockSize_);
+				for (long i = 0; i < blockCount; i++)
+				{
+					while (pending.size() >= maxPending)
+					{
+						writeBlock(pending.removeFirst().get());
+					}
+					pending.add(executor_.submit(new BlockCompressor(entry, i, i == blockCount - 1)));
+				}
+			}
+			while (pending.size() > 0)
+			{
+				writeBlock(pending.removeFirst().get());
+			}
+		}
+		catch (InterruptedException e)
+		{
+			throw new IOException("Interrupted while compressing", e);
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+			{
+				throw (IOException)e.getCause();
+			}
+			throw new IOException("Unexpected error while compressing", e.getCause());
+		}
+		finally
+		{
+			for (Future<CompressedBlock> f : pending)
+			{
+				f.cancel(true);
+			}
+			if (cacheWriter_ != null)
+			{
+				cacheWriter_.abort();
+				cacheWriter_ = null;
+			}
+		}
+	}
+
+	/**
+	 * Write the central directory, and flush the output.  The output stream is not closed.
+	 */
+	public void finish() throws IOException
+	{
+		if (finished_)
+		{
+			return;
+		}
+		finished_ = true;
+		long cdStart = position_;
+		for (CentralDirectoryRecord cdr : centralDirectory_)
+		{
+			writeCentralDirectoryRecord(cdr);
+		}
+		long cdSize = position_ - cdStart;
+		long count = centralDirectory_.size();
+
+		if (count >= MAX_16 || cdSize >= MAX_32 || cdStart >= MAX_32)
+		{
+			long zip64EndStart = position_;
+			writeInt(0x06064b50);
+			writeLong(44);
+			writeShort(VERSION_ZIP64);
+			writeShort(VERSION_ZIP64);
+			writeInt(0);
+			writeInt(0);
+			writeLong(count);
+			writeLong(count);
+			writeLong(cdSize);
+			writeLong(cdStart);
+
+			writeInt(0x07064b50);
+			writeInt(0);
+			writeLong(zip64EndStart);
+			writeInt(1);
+		}
+
+		writeInt(0x06054b50);
+		writeShort(0);
+		writeShort(0);
+		writeShort((int)Math.min(count, MAX_16));
+		writeShort((int)Math.min(count, MAX_16));
+		writeInt(Math.min(cdSize, MAX_32));
+		writeInt(Math.min(cdStart, MAX_32));
+		writeShort(0);
+		out_.flush();
+		log.debug("Wrote {} archive entries, {} bytes", count, position_);
+	}
+
+	/**
+	 * @return the number of bytes written to the output so far
+	 */
+	public long getBytesWritten()
+	{
+		return position_;
+	}
+
+	/**
+	 * Finishes the archive (if necessary), closes the output stream, and stops the compression threads.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			finish();
+			out_.close();
+		}
+		finally
+		{
+			executor_.shutdownNow();
+		}
+	}
+
+	private void writeBlock(CompressedBlock block) throws IOException
+	{
+		ArchiveEntry entry = block.entry;
+		if (block.stored)
+		{
+			current_ = new CentralDirectoryRecord(entry, position_);
+			current_.crc = block.crc;
+			current_.size = block.uncompressedLength;
+			current_.compressedSize = block.uncompressedLength;
+			writeLocalHeader(current_);
+			copy(entry.getSource(), block.uncompressedLength);
+			current_.nanos = block.nanos;
+			recordEntry("stored");
+			centralDirectory_.add(current_);
+			current_ = null;
+			return;
+		}
+		if (block.cached != null)
+		{
+			//Opened before anything is written, so a cache file trimmed away by another publish can still be compressed instead
+			FileChannel source;
+			try
+			{
+				source = FileChannel.open(block.cached.getFile().toPath(), StandardOpenOption.READ);
+			}
+			catch (NoSuchFileException e)
+			{
+				log.info("The cache file for {} was removed before it could be copied - compressing the entry again", entry.getName());
+				compress(entry);
+				return;
+			}
+			try (FileChannel fc = source)
+			{
+				//Written exactly as if it were compressed now - including the data descriptor - so the archive is byte for byte the same
+				current_ = new CentralDirectoryRecord(entry, position_);
+				writeLocalHeader(current_);
+				io_.transfer(fc, block.cached.getFile(), 0, block.cached.getCompressedSize(), out_, (count) -> position_ += count);
+			}
+			current_.crc = block.cached.getCrc();
+			current_.size = block.cached.getSize();
+			current_.compressedSize = block.cached.getCompressedSize();
+			recordEntry("cached");
+			finishEntry(entry);
+			reportProgress(block.cached.getSize());
+			return;
+		}
+		if (block.index == 0)
+		{
+			current_ = new CentralDirectoryRecord(entry, position_);
+			writeLocalHeader(current_);
+			if (cache_ != null)
+			{
+				try
+				{
+					cacheWriter_ = cache_.create(entry, levelFor(entry));
+				}
+				catch (IOException e)
+				{
+					log.warn("Unable to create an entry cache file for " + entry.getName(), e);
+				}
+			}
+		}
+		if (block.data != null)
+		{
+			if (cacheWriter_ != null)
+			{
+				try
+				{
+					cacheWriter_.write(block.data, 0, block.dataLength);
+				}
+				catch (IOException e)
+				{
+					log.warn("Unable to write the entry cache file for " + entry.getName(), e);
+					cacheWriter_.abort();
+					cacheWriter_ = null;
+				}
+			}
+			out_.write(block.data, 0, block.dataLength);
+			position_ += block.dataLength;
+			current_.compressedSize += block.dataLength;
+			current_.crc = crc32Combine(current_.crc, block.crc, block.uncompressedLength);
+			current_.size += block.uncompressedLength;
+			current_.nanos += block.nanos;
+			reportProgress(block.uncompressedLength);
+		}
+		if (block.last)
+		{
+			if (!current_.directory)
+			{
+				recordEntry("deflated");
+			}
+			finishEntry(entry);
+		}
+	}
+
+	/**
+	 * Compress all of the blocks of the entry on this thread, and write them.
+	 */
+	private void compress(ArchiveEntry entry) throws IOException
+	{
+		long blockCount = Math.max(1, (entry.getSize() + blockSize_ - 1) / blockSize_);
+		for (long i = 0; i < blockCount; i++)
+		{
+			try
+			{
+				writeBlock(new BlockCompressor(entry, i, i == blockCount - 1).call());
+			}
+			catch (IOException e)
+			{
+				throw e;
+			}
+			catch (Exception e)
+			{
+				throw new IOException("Unexpected error while compressing " + entry.getName(), e);
+			}
+		}
+	}
+
+	private void reportProgress(long bytes)
+	{
+		if (progress_ != null && bytes > 0)
+		{
+			progress_.accept(bytes);
+		}
+	}
+
+	private void recordEntry(String method)
+	{
+		if (metrics_ != null)
+		{
+			metrics_.entry(new String(current_.name, StandardCharsets.UTF_8), method, current_.size, current_.compressedSize, current_.nanos);
+		}
+	}
+
+	private void finishEntry(ArchiveEntry entry) throws IOException
+	{
+		if ((current_.flags & FLAG_DATA_DESCRIPTOR) != 0)
+		{
+			writeInt(0x08074b50);
+			writeInt(current_.crc);
+			if (current_.zip64Local)
+			{
+				writeLong(current_.compressedSize);
+				writeLong(current_.size);
+			}
+			else
+			{
+				writeInt(current_.compressedSize);
+				writeInt(current_.size);
+			}
+		}
+		if (cacheWriter_ != null)
+		{
+			try
+			{
+				cacheWriter_.commit(current_.size, current_.crc);
+			}
+			catch (IOException e)
+			{
+				log.warn("Unable to complete the entry cache file for " + entry.getName(), e);
+				cacheWriter_.abort();
+			}
+			cacheWriter_ = null;
+		}
+		centralDirectory_.add(current_);
+		current_ = null;
+	}
+
+	private int levelFor(ArchiveEntry entry)
+	{
+		return entry.getLevel() >= 0 ? entry.getLevel() : level_;
+	}
+
+	private void writeLocalHeader(CentralDirectoryRecord cdr) throws IOException
+	{
+		//when there is a data descriptor, the crc and sizes follow the data - otherwise, they are already known
+		boolean dataDescriptor = (cdr.flags & FLAG_DATA_DESCRIPTOR) != 0;
+		writeInt(0x04034b50);
+		writeShort(cdr.zip64Local ? VERSION_ZIP64 : VERSION_DEFAULT);
+		writeShort(cdr.flags);
+		writeShort(cdr.method);
+		writeInt(cdr.dosTime);
+		writeInt(dataDescriptor ? 0 : cdr.crc);
+		writeInt(cdr.zip64Local ? MAX_32 : (dataDescriptor ? 0 : cdr.compressedSize));
+		writeInt(cdr.zip64Local ? MAX_32 : (dataDescriptor ? 0 : cdr.size));
+		writeShort(cdr.name.length);
+		writeShort(cdr.zip64Local ? 20 : 0);
+		write(cdr.name);
+		if (cdr.zip64Local)
+		{
+			writeShort(0x0001);
+			writeShort(16);
+			writeLong(dataDescriptor ? 0 : cdr.size);
+			writeLong(dataDescriptor ? 0 : cdr.compressedSize);
+		}
+	}
+
+	/**
+	 * Copy the first length bytes of the file directly to the output - the content of a stored entry - reporting the progress as it goes.
+	 */
+	private void copy(File source, long length) throws IOException
+	{
+		io_.transfer(source, 0, length, out_, (count) ->
+		{
+			position_ += count;
+			reportProgress(count);
+		});
+	}
+
+	private void writeCentralDirectoryRecord(CentralDirectoryRecord cdr) throws IOException
+	{
+		boolean sizeOverflow = cdr.size >= MAX_32;
+		boolean compressedOverflow = cdr.compressedSize >= MAX_32;
+		boolean offsetOverflow = cdr.offset >= MAX_32;
+		int extraLength = (sizeOverflow ? 8 : 0) + (compressedOverflow ? 8 : 0) + (offsetOverflow ? 8 : 0);
+		boolean zip64 = cdr.zip64Local || extraLength > 0;
+
+		writeInt(0x02014b50);
+		writeShort(VERSION_ZIP64);
+		writeShort(zip64 ? VERSION_ZIP64 : VERSION_DEFAULT);
+		writeShort(cdr.flags);
+		writeShort(cdr.method);
+		writeInt(cdr.dosTime);
+		writeInt(cdr.crc);
+		writeInt(compressedOverflow ? MAX_32 : cdr.compressedSize);
+		writeInt(sizeOverflow ? MAX_32 : cdr.size);
+		writeShort(cdr.name.length);
+		writeShort(extraLength > 0 ? extraLength + 4 : 0);
+		writeShort(0);  //comment length
+		writeShort(0);  //disk number
+		writeShort(0);  //internal attributes
+		writeInt(cdr.directory ? 0x10 : 0);  //external attributes - MS-DOS directory flag
+		writeInt(offsetOverflow ? MAX_32 : cdr.offset);
+		write(cdr.name);
+		if (extraLength > 0)
+		{
+			writeShort(0x0001);
+			writeShort(extraLength);
+			if (sizeOverflow)
+			{
+				writeLong(cdr.size);
+			}
+			if (compressedOverflow)
+			{
+				writeLong(cdr.compressedSize);
+			}
+			if (offsetOverflow)
+			{
+				writeLong(cdr.offset);
+			}
+		}
+	}
+
+	private void write(byte[] bytes) throws IOException
+	{
+		out_.write(bytes);
+		position_ += bytes.length;
+	}
+
+	private void writeShort(int value) throws IOException
+	{
+		scratch_[0] = (byte)value;
+		scratch_[1] = (byte)(value >>> 8);
+		out_.write(scratch_, 0, 2);
+		position_ += 2;
+	}
+
+	private void writeInt(long value) throws IOException
+	{
+		for (int i = 0; i < 4; i++)
+		{
+			scratch_[i] = (byte)(value >>> (8 * i));
+		}
+		out_.write(scratch_, 0, 4);
+		position_ += 4;
+	}
+
+	private void writeLong(long value) throws IOException
+	{
+		for (int i = 0; i < 8; i++)
+		{
+			scratch_[i] = (byte)(value >>> (8 * i));
+		}
+		out_.write(scratch_, 0, 8);
+		position_ += 8;
+	}
+
+	/**
+	 * Convert a java timestamp into the MS-DOS date / time format used by zip - date in the high 16 bits, time in the low.
+	 */
+	static long toDosTime(long millis)
+	{
+		LocalDateTime d = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+		if (d.getYear() < 1980)
+		{
+			return (1 << 21) | (1 << 16);
+		}
+		return ((long)(d.getYear() - 1980) << 25) | (d.getMonthValue() << 21) | (d.getDayOfMonth() << 16) | (d.getHour() << 11) | (d.getMinute() << 5)
+				| (d.getSecond() >> 1);
+	}
+
+	/**
+	 * Calculate the CRC-32 of two concatenated blocks, from the CRC-32 of each block, and the length of the second block.
+	 * Port of crc32_combine from zlib.
+	 */
+	static long crc32Combine(long crc1, long crc2, long len2)
+	{
+		if (len2 <= 0)
+		{
+			return crc1;
+		}
+		long[] even = new long[32];
+		long[] odd = new long[32];
+
+		//put operator for one zero bit in odd
+		odd[0] = 0xedb88320L;
+		long row = 1;
+		for (int n = 1; n < 32; n++)
+		{
+			odd[n] = row;
+			row <<= 1;
+		}
+
+		//put operator for two zero bits in even, then four zero bits in odd
+		gf2MatrixSquare(even, odd);
+		gf2MatrixSquare(odd, even);
+
+		//apply len2 zeros to crc1 (first square will put the operator for one zero byte, eight zero bits, in even)
+		do
+		{
+			gf2MatrixSquare(even, odd);
+			if ((len2 & 1) != 0)
+			{
+				crc1 = gf2MatrixTimes(even, crc1);
+			}
+			len2 >>= 1;
+			if (len2 == 0)
+			{
+				break;
+			}
+			gf2MatrixSquare(odd, even);
+			if ((len2 & 1) != 0)
+			{
+				crc1 = gf2MatrixTimes(odd, crc1);
+			}
+			len2 >>= 1;
+		}
+		while (len2 != 0);
+
+		return crc1 ^ crc2;
+	}
+
+	private static long gf2MatrixTimes(long[] mat, long vec)
+	{
+		long sum = 0;
+		int i = 0;
+		while (vec != 0)
+		{
+			if ((vec & 1) != 0)
+			{
+				sum ^= mat[i];
+			}
+			vec >>>= 1;
+			i++;
+		}
+		return sum;
+	}
+
+	private static void gf2MatrixSquare(long[] square, long[] mat)
+	{
+		for (int n = 0; n < 32; n++)
+		{
+			square[n] = gf2MatrixTimes(mat, mat[n]);
+		}
+	}
+
+	private class BlockCompressor implements Callable<CompressedBlock>
+	{
+		private ArchiveEntry entry_;
+		private long index_;
+		private boolean last_;
+
+		BlockCompressor(ArchiveEntry entry, long index, boolean last)
+		{
+			entry_ = entry;
+			index_ = index;
+			last_ = last;
+		}
+
+		@Override
+		public CompressedBlock call() throws Exception
+		{
+			long started = System.nanoTime();
+			long start = index_ * blockSize_;
+			long dictionaryStart = Math.max(0, start - DICTIONARY_SIZE);
+			ByteBuffer input = ByteBuffer.allocate((int)(start - dictionaryStart) + (int)Math.min(blockSize_, Math.max(0, entry_.getSize() - start)));
+			try (FileChannel fc = FileChannel.open(entry_.getSource().toPath(), StandardOpenOption.READ))
+			{
+				long pos = dictionaryStart;
+				while (input.hasRemaining())
+				{
+					int read = fc.read(input, pos);
+					if (read < 0)
+					{
+						break;  //file shrank since it was scanned
+					}
+					pos += read;
+				}
+			}
+			byte[] buf = input.array();
+			int dictionaryLength = (int)Math.min(start - dictionaryStart, input.position());
+			int dataLength = input.position() - dictionaryLength;
+
+			CompressedBlock result = new CompressedBlock(entry_, index_, last_);
+			CRC32 crc = new CRC32();
+			crc.update(buf, dictionaryLength, dataLength);
+			result.crc = crc.getValue();
+			result.uncompressedLength = dataLength;
+
+			Deflater deflater = new Deflater(levelFor(entry_), true);
+			try
+			{
+				if (dictionaryLength > 0)
+				{
+					deflater.setDictionary(buf, 0, dictionaryLength);
+				}
+				deflater.setInput(buf, dictionaryLength, dataLength);
+				ByteArrayOutputStream baos = new ByteArrayOutputStream(dataLength / 2 + 64);
+				byte[] outBuf = new byte[64 * 1024];
+				if (last_)
+				{
+					deflater.finish();
+					while (!deflater.finished())
+					{
+						int count = deflater.deflate(outBuf);
+						baos.write(outBuf, 0, count);
+					}
+				}
+				else
+				{
+					//sync flush leaves the stream byte aligned, so the next block can be appended directly
+					int count;
+					do
+					{
+						count = deflater.deflate(outBuf, 0, outBuf.length, Deflater.SYNC_FLUSH);
+						baos.write(outBuf, 0, count);
+					}
+					while (count == outBuf.length);
+				}
+				result.data = baos.toByteArray();
+				result.dataLength = result.data.length;
+			}
+			finally
+			{
+				deflater.end();
+			}
+			result.nanos = System.nanoTime() - started;
+			return result;
+		}
+	}
+
+	/**
+	 * Calculates the CRC of an entry that will be stored without compression.
+	 */
+	private static class StoredEntryChecksum implements Callable<CompressedBlock>
+	{
+		private ArchiveEntry entry_;
+		private FileChannelIO io_;
+
+		StoredEntryChecksum(ArchiveEntry entry, FileChannelIO io)
+		{
+			entry_ = entry;
+			io_ = io;
+		}
+
+		@Override
+		public CompressedBlock call() throws Exception
+		{
+			long started = System.nanoTime();
+			CompressedBlock result = new CompressedBlock(entry_, 0, true);
+			result.stored = true;
+			CRC32 crc = new CRC32();
+			result.uncompressedLength = io_.read(entry_.getSource(), 0, -1, (chunk) -> crc.update(chunk));
+			result.crc = crc.getValue();
+			result.nanos = System.nanoTime() - started;
+			return result;
+		}
+	}
+
+	private static class CompressedBlock
+	{
+		ArchiveEntry entry;
+		long index;
+		boolean last;
+		boolean stored;
+		EntryCache.CachedEntry cached;
+		byte[] data;
+		int dataLength;
+		long crc;
+		long uncompressedLength;
+		//time spent compressing (or checksumming) the block, on the worker
+		long nanos;
+
+		CompressedBlock(ArchiveEntry entry, long index, boolean last)
+		{
+			this.entry = entry;
+			this.index = index;
+			this.last = last;
+		}
+	}
+
+	private static class CentralDirectoryRecord
+	{
+		byte[] name;
+		long offset;
+		long dosTime;
+		int method;
+		int flags;
+		boolean directory;
+		boolean zip64Local;
+		long crc = 0;
+		long size = 0;
+		long compressedSize = 0;
+		long nanos = 0;
+
+		CentralDirectoryRecord(ArchiveEntry entry, long offset)
+		{
+			this.name = entry.getName().getBytes(StandardCharsets.UTF_8);
+			this.offset = offset;
+			this.dosTime = toDosTime(entry.getLastModified());
+			this.directory = entry.isDirectory();
+			this.method = directory ? ZipEntry.STORED : entry.getMethod();
+			this.flags = FLAG_UTF8 | (method == ZipEntry.DEFLATED ? FLAG_DATA_DESCRIPTOR : 0);
+			this.zip64Local = !directory && entry.getSize() >= ZIP64_THRESHOLD;
+		}
+	}
+}
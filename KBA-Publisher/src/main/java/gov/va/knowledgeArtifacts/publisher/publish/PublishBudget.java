@@ -0,0 +1,92 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.publish;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+
+/**
+ * {@link PublishBudget}
+ *
+ * Limits shared by all of the {@link PublishJob}s running in the same JVM - so that a batch of publishes can run concurrently
+ * without oversubscribing the CPU, disk or network.
+ * 
+ * Creating an archive is CPU and disk bound, and already uses all of the compression threads - so only a few archives (by 
+ * default, one) are created at a time, while the other jobs upload.  Uploads are network bound, so the total number of 
+ * uploads in progress across all jobs is capped at the size of the uplink budget.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class PublishBudget
+{
+	private Semaphore archives_;
+	private Semaphore uploads_;
+	private int maxUploads_;
+
+	/**
+	 * @param archives - the number of archives that may be created at the same time
+	 * @param uploads - the number of file uploads that may be in progress at the same time
+	 */
+	public PublishBudget(int archives, int uploads)
+	{
+		archives_ = new Semaphore(Math.max(1, archives), true);
+		maxUploads_ = Math.max(1, uploads);
+		uploads_ = new Semaphore(maxUploads_, true);
+	}
+
+	/**
+	 * @return the number of file uploads that may be in progress at the same time
+	 */
+	public int getMaxUploads()
+	{
+		return maxUploads_;
+	}
+
+	/**
+	 * Run the work - which creates an archive - once the budget allows it.
+	 */
+	public <T> T withArchive(Callable<T> work) throws Exception
+	{
+		archives_.acquire();
+		try
+		{
+			return work.call();
+		}
+		finally
+		{
+			archives_.release();
+		}
+	}
+
+	/**
+	 * Run the work - a single upload attempt - once the budget allows it.
+	 */
+	public <T> T withUpload(Callable<T> work) throws Exception
+	{
+		uploads_.acquire();
+		try
+		{
+			return work.call();
+		}
+		finally
+		{
+			uploads_.release();
+		}
+	}
+}
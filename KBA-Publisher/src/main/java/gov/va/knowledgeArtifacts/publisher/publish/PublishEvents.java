@@ -0,0 +1,214 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.publish;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * {@link PublishEvents}
+ *
+ * The JDK Flight Recorder events of a publish - so a recording shows where the time went, alongside the GC, I/O and thread activity 
+ * of the JVM.  Start a recording with <code>-XX:StartFlightRecording=filename=publish.jfr</code>, or from JDK Mission Control.
+ * 
+ * These classes are only loaded by {@link PublishMetrics} when the JVM has JFR (8u262 and later) - nothing else may refer to them.
+ * Events cost next to nothing when no recording is running.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+final class PublishEvents
+{
+	private static final String CATEGORY = "KBA Publisher";
+
+	private PublishEvents()
+	{
+	}
+
+	@Name("gov.va.kba.publisher.Phase")
+	@Label("Publish Phase")
+	@Category(CATEGORY)
+	@Description("A step of a publish - the duration covers the whole step")
+	static class PhaseEvent extends Event
+	{
+		@Label("Artifact")
+		String artifact;
+
+		@Label("Phase")
+		String phase;
+
+		@Label("Items")
+		@Description("Files scanned, entries compressed, files hashed, files uploaded or files removed")
+		long items;
+
+		@Label("Bytes In")
+		@DataAmount
+		long bytesIn;
+
+		@Label("Bytes Out")
+		@DataAmount
+		long bytesOut;
+
+		static Object start()
+		{
+			PhaseEvent event = new PhaseEvent();
+			event.begin();
+			return event;
+		}
+
+		static void commit(Object started, String artifact, String phase, long items, long bytesIn, long bytesOut)
+		{
+			PhaseEvent event = (PhaseEvent)started;
+			event.end();
+			if (event.shouldCommit())
+			{
+				event.artifact = artifact;
+				event.phase = phase;
+				event.items = items;
+				event.bytesIn = bytesIn;
+				event.bytesOut = bytesOut;
+				event.commit();
+			}
+		}
+	}
+
+	@Name("gov.va.kba.publisher.ArchiveEntry")
+	@Label("Archive Entry")
+	@Category(CATEGORY)
+	@Description("An entry written to the archive.  Entries are compressed in parallel blocks, so the compression time is the sum of the "
+			+ "time spent on each block, rather than a duration.")
+	static class EntryEvent extends Event
+	{
+		@Label("Entry")
+		String entry;
+
+		@Label("Method")
+		String method;
+
+		@Label("Size")
+		@DataAmount
+		long size;
+
+		@Label("Compressed Size")
+		@DataAmount
+		long compressedSize;
+
+		@Label("Compression Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long compressionTime;
+
+		static void emit(String entry, String method, long size, long compressedSize, long compressionNanos)
+		{
+			EntryEvent event = new EntryEvent();
+			if (event.shouldCommit())
+			{
+				event.entry = entry;
+				event.method = method;
+				event.size = size;
+				event.compressedSize = compressedSize;
+				event.compressionTime = compressionNanos;
+				event.commit();
+			}
+		}
+	}
+
+	@Name("gov.va.kba.publisher.Upload")
+	@Label("Upload")
+	@Category(CATEGORY)
+	@Description("The upload of one file to the repository, including any retries")
+	static class UploadEvent extends Event
+	{
+		@Label("File")
+		String file;
+
+		@Label("Size")
+		@DataAmount
+		long size;
+
+		@Label("Bytes Sent")
+		@Description("Includes any bytes sent again, by retries")
+		@DataAmount
+		long bytesSent;
+
+		@Label("Attempts")
+		int attempts;
+
+		@Label("Result")
+		String result;
+
+		static Object start()
+		{
+			UploadEvent event = new UploadEvent();
+			event.begin();
+			return event;
+		}
+
+		static void commit(Object started, String file, long size, long bytesSent, int attempts, String result)
+		{
+			UploadEvent event = (UploadEvent)started;
+			event.end();
+			if (event.shouldCommit())
+			{
+				event.file = file;
+				event.size = size;
+				event.bytesSent = bytesSent;
+				event.attempts = attempts;
+				event.result = result;
+				event.commit();
+			}
+		}
+	}
+
+	@Name("gov.va.kba.publisher.Retry")
+	@Label("Retry")
+	@Category(CATEGORY)
+	@Description("A failed attempt at an upload, that will be retried after a delay")
+	static class RetryEvent extends Event
+	{
+		@Label("Operation")
+		String operation;
+
+		@Label("Attempt")
+		int attempt;
+
+		@Label("Error")
+		String error;
+
+		@Label("Delay")
+		@Timespan(Timespan.MILLISECONDS)
+		long delay;
+
+		static void emit(String operation, int attempt, String error, long delayMillis)
+		{
+			RetryEvent event = new RetryEvent();
+			if (event.shouldCommit())
+			{
+				event.operation = operation;
+				event.attempt = attempt;
+				event.error = error;
+				event.delay = delayMillis;
+				event.commit();
+			}
+		}
+	}
+}
@@ -0,0 +1,826 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.publish;
+
+import gov.va.knowledgeArtifacts.publisher.types.ArchiveFormat;
+import gov.va.knowledgeArtifacts.publisher.types.ChecksumType;
+import gov.va.knowledgeArtifacts.publisher.types.PublishPhase;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.maven.pom._4_0.Model;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link PublishJob}
+ *
+ * Creates the archive for a project, and uploads it - along with the pom, metadata and checksum files - to a maven repository.
+ * This has no dependency on JavaFX, so it may be run headless - {@link Publish} runs it as a JavaFX task for the GUI.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class PublishJob
+{
+	private static Logger log = LoggerFactory.getLogger(PublishJob.class);
+	public static final String DEFAULT_REPOSITORY_URL = "https://va.maestrodev.com/archiva/repository/data-files/";
+	private static final int STREAMING_CHUNK_SIZE = 1024 * 1024;
+
+	Model model_;
+	String classifier_;
+	String dataType_;
+	ArchiveFormat format_;
+	File projectFolder_;
+	List<File> dataFiles_;
+	String url_;
+	String username_;
+	String password_;
+	PublishOptions options_ = new PublishOptions();
+	PublishListener listener_;
+	PublishProgress progress_;
+	PublishMetrics metrics_;
+	
+	String archiveName_;
+	long archiveSize_;
+	int uploadedFiles_;
+	int skippedFiles_;
+	File reportFile_;
+	
+	/**
+	 * @param format - the kind of archive to publish - null for {@link ArchiveFormat#ZIP}
+	 */
+	public PublishJob(Model model, String classifier, String dataType, ArchiveFormat format, File projectFolder, List<File> dataFiles, String url, 
+			String username, String password) throws Exception
+	{
+		model_ = model;
+		classifier_ = classifier;
+		dataType_ = dataType;
+		format_ = (format == null ? ArchiveFormat.ZIP : format);
+		projectFolder_ = projectFolder;
+		dataFiles_ = dataFiles;
+		url_ = url;
+		username_ = username;
+		password_ = password;
+	}
+	
+	/**
+	 * Override the default tuning options - must be called before the job is run.
+	 */
+	public void setOptions(PublishOptions options)
+	{
+		options_ = options;
+	}
+
+	/**
+	 * Calculate the checksums for all of the files concurrently, reading each file only once, and write the sidecar files.
+	 * @param files - the files to checksum, mapped to the name to record in the sidecar files (null to use the file name)
+	 * @return the checksums of each file
+	 */
+	private Map<File, Map<ChecksumType, String>> writeChecksumFiles(Map<File, String> files, File toFolder) throws IOException
+	{
+		long total = 0;
+		for (File f : files.keySet())
+		{
+			total += f.length();
+		}
+		progress_.setTotal(PublishPhase.HASH, total);
+		progress_.start(PublishPhase.HASH);
+		metrics_.begin(PublishPhase.HASH);
+		Map<File, Map<ChecksumType, String>> checksums = Checksums.calculate(new ArrayList<>(files.keySet()), options_.getChecksumTypes(), files.size(), 
+			FileChannelIO.forOptions(options_), (read) -> progress_.add(PublishPhase.HASH, read));
+		for (Map.Entry<File, Map<ChecksumType, String>> item : checksums.entrySet())
+		{
+			Checksums.writeSidecars(item.getKey(), item.getValue(), toFolder, files.get(item.getKey()));
+		}
+		progress_.finish(PublishPhase.HASH);
+		metrics_.end(PublishPhase.HASH, files.size(), total, 0);
+		updateTitle("");
+		return checksums;
+	}
+
+	/**
+	 * Remove the uploads that the repository already has, with identical content, from the list - and report them.
+	 */
+	private void skipExisting(HttpTransport transport, List<HttpTransport.Upload> uploads) throws Exception
+	{
+		updateTitle(PublishPhase.CHECK_EXISTING.getNiceName());
+		metrics_.begin(PublishPhase.CHECK_EXISTING);
+		List<HttpTransport.Upload> existing = transport.findExisting(uploads);
+		metrics_.end(PublishPhase.CHECK_EXISTING, uploads.size(), 0, 0);
+		if (existing.size() > 0)
+		{
+			StringBuilder skipped = new StringBuilder();
+			for (HttpTransport.Upload upload : existing)
+			{
+				String name = upload.getTargetFileName() == null ? upload.getFile().getName() : upload.getTargetFileName();
+				skipped.append(skipped.length() > 0 ? ", " : "").append(name);
+				metrics_.skipped(name, upload.getFile().length());
+			}
+			log.info("Skipping {} files the repository already has: {}", existing.size(), skipped);
+			updateStatus("Skipped " + existing.size() + " files the repository already has: " + skipped);
+			uploads.removeAll(existing);
+			skippedFiles_ += existing.size();
+		}
+		updateTitle("");
+	}
+
+	private File writeMetadataFile(File toFolder) throws IOException
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n");
+		sb.append("\r\n");
+		sb.append("<metadata>");
+		sb.append("\r\n");
+		sb.append("    <groupId>" + model_.getGroupId() + "</groupId>");
+		sb.append("\r\n");
+		sb.append("    <artifactId>" + model_.getArtifactId() + "</artifactId>");
+		sb.append("\r\n");
+		sb.append("    <version>" + model_.getVersion() + "</version>");
+		sb.append("\r\n");
+		sb.append("</metadata>");
+		sb.append("\r\n");
+		File file = new File(toFolder, "maven-metadata.xml");
+		Files.write(file.toPath(), sb.toString().getBytes(), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		return file;
+	}
+
+	/**
+	 * @return the URL of the folder in the repository that a version of the artifact is published to
+	 */
+	private String artifactFolderUrl(String version)
+	{
+		String groupIdTemp = model_.getGroupId();
+		groupIdTemp = groupIdTemp.replaceAll("\\.", "//");
+		return url_ + (url_.endsWith("/") ? "" : "/") + groupIdTemp + "/" + model_.getArtifactId() + "/" + version + "/";
+	}
+
+	/**
+	 * Upload all of the files, concurrently (up to the configured limit), with progress reported over the total size of the files.
+	 */
+	private void putFiles(HttpTransport transport, List<HttpTransport.Upload> uploads) throws Exception
+	{
+		long total = 0;
+		for (HttpTransport.Upload upload : uploads)
+		{
+			total += upload.getFile().length();
+		}
+		progress_.setTotal(PublishPhase.UPLOAD, total);
+		progress_.start(PublishPhase.UPLOAD);
+		metrics_.begin(PublishPhase.UPLOAD);
+		transport.putAll(uploads, (sent) -> progress_.add(PublishPhase.UPLOAD, sent));
+		progress_.finish(PublishPhase.UPLOAD);
+		metrics_.end(PublishPhase.UPLOAD, uploads.size(), total, total);
+		updateTitle("");
+	}
+
+	/**
+	 * Write the metadata file, and the checksum files of the pom, the metadata, and any other small files published alongside them.
+	 * @param others - optional - the other files to publish
+	 * @return the uploads of the pom, the metadata and the other files, followed by those of their checksum files
+	 */
+	private ArrayList<HttpTransport.Upload> metadataUploads(File workFolder, File others) throws IOException
+	{
+		File pomFile = new File(projectFolder_, "pom.xml");
+		String pomTargetName = model_.getName() + "-" + model_.getVersion() + ".pom";
+
+		updateStatus("Creating Metadata File");
+		File metadataFile = writeMetadataFile(workFolder);
+
+		updateStatus("Creating Checksum Files");
+		LinkedHashMap<File, String> toChecksum = new LinkedHashMap<>();
+		toChecksum.put(pomFile, pomTargetName);
+		toChecksum.put(metadataFile, null);
+		if (others != null)
+		{
+			toChecksum.put(others, null);
+		}
+		Map<File, Map<ChecksumType, String>> checksums = writeChecksumFiles(toChecksum, workFolder);
+
+		ArrayList<HttpTransport.Upload> uploads = new ArrayList<>();
+		for (Map.Entry<File, String> file : toChecksum.entrySet())
+		{
+			uploads.add(new HttpTransport.Upload(file.getKey(), file.getValue(), checksums.get(file.getKey())));
+		}
+		for (ChecksumType type : options_.getChecksumTypes())
+		{
+			for (Map.Entry<File, String> file : toChecksum.entrySet())
+			{
+				uploads.add(new HttpTransport.Upload(new File(workFolder, file.getKey().getName() + "." + type.getExtension()), 
+						file.getValue() == null ? null : file.getValue() + "." + type.getExtension()));
+			}
+		}
+		return uploads;
+	}
+
+	/**
+	 * Create the archive as a number of parts, each uploaded (with its checksum files) as soon as it is written - so the parts upload
+	 * alongside each other, and alongside the compression of the later parts, and a failed upload only costs its own part.  Each part 
+	 * is removed once it is uploaded, and compression waits while too many parts are waiting to upload, so only a few parts are ever
+	 * on disk.  The index of the parts is uploaded last, with the pom and metadata.
+	 */
+	private void publishParts(HttpTransport transport, Zip zip, File workFolder) throws Exception
+	{
+		if (options_.isStreamingUpload())
+		{
+			log.info("A split archive is written to disk, rather than streamed");
+		}
+		updateStatus("Creating and uploading archive parts");
+		progress_.estimateUploadFromCompress();
+
+		int maxWaiting = Math.max(1, options_.getUploadThreads());
+		Semaphore waiting = new Semaphore(maxWaiting);
+		AtomicInteger uploadedFiles = new AtomicInteger();
+		AtomicInteger skippedFiles = new AtomicInteger();
+		AtomicLong uploadedBytes = new AtomicLong();
+		List<Future<Void>> partUploads = new ArrayList<>();
+		AtomicInteger threadNumber = new AtomicInteger(1);
+		ExecutorService executor = Executors.newFixedThreadPool(maxWaiting, (runnable) ->
+		{
+			Thread t = new Thread(runnable, "KBA-Part-Upload-" + threadNumber.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		});
+		List<Zip.Part> parts;
+		try
+		{
+			parts = withArchiveBudget(() -> zip.writeZipParts(model_, classifier_, dataType_, projectFolder_, dataFiles_, workFolder, 
+					options_.getSplitSize() * 1024l * 1024l, (part) ->
+			{
+				if (partUploads.isEmpty())
+				{
+					progress_.start(PublishPhase.UPLOAD);
+					metrics_.begin(PublishPhase.UPLOAD);
+				}
+				try
+				{
+					waiting.acquire();
+				}
+				catch (InterruptedException e)
+				{
+					throw new InterruptedIOException("Interrupted while waiting for the archive parts to upload");
+				}
+				//there is no point compressing any more, once an upload has failed
+				for (Future<Void> f : partUploads)
+				{
+					if (f.isDone())
+					{
+						waitFor(f);
+					}
+				}
+				partUploads.add(executor.submit(() ->
+				{
+					try
+					{
+						uploadPart(transport, part, workFolder, uploadedFiles, skippedFiles, uploadedBytes);
+						return null;
+					}
+					finally
+					{
+						waiting.release();
+					}
+				}));
+			}));
+			for (Future<Void> f : partUploads)
+			{
+				waitFor(f);
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+
+		File index = parts.size() > 1 ? Zip.writePartIndex(model_, classifier_, dataType_, format_, parts, workFolder) : null;
+		ArrayList<HttpTransport.Upload> uploads = new ArrayList<>();
+		if (options_.getDeltaBase() != null)
+		{
+			uploads.addAll(createDelta(zip, workFolder));
+		}
+		uploads.addAll(metadataUploads(workFolder, index));
+		if (options_.isSkipExisting())
+		{
+			skipExisting(transport, uploads);
+		}
+		updateStatus("Uploading " + (index == null ? "" : "the index of the parts, ") + (options_.getDeltaBase() == null ? "" : "the delta, ")
+				+ "pom and metadata files");
+		long total = uploadedBytes.get();
+		for (HttpTransport.Upload upload : uploads)
+		{
+			total += upload.getFile().length();
+		}
+		//the parts are done - now that their real size is known, the upload total can replace the estimate
+		progress_.setTotal(PublishPhase.UPLOAD, total);
+		transport.putAll(uploads, (sent) -> progress_.add(PublishPhase.UPLOAD, sent));
+		progress_.finish(PublishPhase.UPLOAD);
+		metrics_.end(PublishPhase.UPLOAD, uploadedFiles.get() + uploads.size(), total, total);
+		updateTitle("");
+
+		uploadedFiles_ = uploadedFiles.get() + uploads.size();
+		skippedFiles_ += skippedFiles.get();
+		archiveName_ = (index == null ? parts.get(0).getFile().getName() : index.getName());
+		archiveSize_ = zip.getArchiveSize();
+	}
+
+	/**
+	 * Upload one part of a split archive, with its checksum files - unless the repository already has them - then remove them
+	 */
+	private void uploadPart(HttpTransport transport, Zip.Part part, File workFolder, AtomicInteger uploadedFiles, AtomicInteger skippedFiles, 
+			AtomicLong uploadedBytes) throws Exception
+	{
+		List<File> sidecars = Checksums.writeSidecars(part.getFile(), part.getChecksums(), workFolder, null);
+		List<HttpTransport.Upload> uploads = new ArrayList<>();
+		uploads.add(new HttpTransport.Upload(part.getFile(), null, part.getChecksums()));
+		for (File sidecar : sidecars)
+		{
+			uploads.add(new HttpTransport.Upload(sidecar, null));
+		}
+		if (options_.isSkipExisting())
+		{
+			List<HttpTransport.Upload> existing = transport.findExisting(uploads);
+			for (HttpTransport.Upload upload : existing)
+			{
+				metrics_.skipped(upload.getFile().getName(), upload.getFile().length());
+			}
+			if (existing.size() > 0)
+			{
+				log.info("Skipping {} files of part {} that the repository already has", existing.size(), part.getIndex());
+			}
+			uploads.removeAll(existing);
+			skippedFiles.addAndGet(existing.size());
+		}
+		for (HttpTransport.Upload upload : uploads)
+		{
+			uploadedBytes.addAndGet(upload.getFile().length());
+		}
+		transport.putAll(uploads, (sent) -> progress_.add(PublishPhase.UPLOAD, sent));
+		uploadedFiles.addAndGet(uploads.size());
+		updateStatus("Uploaded " + part.getFile().getName());
+		Files.delete(part.getFile().toPath());
+		for (File sidecar : sidecars)
+		{
+			Files.delete(sidecar.toPath());
+		}
+	}
+
+	/**
+	 * Wait for the upload to complete - throwing its failure, if it failed
+	 */
+	private static void waitFor(Future<Void> upload) throws IOException
+	{
+		try
+		{
+			upload.get();
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+			{
+				throw (IOException)e.getCause();
+			}
+			throw new IOException("Upload of an archive part failed", e.getCause());
+		}
+		catch (InterruptedException e)
+		{
+			throw new InterruptedIOException("Interrupted while waiting for the archive parts to upload");
+		}
+	}
+
+	/**
+	 * Create the archive directly into the body of the PUT request, using chunked transfer encoding - so the archive
+	 * never needs to be written to local disk.
+	 */
+	private void putArchiveStream(HttpTransport transport, Zip zip, File workFolder, String targetFileName) throws Exception
+	{
+		URL url = transport.resolve(targetFileName);
+		log.info("Streaming archive to " + url.toString());
+		updateTitle("Creating and uploading " + targetFileName);
+
+		//A stream can't be resumed part way through - a retry recreates the archive from the start
+		PublishMetrics.UploadStats stats = transport.startUpload(targetFileName, 0);
+		Callable<Void> upload = () -> withArchiveBudget(() -> transport.withUploadBudget(() ->
+		{
+			stats.attempt();
+			HttpURLConnection httpCon = transport.openPut(url);
+			httpCon.setChunkedStreamingMode(STREAMING_CHUNK_SIZE);
+			zip.writeZip(model_, classifier_, dataType_, projectFolder_, dataFiles_, workFolder, () -> httpCon.getOutputStream());
+			transport.finishPut(httpCon);
+			return null;
+		}));
+
+		boolean succeeded = false;
+		try
+		{
+			transport.withRetries("Upload of " + url.toString(), upload);
+			//the size isn't known until the archive is complete - and only the bytes of the attempt that succeeded are counted
+			stats.setSize(zip.getArchiveSize());
+			stats.sent(zip.getArchiveSize());
+			succeeded = true;
+		}
+		finally
+		{
+			stats.finish(succeeded);
+		}
+		log.info("Upload Successful");
+		updateTitle("");
+	}
+
+	/**
+	 * Create and upload everything.  Progress is reported to the listener, from the calling thread (and from worker threads, 
+	 * during checksum calculation and upload).  Unless disabled, a report of the timings is written when the job completes, or fails.
+	 */
+	public void run(PublishListener listener) throws Exception
+	{
+		listener_ = listener;
+		progress_ = new PublishProgress(listener, options_.getProgressInterval());
+		metrics_ = new PublishMetrics(Zip.getArchiveName(model_, classifier_, dataType_, format_));
+		metrics_.setDetail("groupId", model_.getGroupId());
+		metrics_.setDetail("artifactId", model_.getArtifactId());
+		metrics_.setDetail("version", model_.getVersion());
+		metrics_.setDetail("classifier", classifier_);
+		metrics_.setDetail("dataType", dataType_);
+		metrics_.setDetail("archiveFormat", format_.getExtension());
+		metrics_.setDetail("repository", url_);
+		metrics_.setOptions(options_);
+		try
+		{
+			publish();
+			metrics_.finish(null);
+		}
+		catch (Exception e)
+		{
+			metrics_.finish(e);
+			throw e;
+		}
+		finally
+		{
+			writeReport();
+		}
+	}
+
+	private void publish() throws Exception
+	{
+		updateTitle("Creating Archive File");
+		updateStatus("Creating Archive File");
+		Zip zip = new Zip(options_);
+		zip.setProgress(progress_);
+		zip.setMetrics(metrics_);
+		zip.setFormat(format_);
+		String zipName = Zip.getArchiveName(model_, classifier_, dataType_, format_);
+		File zipFile = null;
+		File workFolder;
+		try (HttpTransport transport = new HttpTransport(artifactFolderUrl(model_.getVersion()), username_, password_, options_))
+		{
+			transport.setMetrics(metrics_);
+			if (options_.getSplitSize() > 0)
+			{
+				workFolder = Files.createTempDirectory("KBAPublish-").toFile();
+				publishParts(transport, zip, workFolder);
+			}
+			else
+			{
+				if (options_.isStreamingUpload())
+				{
+					workFolder = Files.createTempDirectory("KBAPublish-").toFile();
+					updateStatus("Creating and uploading archive file");
+					putArchiveStream(transport, zip, workFolder, zipName);
+				}
+				else
+				{
+					//the archive is uploaded after it is created - so count its upload from the start
+					progress_.estimateUploadFromCompress();
+					zipFile = withArchiveBudget(() -> zip.createZipFile(model_, classifier_, dataType_, projectFolder_, dataFiles_));
+					workFolder = zipFile.getParentFile();
+					log.info("Wrote " + zipFile);
+				}
+				//The archive checksums were calculated as it was written
+				Checksums.writeSidecars(new File(workFolder, zipName), zip.getChecksums(), workFolder, null);
+		
+				//Largest first, so the small files upload alongside it, rather than after it
+				ArrayList<HttpTransport.Upload> uploads = new ArrayList<>();
+				if (zipFile != null)
+				{
+					uploads.add(new HttpTransport.Upload(zipFile, null, zip.getChecksums()));
+				}
+				if (options_.getDeltaBase() != null)
+				{
+					uploads.addAll(createDelta(zip, workFolder));
+				}
+				uploads.addAll(metadataUploads(workFolder, null));
+				for (ChecksumType type : options_.getChecksumTypes())
+				{
+					uploads.add(new HttpTransport.Upload(new File(workFolder, zipName + "." + type.getExtension()), null));
+				}
+				if (options_.isSkipExisting())
+				{
+					skipExisting(transport, uploads);
+				}
+				updateStatus("Uploading data, pom and metadata files");
+				putFiles(transport, uploads);
+				uploadedFiles_ = uploads.size() + (options_.isStreamingUpload() ? 1 : 0);
+				archiveName_ = zipName;
+				archiveSize_ = zip.getArchiveSize();
+			}
+		}
+
+		log.debug("Cleaning up temp files");
+		metrics_.begin(PublishPhase.CLEANUP);
+		long[] removed = removeFolder(workFolder);
+		metrics_.end(PublishPhase.CLEANUP, removed[0], removed[1], 0);
+		updateTitle("");
+		updateProgress(10, 10);
+	}
+
+	/**
+	 * Delete the folder, and everything in it
+	 * @return the number of files, and the bytes, that were removed
+	 */
+	private static long[] removeFolder(File folder) throws IOException
+	{
+		long[] removed = new long[2];
+		Files.walkFileTree(folder.toPath(), new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException
+			{
+				Files.delete(file);
+				removed[0]++;
+				removed[1] += attrs.size();
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException
+			{
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return removed;
+	}
+
+	/**
+	 * Create the delta of the archive that was just written against the earlier version named by the options, and write its checksum
+	 * files - see {@link DeltaArchive}.  The earlier version is downloaded, and removed again once the delta is written.
+	 * @return the uploads of the delta, and of its checksum files
+	 */
+	private List<HttpTransport.Upload> createDelta(Zip zip, File workFolder) throws Exception
+	{
+		String baseVersion = options_.getDeltaBase();
+		updateStatus("Creating the delta against version " + baseVersion);
+		metrics_.begin(PublishPhase.DELTA);
+		File baseFolder = new File(workFolder, "delta-base");
+		DeltaArchive delta = new DeltaArchive(options_);
+		delta.setProgress(progress_);
+		File deltaFile;
+		try
+		{
+			File baseRoot = fetchDeltaBase(baseVersion, baseFolder);
+			deltaFile = delta.write(model_, classifier_, dataType_, format_, zip.getEntries(), baseVersion, baseRoot, workFolder);
+		}
+		finally
+		{
+			if (baseFolder.exists())
+			{
+				removeFolder(baseFolder);
+			}
+		}
+		long dataBytes = 0;
+		for (ArchiveEntry entry : zip.getEntries())
+		{
+			dataBytes += entry.getSize();
+		}
+		metrics_.end(PublishPhase.DELTA, zip.getEntries().size(), dataBytes, delta.getSize());
+		metrics_.setDetail("delta", deltaFile.getName());
+		metrics_.setDetail("deltaSize", delta.getSize());
+		updateStatus("The delta against version " + baseVersion + " is " + PublishProgress.formatBytes(delta.getSize()) + " - "
+				+ delta.getUnchangedFiles() + " files unchanged, " + delta.getChangedFiles() + " changed, " + delta.getNewFiles() + " new, "
+				+ delta.getRemovedFiles() + " removed");
+		updateTitle("");
+
+		List<HttpTransport.Upload> uploads = new ArrayList<>();
+		uploads.add(new HttpTransport.Upload(deltaFile, null, delta.getChecksums()));
+		for (File sidecar : Checksums.writeSidecars(deltaFile, delta.getChecksums(), workFolder, null))
+		{
+			uploads.add(new HttpTransport.Upload(sidecar, null));
+		}
+		return uploads;
+	}
+
+	/**
+	 * Download the earlier version of the artifact from the repository - as a single archive in any format (this one first), or as
+	 * the parts of a split archive - check it against its published checksums, and extract it.
+	 * @param folder - the folder to download and extract into
+	 * @return the root folder of the extracted content
+	 */
+	private File fetchDeltaBase(String version, File folder) throws Exception
+	{
+		Model base = new Model();
+		base.setName(model_.getName());
+		base.setGroupId(model_.getGroupId());
+		base.setArtifactId(model_.getArtifactId());
+		base.setVersion(version);
+		List<String> names = new ArrayList<>();
+		names.add(Zip.getArchiveName(base, classifier_, dataType_, format_));
+		for (ArchiveFormat format : ArchiveFormat.values())
+		{
+			if (format != format_)
+			{
+				names.add(Zip.getArchiveName(base, classifier_, dataType_, format));
+			}
+		}
+		names.add(Zip.getPartIndexName(base, classifier_, dataType_));
+
+		Files.createDirectories(folder.toPath());
+		File content = new File(folder, "content");
+		try (HttpTransport transport = new HttpTransport(artifactFolderUrl(version), username_, password_, options_))
+		{
+			for (String name : names)
+			{
+				File file = new File(folder, name);
+				updateTitle("Downloading " + name);
+				if (!transport.download(name, file, null))
+				{
+					continue;
+				}
+				checkDownload(transport, file);
+				List<File> downloaded = new ArrayList<>();
+				downloaded.add(file);
+				if (name.equals(names.get(names.size() - 1)))
+				{
+					Properties index = ArchiveExtractor.readProperties(file);
+					int parts = Integer.parseInt(index.getProperty("parts", "0"));
+					for (int i = 1; i <= parts; i++)
+					{
+						File part = new File(folder, index.getProperty("part." + i + ".file"));
+						updateTitle("Downloading " + part.getName());
+						if (!transport.download(part.getName(), part, null))
+						{
+							throw new IOException("The part " + part.getName() + " of version " + version + " is missing from the repository");
+						}
+						checkDownload(transport, part);
+						downloaded.add(part);
+					}
+				}
+				updateTitle("Extracting " + name);
+				ArchiveExtractor.extract(file, content);
+				for (File f : downloaded)
+				{
+					Files.delete(f.toPath());
+				}
+				updateTitle("");
+				return ArchiveExtractor.findRootFolder(content);
+			}
+		}
+		throw new IOException("Version " + version + " of " + model_.getGroupId() + ":" + model_.getArtifactId()
+				+ (classifier_.trim().length() > 0 ? ":" + classifier_.trim() : "") + " (" + dataType_ + ") isn't in the repository " + url_
+				+ " - there is nothing to create the delta against");
+	}
+
+	/**
+	 * Check a downloaded file against the strongest checksum file the repository has for it - if it has any
+	 */
+	private void checkDownload(HttpTransport transport, File file) throws IOException
+	{
+		ChecksumType[] types = new ChecksumType[] {ChecksumType.SHA512, ChecksumType.SHA256, ChecksumType.SHA1, ChecksumType.MD5};
+		for (ChecksumType type : types)
+		{
+			String sidecar = transport.getText(file.getName() + "." + type.getExtension());
+			if (sidecar != null && sidecar.trim().length() > 0)
+			{
+				String expected = sidecar.trim().split("\\s+")[0];
+				String actual = Checksums.calculate(file, Collections.singletonList(type), FileChannelIO.forOptions(options_), null).get(type);
+				if (!actual.equalsIgnoreCase(expected))
+				{
+					throw new IOException("The download of " + file.getName() + " doesn't match its " + type.getAlgorithm() + " checksum");
+				}
+				return;
+			}
+		}
+		log.info("The repository has no checksums for {} - it couldn't be checked", file.getName());
+	}
+
+	/**
+	 * Write the publish report, if enabled - a failure to write it is logged, rather than failing the publish
+	 */
+	private void writeReport()
+	{
+		if (!options_.isPublishReport())
+		{
+			return;
+		}
+		File folder = options_.getPublishReportFolder() == null ? new File(projectFolder_, "target") : new File(options_.getPublishReportFolder());
+		File report = new File(folder, Zip.getArchiveName(model_, classifier_, dataType_, format_) + ".publish.json");
+		try
+		{
+			Files.createDirectories(folder.toPath());
+			metrics_.writeReport(report);
+			reportFile_ = report;
+		}
+		catch (IOException e)
+		{
+			log.warn("Failed to write the publish report " + report.getAbsolutePath(), e);
+		}
+	}
+	
+	/**
+	 * @return the file name of the archive, once the job has completed
+	 */
+	public String getArchiveName()
+	{
+		return archiveName_;
+	}
+
+	/**
+	 * @return the size (in bytes) of the archive, once the job has completed
+	 */
+	public long getArchiveSize()
+	{
+		return archiveSize_;
+	}
+
+	/**
+	 * @return the number of files uploaded, once the job has completed
+	 */
+	public int getUploadedFiles()
+	{
+		return uploadedFiles_;
+	}
+
+	/**
+	 * @return the JSON report of the timings and sizes of the publish - once the job has completed (or failed) - or null, if it 
+	 * wasn't written
+	 */
+	public File getReportFile()
+	{
+		return reportFile_;
+	}
+
+	/**
+	 * @return the number of files that weren't uploaded, because the repository already had them
+	 */
+	public int getSkippedFiles()
+	{
+		return skippedFiles_;
+	}
+
+	/**
+	 * Run work that creates an archive within the shared {@link PublishBudget}, if there is one.
+	 */
+	private <T> T withArchiveBudget(Callable<T> work) throws Exception
+	{
+		return options_.getBudget() == null ? work.call() : options_.getBudget().withArchive(work);
+	}
+
+	private void updateStatus(String message)
+	{
+		listener_.addStatus(message);
+	}
+
+	private void updateTitle(String title)
+	{
+		listener_.updateTitle(title);
+	}
+
+	private void updateProgress(long workDone, long max)
+	{
+		listener_.updateProgress(workDone, max);
+	}
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.publish;
+
+/**
+ * {@link PublishListener}
+ *
+ * Receives the progress of a {@link PublishJob}.  Calls may come from worker threads, so implementations must be thread safe.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public interface PublishListener
+{
+	/**
+	 * @param title - a short description of the step that is running now - empty between steps
+	 */
+	public void updateTitle(String title);
+
+	/**
+	 * @param message - a line for the log of completed steps
+	 */
+	public void addStatus(String message);
+
+	/**
+	 * @param workDone - the work completed so far in the current step, or -1 if unknown
+	 * @param max - the total work in the current step
+	 */
+	public void updateProgress(long workDone, long max);
+}
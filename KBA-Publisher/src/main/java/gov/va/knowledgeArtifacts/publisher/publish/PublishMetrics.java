@@ -0,0 +1,659 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.publish;
+
+import gov.va.knowledgeArtifacts.publisher.types.ChecksumType;
+import gov.va.knowledgeArtifacts.publisher.types.PublishPhase;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link PublishMetrics}
+ *
+ * Collects the timings and byte counts of a single publish - each {@link PublishPhase}, each archive entry, each upload and each 
+ * retry.  Each phase is logged as it completes, everything is sent to JDK Flight Recorder as {@link PublishEvents} (when the JVM 
+ * supports it), and the whole lot may be written out as a JSON report, so runs can be compared with each other.
+ * 
+ * Thread safe - entries and uploads are reported from worker threads.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class PublishMetrics
+{
+	private static Logger log = LoggerFactory.getLogger(PublishMetrics.class);
+	private static final boolean JFR_AVAILABLE = isJfrAvailable();
+
+	private final String artifact_;
+	private final long started_ = System.currentTimeMillis();
+	private final long startNanos_ = System.nanoTime();
+	private final LinkedHashMap<String, Object> details_ = new LinkedHashMap<>();
+	private final EnumMap<PublishPhase, PhaseStats> phases_ = new EnumMap<>(PublishPhase.class);
+	private final List<EntryStats> entries_ = new ArrayList<>();
+	private final List<UploadStats> uploads_ = new ArrayList<>();
+	private final List<RetryStats> retries_ = new ArrayList<>();
+	private long durationNanos_ = -1;
+	private String error_;
+
+	/**
+	 * @param artifact - the file name of the archive being published
+	 */
+	public PublishMetrics(String artifact)
+	{
+		artifact_ = artifact;
+	}
+
+	/**
+	 * Add a value to the description of the publish, at the top of the report - such as the version, or a tuning option
+	 */
+	public synchronized void setDetail(String name, Object value)
+	{
+		details_.put(name, value);
+	}
+
+	/**
+	 * Record the tuning options that the publish ran with
+	 */
+	public void setOptions(PublishOptions options)
+	{
+		setDetail("zipThreads", options.getZipThreads());
+		setDetail("zipBlockSize", options.getZipBlockSize());
+		setDetail("compressionLevel", options.getCompressionLevel());
+		setDetail("adaptiveCompression", options.getAdaptiveCompression());
+		setDetail("entryCache", options.isEntryCache());
+		setDetail("checksums", options.getChecksumTypes());
+		setDetail("streamingUpload", options.isStreamingUpload());
+		setDetail("splitSize", options.getSplitSize());
+		setDetail("deltaBase", options.getDeltaBase());
+		setDetail("deltaBlockSize", options.getDeltaBlockSize());
+		setDetail("uploadThreads", options.getUploadThreads());
+		setDetail("uploadRetries", options.getUploadRetries());
+		setDetail("resumableUploads", options.isResumableUploads());
+		setDetail("skipExisting", options.isSkipExisting());
+		setDetail("ioBufferSize", options.getIoBufferSize());
+		setDetail("ioMapSize", options.getIoMapSize());
+		setDetail("scanThreads", options.getScanThreads());
+		setDetail("sharedBudget", options.getBudget() != null);
+	}
+
+	/**
+	 * Mark the start of a phase.  A phase may be run more than once (a retried streaming upload recreates the archive) - the time 
+	 * and bytes of each run are added together.
+	 */
+	public synchronized void begin(PublishPhase phase)
+	{
+		PhaseStats stats = phases_.get(phase);
+		if (stats == null)
+		{
+			stats = new PhaseStats(phase);
+			phases_.put(phase, stats);
+		}
+		stats.event = JFR_AVAILABLE ? PublishEvents.PhaseEvent.start() : null;
+		stats.startedAt = System.nanoTime();
+	}
+
+	/**
+	 * Mark the end of a phase, started with {@link #begin(PublishPhase)}
+	 * @param items - the number of files (or entries) the phase processed
+	 * @param bytesIn - the bytes the phase read
+	 * @param bytesOut - the bytes the phase wrote, or sent
+	 */
+	public void end(PublishPhase phase, long items, long bytesIn, long bytesOut)
+	{
+		long nanos;
+		synchronized (this)
+		{
+			PhaseStats stats = phases_.get(phase);
+			if (stats == null || stats.startedAt == 0)
+			{
+				return;
+			}
+			nanos = System.nanoTime() - stats.startedAt;
+			stats.startedAt = 0;
+			stats.runs++;
+			stats.nanos += nanos;
+			stats.items += items;
+			stats.bytesIn += bytesIn;
+			stats.bytesOut += bytesOut;
+			if (stats.event != null)
+			{
+				PublishEvents.PhaseEvent.commit(stats.event, artifact_, phase.name(), items, bytesIn, bytesOut);
+				stats.event = null;
+			}
+		}
+		log.info("{} took {}ms - {} items, {} in, {} out, {}/s", phase.getNiceName(), nanos / 1000000l, items, 
+				PublishProgress.formatBytes(bytesIn), PublishProgress.formatBytes(bytesOut), 
+				PublishProgress.formatBytes(perSecond(Math.max(bytesIn, bytesOut), nanos)));
+	}
+
+	/**
+	 * Record an entry written to the archive
+	 * @param method - "deflated", "stored" or "cached"
+	 * @param compressionNanos - the time spent compressing (or checksumming) the entry, summed over all of its blocks
+	 */
+	public void entry(String name, String method, long size, long compressedSize, long compressionNanos)
+	{
+		synchronized (this)
+		{
+			entries_.add(new EntryStats(name, method, size, compressedSize, compressionNanos));
+		}
+		if (JFR_AVAILABLE)
+		{
+			PublishEvents.EntryEvent.emit(name, method, size, compressedSize, compressionNanos);
+		}
+	}
+
+	/**
+	 * Start timing the upload of a file - call {@link UploadStats#finish(boolean)} when it succeeds, or fails for good
+	 */
+	public UploadStats startUpload(String file, long size)
+	{
+		return new UploadStats(this, file, size);
+	}
+
+	/**
+	 * Record a file that wasn't uploaded, because the repository already has it
+	 */
+	public synchronized void skipped(String file, long size)
+	{
+		UploadStats stats = new UploadStats(null, file, size);
+		stats.result_ = "skipped";
+		uploads_.add(stats);
+	}
+
+	/**
+	 * Record a failed attempt, which will be retried after the delay
+	 */
+	public void retry(String operation, int attempt, Exception e, long delayMillis)
+	{
+		synchronized (this)
+		{
+			retries_.add(new RetryStats(operation, attempt, e.toString(), delayMillis));
+		}
+		if (JFR_AVAILABLE)
+		{
+			PublishEvents.RetryEvent.emit(operation, attempt, e.toString(), delayMillis);
+		}
+	}
+
+	/**
+	 * Mark the end of the publish
+	 * @param error - the reason it failed, or null if it succeeded
+	 */
+	public synchronized void finish(Exception error)
+	{
+		durationNanos_ = System.nanoTime() - startNanos_;
+		error_ = error == null ? null : error.toString();
+	}
+
+	/**
+	 * @return the number of retries, so far
+	 */
+	public synchronized int getRetries()
+	{
+		return retries_.size();
+	}
+
+	/**
+	 * Write the report of everything recorded so far, as JSON
+	 */
+	public void writeReport(File file) throws IOException
+	{
+		String json;
+		synchronized (this)
+		{
+			json = toJson();
+		}
+		Files.write(file.toPath(), json.getBytes(StandardCharsets.UTF_8));
+		log.info("Wrote the publish report {}", file.getAbsolutePath());
+	}
+
+	private String toJson()
+	{
+		JsonWriter json = new JsonWriter();
+		json.beginObject();
+		json.name("artifact").value(artifact_);
+		json.name("result").value(error_ == null ? (durationNanos_ < 0 ? "incomplete" : "succeeded") : "failed");
+		if (error_ != null)
+		{
+			json.name("error").value(error_);
+		}
+		json.name("started").value(Instant.ofEpochMilli(started_).toString());
+		json.name("durationMillis").value((durationNanos_ < 0 ? System.nanoTime() - startNanos_ : durationNanos_) / 1000000l);
+		for (Map.Entry<String, Object> detail : details_.entrySet())
+		{
+			json.name(detail.getKey()).value(detail.getValue());
+		}
+
+		json.name("phases").beginArray();
+		for (PhaseStats phase : phases_.values())
+		{
+			//a phase that was running when the publish failed is included, with its time so far
+			long nanos = phase.nanos + (phase.startedAt == 0 ? 0 : System.nanoTime() - phase.startedAt);
+			json.beginObject();
+			json.name("phase").value(phase.phase.name());
+			json.name("completed").value(phase.startedAt == 0);
+			json.name("runs").value(phase.runs);
+			json.name("durationMillis").value(nanos / 1000000l);
+			json.name("items").value(phase.items);
+			json.name("bytesIn").value(phase.bytesIn);
+			json.name("bytesOut").value(phase.bytesOut);
+			json.name("bytesPerSecond").value(perSecond(Math.max(phase.bytesIn, phase.bytesOut), phase.nanos));
+			json.endObject();
+		}
+		json.endArray();
+
+		long size = 0;
+		long compressedSize = 0;
+		long compressionNanos = 0;
+		EnumMap<Method, Integer> methods = new EnumMap<>(Method.class);
+		for (EntryStats entry : entries_)
+		{
+			size += entry.size;
+			compressedSize += entry.compressedSize;
+			compressionNanos += entry.compressionNanos;
+			methods.merge(Method.parse(entry.method), 1, Integer::sum);
+		}
+		json.name("archive").beginObject();
+		json.name("entries").value(entries_.size());
+		for (Method method : Method.values())
+		{
+			json.name(method.name().toLowerCase() + "Entries").value(methods.getOrDefault(method, 0));
+		}
+		json.name("size").value(size);
+		json.name("compressedSize").value(compressedSize);
+		json.name("compressionRatio").value(ratio(size, compressedSize));
+		json.name("compressionMillis").value(compressionNanos / 1000000l);
+		json.endObject();
+
+		json.name("retries").beginArray();
+		for (RetryStats retry : retries_)
+		{
+			json.beginObject();
+			json.name("operation").value(retry.operation);
+			json.name("attempt").value(retry.attempt);
+			json.name("error").value(retry.error);
+			json.name("delayMillis").value(retry.delayMillis);
+			json.endObject();
+		}
+		json.endArray();
+
+		json.name("uploads").beginArray();
+		for (UploadStats upload : uploads_)
+		{
+			json.beginObject();
+			json.name("file").value(upload.file_);
+			json.name("result").value(upload.result_);
+			json.name("size").value(upload.size_);
+			json.name("bytesSent").value(upload.bytesSent_);
+			json.name("attempts").value(upload.attempts_);
+			json.name("durationMillis").value(upload.nanos_ / 1000000l);
+			json.name("bytesPerSecond").value(perSecond(upload.bytesSent_, upload.nanos_));
+			json.endObject();
+		}
+		json.endArray();
+
+		json.name("entries").beginArray();
+		for (EntryStats entry : entries_)
+		{
+			json.beginObject();
+			json.name("name").value(entry.name);
+			json.name("method").value(entry.method);
+			json.name("size").value(entry.size);
+			json.name("compressedSize").value(entry.compressedSize);
+			json.name("compressionRatio").value(ratio(entry.size, entry.compressedSize));
+			json.name("compressionMillis").value(Math.round(entry.compressionNanos / 1000d) / 1000d);
+			json.endObject();
+		}
+		json.endArray();
+		json.endObject();
+		return json.toString();
+	}
+
+	private static long perSecond(long bytes, long nanos)
+	{
+		return nanos <= 0 ? 0 : (long)(bytes / (nanos / 1000000000d));
+	}
+
+	/**
+	 * @return the compressed size as a fraction of the size, rounded to 3 places
+	 */
+	private static double ratio(long size, long compressedSize)
+	{
+		return size <= 0 ? 1 : Math.round(compressedSize * 1000d / size) / 1000d;
+	}
+
+	private static boolean isJfrAvailable()
+	{
+		try
+		{
+			Class.forName("jdk.jfr.Event", false, PublishMetrics.class.getClassLoader());
+			return true;
+		}
+		catch (ClassNotFoundException | LinkageError e)
+		{
+			log.debug("JDK Flight Recorder is not available - publish events will not be recorded");
+			return false;
+		}
+	}
+
+	private enum Method
+	{
+		DEFLATED, STORED, CACHED;
+
+		static Method parse(String method)
+		{
+			for (Method m : values())
+			{
+				if (m.name().equalsIgnoreCase(method))
+				{
+					return m;
+				}
+			}
+			return DEFLATED;
+		}
+	}
+
+	private static class PhaseStats
+	{
+		PublishPhase phase;
+		long startedAt;
+		Object event;
+		int runs;
+		long nanos;
+		long items;
+		long bytesIn;
+		long bytesOut;
+
+		PhaseStats(PublishPhase phase)
+		{
+			this.phase = phase;
+		}
+	}
+
+	private static class EntryStats
+	{
+		String name;
+		String method;
+		long size;
+		long compressedSize;
+		long compressionNanos;
+
+		EntryStats(String name, String method, long size, long compressedSize, long compressionNanos)
+		{
+			this.name = name;
+			this.method = method;
+			this.size = size;
+			this.compressedSize = compressedSize;
+			this.compressionNanos = compressionNanos;
+		}
+	}
+
+	private static class RetryStats
+	{
+		String operation;
+		int attempt;
+		String error;
+		long delayMillis;
+
+		RetryStats(String operation, int attempt, String error, long delayMillis)
+		{
+			this.operation = operation;
+			this.attempt = attempt;
+			this.error = error;
+			this.delayMillis = delayMillis;
+		}
+	}
+
+	/**
+	 * The timing of one upload.  Each upload is run (and retried) on a single thread, so this needs no locking of its own.
+	 */
+	public static class UploadStats
+	{
+		private PublishMetrics metrics_;
+		private String file_;
+		private long size_;
+		private long bytesSent_;
+		private int attempts_;
+		private long nanos_;
+		private String result_;
+		private long startedAt_ = System.nanoTime();
+		private Object event_;
+
+		private UploadStats(PublishMetrics metrics, String file, long size)
+		{
+			metrics_ = metrics;
+			file_ = file;
+			size_ = size;
+			event_ = metrics != null && JFR_AVAILABLE ? PublishEvents.UploadEvent.start() : null;
+		}
+
+		/**
+		 * Count the start of an attempt at the upload
+		 */
+		public void attempt()
+		{
+			attempts_++;
+		}
+
+		/**
+		 * Correct the size of the file - for an archive that is uploaded as it is created
+		 */
+		public void setSize(long size)
+		{
+			size_ = size;
+		}
+
+		/**
+		 * Count bytes written to the server - including any that are sent again, by a retry
+		 */
+		public void sent(long bytes)
+		{
+			bytesSent_ += bytes;
+		}
+
+		/**
+		 * Record the end of the upload
+		 * @param succeeded - false if the upload failed, after any retries
+		 */
+		public void finish(boolean succeeded)
+		{
+			nanos_ = System.nanoTime() - startedAt_;
+			result_ = succeeded ? "uploaded" : "failed";
+			if (event_ != null)
+			{
+				PublishEvents.UploadEvent.commit(event_, file_, size_, bytesSent_, attempts_, result_);
+				event_ = null;
+			}
+			synchronized (metrics_)
+			{
+				metrics_.uploads_.add(this);
+			}
+		}
+	}
+
+	/**
+	 * Just enough JSON to write the report - names and values, in nested objects and arrays
+	 */
+	private static class JsonWriter
+	{
+		private StringBuilder sb_ = new StringBuilder();
+		private int depth_ = 0;
+		private boolean first_ = true;
+		private boolean afterName_ = false;
+
+		JsonWriter beginObject()
+		{
+			return begin('{');
+		}
+
+		JsonWriter endObject()
+		{
+			return end('}');
+		}
+
+		JsonWriter beginArray()
+		{
+			return begin('[');
+		}
+
+		JsonWriter endArray()
+		{
+			return end(']');
+		}
+
+		JsonWriter name(String name)
+		{
+			separate();
+			string(name);
+			sb_.append(": ");
+			afterName_ = true;
+			return this;
+		}
+
+		JsonWriter value(Object value)
+		{
+			if (value instanceof List)
+			{
+				beginArray();
+				for (Object item : (List<?>)value)
+				{
+					value(item instanceof ChecksumType ? ((ChecksumType)item).name() : item);
+				}
+				return endArray();
+			}
+			separate();
+			if (value == null)
+			{
+				sb_.append("null");
+			}
+			else if (value instanceof Boolean || value instanceof Integer || value instanceof Long)
+			{
+				sb_.append(value);
+			}
+			else if (value instanceof Number)
+			{
+				double d = ((Number)value).doubleValue();
+				sb_.append(Double.isNaN(d) || Double.isInfinite(d) ? "null" : Double.toString(d));
+			}
+			else
+			{
+				string(value.toString());
+			}
+			return this;
+		}
+
+		private JsonWriter begin(char c)
+		{
+			separate();
+			sb_.append(c);
+			depth_++;
+			first_ = true;
+			return this;
+		}
+
+		private JsonWriter end(char c)
+		{
+			depth_--;
+			if (!first_)
+			{
+				newLine();
+			}
+			sb_.append(c);
+			first_ = false;
+			return this;
+		}
+
+		private void separate()
+		{
+			if (afterName_)
+			{
+				afterName_ = false;
+				return;
+			}
+			if (depth_ > 0)
+			{
+				sb_.append(first_ ? "" : ",");
+				newLine();
+			}
+			first_ = false;
+		}
+
+		private void newLine()
+		{
+			sb_.append('\n');
+			for (int i = 0; i < depth_; i++)
+			{
+				sb_.append("  ");
+			}
+		}
+
+		private void string(String s)
+		{
+			sb_.append('"');
+			for (int i = 0; i < s.length(); i++)
+			{
+				char c = s.charAt(i);
+				switch (c)
+				{
+					case '"':
+						sb_.append("\\\"");
+						break;
+					case '\\':
+						sb_.append("\\\\");
+						break;
+					case '\n':
+						sb_.append("\\n");
+						break;
+					case '\r':
+						sb_.append("\\r");
+						break;
+					case '\t':
+						sb_.append("\\t");
+						break;
+					default:
+						if (c < 0x20)
+						{
+							sb_.append(String.format("\\u%04x", (int)c));
+						}
+						else
+						{
+							sb_.append(c);
+						}
+				}
+			}
+			sb_.append('"');
+		}
+
+		@Override
+		public String toString()
+		{
+			return sb_.toString() + "\n";
+		}
+	}
+}
@@ -0,0 +1,476 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.publish;
+
+import gov.va.knowledgeArtifacts.publisher.types.ChecksumType;
+import gov.va.knowledgeArtifacts.publisher.types.KnowledgeArtifactType;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link PublishOptions}
+ *
+ * Tuning options for the publish process.  The defaults may be overridden with system properties - for example
+ * <code>-Dkba.publisher.zipThreads=4</code>
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class PublishOptions
+{
+	private static Logger log = LoggerFactory.getLogger(PublishOptions.class);
+	private static final String PREFIX = "kba.publisher.";
+
+	private int zipThreads_ = readInt("zipThreads", Runtime.getRuntime().availableProcessors());
+	private int zipBlockSize_ = readInt("zipBlockSize", ParallelZipWriter.DEFAULT_BLOCK_SIZE);
+	private int compressionLevel_ = readInt("compressionLevel", -1);
+	private List<ChecksumType> checksumTypes_ = readChecksumTypes("checksums", "MD5,SHA1");
+	private boolean streamingUpload_ = readBoolean("streamingUpload", false);
+	private int splitSize_ = readInt("splitSize", 0);
+	private String deltaBase_ = readString("deltaBase", null);
+	private int deltaBlockSize_ = readInt("deltaBlockSize", BinaryDelta.DEFAULT_BLOCK_SIZE);
+	private int uploadThreads_ = readInt("uploadThreads", 4);
+	private int uploadRetries_ = readInt("uploadRetries", 5);
+	private int uploadRetryDelay_ = readInt("uploadRetryDelay", 1000);
+	private boolean resumableUploads_ = readBoolean("resumableUploads", false);
+	private Boolean adaptiveCompression_ = readOptionalBoolean("adaptiveCompression");
+	private boolean entryCache_ = readBoolean("entryCache", false);
+	private String entryCacheFolder_ = readString("entryCacheFolder", 
+			new File(new File(System.getProperty("user.home"), ".kbaPublisher"), "entryCache").getAbsolutePath());
+	private int entryCacheMaxSize_ = readInt("entryCacheMaxSize", 4096);
+	private boolean skipExisting_ = readBoolean("skipExisting", true);
+	private List<String> filteredFiles_ = readStringList("filteredFiles");
+	private int progressInterval_ = readInt("progressInterval", 100);
+	private boolean publishReport_ = readBoolean("publishReport", true);
+	private String publishReportFolder_ = readString("publishReportFolder", null);
+	private int ioBufferSize_ = readInt("ioBufferSize", FileChannelIO.DEFAULT_BUFFER_SIZE);
+	private int ioMapSize_ = readInt("ioMapSize", FileChannelIO.DEFAULT_MAP_SIZE);
+	private int scanThreads_ = readInt("scanThreads", Math.max(4, Runtime.getRuntime().availableProcessors()));
+	private PublishBudget budget_ = null;
+
+	/**
+	 * @return the number of threads used to compress the archive
+	 */
+	public int getZipThreads()
+	{
+		return zipThreads_;
+	}
+
+	public void setZipThreads(int zipThreads)
+	{
+		zipThreads_ = zipThreads;
+	}
+
+	/**
+	 * @return the size (in bytes) of the blocks that large files are cut into, for compression in parallel
+	 */
+	public int getZipBlockSize()
+	{
+		return zipBlockSize_;
+	}
+
+	public void setZipBlockSize(int zipBlockSize)
+	{
+		zipBlockSize_ = zipBlockSize;
+	}
+
+	/**
+	 * @return the compression level - the deflate level (0-9) for zip and tar.gz, the preset (0-9) for tar.xz, or the level (1-22) 
+	 * for tar.zst - or -1 to use the default of the archive format
+	 */
+	public int getCompressionLevel()
+	{
+		return compressionLevel_;
+	}
+
+	public void setCompressionLevel(int compressionLevel)
+	{
+		compressionLevel_ = compressionLevel;
+	}
+
+	/**
+	 * @return the checksum sidecar files that are calculated and uploaded for each published file
+	 */
+	public List<ChecksumType> getChecksumTypes()
+	{
+		return checksumTypes_;
+	}
+
+	public void setChecksumTypes(List<ChecksumType> checksumTypes)
+	{
+		checksumTypes_ = checksumTypes;
+	}
+
+	/**
+	 * @return true, if the archive should be uploaded as it is created, rather than being written to a temp file first
+	 */
+	public boolean isStreamingUpload()
+	{
+		return streamingUpload_;
+	}
+
+	public void setStreamingUpload(boolean streamingUpload)
+	{
+		streamingUpload_ = streamingUpload;
+	}
+
+	/**
+	 * @return the maximum size (in MB, before compression) of the data in each part, when the archive is split into parts that are
+	 * uploaded separately - 0 to create a single archive.  A split archive is always written to disk, rather than streamed.
+	 */
+	public int getSplitSize()
+	{
+		return splitSize_;
+	}
+
+	public void setSplitSize(int splitSize)
+	{
+		splitSize_ = splitSize;
+	}
+
+	/**
+	 * @return the earlier version of the artifact to publish a delta against, as well as the full archive - or null, to only publish
+	 * the full archive.  The earlier version is downloaded from the repository.  See {@link DeltaArchive}.
+	 */
+	public String getDeltaBase()
+	{
+		return deltaBase_;
+	}
+
+	public void setDeltaBase(String deltaBase)
+	{
+		deltaBase_ = deltaBase;
+	}
+
+	/**
+	 * @return the size (in bytes) of the blocks that files of the earlier version are indexed in, to find what they have in common 
+	 * with the new version - smaller blocks find more, but take longer
+	 */
+	public int getDeltaBlockSize()
+	{
+		return deltaBlockSize_;
+	}
+
+	public void setDeltaBlockSize(int deltaBlockSize)
+	{
+		deltaBlockSize_ = deltaBlockSize;
+	}
+
+	/**
+	 * @return the maximum number of files to upload at the same time
+	 */
+	public int getUploadThreads()
+	{
+		return uploadThreads_;
+	}
+
+	public void setUploadThreads(int uploadThreads)
+	{
+		uploadThreads_ = uploadThreads;
+	}
+
+	/**
+	 * @return the number of times a failed upload is retried, before the publish fails
+	 */
+	public int getUploadRetries()
+	{
+		return uploadRetries_;
+	}
+
+	public void setUploadRetries(int uploadRetries)
+	{
+		uploadRetries_ = uploadRetries;
+	}
+
+	/**
+	 * @return the base delay (in millis) before retrying a failed upload - doubled on each further retry, with random jitter
+	 */
+	public int getUploadRetryDelay()
+	{
+		return uploadRetryDelay_;
+	}
+
+	public void setUploadRetryDelay(int uploadRetryDelay)
+	{
+		uploadRetryDelay_ = uploadRetryDelay;
+	}
+
+	/**
+	 * @return true, if a retried upload should ask the server how much it already has, and only send the rest.  Only enable this
+	 * for repositories that accept partial PUT requests (with a Content-Range header).  The part on the server is checked against
+	 * the file first (with a GET for that Range), and the size once the rest is sent - if either can't be confirmed, the whole file 
+	 * is sent.
+	 */
+	public boolean isResumableUploads()
+	{
+		return resumableUploads_;
+	}
+
+	public void setResumableUploads(boolean resumableUploads)
+	{
+		resumableUploads_ = resumableUploads;
+	}
+
+	/**
+	 * @return true, if each entry of the archive should be sampled to decide if it is worth compressing (and how hard) - false to 
+	 * compress every entry at the maximum level - or null, to use the default of the {@link KnowledgeArtifactType} being published.
+	 */
+	public Boolean getAdaptiveCompression()
+	{
+		return adaptiveCompression_;
+	}
+
+	public void setAdaptiveCompression(Boolean adaptiveCompression)
+	{
+		adaptiveCompression_ = adaptiveCompression;
+	}
+
+	/**
+	 * @return true, if the compressed content of archive entries should be cached on disk, so unchanged files don't need to be 
+	 * compressed again by the next publish.  Off by default - the cache needs up to {@link #getEntryCacheMaxSize()} of free space
+	 * in the cache folder.
+	 */
+	public boolean isEntryCache()
+	{
+		return entryCache_;
+	}
+
+	public void setEntryCache(boolean entryCache)
+	{
+		entryCache_ = entryCache;
+	}
+
+	/**
+	 * @return the folder that the entry cache is kept in
+	 */
+	public String getEntryCacheFolder()
+	{
+		return entryCacheFolder_;
+	}
+
+	public void setEntryCacheFolder(String entryCacheFolder)
+	{
+		entryCacheFolder_ = entryCacheFolder;
+	}
+
+	/**
+	 * @return the most (in MB) that the entry cache may hold - once full, no more entries are added to it, and it is trimmed 
+	 * back to three quarters of this after each archive is written
+	 */
+	public int getEntryCacheMaxSize()
+	{
+		return entryCacheMaxSize_;
+	}
+
+	public void setEntryCacheMaxSize(int entryCacheMaxSize)
+	{
+		entryCacheMaxSize_ = entryCacheMaxSize;
+	}
+
+	/**
+	 * @return true, if files that the repository already has (with the same checksum) should not be uploaded again
+	 */
+	public boolean isSkipExisting()
+	{
+		return skipExisting_;
+	}
+
+	public void setSkipExisting(boolean skipExisting)
+	{
+		skipExisting_ = skipExisting;
+	}
+
+	/**
+	 * @return glob patterns (such as <code>docs/**.txt</code>) of the data files that have their ${...} tokens replaced, like the
+	 * license and manifest files - matched against the path of each file within the archive, below the root folder.  
+	 * Set as a comma separated list.
+	 */
+	public List<String> getFilteredFiles()
+	{
+		return filteredFiles_;
+	}
+
+	public void setFilteredFiles(List<String> filteredFiles)
+	{
+		filteredFiles_ = filteredFiles;
+	}
+
+	/**
+	 * @return the minimum time (in millis) between progress updates sent to the display
+	 */
+	public int getProgressInterval()
+	{
+		return progressInterval_;
+	}
+
+	public void setProgressInterval(int progressInterval)
+	{
+		progressInterval_ = progressInterval;
+	}
+
+	/**
+	 * @return true, if a JSON report of the timings and sizes of the publish should be written
+	 */
+	public boolean isPublishReport()
+	{
+		return publishReport_;
+	}
+
+	public void setPublishReport(boolean publishReport)
+	{
+		publishReport_ = publishReport;
+	}
+
+	/**
+	 * @return the folder that the publish report is written to - or null, for the target folder of the project
+	 */
+	public String getPublishReportFolder()
+	{
+		return publishReportFolder_;
+	}
+
+	public void setPublishReportFolder(String publishReportFolder)
+	{
+		publishReportFolder_ = publishReportFolder;
+	}
+
+	/**
+	 * @return the size (in bytes) of the buffers that files are read through, for checksums, archiving and uploads
+	 */
+	public int getIoBufferSize()
+	{
+		return ioBufferSize_;
+	}
+
+	public void setIoBufferSize(int ioBufferSize)
+	{
+		ioBufferSize_ = ioBufferSize;
+	}
+
+	/**
+	 * @return the size (in bytes) of the part of a large file that is memory mapped at a time, when it is read - 0 to read every file
+	 * through a buffer, without mapping it
+	 */
+	public int getIoMapSize()
+	{
+		return ioMapSize_;
+	}
+
+	public void setIoMapSize(int ioMapSize)
+	{
+		ioMapSize_ = ioMapSize;
+	}
+
+	/**
+	 * @return the number of folders that are listed at the same time, when the data files are scanned before they are archived
+	 */
+	public int getScanThreads()
+	{
+		return scanThreads_;
+	}
+
+	public void setScanThreads(int scanThreads)
+	{
+		scanThreads_ = scanThreads;
+	}
+
+	/**
+	 * @return the limits shared with other publish jobs running at the same time - null when the job runs alone
+	 */
+	public PublishBudget getBudget()
+	{
+		return budget_;
+	}
+
+	public void setBudget(PublishBudget budget)
+	{
+		budget_ = budget;
+	}
+
+	protected static Boolean readOptionalBoolean(String name)
+	{
+		String value = readString(name, null);
+		return value == null ? null : Boolean.valueOf(value);
+	}
+
+	protected static boolean readBoolean(String name, boolean defaultValue)
+	{
+		return Boolean.parseBoolean(readString(name, Boolean.toString(defaultValue)));
+	}
+
+	protected static String readString(String name, String defaultValue)
+	{
+		String value = System.getProperty(PREFIX + name);
+		if (value != null && value.trim().length() > 0)
+		{
+			return value.trim();
+		}
+		return defaultValue;
+	}
+
+	protected static List<String> readStringList(String name)
+	{
+		ArrayList<String> result = new ArrayList<>();
+		for (String s : readString(name, "").split(","))
+		{
+			if (s.trim().length() > 0)
+			{
+				result.add(s.trim());
+			}
+		}
+		return result;
+	}
+
+	protected static List<ChecksumType> readChecksumTypes(String name, String defaultValue)
+	{
+		ArrayList<ChecksumType> result = new ArrayList<>();
+		for (String s : readString(name, defaultValue).split(","))
+		{
+			ChecksumType type = ChecksumType.parse(s);
+			if (type == null)
+			{
+				log.warn("Ignoring unknown checksum type '" + s + "' in the system property " + PREFIX + name);
+			}
+			else if (!result.contains(type))
+			{
+				result.add(type);
+			}
+		}
+		return result;
+	}
+
+	protected static int readInt(String name, int defaultValue)
+	{
+		String value = System.getProperty(PREFIX + name);
+		if (value != null && value.trim().length() > 0)
+		{
+			try
+			{
+				return Integer.parseInt(value.trim());
+			}
+			catch (NumberFormatException e)
+			{
+				log.warn("Ignoring invalid value '" + value + "' for the system property " + PREFIX + name);
+			}
+		}
+		return defaultValue;
+	}
+}
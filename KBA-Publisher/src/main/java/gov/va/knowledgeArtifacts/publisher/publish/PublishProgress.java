@@ -0,0 +1,281 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.publish;
+
+import gov.va.knowledgeArtifacts.publisher.types.PublishPhase;
+import java.util.EnumMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link PublishProgress}
+ *
+ * The progress of a whole publish, across all of its {@link PublishPhase}s, weighted by the bytes each phase has to process - so the 
+ * progress bar moves at a steady rate from the start of compression to the end of the upload, rather than restarting for each step.
+ * 
+ * Workers report bytes from any thread, as often as they like.  The {@link PublishListener} is only called at most once per interval 
+ * (plus at the start and end of each phase), with the overall progress, and a title giving the current phase, its throughput, and the 
+ * estimated time remaining for the whole publish.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class PublishProgress
+{
+	private final PublishListener listener_;
+	private final long intervalNanos_;
+	private final EnumMap<PublishPhase, AtomicLong> done_ = new EnumMap<>(PublishPhase.class);
+	private final EnumMap<PublishPhase, AtomicLong> total_ = new EnumMap<>(PublishPhase.class);
+	private final EnumMap<PublishPhase, AtomicLong> started_ = new EnumMap<>(PublishPhase.class);
+	private final AtomicLong lastUpdate_ = new AtomicLong();
+	private final AtomicLong scannedFiles_ = new AtomicLong();
+	private volatile PublishPhase current_ = null;
+	private volatile long firstStart_ = 0;
+	private volatile boolean uploadEstimated_ = false;
+
+	/**
+	 * @param intervalMillis - the minimum time between updates sent to the listener
+	 */
+	public PublishProgress(PublishListener listener, long intervalMillis)
+	{
+		listener_ = listener;
+		intervalNanos_ = intervalMillis * 1000000l;
+		for (PublishPhase phase : PublishPhase.values())
+		{
+			done_.put(phase, new AtomicLong());
+			total_.put(phase, new AtomicLong());
+			started_.put(phase, new AtomicLong());
+		}
+		lastUpdate_.set(System.nanoTime() - intervalNanos_);
+	}
+
+	/**
+	 * Set (or correct) the number of bytes that a phase will process.  Phases that haven't started yet may be given an estimate, 
+	 * which is replaced when the real size is known.
+	 */
+	public void setTotal(PublishPhase phase, long bytes)
+	{
+		total_.get(phase).set(Math.max(0, bytes));
+		if (phase == PublishPhase.UPLOAD)
+		{
+			uploadEstimated_ = false;
+		}
+		else if (phase == PublishPhase.COMPRESS && uploadEstimated_)
+		{
+			total_.get(PublishPhase.UPLOAD).set(Math.max(0, bytes));
+		}
+	}
+
+	/**
+	 * Until the upload total is set, estimate it as the size of the data being compressed - for when the archive is uploaded after 
+	 * it is created, so the time remaining includes the upload from the start.
+	 */
+	public void estimateUploadFromCompress()
+	{
+		uploadEstimated_ = true;
+		total_.get(PublishPhase.UPLOAD).set(total_.get(PublishPhase.COMPRESS).get());
+	}
+
+	/**
+	 * @return the number of bytes that the phase will process, as currently known
+	 */
+	public long getTotal(PublishPhase phase)
+	{
+		return total_.get(phase).get();
+	}
+
+	/**
+	 * Mark the phase as the one now running.  Phases may overlap (compression and upload, when streaming) - the title follows the 
+	 * most recently started.
+	 */
+	public void start(PublishPhase phase)
+	{
+		long now = System.nanoTime();
+		started_.get(phase).compareAndSet(0, now);
+		//a phase that is run again (a retried streaming upload recreates the archive) starts over
+		done_.get(phase).set(0);
+		if (phase == PublishPhase.SCAN)
+		{
+			scannedFiles_.set(0);
+		}
+		if (firstStart_ == 0 && phase != PublishPhase.SCAN)
+		{
+			firstStart_ = now;
+		}
+		current_ = phase;
+		update(true);
+	}
+
+	/**
+	 * Record that bytes were processed in the phase.  Thread safe.
+	 */
+	public void add(PublishPhase phase, long bytes)
+	{
+		done_.get(phase).addAndGet(bytes);
+		update(false);
+	}
+
+	/**
+	 * Record files found by the pre-scan - which has no known total, so it only updates the title
+	 */
+	public void scanned(int files, long bytes)
+	{
+		scannedFiles_.addAndGet(files);
+		done_.get(PublishPhase.SCAN).addAndGet(bytes);
+		update(false);
+	}
+
+	/**
+	 * Mark the phase complete - whatever wasn't reported is counted as done
+	 */
+	public void finish(PublishPhase phase)
+	{
+		done_.get(phase).set(Math.max(done_.get(phase).get(), total_.get(phase).get()));
+		total_.get(phase).set(done_.get(phase).get());
+		update(true);
+	}
+
+	/**
+	 * @return the bytes per second processed by the phase, since it started
+	 */
+	public double getThroughput(PublishPhase phase)
+	{
+		long started = started_.get(phase).get();
+		long elapsed = System.nanoTime() - started;
+		if (started == 0 || elapsed <= 0)
+		{
+			return 0;
+		}
+		return done_.get(phase).get() / (elapsed / 1000000000d);
+	}
+
+	/**
+	 * @return the estimated millis until all phases complete, based on the average rate so far - or -1 if there isn't enough to go on yet
+	 */
+	public long getRemainingMillis()
+	{
+		long done = weightedDone();
+		long total = weightedTotal();
+		long elapsed = System.nanoTime() - firstStart_;
+		if (firstStart_ == 0 || done <= 0 || elapsed < 1000000000l)
+		{
+			return -1;
+		}
+		return (long)((total - done) * (elapsed / 1000000d) / done);
+	}
+
+	private long weightedDone()
+	{
+		long done = 0;
+		for (PublishPhase phase : PublishPhase.values())
+		{
+			if (phase != PublishPhase.SCAN)
+			{
+				done += Math.min(done_.get(phase).get(), total_.get(phase).get());
+			}
+		}
+		return done;
+	}
+
+	private long weightedTotal()
+	{
+		long total = 0;
+		for (PublishPhase phase : PublishPhase.values())
+		{
+			if (phase != PublishPhase.SCAN)
+			{
+				total += total_.get(phase).get();
+			}
+		}
+		return total;
+	}
+
+	private void update(boolean force)
+	{
+		long now = System.nanoTime();
+		long last = lastUpdate_.get();
+		if (!force && (now - last < intervalNanos_ || !lastUpdate_.compareAndSet(last, now)))
+		{
+			return;
+		}
+		lastUpdate_.set(now);
+		PublishPhase phase = current_;
+		if (phase == null)
+		{
+			return;
+		}
+		//so that a forced update can't be overtaken by one that was computed before it
+		synchronized (this)
+		{
+			send(phase);
+		}
+	}
+
+	private void send(PublishPhase phase)
+	{
+		StringBuilder title = new StringBuilder(phase.getNiceName());
+		if (phase == PublishPhase.SCAN)
+		{
+			title.append(" - ").append(scannedFiles_.get()).append(" files, ").append(formatBytes(done_.get(phase).get()));
+			listener_.updateProgress(-1, 0);
+		}
+		else
+		{
+			long total = total_.get(phase).get();
+			title.append(" - ").append(formatBytes(Math.min(done_.get(phase).get(), total))).append(" of ").append(formatBytes(total));
+			double rate = getThroughput(phase);
+			if (rate > 0)
+			{
+				title.append(", ").append(formatBytes((long)rate)).append("/s");
+			}
+			long remaining = getRemainingMillis();
+			if (remaining >= 0)
+			{
+				title.append(", about ").append(formatDuration(remaining)).append(" left");
+			}
+			listener_.updateProgress(weightedDone(), Math.max(1, weightedTotal()));
+		}
+		listener_.updateTitle(title.toString());
+	}
+
+	static String formatBytes(long bytes)
+	{
+		if (bytes < 1024)
+		{
+			return bytes + " B";
+		}
+		String[] units = new String[] {"KB", "MB", "GB", "TB"};
+		double value = bytes;
+		int unit = -1;
+		while (value >= 1024 && unit < units.length - 1)
+		{
+			value = value / 1024;
+			unit++;
+		}
+		return String.format("%.1f %s", value, units[unit]);
+	}
+
+	static String formatDuration(long millis)
+	{
+		long seconds = (millis + 999) / 1000;
+		if (seconds >= 3600)
+		{
+			return String.format("%d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+		}
+		return String.format("%d:%02d", seconds / 60, seconds % 60);
+	}
+}
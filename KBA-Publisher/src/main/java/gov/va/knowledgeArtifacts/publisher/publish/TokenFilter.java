@@ -0,0 +1,241 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.publish;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.maven.pom._4_0.License;
+import org.apache.maven.pom._4_0.Model;
+
+/**
+ * {@link TokenFilter}
+ *
+ * Replaces <code>${name}</code> tokens, in the style of maven resource filtering, in a single streaming pass - so the memory used doesn't 
+ * depend on the size of the file, and the cost doesn't depend on the number of tokens that are known.  Tokens are resolved from the values
+ * passed in, and then from the system properties.  Tokens that can't be resolved are left as they are.
+ * 
+ * The filter works on the bytes of the content, so any ASCII compatible encoding (such as UTF-8) passes through unchanged.  Replacement 
+ * values are written as UTF-8.
+ * 
+ * A filter is thread safe, once created.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public class TokenFilter
+{
+	//A token name longer than this isn't a token - so a stray '${' can't make the filter buffer the rest of the file
+	private static final int MAX_TOKEN_LENGTH = 256;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final Map<String, byte[]> values_ = new HashMap<>();
+
+	/**
+	 * @param values - the token names (without the ${}) and their values.  A null value is replaced with nothing.
+	 */
+	public TokenFilter(Map<String, String> values)
+	{
+		for (Map.Entry<String, String> value : values.entrySet())
+		{
+			values_.put(value.getKey(), (value.getValue() == null ? "" : value.getValue()).getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * @return a filter for the properties of the model that maven supports in the project files - project.name, project.version,
+	 * project.licenses[0].name, etc - as well as basedir and the short groupId / artifactId forms used in assembly paths.
+	 * @param projectFolder - the value for ${basedir} - may be null
+	 */
+	public static TokenFilter forModel(Model model, File projectFolder)
+	{
+		Map<String, String> values = new HashMap<>();
+		if (projectFolder != null)
+		{
+			values.put("basedir", projectFolder.getAbsolutePath());
+			values.put("project.basedir", projectFolder.getAbsolutePath());
+		}
+		values.put("groupId", model.getGroupId());
+		values.put("artifactId", model.getArtifactId());
+		values.put("version", model.getVersion());
+		values.put("project.groupId", model.getGroupId());
+		values.put("project.artifactId", model.getArtifactId());
+		values.put("project.version", model.getVersion());
+		values.put("project.name", model.getName());
+		values.put("project.description", model.getDescription());
+		values.put("project.url", model.getUrl());
+		values.put("project.organization.name", model.getOrganization() == null ? null : model.getOrganization().getName());
+		values.put("project.organization.url", model.getOrganization() == null ? null : model.getOrganization().getUrl());
+		if (model.getLicenses() != null)
+		{
+			int i = 0;
+			for (License l : model.getLicenses().getLicense())
+			{
+				String prefix = "project.licenses[" + i++ + "].";
+				values.put(prefix + "name", l.getName());
+				values.put(prefix + "url", l.getUrl());
+				values.put(prefix + "comments", l.getComments());
+				values.put(prefix + "distribution", l.getDistribution());
+			}
+		}
+		return new TokenFilter(values);
+	}
+
+	/**
+	 * Copy the input to the output, replacing the tokens.  Neither stream is closed.
+	 */
+	public void filter(InputStream in, OutputStream out) throws IOException
+	{
+		byte[] buffer = new byte[BUFFER_SIZE];
+		//the part of a possible token that has been read so far - starting with the '$'
+		ByteArrayOutputStream pending = new ByteArrayOutputStream(MAX_TOKEN_LENGTH + 3);
+		int read;
+		while ((read = in.read(buffer)) >= 0)
+		{
+			int start = 0;
+			for (int i = 0; i < read; i++)
+			{
+				byte b = buffer[i];
+				if (pending.size() == 0)
+				{
+					if (b == '$')
+					{
+						out.write(buffer, start, i - start);
+						pending.write(b);
+					}
+					else
+					{
+						continue;
+					}
+				}
+				else if (pending.size() == 1)
+				{
+					if (b == '{')
+					{
+						pending.write(b);
+					}
+					else
+					{
+						//not a token - the '$' goes out as it was.  A second '$' may start one.
+						out.write('$');
+						pending.reset();
+						if (b == '$')
+						{
+							pending.write(b);
+						}
+						else
+						{
+							out.write(b);
+						}
+					}
+				}
+				else if (b == '}')
+				{
+					out.write(resolve(pending));
+					pending.reset();
+				}
+				else if (b == '$' || b == '\n' || b == '\r' || pending.size() >= MAX_TOKEN_LENGTH + 2)
+				{
+					//not a token after all
+					pending.writeTo(out);
+					pending.reset();
+					if (b == '$')
+					{
+						pending.write(b);
+					}
+					else
+					{
+						out.write(b);
+					}
+				}
+				else
+				{
+					pending.write(b);
+				}
+				start = i + 1;
+			}
+			if (pending.size() == 0)
+			{
+				out.write(buffer, start, read - start);
+			}
+		}
+		pending.writeTo(out);
+	}
+
+	/**
+	 * Filter the source file into the target file.  The target keeps the modified time of the source, so an unchanged
+	 * source produces an identical archive.
+	 */
+	public void filter(File source, File target) throws IOException
+	{
+		try (InputStream is = Files.newInputStream(source.toPath()); OutputStream os = Files.newOutputStream(target.toPath()))
+		{
+			filter(is, os);
+		}
+		target.setLastModified(source.lastModified());
+	}
+
+	/**
+	 * @return the passed in string, with the tokens replaced
+	 */
+	public String filter(String input)
+	{
+		try
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream(input.length() + 64);
+			filter(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), out);
+			return new String(out.toByteArray(), StandardCharsets.UTF_8);
+		}
+		catch (IOException e)
+		{
+			//not possible with in memory streams
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @param token - the bytes of the token, including the ${ and }
+	 */
+	private byte[] resolve(ByteArrayOutputStream token) throws IOException
+	{
+		byte[] bytes = token.toByteArray();
+		String name = new String(bytes, 2, bytes.length - 2, StandardCharsets.UTF_8);
+		byte[] value = values_.get(name);
+		if (value != null)
+		{
+			return value;
+		}
+		String property = (name.length() == 0 ? null : System.getProperty(name));
+		if (property != null)
+		{
+			return property.getBytes(StandardCharsets.UTF_8);
+		}
+		//leave it as it was
+		ByteArrayOutputStream unresolved = new ByteArrayOutputStream(bytes.length + 1);
+		unresolved.write(bytes);
+		unresolved.write('}');
+		return unresolved.toByteArray();
+	}
+}
@@ -18,20 +18,25 @@
  */
 package gov.va.knowledgeArtifacts.publisher.publish;
 
+import gov.va.knowledgeArtifacts.publisher.types.ArchiveFormat;
+import gov.va.knowledgeArtifacts.publisher.types.ChecksumType;
+import gov.va.knowledgeArtifacts.publisher.types.KnowledgeArtifactType;
+import gov.va.knowledgeArtifacts.publisher.types.PublishPhase;
 import gov.va.knowledgeArtifacts.publisher.types.SpecialFile;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.List;
-import net.lingala.zip4j.core.ZipFile;
-import net.lingala.zip4j.exception.ZipException;
-import net.lingala.zip4j.model.ZipParameters;
-import net.lingala.zip4j.progress.ProgressMonitor;
-import net.lingala.zip4j.util.Zip4jConstants;
-import org.apache.maven.pom._4_0.License;
+import java.util.Map;
 import org.apache.maven.pom._4_0.Model;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,98 +49,680 @@ import org.slf4j.LoggerFactory;
 public class Zip
 {
 	private static Logger log = LoggerFactory.getLogger(Zip.class);
-	ZipFile zf;
+	private PublishOptions options_;
+	private ArchiveFormat format_ = ArchiveFormat.ZIP;
+	private Map<ChecksumType, String> checksums_;
+	private long archiveSize_;
+	private List<ArchiveEntry> entries_;
+	private PublishProgress progress_;
+	private PublishMetrics metrics_;
 	
-	public File createZipFile(Model model, String classifier, String dataType, File projectFolder, List<File> dataFiles) throws ZipException, IOException
+	public Zip()
+	{
+		this(new PublishOptions());
+	}
+	
+	public Zip(PublishOptions options)
+	{
+		options_ = options;
+	}
+	
+	/**
+	 * @param progress - optional - receives the progress of the scan of the data files, and of the compression
+	 */
+	public void setProgress(PublishProgress progress)
+	{
+		progress_ = progress;
+	}
+	
+	/**
+	 * @param metrics - optional - receives the timings of the scan and the compression, and the sizes of each entry
+	 */
+	public void setMetrics(PublishMetrics metrics)
+	{
+		metrics_ = metrics;
+	}
+	
+	/**
+	 * @param format - the kind of archive to write - {@link ArchiveFormat#ZIP}, if not set
+	 */
+	public void setFormat(ArchiveFormat format)
+	{
+		format_ = format;
+	}
+	
+	public File createZipFile(Model model, String classifier, String dataType, File projectFolder, List<File> dataFiles) throws IOException
 	{
 		Path tempFolder = Files.createTempDirectory("KBAPublish-");
-		
+		File zipFile = new File(tempFolder.toFile(), getArchiveName(model, classifier, dataType, format_));
+		Prepared prepared = prepare(model, classifier, dataType, projectFolder, dataFiles, tempFolder.toFile(), tempFolder.toFile(), Long.MAX_VALUE);
+		try
+		{
+			compress(prepared.archives.get(0), zipFile, prepared);
+			finish(prepared, archiveSize_);
+		}
+		finally
+		{
+			closeCache(prepared);
+		}
+		return zipFile;
+	}
+	
+	/**
+	 * @return the file name of the archive - [name]-[version]-[classifier].[dataType].[format extension] - for example .bdb.zip
+	 */
+	public static String getArchiveName(Model model, String classifier, String dataType, ArchiveFormat format)
+	{
+		return getRootFolder(model, classifier, dataType) + "." + format.getExtension();
+	}
+	
+	/**
+	 * @return the file name of the index of a split archive - [name]-[version]-[classifier].[dataType].parts.properties
+	 */
+	public static String getPartIndexName(Model model, String classifier, String dataType)
+	{
+		return getRootFolder(model, classifier, dataType) + ".parts.properties";
+	}
+	
+	/**
+	 * @return the classifier of a part of a split archive - the classifier of the whole, followed by the 1 based index of the part, 
+	 * padded so that the parts sort in order - [classifier]-part01
+	 */
+	public static String getPartClassifier(String classifier, int index, int count)
+	{
+		String number = Integer.toString(index);
+		while (number.length() < Integer.toString(count).length())
+		{
+			number = "0" + number;
+		}
+		return (classifier.trim().length() > 0 ? classifier.trim() + "-" : "") + "part" + number;
+	}
+	
+	/**
+	 * @return the name of the folder at the root of the archive - [name]-[version]-[classifier].[dataType]
+	 */
+	public static String getRootFolder(Model model, String classifier, String dataType)
+	{
 		String classifierTemp = "";
 		if (classifier.trim().length() > 0)
 		{
 			classifierTemp = "-" + classifier.trim();
 		}
-		zf = new ZipFile(new File(tempFolder.toFile(), model.getName() + "-" + model.getVersion() + classifierTemp + "." + dataType + ".zip"));
-		ZipParameters zp = new ZipParameters();
-		zp.setCompressionLevel(Zip4jConstants.DEFLATE_LEVEL_MAXIMUM);
-		zp.setCompressionMethod(Zip4jConstants.COMP_DEFLATE);
-		zp.setDefaultFolderPath(projectFolder.getAbsolutePath());
-		String rootFolder = model.getName() + "-" + model.getVersion() + classifierTemp + "." + dataType;
-		zp.setRootFolderInZip(rootFolder);
-		zp.setIncludeRootFolder(true);
-		for (File f : dataFiles)
+		return model.getName() + "-" + model.getVersion() + classifierTemp + "." + dataType;
+	}
+	
+	/**
+	 * Write the archive to a stream.  The archive is written strictly forward, so the stream does not need to be a file.
+	 * The stream is only opened once the data files are scanned and the entries are prepared, and is closed when the archive is complete.
+	 * @param workFolder - a folder where the filtered copies of the special files may be written
+	 */
+	public void writeZip(Model model, String classifier, String dataType, File projectFolder, List<File> dataFiles, File workFolder, 
+			ArchiveOutput output) throws IOException
+	{
+		Prepared prepared = prepare(model, classifier, dataType, projectFolder, dataFiles, workFolder, null, Long.MAX_VALUE);
+		try
+		{
+			compress(prepared.archives.get(0), output.open(), prepared);
+			finish(prepared, archiveSize_);
+		}
+		finally
+		{
+			closeCache(prepared);
+		}
+	}
+	
+	/**
+	 * Write the data as a number of archives, each complete in itself, with the same root folder - so extracting all of them into one
+	 * folder gives the same result as extracting a single archive.  The data files are kept in the order of the scan, and a new archive
+	 * is started whenever the next file would take the data in the current one over the part size - so each part holds at most 
+	 * partSize bytes of data (before compression), unless a single file is larger than that.  The special files are written into 
+	 * every part.  If all of the data fits in one part, a single archive is written, with the usual name.
+	 * 
+	 * Each part is passed to the listener as soon as it is complete - so it may be uploaded while the next part is compressed.
+	 * @param folder - the folder to write the parts (and the filtered copies of the special files) into
+	 * @param partSize - the maximum number of bytes of data in each part
+	 * @return the parts, in order
+	 */
+	public List<Part> writeZipParts(Model model, String classifier, String dataType, File projectFolder, List<File> dataFiles, File folder, long partSize, 
+			PartListener listener) throws IOException
+	{
+		Prepared prepared = prepare(model, classifier, dataType, projectFolder, dataFiles, folder, null, partSize);
+		List<Part> parts = new ArrayList<>();
+		try
 		{
-			if (f.isFile())
+			long totalSize = 0;
+			int count = prepared.archives.size();
+			if (count > 1)
 			{
-				log.info("Adding " + f.getAbsolutePath());
-				zf.addFile(f, zp);
+				log.info("Splitting the archive into {} parts of up to {} of data", count, PublishProgress.formatBytes(partSize));
 			}
-			else
+			for (int i = 0; i < count; i++)
 			{
-				log.info("Adding " + f.getAbsolutePath());
-				zf.addFolder(f, zp);
+				List<ArchiveEntry> entries = prepared.archives.get(i);
+				String partClassifier = count == 1 ? classifier : getPartClassifier(classifier, i + 1, count);
+				File file = new File(folder, getArchiveName(model, partClassifier, dataType, format_));
+				compress(entries, file, prepared);
+			
+				Part part = new Part(i + 1, partClassifier, file, checksums_, archiveSize_);
+				for (ArchiveEntry entry : entries)
+				{
+					part.entries_ += entry.isDirectory() ? 0 : 1;
+					part.dataSize_ += entry.getSize();
+				}
+				parts.add(part);
+				totalSize += archiveSize_;
+				if (listener != null)
+				{
+					listener.written(part);
+				}
 			}
+			//there isn't a single archive to describe
+			checksums_ = (count == 1 ? checksums_ : null);
+			archiveSize_ = totalSize;
+			finish(prepared, totalSize);
+		}
+		finally
+		{
+			closeCache(prepared);
 		}
+		return parts;
+	}
+	
+	/**
+	 * Write the index of a split archive into the folder - a properties file that lists the parts in order, with their classifiers,
+	 * sizes and checksums.
+	 * @return the index file
+	 */
+	public static File writePartIndex(Model model, String classifier, String dataType, ArchiveFormat format, List<Part> parts, File folder) 
+			throws IOException
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append("# The parts of a split archive - extract all of them into the same folder\r\n");
+		sb.append("groupId=" + model.getGroupId() + "\r\n");
+		sb.append("artifactId=" + model.getArtifactId() + "\r\n");
+		sb.append("version=" + model.getVersion() + "\r\n");
+		sb.append("classifier=" + classifier.trim() + "\r\n");
+		sb.append("type=" + dataType + "." + format.getExtension() + "\r\n");
+		sb.append("rootFolder=" + getRootFolder(model, classifier, dataType) + "\r\n");
+		sb.append("parts=" + parts.size() + "\r\n");
+		for (Part part : parts)
+		{
+			String prefix = "part." + part.getIndex() + ".";
+			sb.append(prefix + "classifier=" + part.getClassifier() + "\r\n");
+			sb.append(prefix + "file=" + part.getFile().getName() + "\r\n");
+			sb.append(prefix + "size=" + part.getSize() + "\r\n");
+			sb.append(prefix + "entries=" + part.getEntries() + "\r\n");
+			sb.append(prefix + "dataSize=" + part.getDataSize() + "\r\n");
+			for (Map.Entry<ChecksumType, String> checksum : part.getChecksums().entrySet())
+			{
+				sb.append(prefix + checksum.getKey().getExtension() + "=" + checksum.getValue() + "\r\n");
+			}
+		}
+		File file = new File(folder, getPartIndexName(model, classifier, dataType));
+		Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+	
+	/**
+	 * Scan the data files, and work out the entries of each archive - everything up to the point of compressing them
+	 * @param partSize - the maximum number of bytes of data files in each archive - Long.MAX_VALUE for a single archive
+	 */
+	private Prepared prepare(Model model, String classifier, String dataType, File projectFolder, List<File> dataFiles, File workFolder, 
+			File archiveFolder, long partSize) throws IOException
+	{
+		String rootFolder = getRootFolder(model, classifier, dataType);
+		Prepared prepared = new Prepared();
+		
+		if (progress_ != null)
+		{
+			progress_.start(PublishPhase.SCAN);
+		}
+		if (metrics_ != null)
+		{
+			metrics_.begin(PublishPhase.SCAN);
+		}
+		for (File f : dataFiles)
+		{
+			log.info("Adding " + f.getAbsolutePath());
+		}
+		prepared.inventory = DataInventory.scan(dataFiles, projectFolder, options_.getScanThreads(), (folder, bytes) ->
+		{
+			if (!folder)
+			{
+				scanned(bytes);
+			}
+		});
+		if (archiveFolder != null)
+		{
+			checkSpace(archiveFolder, prepared.inventory);
+		}
+		List<ArchiveEntry> entries = new ArrayList<>(prepared.inventory.size() + SpecialFile.SPECIAL_FILES.size());
+		for (int i = 0; i < prepared.inventory.size(); i++)
+		{
+			entries.add(new ArchiveEntry(rootFolder + "/" + prepared.inventory.getPath(i), prepared.inventory.getFile(i), 
+					prepared.inventory.getSize(i), prepared.inventory.getLastModified(i)));
+		}
+		
+		TokenFilter tokenFilter = TokenFilter.forModel(model, projectFolder);
+		filterDataFiles(entries, rootFolder, tokenFilter, workFolder);
 		
+		List<ArchiveEntry> specialEntries = new ArrayList<>();
 		for (SpecialFile sf : SpecialFile.SPECIAL_FILES)
 		{
-			String source = sf.getSource();
-			source = source.replaceAll("\\$\\{basedir\\}", projectFolder.getAbsolutePath());
-			File sourceFile = new File(source);
-			String target = sf.getOutputDirectory();
-			target = target.replaceAll("\\$\\{artifactId\\}", model.getArtifactId());
-			target = target.replaceAll("\\$\\{groupId\\}", model.getGroupId());
-			zp.setRootFolderInZip(rootFolder + "/" + target);
+			File sourceFile = new File(tokenFilter.filter(sf.getSource()));
+			String target = tokenFilter.filter(sf.getOutputDirectory());
+			String targetFolder = rootFolder + "/" + target + (target.endsWith("/") ? "" : "/");
 			
+			log.info("Adding " + sourceFile.getAbsolutePath());
 			if (sf.filter())
 			{
-				Charset charset = StandardCharsets.UTF_8;
-				String content = new String(Files.readAllBytes(sourceFile.toPath()), charset);
-				content = content.replaceAll("\\$\\{java.version\\}", System.getProperty("java.version"));
-				content = content.replaceAll("\\$\\{java.vendor\\}", System.getProperty("java.vendor"));
-				content = content.replaceAll("\\$\\{project.name\\}", model.getName());
-				content = content.replaceAll("\\$\\{project.version\\}", model.getVersion());
-				content = content.replaceAll("\\$\\{project.groupId\\}", model.getGroupId());
-				content = content.replaceAll("\\$\\{project.organization.name\\}", (model.getOrganization() == null ? "" : model.getOrganization().getName()));
-				
-				if (model.getLicenses() != null)
-				{
-					int i = 0;
-					for (License l : model.getLicenses().getLicense())
-					{
-						content = content.replaceAll("\\$\\{project.licenses\\[" + i + "\\].name\\}", l.getName());
-						content = content.replaceAll("\\$\\{project.licenses\\[" + i + "\\].comments\\}", l.getComments());
-						content = content.replaceAll("\\$\\{project.licenses\\[" + i + "\\].distribution\\}", l.getDistribution());
-						content = content.replaceAll("\\$\\{project.licenses\\[" + i++ + "\\].url\\}", l.getUrl());
-					}
-				}
-				
-				
-				File tempFile = new File(zf.getFile().getParentFile(), sourceFile.getName());
-				Files.write(tempFile.toPath(), content.getBytes(charset));
-				log.info("Adding " + sourceFile.getAbsolutePath());
-				zp.setDefaultFolderPath(tempFile.getParentFile().getAbsolutePath());
-				zf.addFile(tempFile, zp);
+				File tempFile = new File(workFolder, sourceFile.getName());
+				tokenFilter.filter(sourceFile, tempFile);
+				specialEntries.add(new ArchiveEntry(targetFolder + sourceFile.getName(), tempFile));
 			}
 			else
 			{
-				log.info("Adding " + sourceFile.getAbsolutePath());
-				zp.setDefaultFolderPath(sourceFile.getParentFile().getAbsolutePath());
-				zf.addFile(sourceFile, zp);
+				specialEntries.add(new ArchiveEntry(targetFolder + sourceFile.getName(), sourceFile));
 			}
 		}
 		
+		for (List<ArchiveEntry> archive : split(entries, partSize))
+		{
+			archive.addAll(specialEntries);
+			prepared.archives.add(archive);
+		}
+		entries.addAll(specialEntries);
+		prepared.entries = entries;
 		
-		return zf.getFile();
+		//a TAR archive is compressed as one stream - so there is no per entry compression to choose, or to cache
+		KnowledgeArtifactType type = KnowledgeArtifactType.parse(dataType);
+		if (!format_.isTar() 
+				&& (options_.getAdaptiveCompression() == null ? (type == null || type.isAdaptiveCompression()) : options_.getAdaptiveCompression()))
+		{
+			CompressionAdvisor.advise(entries, options_.getZipThreads());
+		}
+		
+		prepared.io = FileChannelIO.forOptions(options_);
+		if (!format_.isTar() && options_.isEntryCache())
+		{
+			try
+			{
+				prepared.cache = new EntryCache(new File(options_.getEntryCacheFolder()), options_.getEntryCacheMaxSize() * 1024l * 1024l);
+				prepared.cache.setIO(prepared.io);
+				prepared.cache.prepare(entries, options_.getZipThreads());
+			}
+			catch (IOException e)
+			{
+				log.warn("The entry cache is unavailable - all entries will be compressed", e);
+				closeCache(prepared);
+				prepared.cache = null;
+			}
+		}
 		
+		//the special files are counted once for each archive they are written to
+		for (List<ArchiveEntry> archive : prepared.archives)
+		{
+			for (ArchiveEntry entry : archive)
+			{
+				prepared.total += entry.getSize();
+				prepared.files += entry.isDirectory() ? 0 : 1;
+			}
+		}
+		if (progress_ != null)
+		{
+			progress_.finish(PublishPhase.SCAN);
+			progress_.setTotal(PublishPhase.COMPRESS, prepared.total);
+			progress_.start(PublishPhase.COMPRESS);
+		}
+		if (metrics_ != null)
+		{
+			metrics_.setDetail("skippedItems", prepared.inventory.getSkippedCount());
+			metrics_.end(PublishPhase.SCAN, prepared.files, prepared.total, 0);
+			metrics_.begin(PublishPhase.COMPRESS);
+		}
+		return prepared;
+	}
+	
+	/**
+	 * Cut the data entries into archives of at most partSize bytes - each archive also gets the folder entries that enclose its
+	 * first file, so that every archive is complete in itself.
+	 */
+	private static List<List<ArchiveEntry>> split(List<ArchiveEntry> entries, long partSize)
+	{
+		List<List<ArchiveEntry>> archives = new ArrayList<>();
+		List<ArchiveEntry> current = new ArrayList<>();
+		long currentSize = 0;
+		boolean currentHasFiles = false;
+		//the folders enclosing the current position of the scan, outermost first
+		ArrayDeque<ArchiveEntry> open = new ArrayDeque<>();
+		for (ArchiveEntry entry : entries)
+		{
+			while (!open.isEmpty() && !entry.getName().startsWith(open.peekLast().getName()))
+			{
+				open.removeLast();
+			}
+			if (entry.isDirectory())
+			{
+				current.add(entry);
+				open.addLast(entry);
+				continue;
+			}
+			if (currentHasFiles && currentSize + entry.getSize() > partSize)
+			{
+				archives.add(current);
+				current = new ArrayList<>(open);
+				currentSize = 0;
+			}
+			current.add(entry);
+			currentSize += entry.getSize();
+			currentHasFiles = true;
+		}
+		archives.add(current);
+		return archives;
 	}
 	
-	public ProgressMonitor getProgressMonitor()
+	/**
+	 * Compress the entries into the file - which is removed again, if that fails
+	 */
+	private void compress(List<ArchiveEntry> entries, File file, Prepared prepared) throws IOException
 	{
-		if (zf != null)
+		boolean complete = false;
+		try (OutputStream out = Files.newOutputStream(file.toPath()))
+		{
+			compress(entries, out, prepared);
+			complete = true;
+		}
+		finally
+		{
+			if (!complete)
+			{
+				Files.deleteIfExists(file.toPath());
+			}
+		}
+	}
+	
+	/**
+	 * Write one archive to the stream, and close it
+	 */
+	private void compress(List<ArchiveEntry> entries, OutputStream out, Prepared prepared) throws IOException
+	{
+		int level = options_.getCompressionLevel() < 0 ? format_.getDefaultLevel() : options_.getCompressionLevel();
+		log.info("Compressing {} entries as {} (level {}) with {} threads", entries.size(), format_.getExtension(), level, options_.getZipThreads());
+		DigestingOutputStream dos = new DigestingOutputStream(out, options_.getChecksumTypes());
+		if (format_.isTar())
+		{
+			try (OutputStream os = new BufferedOutputStream(dos, 1024 * 1024);
+					ParallelTarWriter tw = new ParallelTarWriter(os, format_, options_.getZipThreads(), options_.getZipBlockSize(), level))
+			{
+				tw.setIO(prepared.io);
+				if (progress_ != null)
+				{
+					tw.setProgress((bytes) -> progress_.add(PublishPhase.COMPRESS, bytes));
+				}
+				tw.write(entries);
+			}
+			checksums_ = dos.getChecksums();
+			archiveSize_ = dos.getCount();
+			return;
+		}
+		try (OutputStream os = new BufferedOutputStream(dos, 1024 * 1024);
+				ParallelZipWriter zw = new ParallelZipWriter(os, options_.getZipThreads(), options_.getZipBlockSize(), level))
+		{
+			zw.setEntryCache(prepared.cache);
+			zw.setMetrics(metrics_);
+			zw.setIO(prepared.io);
+			if (progress_ != null)
+			{
+				zw.setProgress((bytes) -> progress_.add(PublishPhase.COMPRESS, bytes));
+			}
+			zw.write(entries);
+		}
+		checksums_ = dos.getChecksums();
+		archiveSize_ = dos.getCount();
+	}
+	
+	/**
+	 * Complete the compression phase, once all of the archives are written
+	 */
+	private void finish(Prepared prepared, long archiveBytes)
+	{
+		entries_ = prepared.entries;
+		if (progress_ != null)
+		{
+			progress_.finish(PublishPhase.COMPRESS);
+		}
+		List<Integer> changed = prepared.inventory.findChanged();
+		if (changed.size() > 0)
+		{
+			log.warn("{} data files changed while the archive was being written - the archive may not match them.  The first was {}", 
+					changed.size(), prepared.inventory.getFile(changed.get(0)).getAbsolutePath());
+		}
+		if (metrics_ != null)
+		{
+			metrics_.end(PublishPhase.COMPRESS, prepared.files, prepared.total, archiveBytes);
+		}
+		if (prepared.cache != null)
+		{
+			try
+			{
+				prepared.cache.save();
+			}
+			catch (IOException e)
+			{
+				log.warn("Failed to save the entry cache", e);
+			}
+		}
+	}
+	
+	/**
+	 * Release the entry cache, whether or not the archive was written - the last publish using the cache folder trims it.
+	 */
+	private void closeCache(Prepared prepared)
+	{
+		if (prepared.cache != null)
+		{
+			try
+			{
+				prepared.cache.close();
+			}
+			catch (IOException e)
+			{
+				log.warn("Failed to trim the entry cache", e);
+			}
+		}
+	}
+	
+	/**
+	 * @return the checksums of the archive written by the last call to {@link #createZipFile(Model, String, String, File, List)} or 
+	 * {@link #writeZip(Model, String, String, File, List, File, ArchiveOutput)} - 
+	 * calculated as the archive was written.
+	 */
+	public Map<ChecksumType, String> getChecksums()
+	{
+		return checksums_;
+	}
+	
+	/**
+	 * @return the size (in bytes) of the archive written by the last call to {@link #createZipFile(Model, String, String, File, List)} or 
+	 * {@link #writeZip(Model, String, String, File, List, File, ArchiveOutput)}
+	 */
+	public long getArchiveSize()
+	{
+		return archiveSize_;
+	}
+	
+	/**
+	 * @return the entries of the last archive written - across all of its parts, if it was split, with the special files once - each
+	 * with the file its content was read from (a filtered copy, for the special files and filtered data files, which stays in the work 
+	 * folder)
+	 */
+	public List<ArchiveEntry> getEntries()
+	{
+		return entries_;
+	}
+	
+	/**
+	 * Replace the data file entries that match the {@link PublishOptions#getFilteredFiles()} patterns with filtered copies
+	 */
+	private void filterDataFiles(List<ArchiveEntry> entries, String rootFolder, TokenFilter tokenFilter, File workFolder) throws IOException
+	{
+		if (options_.getFilteredFiles().isEmpty())
+		{
+			return;
+		}
+		List<PathMatcher> matchers = new ArrayList<>();
+		for (String pattern : options_.getFilteredFiles())
+		{
+			matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+		}
+		File filteredFolder = new File(workFolder, "filtered");
+		for (int i = 0; i < entries.size(); i++)
+		{
+			ArchiveEntry entry = entries.get(i);
+			if (entry.isDirectory())
+			{
+				continue;
+			}
+			String name = entry.getName().substring(rootFolder.length() + 1);
+			for (PathMatcher matcher : matchers)
+			{
+				if (matcher.matches(Paths.get(name)))
+				{
+					File tempFile = new File(filteredFolder, name);
+					tempFile.getParentFile().mkdirs();
+					tokenFilter.filter(entry.getSource(), tempFile);
+					log.info("Filtered " + entry.getSource().getAbsolutePath());
+					entries.set(i, new ArchiveEntry(entry.getName(), tempFile));
+					break;
+				}
+			}
+		}
+	}
+	
+	private void scanned(long bytes)
+	{
+		if (progress_ != null)
+		{
+			progress_.scanned(1, bytes);
+		}
+	}
+	
+	/**
+	 * The archive is compressed, so it will usually be smaller than the data - but some data (already compressed files) won't shrink
+	 * at all.  Warn, rather than fail, when there may not be room for it.
+	 */
+	private void checkSpace(File archiveFolder, DataInventory inventory)
+	{
+		long usable = archiveFolder.getUsableSpace();
+		if (usable > 0 && usable < inventory.getTotalBytes())
+		{
+			log.warn("The data files total {} bytes, but there are only {} bytes free in {} - the archive may not fit", inventory.getTotalBytes(), 
+					usable, archiveFolder.getAbsolutePath());
+		}
+	}
+	
+	/**
+	 * Everything found by the scan, ready to be compressed
+	 */
+	private static class Prepared
+	{
+		DataInventory inventory;
+		//every entry, once
+		List<ArchiveEntry> entries;
+		//the entries of each archive to write
+		List<List<ArchiveEntry>> archives = new ArrayList<>();
+		EntryCache cache;
+		FileChannelIO io;
+		long total;
+		int files;
+	}
+	
+	/**
+	 * Opens the stream that an archive is written to
+	 */
+	public interface ArchiveOutput
+	{
+		public OutputStream open() throws IOException;
+	}
+	
+	/**
+	 * Told about each part of a split archive, as soon as it is written
+	 */
+	public interface PartListener
+	{
+		public void written(Part part) throws IOException;
+	}
+	
+	/**
+	 * One archive of a split archive
+	 */
+	public static class Part
+	{
+		private int index_;
+		private String classifier_;
+		private File file_;
+		private Map<ChecksumType, String> checksums_;
+		private long size_;
+		private int entries_;
+		private long dataSize_;
+		
+		Part(int index, String classifier, File file, Map<ChecksumType, String> checksums, long size)
+		{
+			index_ = index;
+			classifier_ = classifier;
+			file_ = file;
+			checksums_ = checksums;
+			size_ = size;
+		}
+		
+		/**
+		 * @return the position of the part - starting from 1
+		 */
+		public int getIndex()
+		{
+			return index_;
+		}
+		
+		public String getClassifier()
+		{
+			return classifier_;
+		}
+		
+		public File getFile()
+		{
+			return file_;
+		}
+		
+		/**
+		 * @return the checksums of the part, calculated as it was written
+		 */
+		public Map<ChecksumType, String> getChecksums()
+		{
+			return checksums_;
+		}
+		
+		/**
+		 * @return the size of the part, in bytes
+		 */
+		public long getSize()
+		{
+			return size_;
+		}
+		
+		/**
+		 * @return the number of files in the part
+		 */
+		public int getEntries()
+		{
+			return entries_;
+		}
+		
+		/**
+		 * @return the size of the files in the part, before compression
+		 */
+		public long getDataSize()
 		{
-			return zf.getProgressMonitor();
+			return dataSize_;
 		}
-		return null;
 	}
 }
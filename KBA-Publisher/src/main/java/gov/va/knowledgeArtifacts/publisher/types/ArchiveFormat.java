@@ -0,0 +1,131 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.types;
+
+/**
+ * {@link ArchiveFormat}
+ *
+ * The container and compression that the data files are published in.  The extension is appended to the type of the attached
+ * artifact - bdb.zip, bdb.tar.xz - and to the format of the assembly, so a maven build of the project creates the same kind of archive.
+ * Formats other than zip need a newer assembly plugin than the one this tool has always generated, so each format carries the
+ * plugin version that introduced it - the pom of a zip project is unchanged.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public enum ArchiveFormat
+{
+	ZIP("ZIP (deflate)", "zip", 9, "2.4"), TAR_GZ("TAR compressed with gzip", "tar.gz", 9, "2.4"), 
+	TAR_XZ("TAR compressed with xz", "tar.xz", 6, "2.5.5"), TAR_ZST("TAR compressed with Zstandard", "tar.zst", 12, "3.6.0");
+
+	private String niceName_;
+	private String extension_;
+	private int defaultLevel_;
+	private String assemblyPluginVersion_;
+
+	private ArchiveFormat(String niceName, String extension, int defaultLevel, String assemblyPluginVersion)
+	{
+		niceName_ = niceName;
+		extension_ = extension;
+		defaultLevel_ = defaultLevel;
+		assemblyPluginVersion_ = assemblyPluginVersion;
+	}
+
+	public String getNiceName()
+	{
+		return niceName_;
+	}
+
+	/**
+	 * @return the file extension of the archive - without the leading '.' - which is also the assembly format
+	 */
+	public String getExtension()
+	{
+		return extension_;
+	}
+
+	/**
+	 * @return the compression level used when none is configured - the deflate level for zip and gzip, the preset for xz, 
+	 * the level for Zstandard
+	 */
+	public int getDefaultLevel()
+	{
+		return defaultLevel_;
+	}
+
+	/**
+	 * @return the version of the maven-assembly-plugin to generate into the pom - the oldest that can create this format
+	 */
+	public String getAssemblyPluginVersion()
+	{
+		return assemblyPluginVersion_;
+	}
+
+	/**
+	 * @return true for the formats that are a single compressed stream of a TAR archive
+	 */
+	public boolean isTar()
+	{
+		return this != ZIP;
+	}
+
+	/**
+	 * @return the format of the attached artifact type (such as bdb.tar.xz), or null, if the type doesn't end with a known extension
+	 */
+	public static ArchiveFormat forType(String type)
+	{
+		if (type == null)
+		{
+			return null;
+		}
+		for (ArchiveFormat format : ArchiveFormat.values())
+		{
+			if (type.toLowerCase().endsWith("." + format.getExtension()))
+			{
+				return format;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the type with the extension of its archive format (if any) removed - bdb.tar.xz becomes bdb
+	 */
+	public static String stripExtension(String type)
+	{
+		ArchiveFormat format = forType(type);
+		return format == null ? type : type.substring(0, type.length() - format.getExtension().length() - 1);
+	}
+
+	public static ArchiveFormat parse(String value)
+	{
+		if (value == null)
+		{
+			return null;
+		}
+		for (ArchiveFormat format : ArchiveFormat.values())
+		{
+			if (value.trim().toLowerCase().equals(format.name().toLowerCase()) || value.trim().toLowerCase().equals(format.getNiceName().toLowerCase()) 
+					|| value.trim().toLowerCase().equals(format.getExtension()))
+			{
+				return format;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.types;
+
+/**
+ * {@link ChecksumType}
+ *
+ * The checksum sidecar files that may be published along with an artifact - declared from the weakest to the strongest.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public enum ChecksumType
+{
+	MD5("MD5", "md5"), SHA1("SHA-1", "sha1"), SHA256("SHA-256", "sha256"), SHA512("SHA-512", "sha512");
+
+	private String algorithm_;
+	private String extension_;
+
+	private ChecksumType(String algorithm, String extension)
+	{
+		algorithm_ = algorithm;
+		extension_ = extension;
+	}
+
+	/**
+	 * @return the name to pass to {@link java.security.MessageDigest#getInstance(String)}
+	 */
+	public String getAlgorithm()
+	{
+		return algorithm_;
+	}
+
+	/**
+	 * @return the file extension used for the sidecar file - without the leading '.'
+	 */
+	public String getExtension()
+	{
+		return extension_;
+	}
+
+	public static ChecksumType parse(String value)
+	{
+		if (value == null)
+		{
+			return null;
+		}
+		for (ChecksumType type : ChecksumType.values())
+		{
+			if (value.trim().toLowerCase().equals(type.name().toLowerCase()) || value.trim().toLowerCase().equals(type.getAlgorithm().toLowerCase()))
+			{
+				return type;
+			}
+		}
+		return null;
+	}
+}
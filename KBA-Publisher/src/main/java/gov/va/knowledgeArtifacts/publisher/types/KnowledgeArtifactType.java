@@ -25,16 +25,19 @@ package gov.va.knowledgeArtifacts.publisher.types;
  */
 public enum KnowledgeArtifactType
 {
-	IBDB("ISAAC Database Format", "bdb"), EConcept("ISAAC EConcept Format", "ec"),ChangeSet("ISAAC Changeset Format", "ec_cs"), KIE("Knowledge Is Everything (Drools)", "kie"), 
-	CDSKnowledgeArtifact("CDS Knowledge Artifact", "cds_ka"), RF2("Release Format 2", "RF2"), OWL("Web Ontology Language", "owl");
+	IBDB("ISAAC Database Format", "bdb", true), EConcept("ISAAC EConcept Format", "ec", true),ChangeSet("ISAAC Changeset Format", "ec_cs", true), 
+	KIE("Knowledge Is Everything (Drools)", "kie", true), CDSKnowledgeArtifact("CDS Knowledge Artifact", "cds_ka", true), RF2("Release Format 2", "RF2", false), 
+	OWL("Web Ontology Language", "owl", false);
 	
 	private String niceName_;
 	private String type_;
+	private boolean adaptiveCompression_;
 	
-	private KnowledgeArtifactType(String description, String type)
+	private KnowledgeArtifactType(String description, String type, boolean adaptiveCompression)
 	{
 		niceName_ = description;
 		type_ = type;
+		adaptiveCompression_ = adaptiveCompression;
 	}
 	
 	public String getNiceName()
@@ -47,6 +50,15 @@ public enum KnowledgeArtifactType
 		return type_;
 	}
 	
+	/**
+	 * @return true, if artifacts of this type may contain already compressed content, so each file should be sampled to pick
+	 * the compression used for it.  Text formats always compress well, so they skip the sampling.
+	 */
+	public boolean isAdaptiveCompression()
+	{
+		return adaptiveCompression_;
+	}
+	
 	public static KnowledgeArtifactType parse(String value)
 	{
 		if (value == null)
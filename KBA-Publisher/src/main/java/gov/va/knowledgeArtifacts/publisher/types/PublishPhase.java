@@ -0,0 +1,44 @@
+/**
+ * Copyright Notice
+ *
+ * This is a work of the U.S. Government and is not subject to copyright
+ * protection in the United States. Foreign copyrights may apply.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.va.knowledgeArtifacts.publisher.types;
+
+/**
+ * {@link PublishPhase}
+ *
+ * The steps of a publish that progress and metrics are reported for - in the order they run.
+ *
+ * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
+ */
+public enum PublishPhase
+{
+	SCAN("Scanning data files"), COMPRESS("Compressing"), DELTA("Creating the delta"), HASH("Calculating checksums"), 
+	CHECK_EXISTING("Checking for files already in the repository"), UPLOAD("Uploading"), CLEANUP("Removing temporary files");
+
+	private String niceName_;
+
+	private PublishPhase(String niceName)
+	{
+		niceName_ = niceName;
+	}
+
+	public String getNiceName()
+	{
+		return niceName_;
+	}
+}